@@ -0,0 +1,79 @@
+/*
+ * Copyright (C) 2003-2020 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.exoplatform.onlyoffice;
+
+import java.io.File;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks with JMH command line options and writes the results in
+ * JSON (unless other result format or file given in the options). By default
+ * the results go to <code>results/onlyoffice-&lt;version&gt;-&lt;time&gt;.json</code>
+ * where the version is the add-on version (if known): results of different
+ * releases can be compared by JMH tools.<br>
+ * Created by The eXo Platform SAS.
+ */
+public class BenchmarkRunner {
+
+  /**
+   * The main method.
+   *
+   * @param args the JMH command line options
+   * @throws Exception the exception
+   */
+  public static void main(String[] args) throws Exception {
+    CommandLineOptions cmdOptions = new CommandLineOptions(args);
+    if (cmdOptions.shouldHelp()) {
+      cmdOptions.showHelp();
+      return;
+    }
+    ChainedOptionsBuilder options = new OptionsBuilder().parent(cmdOptions);
+    if (!cmdOptions.getResultFormat().hasValue()) {
+      options.resultFormat(ResultFormatType.JSON);
+    }
+    if (!cmdOptions.getResult().hasValue()) {
+      File dir = new File("results");
+      dir.mkdirs();
+      options.result(new File(dir, resultName()).getPath());
+    }
+    new Runner(options.build()).run();
+  }
+
+  /**
+   * Name of the results file.
+   *
+   * @return the name
+   */
+  static String resultName() {
+    String version = BenchmarkRunner.class.getPackage().getImplementationVersion();
+    StringBuilder name = new StringBuilder("onlyoffice-");
+    if (version != null) {
+      name.append(version).append('-');
+    }
+    name.append(new SimpleDateFormat("yyyyMMdd-HHmmss").format(new Date())).append(".json");
+    return name.toString();
+  }
+}
@@ -0,0 +1,127 @@
+/*
+ * Copyright (C) 2003-2020 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.exoplatform.onlyoffice;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * State of co-editing users as it's synced on each Document Server status:
+ * {@link CoEditing#syncUsers} and {@link CoEditing#activeUsers} over large
+ * co-editing maps, and the document key generation.<br>
+ * Created by The eXo Platform SAS.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CoEditingBenchmark {
+
+  /** The users co-editing the document. */
+  @Param({ "10", "100", "1000" })
+  public int                                  users;
+
+  /** The configs. */
+  private ConcurrentHashMap<String, Config>   configs;
+
+  /** All the users. */
+  private String[]                            allUsers;
+
+  /** The first half of the users. */
+  private String[]                            halfUsers;
+
+  /** The sync counter, to alternate users of a status. */
+  private long                                syncs;
+
+  /**
+   * Setup.
+   */
+  @Setup
+  public void setup() {
+    configs = ConfigFixtures.configs(new ConcurrentHashMap<String, Config>(), users, null);
+    configs.values().forEach(Config::open);
+    allUsers = configs.keySet().toArray(new String[configs.size()]);
+    halfUsers = Arrays.copyOf(allUsers, Math.max(1, allUsers.length / 2));
+  }
+
+  /**
+   * Sync users of a status with the same editing users (the most frequent
+   * case).
+   *
+   * @return the changed configs
+   */
+  @Benchmark
+  public int syncUsersSame() {
+    List<Config> opened = new ArrayList<>();
+    List<Config> closed = new ArrayList<>();
+    CoEditing.syncUsers(configs, allUsers, opened, closed);
+    return opened.size() + closed.size();
+  }
+
+  /**
+   * Sync users of a status when a half of the users leave or join again.
+   *
+   * @return the changed configs
+   */
+  @Benchmark
+  public int syncUsersChanged() {
+    List<Config> opened = new ArrayList<>();
+    List<Config> closed = new ArrayList<>();
+    CoEditing.syncUsers(configs, (syncs++ & 1) == 0 ? halfUsers : allUsers, opened, closed);
+    return opened.size() + closed.size();
+  }
+
+  /**
+   * Gets the active users.
+   *
+   * @return the users
+   */
+  @Benchmark
+  public String[] activeUsers() {
+    return CoEditing.activeUsers(configs);
+  }
+
+  /**
+   * Generate a document key.
+   *
+   * @return the uuid
+   */
+  @Benchmark
+  public UUID generateId() {
+    return CoEditing.generateId("collaboration", "/Groups/spaces/product_team/Documents/Product roadmap 2020.docx");
+  }
+}
@@ -0,0 +1,129 @@
+/*
+ * Copyright (C) 2003-2020 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.exoplatform.onlyoffice;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.net.URI;
+import java.util.Calendar;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Editor configs similar to ones created by {@link OnlyofficeEditorServiceImpl}
+ * for use in benchmarks.<br>
+ * Created by The eXo Platform SAS.
+ */
+public class ConfigFixtures {
+
+  /** The Constant SECRET. */
+  public static final String SECRET = "1fRW5pBZu3UIBEdebbpDpKJ4hwExSQoSe97tw8gyYNhqnM1biHb";
+
+  /**
+   * Create an editor config of the first user.
+   *
+   * @param secret the Document Server secret, can be <code>null</code>
+   * @return the config
+   */
+  public static Config config(String secret) {
+    String docId = UUID.randomUUID().toString();
+    String path = "/Groups/spaces/product_team/Documents/Specifications/Product roadmap 2020.docx";
+    Config.Builder builder = Config.editor("https://documents.acme.com/OfficeWeb/", "text", "collaboration", path, docId);
+    builder.owner("john");
+    builder.fileType("docx");
+    builder.uploaded(Calendar.getInstance());
+    builder.displayPath("Product Team / Documents / Specifications");
+    builder.comment("Updated the roadmap");
+    builder.renameAllowed(true);
+    builder.isActivity(true);
+    builder.folder("Specifications");
+    builder.lang("en");
+    builder.mode("edit");
+    builder.title("Product roadmap 2020.docx");
+    builder.userId("john");
+    builder.userName("John Smith");
+    builder.lastModifier("John Smith");
+    builder.lastModified("12.02.2020 10:24");
+    builder.key(UUID.randomUUID().toString());
+    builder.generateUrls("https://intranet.acme.com/rest");
+    builder.editorUrl("https://intranet.acme.com/portal/intranet/oeditor?docId=" + docId);
+    builder.explorerUri(URI.create("https://intranet.acme.com/portal/g/:spaces:product_team/product_team/documents?path="
+        + "/Groups/spaces/product_team/Documents/Specifications"));
+    builder.secret(secret);
+    return builder.build();
+  }
+
+  /**
+   * Create configs of a document co-edited by given number of users.
+   *
+   * @param configs the map to fill
+   * @param users the users count
+   * @param secret the Document Server secret, can be <code>null</code>
+   * @return the given map
+   */
+  public static <M extends ConcurrentMap<String, Config>> M configs(M configs, int users, String secret) {
+    Config first = config(secret);
+    configs.put(first.getEditorConfig().getUser().getId(), first);
+    for (int i = 1; i < users; i++) {
+      String userId = "user" + i;
+      Config config = first.forUser(userId, "User Number " + i, "en", secret);
+      config.getEditorConfig().getUser().setLastModified(System.currentTimeMillis());
+      configs.put(userId, config);
+    }
+    return configs;
+  }
+
+  /**
+   * Serialize given object with Java serialization.
+   *
+   * @param obj the obj
+   * @return the bytes
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  public static byte[] serialize(Object obj) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream(4096);
+    try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+      out.writeObject(obj);
+    }
+    return bytes.toByteArray();
+  }
+
+  /**
+   * Deserialize an object from given bytes with Java serialization.
+   *
+   * @param data the data
+   * @return the object
+   * @throws IOException Signals that an I/O exception has occurred.
+   * @throws ClassNotFoundException the class not found exception
+   */
+  public static Object deserialize(byte[] data) throws IOException, ClassNotFoundException {
+    try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(data))) {
+      return in.readObject();
+    }
+  }
+
+  /**
+   * Instantiates a new config fixtures.
+   */
+  private ConfigFixtures() {
+  }
+}
@@ -0,0 +1,141 @@
+/*
+ * Copyright (C) 2003-2020 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.exoplatform.onlyoffice;
+
+import java.io.IOException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Serialization of configs of a co-edited document (as it's replicated in
+ * cluster) in the legacy and compact formats, and of a config to JSON (as it's
+ * sent to the editor page). Size of the streams reported by
+ * {@link ConfigWireSize}.<br>
+ * Created by The eXo Platform SAS.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ConfigSerializationBenchmark {
+
+  /** The users co-editing the document. */
+  @Param({ "1", "5", "20" })
+  public int                                    users;
+
+  /** The configs in the legacy format. */
+  private ConcurrentMap<String, LegacyConfig>   legacyConfigs;
+
+  /** The configs in the compact format. */
+  private ConfigMap                             compactConfigs;
+
+  /** The legacy bytes. */
+  private byte[]                                legacyBytes;
+
+  /** The compact bytes. */
+  private byte[]                                compactBytes;
+
+  /** The config of first user. */
+  private Config                                config;
+
+  /**
+   * Setup.
+   *
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  @Setup
+  public void setup() throws IOException {
+    compactConfigs = ConfigFixtures.configs(new ConfigMap(), users, ConfigFixtures.SECRET);
+    legacyConfigs = new ConcurrentHashMap<>();
+    compactConfigs.forEach((userId, config) -> legacyConfigs.put(userId, new LegacyConfig(config)));
+    legacyBytes = ConfigFixtures.serialize(legacyConfigs);
+    compactBytes = ConfigFixtures.serialize(compactConfigs);
+    config = compactConfigs.get("john");
+  }
+
+  /**
+   * Write legacy.
+   *
+   * @return the bytes
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  @Benchmark
+  public byte[] writeLegacy() throws IOException {
+    return ConfigFixtures.serialize(legacyConfigs);
+  }
+
+  /**
+   * Write compact.
+   *
+   * @return the bytes
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  @Benchmark
+  public byte[] writeCompact() throws IOException {
+    return ConfigFixtures.serialize(compactConfigs);
+  }
+
+  /**
+   * Read legacy.
+   *
+   * @return the object
+   * @throws Exception the exception
+   */
+  @Benchmark
+  public Object readLegacy() throws Exception {
+    return ConfigFixtures.deserialize(legacyBytes);
+  }
+
+  /**
+   * Read compact.
+   *
+   * @return the object
+   * @throws Exception the exception
+   */
+  @Benchmark
+  public Object readCompact() throws Exception {
+    return ConfigFixtures.deserialize(compactBytes);
+  }
+
+  /**
+   * Write a config to JSON.
+   *
+   * @return the JSON
+   * @throws Exception the exception
+   */
+  @Benchmark
+  public String toJSON() throws Exception {
+    return config.toJSON();
+  }
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright (C) 2003-2020 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.exoplatform.onlyoffice;
+
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Prints size of serialized configs of a co-edited document in the legacy and
+ * compact formats, one JSON object per line, and checks the compact format
+ * round trip.<br>
+ * Usage: <code>java -cp target/benchmarks.jar org.exoplatform.onlyoffice.ConfigWireSize [users...]</code>
+ * <br>
+ * Created by The eXo Platform SAS.
+ */
+public class ConfigWireSize {
+
+  /**
+   * The main method.
+   *
+   * @param args the users counts
+   * @throws Exception the exception
+   */
+  public static void main(String[] args) throws Exception {
+    int[] usersCounts = args.length > 0 ? new int[args.length] : new int[] { 1, 5, 20, 50 };
+    for (int i = 0; i < args.length; i++) {
+      usersCounts[i] = Integer.parseInt(args[i]);
+    }
+    for (int users : usersCounts) {
+      ConfigMap compactConfigs = ConfigFixtures.configs(new ConfigMap(), users, ConfigFixtures.SECRET);
+      ConcurrentMap<String, LegacyConfig> legacyConfigs = new ConcurrentHashMap<>();
+      compactConfigs.forEach((userId, config) -> legacyConfigs.put(userId, new LegacyConfig(config)));
+
+      byte[] legacyBytes = ConfigFixtures.serialize(legacyConfigs);
+      byte[] compactBytes = ConfigFixtures.serialize(compactConfigs);
+
+      ConfigMap restored = (ConfigMap) ConfigFixtures.deserialize(compactBytes);
+      for (Config config : compactConfigs.values()) {
+        String userId = config.getEditorConfig().getUser().getId();
+        Config other = restored.get(userId);
+        if (other == null || !config.toJSON().equals(other.toJSON())) {
+          throw new IllegalStateException("Compact format round trip failed for " + userId);
+        }
+      }
+
+      System.out.println(new StringBuilder("{\"users\":").append(users)
+                                                         .append(",\"legacyBytes\":")
+                                                         .append(legacyBytes.length)
+                                                         .append(",\"compactBytes\":")
+                                                         .append(compactBytes.length)
+                                                         .append(",\"ratio\":")
+                                                         .append(String.format(Locale.ROOT, "%.3f",
+                                                                               (double) compactBytes.length
+                                                                                   / legacyBytes.length))
+                                                         .append('}'));
+    }
+  }
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright (C) 2003-2020 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.exoplatform.onlyoffice;
+
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+
+/**
+ * Holder of a {@link Config} written in the legacy format whatever the
+ * {@link CompactFormat#LEGACY_PROPERTY} is. Its stream differs from the one of
+ * a legacy config only by the class name in the descriptor.<br>
+ * Created by The eXo Platform SAS.
+ */
+public class LegacyConfig implements Externalizable {
+
+  /** The config. */
+  private Config config;
+
+  /**
+   * Instantiates a new legacy config (for deserialization).
+   */
+  public LegacyConfig() {
+  }
+
+  /**
+   * Instantiates a new legacy config.
+   *
+   * @param config the config
+   */
+  public LegacyConfig(Config config) {
+    this.config = config;
+  }
+
+  /**
+   * Gets the config.
+   *
+   * @return the config
+   */
+  public Config getConfig() {
+    return config;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void writeExternal(ObjectOutput out) throws IOException {
+    config.writeLegacy(out);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void readExternal(ObjectInput in) throws IOException, ClassNotFoundException {
+    // config detects the legacy format itself
+    config = new Config();
+    config.readExternal(in);
+  }
+}
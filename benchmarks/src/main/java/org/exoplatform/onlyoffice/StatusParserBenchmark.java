@@ -0,0 +1,85 @@
+/*
+ * Copyright (C) 2003-2020 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.exoplatform.onlyoffice;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import org.exoplatform.onlyoffice.rest.StatusParser;
+
+/**
+ * Parsing of the status JSON posted by Document Server to the REST status
+ * callback.<br>
+ * Created by The eXo Platform SAS.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(4)
+public class StatusParserBenchmark {
+
+  /** The document key. */
+  private static final String KEY            = "e0b8f1c2-4c9a-4f0e-9d43-5b7a2f1c8d11";
+
+  /** The status of users editing a document. */
+  private static final String EDITING_STATUS = "{\"key\":\"" + KEY + "\",\"status\":1,"
+      + "\"users\":[\"john\",\"mary\",\"james\"],\"actions\":[{\"type\":1,\"userid\":\"mary\"}]}";
+
+  /** The forcesave status with user data. */
+  private static final String SAVE_STATUS    = "{\"key\":\"" + KEY + "\",\"status\":6,"
+      + "\"url\":\"https://documents.acme.com/cache/files/" + KEY + "/output.docx\",\"changesurl\":"
+      + "\"https://documents.acme.com/cache/files/" + KEY + "/changes.zip\",\"users\":[\"john\"],"
+      + "\"userdata\":\"{\\\"userId\\\":\\\"john\\\",\\\"download\\\":false,\\\"coedited\\\":true,"
+      + "\\\"forcesaved\\\":true,\\\"comment\\\":\\\"Updated the roadmap\\\"}\",\"forcesavetype\":1}";
+
+  /**
+   * Parse a status of users editing a document.
+   *
+   * @return the document status
+   * @throws Exception the exception
+   */
+  @Benchmark
+  public DocumentStatus parseEditing() throws Exception {
+    return StatusParser.parse(EDITING_STATUS, KEY, "john").build();
+  }
+
+  /**
+   * Parse a forcesave status with user data.
+   *
+   * @return the document status
+   * @throws Exception the exception
+   */
+  @Benchmark
+  public DocumentStatus parseSave() throws Exception {
+    return StatusParser.parse(SAVE_STATUS, KEY, "john").build();
+  }
+}
@@ -0,0 +1,172 @@
+/*
+ * Copyright (C) 2003-2020 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.exoplatform.onlyoffice;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.Jws;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.security.Keys;
+
+/**
+ * Signing and validation of Document Server tokens: as it was done on each
+ * request (a key derived and a parser built per call) and with
+ * {@link TokenService} (with and without the validated tokens cache).<br>
+ * Created by The eXo Platform SAS.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(4)
+public class TokenBenchmark {
+
+  /** The document key. */
+  private static final String KEY = "e0b8f1c2-4c9a-4f0e-9d43-5b7a2f1c8d11";
+
+  /** The tokens with the cache. */
+  private TokenService        cached;
+
+  /** The tokens without the cache. */
+  private TokenService        uncached;
+
+  /** The claims of a forcesave command. */
+  private Map<String, Object> commandClaims;
+
+  /** The token of a status callback. */
+  private String              callbackToken;
+
+  /** The config of first user. */
+  private Config              config;
+
+  /**
+   * Setup.
+   */
+  @Setup
+  public void setup() {
+    cached = new TokenService(ConfigFixtures.SECRET, 1000, 300000);
+    uncached = new TokenService(ConfigFixtures.SECRET, 0, 0);
+    commandClaims = new HashMap<>();
+    commandClaims.put("c", "forcesave");
+    commandClaims.put("key", KEY);
+    commandClaims.put("userdata", "{\"userId\":\"john\",\"download\":false,\"coedited\":true,\"forcesaved\":true}");
+    Map<String, Object> payload = new HashMap<>();
+    payload.put("key", KEY);
+    payload.put("status", 6);
+    payload.put("url", "https://documents.acme.com/cache/files/" + KEY + "/output.docx");
+    Map<String, Object> claims = new HashMap<>();
+    claims.put("payload", payload);
+    callbackToken = cached.createToken(claims);
+    config = ConfigFixtures.config(ConfigFixtures.SECRET);
+  }
+
+  /**
+   * Sign a command as before: derive the key for each token.
+   *
+   * @return the token
+   */
+  @Benchmark
+  public String signLegacy() {
+    return Jwts.builder()
+               .setSubject(TokenService.SUBJECT)
+               .addClaims(commandClaims)
+               .signWith(Keys.hmacShaKeyFor(ConfigFixtures.SECRET.getBytes()))
+               .compact();
+  }
+
+  /**
+   * Sign a command with the key derived once.
+   *
+   * @return the token
+   */
+  @Benchmark
+  public String sign() {
+    return cached.createToken(commandClaims);
+  }
+
+  /**
+   * Validate a callback token as before: a new parser and key for each token.
+   *
+   * @return true, if valid
+   */
+  @Benchmark
+  public boolean validateLegacy() {
+    Jws<Claims> jws = Jwts.parser().setSigningKey(Keys.hmacShaKeyFor(ConfigFixtures.SECRET.getBytes())).parseClaimsJws(callbackToken);
+    @SuppressWarnings("unchecked")
+    Map<String, Object> claims = (Map<String, Object>) jws.getBody().get("payload");
+    return KEY.equals(claims.get("key"));
+  }
+
+  /**
+   * Validate a callback token with the shared parser.
+   *
+   * @return true, if valid
+   */
+  @Benchmark
+  public boolean validate() {
+    return uncached.validate(callbackToken, KEY);
+  }
+
+  /**
+   * Validate a repeated callback token found in the cache.
+   *
+   * @return true, if valid
+   */
+  @Benchmark
+  public boolean validateCached() {
+    return cached.validate(callbackToken, KEY);
+  }
+
+  /**
+   * Create a config for another co-editor (it signs the config token).
+   *
+   * @return the config
+   */
+  @Benchmark
+  public Config forUser() {
+    return config.forUser("mary", "Mary Williams", "en", cached.getKey());
+  }
+
+  /**
+   * Create a config for another co-editor deriving the key from the secret.
+   *
+   * @return the config
+   */
+  @Benchmark
+  public Config forUserLegacy() {
+    return config.forUser("mary", "Mary Williams", "en", ConfigFixtures.SECRET);
+  }
+}
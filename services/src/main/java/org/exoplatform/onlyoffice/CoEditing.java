@@ -0,0 +1,123 @@
+/*
+ * Copyright (C) 2003-2020 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.exoplatform.onlyoffice;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Operations on configs of users co-editing a document: their editors state
+ * and the document key. They don't depend on the editor service state and can
+ * be measured apart (see the benchmarks module).<br>
+ * Created by The eXo Platform SAS.
+ */
+public final class CoEditing {
+
+  /** The Constant RANDOM. */
+  private static final Random RANDOM = new Random();
+
+  /**
+   * Instantiates a new co-editing (not used).
+   */
+  private CoEditing() {
+  }
+
+  /**
+   * Generate a unique ID of a document editing session.
+   *
+   * @param workspace the workspace
+   * @param path the path
+   * @return the uuid
+   */
+  public static UUID generateId(String workspace, String path) {
+    StringBuilder s = new StringBuilder();
+    s.append(workspace);
+    s.append(path);
+    s.append(System.currentTimeMillis());
+    s.append(String.valueOf(RANDOM.nextLong()));
+
+    return UUID.nameUUIDFromBytes(s.toString().getBytes());
+  }
+
+  /**
+   * Sync editors state with the users currently editing the document (as
+   * reported by Document Server): editors of these users become open, editors
+   * of others closed. Changed configs added to given collections in order of
+   * the configs, the same collection can be given for both to keep the order
+   * of opened and closed editors.
+   *
+   * @param configs the users configs
+   * @param users the users editing the document
+   * @param opened the configs (re)opened by this sync
+   * @param closed the configs closed by this sync
+   */
+  public static void syncUsers(Map<String, Config> configs,
+                               String[] users,
+                               Collection<Config> opened,
+                               Collection<Config> closed) {
+    Set<String> editors = new HashSet<String>(Arrays.asList(users));
+    for (Map.Entry<String, Config> ce : configs.entrySet()) {
+      Config config = ce.getValue();
+      if (editors.contains(ce.getKey())) {
+        if (config.isCreated() || config.isClosed()) {
+          // editor was (re)opened by user
+          config.open();
+          opened.add(config);
+        }
+      } else {
+        // editor was closed by user: it will be closing if closed via WebUI of
+        // ECMS explorer, open in general case
+        if (config.isClosing() || config.isOpen()) {
+          // closed because user sync happens when someone else still editing or
+          // nothing edited
+          config.closed();
+          closed.add(config);
+        }
+      }
+    }
+  }
+
+  /**
+   * Gets users with open editors.
+   *
+   * @param configs the users configs
+   * @return the active users
+   */
+  public static String[] activeUsers(Map<String, Config> configs) {
+    // copy key set to avoid confuses w/ concurrency
+    Set<String> userIds = new LinkedHashSet<String>(configs.keySet());
+    // remove not existing locally (just removed), not yet open (created) or
+    // already closed
+    for (Iterator<String> uiter = userIds.iterator(); uiter.hasNext();) {
+      String userId = uiter.next();
+      Config config = configs.get(userId);
+      if (config == null || config.isCreated() || config.isClosed()) {
+        uiter.remove();
+      }
+    }
+    return userIds.toArray(new String[userIds.size()]);
+  }
+}
@@ -0,0 +1,256 @@
+/*
+ * Copyright (C) 2003-2020 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.exoplatform.onlyoffice;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compact binary format used for serialization of editor configs in eXo cache
+ * (actual in cluster). Numbers written as variable-length integers, strings
+ * written once per stream and then referenced by their index.<br>
+ * A stream in this format starts with {@link #MARKER} and a version byte. A
+ * {@link Config} in the legacy format starts with its workspace name written by
+ * {@link DataOutput#writeUTF(String)}, i.e. with the name length. The marker is
+ * a valid length for <code>writeUTF</code> (up to 65535 bytes), the formats
+ * differ only because no real workspace name is 65535 bytes long.<br>
+ * Created by The eXo Platform SAS.
+ */
+public final class CompactFormat {
+
+  /** The stream marker. */
+  public static final int     MARKER          = 0xFFFF;
+
+  /** The current format version. */
+  public static final int     VERSION         = 1;
+
+  /**
+   * Name of system property to write configs in legacy format (it's required
+   * for a cluster with nodes of older versions).
+   */
+  public static final String  LEGACY_PROPERTY = "onlyoffice.config.legacyFormat";
+
+  /** Use legacy format for writing. */
+  private static final boolean LEGACY         = Boolean.getBoolean(LEGACY_PROPERTY);
+
+  /**
+   * Writer of the compact format.
+   */
+  public static class Writer {
+
+    /** The out. */
+    private final DataOutput           out;
+
+    /** The strings already written to the stream. */
+    private final Map<String, Integer> strings = new HashMap<>();
+
+    /**
+     * Instantiates a new writer.
+     *
+     * @param out the out
+     */
+    public Writer(DataOutput out) {
+      this.out = out;
+    }
+
+    /**
+     * Write the stream header.
+     *
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    public void writeHeader() throws IOException {
+      out.writeShort(MARKER);
+      out.writeByte(VERSION);
+    }
+
+    /**
+     * Write an unsigned variable-length integer.
+     *
+     * @param value the value, should not be negative
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    public void writeVarLong(long value) throws IOException {
+      while ((value & ~0x7FL) != 0) {
+        out.writeByte((int) ((value & 0x7F) | 0x80));
+        value >>>= 7;
+      }
+      out.writeByte((int) value);
+    }
+
+    /**
+     * Write a string, can be <code>null</code>. A string already written to
+     * this stream will be written as a reference.
+     *
+     * @param value the value
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    public void writeString(String value) throws IOException {
+      if (value == null) {
+        writeVarLong(0);
+      } else {
+        Integer index = strings.get(value);
+        if (index != null) {
+          writeVarLong(((long) index << 1) | 1);
+        } else {
+          byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+          writeVarLong(((long) bytes.length + 1) << 1);
+          out.write(bytes);
+          strings.put(value, strings.size());
+        }
+      }
+    }
+
+    /**
+     * Write a byte.
+     *
+     * @param value the value
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    public void writeByte(int value) throws IOException {
+      out.writeByte(value);
+    }
+  }
+
+  /**
+   * Reader of the compact format.
+   */
+  public static class Reader {
+
+    /** The in. */
+    private final DataInput    in;
+
+    /** The strings already read from the stream. */
+    private final List<String> strings = new ArrayList<>();
+
+    /**
+     * Instantiates a new reader.
+     *
+     * @param in the in
+     */
+    public Reader(DataInput in) {
+      this.in = in;
+    }
+
+    /**
+     * Read the stream header.
+     *
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    public void readHeader() throws IOException {
+      int marker = in.readUnsignedShort();
+      if (marker != MARKER) {
+        throw new StreamCorruptedException("Not a compact format stream");
+      }
+      readVersion();
+    }
+
+    /**
+     * Read the stream version (it follows the marker).
+     *
+     * @return the version
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    public int readVersion() throws IOException {
+      int version = in.readUnsignedByte();
+      if (version > VERSION) {
+        throw new StreamCorruptedException("Unsupported compact format version: " + version);
+      }
+      return version;
+    }
+
+    /**
+     * Read an unsigned variable-length integer.
+     *
+     * @return the long
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    public long readVarLong() throws IOException {
+      long value = 0;
+      int shift = 0;
+      int b;
+      do {
+        if (shift > 63) {
+          throw new StreamCorruptedException("Malformed variable-length integer");
+        }
+        b = in.readUnsignedByte();
+        value |= (long) (b & 0x7F) << shift;
+        shift += 7;
+      } while ((b & 0x80) != 0);
+      return value;
+    }
+
+    /**
+     * Read a string, can be <code>null</code>.
+     *
+     * @return the string
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    public String readString() throws IOException {
+      long tag = readVarLong();
+      if (tag == 0) {
+        return null;
+      }
+      if ((tag & 1) != 0) {
+        long index = tag >>> 1;
+        if (index >= strings.size()) {
+          throw new StreamCorruptedException("Unknown string reference: " + index);
+        }
+        return strings.get((int) index);
+      }
+      int length = (int) ((tag >>> 1) - 1);
+      byte[] bytes = new byte[length];
+      in.readFully(bytes);
+      String value = new String(bytes, StandardCharsets.UTF_8);
+      strings.add(value);
+      return value;
+    }
+
+    /**
+     * Read a byte.
+     *
+     * @return the byte
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    public int readByte() throws IOException {
+      return in.readUnsignedByte();
+    }
+  }
+
+  /**
+   * Checks if the legacy format should be used for writing.
+   *
+   * @return true, if legacy format enabled
+   */
+  public static boolean isLegacy() {
+    return LEGACY;
+  }
+
+  /**
+   * Instantiates a new compact format (not used).
+   */
+  private CompactFormat() {
+  }
+}
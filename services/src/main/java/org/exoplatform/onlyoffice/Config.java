@@ -18,22 +18,25 @@
  */
 package org.exoplatform.onlyoffice;
 
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
 import java.io.Externalizable;
 import java.io.IOException;
 import java.io.ObjectInput;
 import java.io.ObjectOutput;
 import java.net.URI;
+import java.net.URISyntaxException;
+import java.security.Key;
 import java.text.SimpleDateFormat;
 import java.util.Calendar;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 import org.exoplatform.services.log.ExoLogger;
 import org.exoplatform.services.log.Log;
 import org.exoplatform.ws.frameworks.json.impl.JsonException;
 import org.exoplatform.ws.frameworks.json.impl.JsonGeneratorImpl;
 
-import io.jsonwebtoken.Jwts;
-import io.jsonwebtoken.security.Keys;
-
 /**
  * Onlyoffice editor config for its JS API. <br>
  * This class implements {@link Externalizable} for serialization in eXo cache
@@ -56,6 +59,27 @@ public class Config implements Externalizable {
   /** The Constant EMPTY. */
   protected static final String           EMPTY           = "".intern();
 
+  /** Compact format flag: JS API URL generated from Document Server URL. */
+  protected static final int              COMPACT_JS_URL         = 1;
+
+  /** Compact format flag: document URL generated from platform REST URL. */
+  protected static final int              COMPACT_FILE_URL       = 1 << 1;
+
+  /** Compact format flag: callback URL generated from platform REST URL. */
+  protected static final int              COMPACT_CALLBACK_URL   = 1 << 2;
+
+  /** Compact format flag: document has an activity. */
+  protected static final int              COMPACT_ACTIVITY       = 1 << 3;
+
+  /** Compact format flag: document rename allowed. */
+  protected static final int              COMPACT_RENAME_ALLOWED = 1 << 4;
+
+  /** Compact format flag: editor open. */
+  protected static final int              COMPACT_OPEN           = 1 << 5;
+
+  /** Compact format flag: editor closed. */
+  protected static final int              COMPACT_CLOSED         = 1 << 6;
+
   /**
    * The Class Builder.
    */
@@ -88,6 +112,9 @@ public class Config implements Externalizable {
     /** The document server secret key. **/
     protected String       documentserverSecret;
 
+    /** The signing key of the document server secret. **/
+    protected Key          signingKey;
+
     /** The last modifier. **/
     protected String       lastModifier;
 
@@ -363,6 +390,18 @@ public class Config implements Externalizable {
       return this;
     }
 
+    /**
+     * Signing key of the document server secret. If set, it will be used
+     * instead of deriving a key from the {@link #secret(String)}.
+     *
+     * @param signingKey the signing key
+     * @return the builder
+     */
+    public Builder signingKey(Key signingKey) {
+      this.signingKey = signingKey;
+      return this;
+    }
+
     /**
      * Sets last modifier.
      *
@@ -422,15 +461,9 @@ public class Config implements Externalizable {
                                  docId,
                                  document,
                                  editor);
-      if (documentserverSecret != null && !documentserverSecret.trim().isEmpty()) {
-        String jwtToken = Jwts.builder()
-                              .setSubject("exo-onlyoffice")
-                              .claim("document", document)
-                              .claim("editorConfig", editor)
-                              .claim("documentType", documentType)
-                              .signWith(Keys.hmacShaKeyFor(documentserverSecret.getBytes()))
-                              .compact();
-        config.setToken(jwtToken);
+      Key key = signingKey != null ? signingKey : TokenService.signingKey(documentserverSecret);
+      if (key != null) {
+        config.setToken(token(key, document, editor, documentType));
       }
 
       return config;
@@ -794,6 +827,20 @@ public class Config implements Externalizable {
       public void setLastSaved(long lastSaved) {
         this.lastSaved = lastSaved;
       }
+
+      /**
+       * Create a copy of this user state.
+       *
+       * @return the user copy
+       */
+      protected User copy() {
+        User copy = new User(id, name);
+        copy.lastModified = lastModified;
+        copy.lastSaved = lastSaved;
+        copy.linkSaved = linkSaved;
+        copy.downloadLink = downloadLink;
+        return copy;
+      }
     }
 
     /** The callback url. */
@@ -887,6 +934,15 @@ public class Config implements Externalizable {
       // otherUser.setLockToken(user.getLockToken());
       return new Editor(callbackUrl, lang, mode, otherUser);
     }
+
+    /**
+     * Create a copy of this editor with a copy of its user.
+     *
+     * @return the editor copy
+     */
+    protected Editor copy() {
+      return new Editor(callbackUrl, lang, mode, user.copy());
+    }
   }
 
   /**
@@ -915,6 +971,16 @@ public class Config implements Externalizable {
     return new StringBuilder(baseUrl).append("/onlyoffice/editor/content/").append(userId).append("/").append(key).toString();
   }
 
+  /**
+   * Document Server JS API url.
+   *
+   * @param documentserverUrl the documentserver url
+   * @return the string
+   */
+  protected static String jsUrl(String documentserverUrl) {
+    return new StringBuilder(documentserverUrl).append("apps/api/documents/api.js").toString();
+  }
+
   /**
    * Callback url.
    *
@@ -1036,7 +1102,7 @@ public class Config implements Externalizable {
     this.docId = docId;
     this.documentType = documentType;
     this.documentserverUrl = documentserverUrl;
-    this.documentserverJsUrl = new StringBuilder(documentserverUrl).append("apps/api/documents/api.js").toString();
+    this.documentserverJsUrl = jsUrl(documentserverUrl);
     this.platformRestUrl = platformRestUrl;
     this.editorUrl = editorUrl;
     this.explorerUri = explorerUri;
@@ -1049,6 +1115,202 @@ public class Config implements Externalizable {
    */
   @Override
   public void writeExternal(ObjectOutput out) throws IOException {
+    if (CompactFormat.isLegacy()) {
+      writeLegacy(out);
+    } else {
+      CompactFormat.Writer writer = new CompactFormat.Writer(out);
+      writer.writeHeader();
+      writeCompact(writer);
+    }
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void readExternal(ObjectInput in) throws IOException, ClassNotFoundException {
+    int head = in.readUnsignedShort();
+    if (head == CompactFormat.MARKER) {
+      CompactFormat.Reader reader = new CompactFormat.Reader(in);
+      reader.readVersion();
+      readCompact(reader);
+    } else {
+      // it's a length of the workspace name written in legacy format
+      byte[] utf = new byte[head + 2];
+      utf[0] = (byte) (head >>> 8);
+      utf[1] = (byte) head;
+      in.readFully(utf, 2, head);
+      readLegacy(in, new DataInputStream(new ByteArrayInputStream(utf)).readUTF());
+    }
+  }
+
+  /**
+   * Write this config in the compact format. Strings already written by given
+   * writer (e.g. by other configs of the same document) will be referenced,
+   * values that can be generated from others will be skipped.
+   *
+   * @param out the compact format writer
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  protected void writeCompact(CompactFormat.Writer out) throws IOException {
+    Editor.User user = editorConfig.getUser();
+    String key = document.getKey();
+    boolean jsUrlGenerated = documentserverJsUrl != null && documentserverJsUrl.equals(jsUrl(documentserverUrl));
+    boolean fileUrlGenerated = platformRestUrl != null && user.getId() != null
+        && fileUrl(platformRestUrl, user.getId(), key).equals(document.getUrl());
+    boolean callbackUrlGenerated = platformRestUrl != null && user.getId() != null
+        && callbackUrl(platformRestUrl, user.getId(), key).equals(editorConfig.getCallbackUrl());
+    int flags = 0;
+    if (jsUrlGenerated) {
+      flags |= COMPACT_JS_URL;
+    }
+    if (fileUrlGenerated) {
+      flags |= COMPACT_FILE_URL;
+    }
+    if (callbackUrlGenerated) {
+      flags |= COMPACT_CALLBACK_URL;
+    }
+    if (isActivity != null && isActivity.booleanValue()) {
+      flags |= COMPACT_ACTIVITY;
+    }
+    if (editorPage.renameAllowed != null && editorPage.renameAllowed.booleanValue()) {
+      flags |= COMPACT_RENAME_ALLOWED;
+    }
+    if (open != null) {
+      flags |= open.booleanValue() ? COMPACT_OPEN : COMPACT_CLOSED;
+    }
+    out.writeVarLong(flags);
+
+    out.writeString(workspace);
+    out.writeString(path);
+    out.writeString(docId);
+    out.writeString(documentType);
+    out.writeString(documentserverUrl);
+    if (!jsUrlGenerated) {
+      out.writeString(documentserverJsUrl);
+    }
+    out.writeString(platformRestUrl);
+    out.writeString(editorUrl);
+    out.writeString(explorerUri != null ? explorerUri.toString() : null);
+    out.writeString(token);
+    out.writeString(error);
+
+    // EditorPage: displayPath, comment, lastModifier, lastModified.
+    out.writeString(editorPage.displayPath);
+    out.writeString(editorPage.comment);
+    out.writeString(editorPage.lastModifier);
+    out.writeString(editorPage.lastModified);
+
+    // Document: key, fileType, title, url, info(owner, uploaded, folder)
+    out.writeString(key);
+    out.writeString(document.getFileType());
+    out.writeString(document.getTitle());
+    if (!fileUrlGenerated) {
+      out.writeString(document.getUrl());
+    }
+    out.writeString(document.getInfo().getOwner());
+    out.writeString(document.getInfo().getUploaded());
+    out.writeString(document.getInfo().getFolder());
+
+    // Editor: callbackUrl, lang, mode, user(userId, name, timestamps, link)
+    if (!callbackUrlGenerated) {
+      out.writeString(editorConfig.getCallbackUrl());
+    }
+    out.writeString(editorConfig.getLang());
+    out.writeString(editorConfig.getMode());
+    out.writeString(user.getId());
+    out.writeString(user.getName());
+    out.writeVarLong(user.getLastModified());
+    out.writeVarLong(user.getLastSaved());
+    out.writeVarLong(user.getLinkSaved());
+    out.writeString(user.getDownloadLink());
+  }
+
+  /**
+   * Read this config in the compact format.
+   *
+   * @param in the compact format reader
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  protected void readCompact(CompactFormat.Reader in) throws IOException {
+    int flags = (int) in.readVarLong();
+
+    this.workspace = in.readString();
+    this.path = in.readString();
+    this.docId = in.readString();
+    this.documentType = in.readString();
+    this.documentserverUrl = in.readString();
+    this.documentserverJsUrl = (flags & COMPACT_JS_URL) != 0 ? jsUrl(documentserverUrl) : in.readString();
+    this.platformRestUrl = in.readString();
+    this.editorUrl = in.readString();
+    String explorerLink = in.readString();
+    try {
+      this.explorerUri = explorerLink != null ? new URI(explorerLink) : null;
+    } catch (URISyntaxException e) {
+      LOG.warn("Error deserializing explorer URI for " + path, e);
+      this.explorerUri = null;
+    }
+    this.token = in.readString();
+    this.error = in.readString();
+    this.isActivity = Boolean.valueOf((flags & COMPACT_ACTIVITY) != 0);
+    // Note: closing state isn't replicable, see readLegacy()
+    if ((flags & COMPACT_OPEN) != 0) {
+      this.open = Boolean.TRUE;
+      this.closing = Boolean.FALSE;
+    } else if ((flags & COMPACT_CLOSED) != 0) {
+      this.open = Boolean.FALSE;
+      this.closing = Boolean.FALSE;
+    } else {
+      this.open = this.closing = null;
+    }
+
+    // EditorPage: displayPath, comment, lastModifier, lastModified.
+    String edisplayPath = in.readString();
+    String ecomment = in.readString();
+    String emodifier = in.readString();
+    String emodified = in.readString();
+    this.editorPage = new EditorPage(ecomment, (flags & COMPACT_RENAME_ALLOWED) != 0, edisplayPath, emodifier, emodified);
+
+    // Document: key, fileType, title, url, info(owner, uploaded, folder)
+    String dkey = in.readString();
+    String dfileType = in.readString();
+    String dtitle = in.readString();
+    String durl = (flags & COMPACT_FILE_URL) != 0 ? null : in.readString();
+    String diauthor = in.readString();
+    String dicreated = in.readString();
+    String difolder = in.readString();
+
+    // Editor: callbackUrl, lang, mode, user(userId, name, timestamps, link)
+    String ecallbackUrl = (flags & COMPACT_CALLBACK_URL) != 0 ? null : in.readString();
+    String elang = in.readString();
+    String emode = in.readString();
+    String euid = in.readString();
+    String euname = in.readString();
+    Editor.User euser = new Editor.User(euid, euname);
+    euser.setLastModified(in.readVarLong());
+    euser.setLastSaved(in.readVarLong());
+    euser.setLinkSaved(in.readVarLong());
+    euser.setDownloadLink(in.readString());
+
+    if (durl == null) {
+      durl = fileUrl(platformRestUrl, euid, dkey);
+    }
+    if (ecallbackUrl == null) {
+      ecallbackUrl = callbackUrl(platformRestUrl, euid, dkey);
+    }
+    Document.Info dinfo = new Document.Info(diauthor, dicreated, difolder);
+    this.document = new Document(dkey, dfileType, dtitle, durl, dinfo, new Document.EditPermissions());
+    this.editorConfig = new Editor(ecallbackUrl, elang, emode, euser);
+  }
+
+  /**
+   * Write this config in the legacy format (used by versions before the
+   * compact format introduction).
+   *
+   * @param out the out
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  protected void writeLegacy(ObjectOutput out) throws IOException {
     // Strings
     out.writeUTF(workspace);
     out.writeUTF(path);
@@ -1097,12 +1359,16 @@ public class Config implements Externalizable {
   }
 
   /**
-   * {@inheritDoc}
+   * Read this config in the legacy format.
+   *
+   * @param in the in
+   * @param workspace the workspace (already read from the stream)
+   * @throws IOException Signals that an I/O exception has occurred.
+   * @throws ClassNotFoundException the class not found exception
    */
-  @Override
-  public void readExternal(ObjectInput in) throws IOException, ClassNotFoundException {
+  protected void readLegacy(ObjectInput in, String workspace) throws IOException, ClassNotFoundException {
     // Strings
-    this.workspace = in.readUTF();
+    this.workspace = workspace;
     this.path = in.readUTF();
     this.documentType = in.readUTF();
     this.documentserverUrl = in.readUTF();
@@ -1379,6 +1645,21 @@ public class Config implements Externalizable {
    *         another user in the editor
    */
   public Config forUser(String id, String name, String lang, String documentserverSecret) {
+    return forUser(id, name, lang, TokenService.signingKey(documentserverSecret));
+  }
+
+  /**
+   * Create a copy of this editor but for another given user.
+   *
+   * @param id {@link String}
+   * @param name {@link String}
+   * @param lang {@link String}
+   * @param signingKey the signing key of document server secret, can be
+   *          <code>null</code>
+   * @return {@link Config} an instance of config similar to this but with
+   *         another user in the editor
+   */
+  public Config forUser(String id, String name, String lang, Key signingKey) {
     Document userDocument = document.forUser(id, name, fileUrl(platformRestUrl, id, document.getKey()));
     Editor userEditor = editorConfig.forUser(id, name, lang, callbackUrl(platformRestUrl, id, document.getKey()));
     Config config = new Config(documentserverUrl,
@@ -1393,20 +1674,65 @@ public class Config implements Externalizable {
                                docId,
                                userDocument,
                                userEditor);
-    if (documentserverSecret != null && !documentserverSecret.trim().isEmpty()) {
-      String jwtToken = Jwts.builder()
-                            .setSubject("exo-onlyoffice")
-                            .claim("document", userDocument)
-                            .claim("editorConfig", userEditor)
-                            .claim("documentType", documentType)
-                            .signWith(Keys.hmacShaKeyFor(documentserverSecret.getBytes()))
-                            .compact();
-      config.setToken(jwtToken);
+    if (signingKey != null) {
+      config.setToken(token(signingKey, userDocument, userEditor, documentType));
     }
 
     return config;
   }
 
+  /**
+   * Create a snapshot of this config: a copy of its current state not affected
+   * by later changes of this config, to pass to another thread. The same
+   * modifier and previous modified values of current thread are kept for any
+   * thread.
+   *
+   * @return the config snapshot
+   */
+  public Config snapshot() {
+    Config config = new Config(documentserverUrl,
+                               platformRestUrl,
+                               editorUrl,
+                               explorerUri,
+                               documentType,
+                               workspace,
+                               path,
+                               editorPage.copy(),
+                               isActivity,
+                               docId,
+                               document,
+                               editorConfig.copy());
+    config.documentserverJsUrl = documentserverJsUrl;
+    config.token = token;
+    config.error = error;
+    config.open = open;
+    config.closing = closing;
+    config.openedTime = openedTime;
+    config.closedTime = closedTime;
+    Boolean sameModifier = this.sameModifier.get();
+    Calendar previousModified = this.previousModified.get();
+    config.sameModifier = ThreadLocal.withInitial(() -> sameModifier);
+    config.previousModified = ThreadLocal.withInitial(() -> previousModified);
+    return config;
+  }
+
+  /**
+   * Create a token of editor config.
+   *
+   * @param key the signing key
+   * @param document the document
+   * @param editor the editor
+   * @param documentType the document type
+   * @return the token
+   */
+  protected static String token(Key key, Document document, Editor editor, String documentType) {
+    Map<String, Object> claims = new LinkedHashMap<>();
+    claims.put("document", document);
+    claims.put("editorConfig", editor);
+    claims.put("documentType", documentType);
+    return TokenService.createToken(key, claims);
+  }
+
   /**
    * Checks if is created.
    *
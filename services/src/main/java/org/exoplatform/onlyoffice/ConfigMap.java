@@ -0,0 +1,79 @@
+/*
+ * Copyright (C) 2003-2020 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.exoplatform.onlyoffice;
+
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Configs of users editing the same document, mapped by user ID. This map is
+ * serialized in {@link CompactFormat} with one strings table for all its
+ * configs: URLs and other document values shared by the users will be written
+ * once.<br>
+ * Created by The eXo Platform SAS.
+ */
+public class ConfigMap extends ConcurrentHashMap<String, Config> implements Externalizable {
+
+  /** The Constant serialVersionUID. */
+  private static final long serialVersionUID = -2279414307163431846L;
+
+  /**
+   * Instantiates a new config map.
+   */
+  public ConfigMap() {
+    super();
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void writeExternal(ObjectOutput out) throws IOException {
+    CompactFormat.Writer writer = new CompactFormat.Writer(out);
+    writer.writeHeader();
+    // take a snapshot of entries, the map can be changed concurrently
+    @SuppressWarnings("unchecked")
+    Map.Entry<String, Config>[] entries = entrySet().toArray(new Map.Entry[0]);
+    writer.writeVarLong(entries.length);
+    for (Map.Entry<String, Config> e : entries) {
+      writer.writeString(e.getKey());
+      e.getValue().writeCompact(writer);
+    }
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void readExternal(ObjectInput in) throws IOException, ClassNotFoundException {
+    CompactFormat.Reader reader = new CompactFormat.Reader(in);
+    reader.readHeader();
+    long size = reader.readVarLong();
+    for (long i = 0; i < size; i++) {
+      String userId = reader.readString();
+      Config config = new Config();
+      config.readCompact(reader);
+      put(userId, config);
+    }
+  }
+}
@@ -19,6 +19,12 @@
  */
 package org.exoplatform.onlyoffice;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+
 import org.exoplatform.ws.frameworks.json.impl.JsonException;
 import org.exoplatform.ws.frameworks.json.impl.JsonGeneratorImpl;
 
@@ -338,6 +344,79 @@ public class DocumentStatus {
     return comment;
   }
 
+  /**
+   * Create a snapshot of this status with a snapshot of its config: a copy not
+   * affected by later changes of the status and config, to pass to another
+   * thread.
+   *
+   * @return the status snapshot
+   */
+  public DocumentStatus snapshot() {
+    DocumentStatus snapshot = new DocumentStatus();
+    snapshot.key = key;
+    snapshot.status = status;
+    snapshot.url = url;
+    snapshot.users = users != null ? users.clone() : null;
+    snapshot.config = config != null ? config.snapshot() : null;
+    snapshot.error = error;
+    snapshot.coEdited = coEdited;
+    snapshot.forceSaved = forceSaved;
+    snapshot.saved = saved;
+    snapshot.userId = userId;
+    snapshot.comment = comment;
+    return snapshot;
+  }
+
+  /**
+   * Serialize this status with its config, to store it out of the memory.
+   *
+   * @return the bytes
+   * @throws IOException if the status cannot be written
+   */
+  protected byte[] toBytes() throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+      out.writeObject(key);
+      out.writeObject(status);
+      out.writeObject(url);
+      out.writeObject(users);
+      out.writeObject(config);
+      out.writeLong(error);
+      out.writeObject(coEdited);
+      out.writeObject(forceSaved);
+      out.writeObject(saved);
+      out.writeObject(userId);
+      out.writeObject(comment);
+    }
+    return bytes.toByteArray();
+  }
+
+  /**
+   * Read a status serialized by {@link #toBytes()}.
+   *
+   * @param data the bytes
+   * @return the document status
+   * @throws IOException if the status cannot be read
+   * @throws ClassNotFoundException if the status has unknown classes
+   */
+  protected static DocumentStatus fromBytes(byte[] data) throws IOException, ClassNotFoundException {
+    DocumentStatus status = new DocumentStatus();
+    try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(data))) {
+      status.key = (String) in.readObject();
+      status.status = (Long) in.readObject();
+      status.url = (String) in.readObject();
+      status.users = (String[]) in.readObject();
+      status.config = (Config) in.readObject();
+      status.error = in.readLong();
+      status.coEdited = (Boolean) in.readObject();
+      status.forceSaved = (Boolean) in.readObject();
+      status.saved = (Boolean) in.readObject();
+      status.userId = (String) in.readObject();
+      status.comment = (String) in.readObject();
+    }
+    return status;
+  }
+
   /**
    * Return this config as JSON string.
    *
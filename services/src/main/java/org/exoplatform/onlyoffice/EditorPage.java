@@ -20,6 +20,21 @@ public class EditorPage {
   /** The last modified. */
   protected String lastModified;
 
+  /**
+   * The node modification date the last modifier and date were read for, not
+   * replicated: -1 until the page is refreshed on this node.
+   */
+  protected volatile long   modifiedStamp = -1;
+
+  /** The comment id the comment was read for, not replicated. */
+  protected volatile String commentStamp;
+
+  /**
+   * The user, node path and parent permissions the display path and rename
+   * flag were computed for, not replicated.
+   */
+  protected volatile String accessStamp;
+
   /**
    * Instantiates a new editor page.
    *
@@ -133,5 +148,75 @@ public class EditorPage {
   public void setLastModified(String lastModified) {
     this.lastModified = lastModified;
   }
- 
+
+  /**
+   * Check if the last modifier and date were read for given node modification
+   * date.
+   *
+   * @param stamp the node modification date in milliseconds
+   * @return true, if matches
+   */
+  public boolean matchesModified(long stamp) {
+    return modifiedStamp == stamp;
+  }
+
+  /**
+   * Sets the node modification date the last modifier and date were read for.
+   *
+   * @param stamp the node modification date in milliseconds
+   */
+  public void setModifiedStamp(long stamp) {
+    this.modifiedStamp = stamp;
+  }
+
+  /**
+   * Check if the comment was read for given comment id.
+   *
+   * @param stamp the comment id
+   * @return true, if matches
+   */
+  public boolean matchesComment(String stamp) {
+    String current = commentStamp;
+    return current != null && current.equals(stamp);
+  }
+
+  /**
+   * Sets the comment id the comment was read for.
+   *
+   * @param stamp the comment id, <code>null</code> to read the comment again
+   */
+  public void setCommentStamp(String stamp) {
+    this.commentStamp = stamp;
+  }
+
+  /**
+   * Check if the display path and rename flag were computed for given access
+   * stamp.
+   *
+   * @param stamp the access stamp
+   * @return true, if matches
+   */
+  public boolean matchesAccess(String stamp) {
+    String current = accessStamp;
+    return current != null && current.equals(stamp);
+  }
+
+  /**
+   * Sets the access stamp the display path and rename flag were computed for.
+   *
+   * @param stamp the access stamp
+   */
+  public void setAccessStamp(String stamp) {
+    this.accessStamp = stamp;
+  }
+
+  /**
+   * Create a copy of this page fields, the stamps not copied.
+   *
+   * @return the editor page copy
+   */
+  public EditorPage copy() {
+    return new EditorPage(comment, renameAllowed, displayPath, lastModifier, lastModified);
+  }
+
 }
@@ -0,0 +1,153 @@
+/*
+ * Copyright (C) 2003-2020 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.exoplatform.onlyoffice;
+
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+
+import org.exoplatform.onlyoffice.Config.Editor;
+
+/**
+ * Frequently changing state of an user in a document editor: modification
+ * and saving timestamps and a download link. It's replicated separately from
+ * the editor {@link Config} to keep cluster updates small.<br>
+ * Created by The eXo Platform SAS.
+ */
+public class EditorUserState implements Externalizable {
+
+  /** The Constant EMPTY. */
+  protected static final String EMPTY = "";
+
+  /** The last modified timestamp. */
+  protected long                lastModified;
+
+  /** The last saved timestamp. */
+  protected long                lastSaved;
+
+  /** The last link saved timestamp. */
+  protected long                linkSaved;
+
+  /** The download link. */
+  protected String              downloadLink;
+
+  /**
+   * Instantiates a new editor user state (for deserialization).
+   */
+  public EditorUserState() {
+  }
+
+  /**
+   * Instantiates a new editor user state from given editor user.
+   *
+   * @param user the user
+   */
+  public EditorUserState(Editor.User user) {
+    this.lastModified = user.getLastModified();
+    this.lastSaved = user.getLastSaved();
+    this.linkSaved = user.getLinkSaved();
+    this.downloadLink = user.getDownloadLink();
+  }
+
+  /**
+   * Apply this state to given editor user. Only newer values will be applied.
+   *
+   * @param user the user
+   */
+  public void applyTo(Editor.User user) {
+    if (lastModified > user.getLastModified()) {
+      user.setLastModified(lastModified);
+    }
+    if (lastSaved > user.getLastSaved()) {
+      user.setLastSaved(lastSaved);
+    }
+    if (linkSaved > user.getLinkSaved()) {
+      user.setLinkSaved(linkSaved);
+      user.setDownloadLink(downloadLink);
+    }
+  }
+
+  /**
+   * Gets the last modified.
+   *
+   * @return the last modified
+   */
+  public long getLastModified() {
+    return lastModified;
+  }
+
+  /**
+   * Gets the last saved.
+   *
+   * @return the last saved
+   */
+  public long getLastSaved() {
+    return lastSaved;
+  }
+
+  /**
+   * Gets the link saved.
+   *
+   * @return the link saved
+   */
+  public long getLinkSaved() {
+    return linkSaved;
+  }
+
+  /**
+   * Gets the download link.
+   *
+   * @return the download link
+   */
+  public String getDownloadLink() {
+    return downloadLink;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void writeExternal(ObjectOutput out) throws IOException {
+    out.writeLong(lastModified);
+    out.writeLong(lastSaved);
+    out.writeLong(linkSaved);
+    out.writeUTF(downloadLink != null ? downloadLink : EMPTY);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void readExternal(ObjectInput in) throws IOException, ClassNotFoundException {
+    this.lastModified = in.readLong();
+    this.lastSaved = in.readLong();
+    this.linkSaved = in.readLong();
+    String link = in.readUTF();
+    this.downloadLink = EMPTY.equals(link) ? null : link;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public String toString() {
+    return "lastModified: " + lastModified + ", lastSaved: " + lastSaved + ", linkSaved: " + linkSaved;
+  }
+}
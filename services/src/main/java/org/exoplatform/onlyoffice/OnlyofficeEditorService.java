@@ -50,6 +50,15 @@ public interface OnlyofficeEditorService {
   /** The editor error event. */
   static String EDITOR_ERROR_EVENT   = "exo.onlyoffice.editor.error";
 
+  /** Default number of versions in a page. */
+  static int    VERSIONS_PAGE_DEFAULT = 3;
+
+  /** Max number of versions in a page. */
+  static int    VERSIONS_PAGE_MAX     = 100;
+
+  /** Max number of newest versions skipped by a page. */
+  static int    VERSIONS_OFFSET_MAX   = 10000;
+
   /**
    * Return existing editor configuration for given user and node. If editor not
    * open for given node or user then <code>null</code> will be returned. If
@@ -233,6 +242,19 @@ public interface OnlyofficeEditorService {
    */
   List<Version> getVersions(String workspace, String docId) throws Exception ;
 
+  /**
+   * Get a page of versions of the document with the given id, newest first.
+   *
+   * @param workspace the workspace
+   * @param docId the document id
+   * @param offset the number of newest versions to skip, up to
+   *          {@link #VERSIONS_OFFSET_MAX}
+   * @param limit the max number of versions in the page
+   * @return list of versions for node
+   * @throws Exception the exception
+   */
+  List<Version> getVersions(String workspace, String docId, int offset, int limit) throws Exception;
+
   /**
    * Checks if the node isn't locked and can be edited by the current user.
    *
@@ -309,6 +331,16 @@ public interface OnlyofficeEditorService {
    */
   void setLastModifier(String key, String userId);
 
+  /**
+   * Sets the last modifier userId with time of the modification. The user
+   * modification time will not be set earlier than already set.
+   *
+   * @param key the key
+   * @param userId the userId
+   * @param lastModified the modification time in milliseconds
+   */
+  void setLastModifier(String key, String userId, long lastModified);
+
   /**
    * Forces saving a document on document server.
    * 
@@ -318,8 +350,10 @@ public interface OnlyofficeEditorService {
    * @param coEdit the coedit
    * @param forcesaved the forcesaved
    * @param comment the comment
+   * @return <code>true</code> if the command accepted by the Command Service,
+   *         <code>false</code> if it responded an error or cannot be sent
    */
-  void forceSave(String userId, String key, boolean download, boolean coEdit, boolean forcesaved, String comment);
+  boolean forceSave(String userId, String key, boolean download, boolean coEdit, boolean forcesaved, String comment);
 
   /**
    * Gets a user.
@@ -18,10 +18,8 @@
  */
 package org.exoplatform.onlyoffice;
 
-import java.io.BufferedInputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.OutputStream;
 import java.net.*;
 import java.nio.charset.StandardCharsets;
 import java.text.SimpleDateFormat;
@@ -30,20 +28,30 @@ import java.util.Map.Entry;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiConsumer;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 
 import javax.jcr.*;
 import javax.jcr.lock.Lock;
+import javax.jcr.observation.Event;
+import javax.jcr.observation.EventIterator;
+import javax.jcr.observation.EventListener;
+import javax.jcr.version.VersionHistory;
+import javax.jcr.version.VersionIterator;
 
-import org.apache.commons.io.IOUtils;
 import org.apache.commons.io.input.AutoCloseInputStream;
 import org.apache.commons.lang.StringUtils;
 import org.exoplatform.commons.utils.ActivityTypeUtils;
 import org.exoplatform.commons.utils.CommonsUtils;
 import org.exoplatform.commons.utils.MimeTypeResolver;
+import org.exoplatform.commons.utils.PropertyManager;
 import org.exoplatform.ecm.jcr.model.VersionNode;
+import org.json.JSONException;
 import org.json.JSONObject;
 import org.picocontainer.Startable;
 
@@ -57,7 +65,21 @@ import org.exoplatform.ecm.utils.text.Text;
 import org.exoplatform.ecm.webui.utils.PermissionUtil;
 import org.exoplatform.ecm.webui.utils.Utils;
 import org.exoplatform.onlyoffice.Config.Editor;
+import org.exoplatform.onlyoffice.concurrent.BoundedExecutor;
+import org.exoplatform.onlyoffice.concurrent.ContainerTask;
+import org.exoplatform.onlyoffice.concurrent.KeyedExecutor;
+import org.exoplatform.onlyoffice.concurrent.LocalLocks;
+import org.exoplatform.onlyoffice.concurrent.VirtualThreads;
+import org.exoplatform.onlyoffice.http.ContentFetcher;
+import org.exoplatform.onlyoffice.http.DocumentServerClient;
 import org.exoplatform.onlyoffice.jcr.NodeFinder;
+import org.exoplatform.onlyoffice.jcr.SaveJournal;
+import org.exoplatform.onlyoffice.jcr.VersionRetention;
+import org.exoplatform.onlyoffice.metrics.Counter;
+import org.exoplatform.onlyoffice.metrics.MetricsRegistry;
+import org.exoplatform.onlyoffice.metrics.Timer;
+import org.exoplatform.onlyoffice.tracing.Span;
+import org.exoplatform.onlyoffice.tracing.Tracer;
 import org.exoplatform.portal.Constants;
 import org.exoplatform.portal.webui.util.Util;
 import org.exoplatform.services.cache.CacheListener;
@@ -71,13 +93,17 @@ import org.exoplatform.services.cms.drives.DriveData;
 import org.exoplatform.services.cms.drives.ManageDriveService;
 import org.exoplatform.services.cms.lock.LockService;
 import org.exoplatform.services.jcr.RepositoryService;
+import org.exoplatform.services.jcr.access.AccessControlEntry;
+import org.exoplatform.services.jcr.access.AccessControlList;
 import org.exoplatform.services.jcr.access.PermissionType;
+import org.exoplatform.services.jcr.core.ManageableRepository;
 import org.exoplatform.services.jcr.core.nodetype.ExtendedNodeTypeManager;
 import org.exoplatform.services.jcr.core.nodetype.NodeTypeDataManager;
 import org.exoplatform.services.jcr.ext.app.SessionProviderService;
 import org.exoplatform.services.jcr.ext.common.SessionProvider;
 import org.exoplatform.services.jcr.ext.hierarchy.NodeHierarchyCreator;
 import org.exoplatform.services.jcr.impl.core.NodeImpl;
+import org.exoplatform.services.listener.Asynchronous;
 import org.exoplatform.services.listener.ListenerService;
 import org.exoplatform.services.log.ExoLogger;
 import org.exoplatform.services.log.Log;
@@ -94,16 +120,13 @@ import org.exoplatform.social.core.application.SpaceActivityPublisher;
 import org.exoplatform.social.core.identity.provider.OrganizationIdentityProvider;
 import org.exoplatform.social.core.manager.ActivityManager;
 import org.exoplatform.social.core.manager.IdentityManager;
+import org.exoplatform.social.core.space.SpaceLifeCycleEvent;
+import org.exoplatform.social.core.space.SpaceListenerPlugin;
 import org.exoplatform.social.core.space.model.Space;
 import org.exoplatform.social.core.space.spi.SpaceService;
 import org.exoplatform.webui.application.WebuiRequestContext;
 import org.exoplatform.webui.application.portlet.PortletRequestContext;
 
-import io.jsonwebtoken.Claims;
-import io.jsonwebtoken.Jws;
-import io.jsonwebtoken.Jwts;
-import io.jsonwebtoken.security.Keys;
-
 /**
  * Service implementing {@link OnlyofficeEditorService} and {@link Startable}.
  * This component handles interactions with Onlyoffice Document Server and
@@ -119,9 +142,6 @@ public class OnlyofficeEditorServiceImpl implements OnlyofficeEditorService, Sta
   /** The Constant LOG. */
   protected static final Log     LOG                      = ExoLogger.getLogger(OnlyofficeEditorServiceImpl.class);
 
-  /** The Constant RANDOM. */
-  protected static final Random  RANDOM                   = new Random();
-
   /** The Constant CONFIG_DS_HOST. */
   public static final String     CONFIG_DS_HOST           = "documentserver-host";
 
@@ -140,6 +160,124 @@ public class OnlyofficeEditorServiceImpl implements OnlyofficeEditorService, Sta
    */
   public static final String     CONFIG_DS_ALLOWEDHOSTS   = "documentserver-allowedhosts";
 
+  /**
+   * Configuration key to save documents asynchronously: a Document Server
+   * callback will be acknowledged when a save recorded in the saves journal
+   * and queued, before the content stored. A failed save, or a save not
+   * finished before a stop or a crash, stays in the journal and will be
+   * replayed on next start.
+   */
+  public static final String     CONFIG_SAVE_ASYNC        = "save-async";
+
+  /** Configuration key for number of threads saving documents. */
+  public static final String     CONFIG_SAVE_THREADS      = "save-threads";
+
+  /** Configuration key for max number of queued saves. */
+  public static final String     CONFIG_SAVE_QUEUE_MAX    = "save-queue-max";
+
+  /**
+   * Configuration key for time in milliseconds to wait for a place in the full
+   * saves queue.
+   */
+  public static final String     CONFIG_SAVE_QUEUE_WAIT   = "save-queue-wait";
+
+  /**
+   * Configuration key to run asynchronous saves in virtual threads (if the JVM
+   * supports them), number of saves threads then limits concurrent saves.
+   */
+  public static final String     CONFIG_SAVE_VIRTUAL_THREADS = "save-virtual-threads";
+
+  /**
+   * Configuration key to dispatch events asynchronously: broadcasts of the
+   * listener service and {@link Asynchronous} editor listeners.
+   */
+  public static final String     CONFIG_EVENTS_ASYNC      = "events-async";
+
+  /** Configuration key for number of threads dispatching events. */
+  public static final String     CONFIG_EVENTS_THREADS    = "events-threads";
+
+  /** Configuration key for max number of queued events. */
+  public static final String     CONFIG_EVENTS_QUEUE_MAX  = "events-queue-max";
+
+  /**
+   * Time in milliseconds to wait for a place in the full events queue, then
+   * the event queued over the bound, still in order with other events of the
+   * document.
+   */
+  public static final long       EVENTS_QUEUE_WAIT        = 1000;
+
+  /**
+   * Times a recorded save replayed on start before it removed from the saves
+   * journal as failed.
+   */
+  public static final int        SAVE_REPLAY_ATTEMPTS     = 3;
+
+  /** Property of the current version of a versionable node. */
+  protected static final String  BASE_VERSION             = "jcr:baseVersion";
+
+  /** Mixin of documents with renamed versions (as in ECMS). */
+  protected static final String  MIX_VERSION_DISPLAY_NAME = "mix:versionDisplayName";
+
+  /** Property of renamed versions: version name and display name pairs. */
+  protected static final String  VERSION_LIST             = "exo:versionList";
+
+  /** The separator of version names in {@link #VERSION_LIST}. */
+  protected static final String  VERSION_SEPARATOR        = ":";
+
+  /** Configuration key for max number of versions kept, zero for unlimited. */
+  public static final String     CONFIG_VERSIONS_MAX      = "versions-max";
+
+  /**
+   * Configuration key for time window in milliseconds to collapse versions of
+   * the same author, zero to collapse whenever the author saves again.
+   */
+  public static final String     CONFIG_VERSIONS_COLLAPSE_WINDOW = "versions-collapse-window";
+
+  /** Configuration key for interval in milliseconds of versions pruning. */
+  public static final String     CONFIG_VERSIONS_PRUNE_INTERVAL  = "versions-prune-interval";
+
+  /** Configuration key for max number of documents pruned at once. */
+  public static final String     CONFIG_VERSIONS_PRUNE_BATCH     = "versions-prune-batch";
+
+  /** Configuration key for content download connect timeout in milliseconds. */
+  public static final String     CONFIG_CONTENT_CONNECT_TIMEOUT = "content-connect-timeout";
+
+  /** Configuration key for content download read timeout in milliseconds. */
+  public static final String     CONFIG_CONTENT_READ_TIMEOUT    = "content-read-timeout";
+
+  /** Configuration key for max size of downloaded content in bytes. */
+  public static final String     CONFIG_CONTENT_MAX_SIZE        = "content-max-size";
+
+  /** Configuration key for number of retries of a failed content download. */
+  public static final String     CONFIG_CONTENT_RETRIES         = "content-retries";
+
+  /**
+   * Configuration key to spool downloaded content to a temporary file before
+   * saving it.
+   */
+  public static final String     CONFIG_CONTENT_SPOOL           = "content-spool";
+
+  /** Configuration key for max number of connections to Document Server. */
+  public static final String     CONFIG_HTTP_MAX_CONNECTIONS    = "http-max-connections";
+
+  /**
+   * Configuration key for max number of connections to a single Document
+   * Server host.
+   */
+  public static final String     CONFIG_HTTP_MAX_PER_ROUTE      = "http-max-per-route";
+
+  /** Configuration key for time in milliseconds to keep idle connections. */
+  public static final String     CONFIG_HTTP_KEEP_ALIVE         = "http-keep-alive";
+
+  /** Configuration key for max number of cached validated tokens. */
+  public static final String     CONFIG_TOKEN_CACHE_SIZE        = "token-cache-size";
+
+  /**
+   * Configuration key for time in milliseconds to cache a validated token
+   * without expiration.
+   */
+  public static final String     CONFIG_TOKEN_CACHE_TTL         = "token-cache-ttl";
+
   /** The Constant HTTP_PORT_DELIMITER. */
   protected static final char    HTTP_PORT_DELIMITER      = ':';
 
@@ -173,12 +311,42 @@ public class OnlyofficeEditorServiceImpl implements OnlyofficeEditorService, Sta
   /** The Constant LOCK_WAIT_TIMEOUT. */
   protected static final long    LOCK_WAIT_TIMEOUT        = 250;
 
+  /** The max time to wait for a document lock in milliseconds. */
+  protected static final long    LOCK_WAIT_MAX            = LOCK_WAIT_ATTEMTS * LOCK_WAIT_TIMEOUT;
+
+  /** The min delay of polling a lock held outside this JVM in milliseconds. */
+  protected static final long    LOCK_POLL_MIN            = 25;
+
+  /** The max delay of polling a lock held outside this JVM in milliseconds. */
+  protected static final long    LOCK_POLL_MAX            = 1000;
+
   /** The Constant EMPTY_TEXT. */
   protected static final String  EMPTY_TEXT               = "".intern();
 
   /** The Constant CACHE_NAME. */
   public static final String     CACHE_NAME               = "onlyoffice.EditorCache".intern();
 
+  /** The Constant KEY_CACHE_NAME. */
+  public static final String     KEY_CACHE_NAME           = "onlyoffice.EditorKeyCache".intern();
+
+  /** The Constant STATE_CACHE_NAME. */
+  public static final String     STATE_CACHE_NAME         = "onlyoffice.EditorStateCache".intern();
+
+  /** The Constant USER_CACHE_NAME. */
+  public static final String     USER_CACHE_NAME          = "onlyoffice.UserCache".intern();
+
+  /** The Constant USER_LANG_CACHE_NAME. */
+  public static final String     USER_LANG_CACHE_NAME     = "onlyoffice.UserLangCache".intern();
+
+  /** The Constant DRIVE_CACHE_NAME. */
+  public static final String     DRIVE_CACHE_NAME         = "onlyoffice.DriveCache".intern();
+
+  /** The Constant SYMLINK_CACHE_NAME. */
+  public static final String     SYMLINK_CACHE_NAME       = "onlyoffice.SymlinkCache".intern();
+
+  /** The Constant VERSION_CACHE_NAME. */
+  public static final String     VERSION_CACHE_NAME       = "onlyoffice.VersionCache".intern();
+
   /**
    * NewDocumentTypesConfig.
    */
@@ -267,6 +435,328 @@ public class OnlyofficeEditorServiceImpl implements OnlyofficeEditorService, Sta
     }
   }
 
+  /**
+   * Lock of a single document used when creating its editor configs. It counts
+   * the threads referring it to let remove the lock when nobody needs it.
+   */
+  static class DocumentLock extends ReentrantLock {
+
+    /** The Constant serialVersionUID. */
+    private static final long serialVersionUID = 6396244567934521538L;
+
+    /** The holders count, guarded by the locks map. */
+    int                       holders;
+  }
+
+  /**
+   * Save of a document content that fails if the content cannot be stored.
+   */
+  @FunctionalInterface
+  interface Save {
+
+    /**
+     * Run the save.
+     *
+     * @throws OnlyofficeEditorException if the content cannot be downloaded
+     * @throws RepositoryException if the content cannot be stored
+     */
+    void run() throws OnlyofficeEditorException, RepositoryException;
+  }
+
+  /**
+   * Invalidates cached users on their update in organization service.
+   */
+  class UserCacheListener extends UserEventListener {
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void postSave(User user, boolean isNew) throws Exception {
+      if (!isNew) {
+        userCache.remove(user.getUserName());
+      }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void postDelete(User user) throws Exception {
+      userCache.remove(user.getUserName());
+      langCache.remove(user.getUserName());
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void postSetEnabled(User user) throws Exception {
+      userCache.remove(user.getUserName());
+    }
+  }
+
+  /**
+   * Invalidates cached user languages on profile update in organization
+   * service.
+   */
+  class UserProfileCacheListener extends UserProfileEventListener {
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void postSave(UserProfile profile, boolean isNew) throws Exception {
+      langCache.remove(profile.getUserName());
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void postDelete(UserProfile profile) throws Exception {
+      langCache.remove(profile.getUserName());
+    }
+  }
+
+  /**
+   * Invalidates cached versions of documents on their checkin or restore (a new
+   * base version) and renaming of versions by ECMS in JCR.
+   */
+  class VersionCacheListener implements EventListener {
+
+    /** The workspace. */
+    final String workspace;
+
+    /**
+     * Instantiates a new version cache listener.
+     *
+     * @param workspace the workspace
+     */
+    VersionCacheListener(String workspace) {
+      this.workspace = workspace;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void onEvent(EventIterator events) {
+      Set<String> paths = new HashSet<>();
+      while (events.hasNext()) {
+        try {
+          String path = events.nextEvent().getPath();
+          int nameIndex = path.lastIndexOf('/');
+          String name = path.substring(nameIndex + 1);
+          if (BASE_VERSION.equals(name) || VERSION_LIST.equals(name)) {
+            paths.add(nameIndex > 0 ? path.substring(0, nameIndex) : "/");
+          }
+        } catch (RepositoryException e) {
+          LOG.warn("Cannot read version event in " + workspace, e);
+        }
+      }
+      if (paths.size() > 0) {
+        Session session = null;
+        try {
+          session = jcrService.getCurrentRepository().getSystemSession(workspace);
+          for (String path : paths) {
+            try {
+              Item item = session.getItem(path);
+              if (item.isNode() && ((Node) item).isNodeType("mix:referenceable")) {
+                invalidateVersions(workspace, ((Node) item).getUUID());
+              }
+            } catch (PathNotFoundException e) {
+              // removed meanwhile
+            }
+          }
+        } catch (RepositoryException e) {
+          LOG.warn("Cannot invalidate cached versions in " + workspace, e);
+        } finally {
+          if (session != null) {
+            session.logout();
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Invalidates cached drive labels on group update in organization service.
+   */
+  class GroupCacheListener extends GroupEventListener {
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void postSave(Group group, boolean isNew) throws Exception {
+      driveCache.remove(driveName(group.getId()));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void postDelete(Group group) throws Exception {
+      driveCache.remove(driveName(group.getId()));
+    }
+  }
+
+  /**
+   * Invalidates cached drive labels of spaces on their creation, rename and
+   * removal.
+   */
+  class SpaceCacheListener extends SpaceListenerPlugin {
+
+    /**
+     * Invalidate the space drive label.
+     *
+     * @param event the event
+     */
+    void invalidate(SpaceLifeCycleEvent event) {
+      Space space = event.getSpace();
+      if (space != null && space.getGroupId() != null) {
+        driveCache.remove(driveName(space.getGroupId()));
+      }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void spaceCreated(SpaceLifeCycleEvent event) {
+      invalidate(event);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void spaceRenamed(SpaceLifeCycleEvent event) {
+      invalidate(event);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void spaceRemoved(SpaceLifeCycleEvent event) {
+      invalidate(event);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void spaceDescriptionEdited(SpaceLifeCycleEvent event) {
+      // not used in the label
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void spaceAvatarEdited(SpaceLifeCycleEvent event) {
+      // not used in the label
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void spaceBannerEdited(SpaceLifeCycleEvent event) {
+      // not used in the label
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void spaceAccessEdited(SpaceLifeCycleEvent event) {
+      // not used in the label
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void applicationAdded(SpaceLifeCycleEvent event) {
+      // not used in the label
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void applicationRemoved(SpaceLifeCycleEvent event) {
+      // not used in the label
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void applicationActivated(SpaceLifeCycleEvent event) {
+      // not used in the label
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void applicationDeactivated(SpaceLifeCycleEvent event) {
+      // not used in the label
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void joined(SpaceLifeCycleEvent event) {
+      // not used in the label
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void left(SpaceLifeCycleEvent event) {
+      // not used in the label
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void grantedLead(SpaceLifeCycleEvent event) {
+      // not used in the label
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void revokedLead(SpaceLifeCycleEvent event) {
+      // not used in the label
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void addInvitedUser(SpaceLifeCycleEvent event) {
+      // not used in the label
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void addPendingUser(SpaceLifeCycleEvent event) {
+      // not used in the label
+    }
+  }
+
   /** The jcr service. */
   protected final RepositoryService                               jcrService;
 
@@ -309,11 +799,41 @@ public class OnlyofficeEditorServiceImpl implements OnlyofficeEditorService, Sta
   /** The manage drive service */
   protected final ManageDriveService                              manageDriveService;
 
-  /** Cache of Editing documents. */
+  /** Cache of Editing documents, mapped by document ID (node UUID). */
   protected final ExoCache<String, ConcurrentMap<String, Config>> activeCache;
 
-  /** Lock for updating Editing documents cache. */
-  protected final ReentrantLock                                   activeLock = new ReentrantLock();
+  /** Index of Editing documents: document key to document ID. */
+  protected final ExoCache<String, String>                        keyCache;
+
+  /** Editor users state, mapped by document ID and user ID. */
+  protected final ExoCache<String, EditorUserState>               stateCache;
+
+  /** The users cache (in front of organization service). */
+  protected final ExoCache<String, User>                          userCache;
+
+  /** The user languages cache, empty string for no language. */
+  protected final ExoCache<String, String>                        langCache;
+
+  /** The drive labels cache (of spaces and groups), mapped by drive name. */
+  protected final ExoCache<String, String>                        driveCache;
+
+  /**
+   * The paths of shared documents symlinks, mapped by user ID and document
+   * node ID, empty string for no symlink.
+   */
+  protected final ExoCache<String, String>                        symlinkCache;
+
+  /** The newest versions of documents, mapped by workspace and document ID. */
+  protected final ExoCache<String, List<Version>>                 versionCache;
+
+  /** The count of versions invalidations. */
+  protected final AtomicLong                                      versionEpoch    = new AtomicLong();
+
+  /** The sessions of JCR observation of versions, by workspace. */
+  protected final List<Session>                                   versionSessions = new ArrayList<>();
+
+  /** Per-document locks for updating Editing documents cache. */
+  protected final ConcurrentHashMap<String, DocumentLock>         activeLocks = new ConcurrentHashMap<>();
 
   /** The config. */
   protected final Map<String, String>                             config;
@@ -333,6 +853,9 @@ public class OnlyofficeEditorServiceImpl implements OnlyofficeEditorService, Sta
   /** The document server secret. */
   protected final String                                          documentserverSecret;
 
+  /** The tokens of Document Server requests. */
+  protected final TokenService                                    tokenService;
+
   /** The documentserver access only. */
   protected final boolean                                         documentserverAccessOnly;
 
@@ -355,6 +878,74 @@ public class OnlyofficeEditorServiceImpl implements OnlyofficeEditorService, Sta
   /** The document type plugin. */
   protected DocumentTypePlugin                                    documentTypePlugin;
 
+  /** The saves executor, <code>null</code> if saving synchronously. */
+  protected final KeyedExecutor                                   saveExecutor;
+
+  /**
+   * The journal of queued saves, <code>null</code> if saving synchronously.
+   */
+  protected final SaveJournal                                     saveJournal;
+
+  /**
+   * The events executor, <code>null</code> if dispatching events
+   * synchronously.
+   */
+  protected final KeyedExecutor                                   eventsExecutor;
+
+  /** The time to wait for a place in the full saves queue, in milliseconds. */
+  protected final long                                            saveQueueWait;
+
+  /** The saves timer. */
+  protected final Timer                                           saveTime   = new Timer();
+
+  /** The failed saves. */
+  protected final Counter                                         saveFailures = new Counter();
+
+  /** The saves replayed from the journal. */
+  protected final Counter                                         savesReplayed = new Counter();
+
+  /** The HTTP client of Document Server. */
+  protected final DocumentServerClient                            documentserverClient;
+
+  /** The fetcher of edited content from Document Server. */
+  protected final ContentFetcher                                  contentFetcher;
+
+  /** The document locks acquired by this service in this JVM. */
+  protected final LocalLocks                                      localLocks = new LocalLocks(LOCK_POLL_MIN, LOCK_POLL_MAX);
+
+  /** The timer of waiting for locked documents. */
+  protected final Timer                                           lockWaitTime = new Timer();
+
+  /** The count of lock waits ended by timeout. */
+  protected final Counter                                         lockTimeouts = new Counter();
+
+  /** The metrics registry. */
+  protected final MetricsRegistry                                 metrics;
+
+  /** The timer of editors creation. */
+  protected final Timer                                           createTime;
+
+  /** The timer of forcesave commands round-trip. */
+  protected final Timer                                           forceSaveTime;
+
+  /** The versions retention. */
+  protected final VersionRetention                                versionRetention;
+
+  /** The timer of document lock hold by a save. */
+  protected final Timer                                           lockHoldTime;
+
+  /** The timer of the content write phase of a save (under the lock). */
+  protected final Timer                                           lockWriteTime;
+
+  /** The timer of the versioning phase of a save (under the lock). */
+  protected final Timer                                           lockVersionTime;
+
+  /** The timer of the version comment phase of a save (after the unlock). */
+  protected final Timer                                           commentTime;
+
+  /** The tracer. */
+  protected final Tracer                                          tracer;
+
   public static final String COMMONS_RESOUCE_BUNDLE_NAME = "locale.navigation.portal.intranet";
 
   /**
@@ -375,6 +966,8 @@ public class OnlyofficeEditorServiceImpl implements OnlyofficeEditorService, Sta
    * @param activityManager the activityManager
    * @param manageDriveService the manageDriveService
    * @param hierarchyCreator the hierarchyCreator
+   * @param metrics the metrics registry
+   * @param tracer the tracer
    * @param params the params
    * @throws ConfigurationException the configuration exception
    */
@@ -393,6 +986,8 @@ public class OnlyofficeEditorServiceImpl implements OnlyofficeEditorService, Sta
                                      ActivityManager activityManager,
                                      ManageDriveService manageDriveService,
                                      NodeHierarchyCreator hierarchyCreator,
+                                     MetricsRegistry metrics,
+                                     Tracer tracer,
                                      InitParams params)
       throws ConfigurationException {
     this.jcrService = jcrService;
@@ -408,8 +1003,16 @@ public class OnlyofficeEditorServiceImpl implements OnlyofficeEditorService, Sta
     this.spaceService = spaceService;
     this.activityManager = activityManager;
     this.activeCache = cacheService.getCacheInstance(CACHE_NAME);
+    this.keyCache = cacheService.getCacheInstance(KEY_CACHE_NAME);
+    this.stateCache = cacheService.getCacheInstance(STATE_CACHE_NAME);
+    this.userCache = cacheService.getCacheInstance(USER_CACHE_NAME);
+    this.langCache = cacheService.getCacheInstance(USER_LANG_CACHE_NAME);
+    this.driveCache = cacheService.getCacheInstance(DRIVE_CACHE_NAME);
+    this.symlinkCache = cacheService.getCacheInstance(SYMLINK_CACHE_NAME);
+    this.versionCache = cacheService.getCacheInstance(VERSION_CACHE_NAME);
     this.hierarchyCreator = hierarchyCreator;
     this.manageDriveService = manageDriveService;
+    this.tracer = tracer;
     if (LOG.isDebugEnabled()) {
       addDebugCacheListener();
     }
@@ -437,10 +1040,81 @@ public class OnlyofficeEditorServiceImpl implements OnlyofficeEditorService, Sta
     this.commandServiceUrl = new StringBuilder(documentserverUrl).append("/coauthoring/CommandService.ashx").toString();
     this.documentserverAccessOnly = Boolean.parseBoolean(config.get(CONFIG_DS_ACCESS_ONLY));
     this.documentserverSecret = config.get(CONFIG_DS_SECRET);
+    this.tokenService = new TokenService(documentserverSecret,
+                                         (int) configNumber(CONFIG_TOKEN_CACHE_SIZE, 1000),
+                                         configNumber(CONFIG_TOKEN_CACHE_TTL, 300000));
     this.documentserverAllowedhosts = getDocumentserverAllowedHosts(config.get(CONFIG_DS_ALLOWEDHOSTS));
 
     this.usersPath = hierarchyCreator.getJcrPath(BasePath.CMS_USERS_PATH);
     this.groupsPath = hierarchyCreator.getJcrPath(BasePath.CMS_GROUPS_PATH);
+
+    // Document Server connections and content download
+    int connectTimeout = (int) configNumber(CONFIG_CONTENT_CONNECT_TIMEOUT, 10000);
+    int readTimeout = (int) configNumber(CONFIG_CONTENT_READ_TIMEOUT, 60000);
+    this.documentserverClient = new DocumentServerClient((int) configNumber(CONFIG_HTTP_MAX_CONNECTIONS, 50),
+                                                         (int) configNumber(CONFIG_HTTP_MAX_PER_ROUTE, 20),
+                                                         configNumber(CONFIG_HTTP_KEEP_ALIVE, 60000),
+                                                         connectTimeout,
+                                                         readTimeout);
+    String spool = config.get(CONFIG_CONTENT_SPOOL);
+    this.contentFetcher = new ContentFetcher(documentserverClient,
+                                             connectTimeout,
+                                             readTimeout,
+                                             configNumber(CONFIG_CONTENT_MAX_SIZE, 0),
+                                             (int) configNumber(CONFIG_CONTENT_RETRIES, 2),
+                                             1000,
+                                             spool == null || Boolean.parseBoolean(spool));
+
+    // Saves of documents
+    this.saveQueueWait = configNumber(CONFIG_SAVE_QUEUE_WAIT, 5000);
+    if (Boolean.parseBoolean(config.get(CONFIG_SAVE_ASYNC))) {
+      int threads = (int) configNumber(CONFIG_SAVE_THREADS, Math.max(2, Runtime.getRuntime().availableProcessors()));
+      int queueMax = (int) configNumber(CONFIG_SAVE_QUEUE_MAX, 1000);
+      boolean virtual = Boolean.parseBoolean(config.get(CONFIG_SAVE_VIRTUAL_THREADS));
+      ExecutorService saveThreads = VirtualThreads.newExecutor("onlyoffice-save-thread-", threads, 60, virtual);
+      this.saveExecutor = new KeyedExecutor("onlyoffice-save", saveThreads, queueMax);
+      // each cluster node replays own saves
+      String owner = PropertyManager.getProperty("exo.cluster.node.name");
+      this.saveJournal = new SaveJournal(() -> {
+        ManageableRepository repository = jcrService.getCurrentRepository();
+        return repository.getSystemSession(repository.getConfiguration().getDefaultWorkspaceName());
+      }, owner != null ? owner : "");
+      LOG.info("Documents will be saved asynchronously in " + threads
+          + (saveThreads instanceof BoundedExecutor ? " virtual" : "") + " threads, max queued saves: " + queueMax);
+    } else {
+      this.saveExecutor = null;
+      this.saveJournal = null;
+    }
+
+    // Versions of documents
+    this.versionRetention = new VersionRetention((int) configNumber(CONFIG_VERSIONS_MAX, 0),
+                                                 configNumber(CONFIG_VERSIONS_COLLAPSE_WINDOW, 0),
+                                                 Math.max(1000, configNumber(CONFIG_VERSIONS_PRUNE_INTERVAL, 60000)),
+                                                 (int) configNumber(CONFIG_VERSIONS_PRUNE_BATCH, 20),
+                                                 workspace -> jcrService.getCurrentRepository().getSystemSession(workspace),
+                                                 this::invalidateVersions);
+
+    // Events of documents
+    if (Boolean.parseBoolean(config.get(CONFIG_EVENTS_ASYNC))) {
+      int threads = (int) configNumber(CONFIG_EVENTS_THREADS, 2);
+      int queueMax = (int) configNumber(CONFIG_EVENTS_QUEUE_MAX, 1000);
+      this.eventsExecutor = new KeyedExecutor("onlyoffice-events",
+                                              VirtualThreads.newExecutor("onlyoffice-event-thread-", threads, 60, false),
+                                              queueMax);
+      LOG.info("Events will be dispatched asynchronously in " + threads + " threads, max queued events: " + queueMax);
+    } else {
+      this.eventsExecutor = null;
+    }
+
+    // Metrics
+    this.metrics = metrics;
+    this.createTime = metrics.timer("editor.create");
+    this.forceSaveTime = metrics.timer("forcesave");
+    this.lockHoldTime = metrics.timer("lock.hold");
+    this.lockWriteTime = metrics.timer("lock.hold.write");
+    this.lockVersionTime = metrics.timer("lock.hold.version");
+    this.commentTime = metrics.timer("save.comment");
+    registerMetrics();
   }
 
   /**
@@ -475,7 +1149,7 @@ public class OnlyofficeEditorServiceImpl implements OnlyofficeEditorService, Sta
    * {@inheritDoc}
    */
   public Config getEditorByKey(String userId, String key) throws OnlyofficeEditorException, RepositoryException {
-    ConcurrentMap<String, Config> configs = activeCache.get(key);
+    ConcurrentMap<String, Config> configs = getConfigs(key);
     if (configs != null) {
       Config config = configs.get(userId);
       if (config != null) {
@@ -500,7 +1174,7 @@ public class OnlyofficeEditorServiceImpl implements OnlyofficeEditorService, Sta
    */
   protected Config getEditor(String userId, String docId, boolean createCoEditing) throws OnlyofficeEditorException,
                                                                                    RepositoryException {
-    ConcurrentMap<String, Config> configs = activeCache.get(docId);
+    ConcurrentMap<String, Config> configs = getConfigs(docId);
     if (configs != null) {
       Config config = configs.get(userId);
       DocumentStatus.Builder statusBuilder = new DocumentStatus.Builder();
@@ -514,12 +1188,11 @@ public class OnlyofficeEditorServiceImpl implements OnlyofficeEditorService, Sta
             config = another.forUser(user.getUserName(),
                                      user.getDisplayName(),
                                      getUserLang(userId),
-                                     documentserverSecret);
+                                     tokenService.getKey());
             Config existing = configs.putIfAbsent(userId, config);
             if (existing == null) {
               // need update the configs in the cache (for replicated cache)
-              activeCache.put(config.getDocument().getKey(), configs);
-              activeCache.put(config.getDocId(), configs);
+              putConfigs(docId, configs);
             } else {
               config = existing;
             }
@@ -558,6 +1231,45 @@ public class OnlyofficeEditorServiceImpl implements OnlyofficeEditorService, Sta
                              String userId,
                              String workspace,
                              String docId) throws OnlyofficeEditorException, RepositoryException {
+    long start = createTime.start();
+    Span span = tracer.start("onlyoffice.editor.create")
+                      .attribute(Tracer.DOCUMENT_ATTRIBUTE, docId)
+                      .attribute(Tracer.USER_ATTRIBUTE, userId);
+    try {
+      Config config = openEditor(schema, host, port, userId, workspace, docId);
+      if (config != null) {
+        span.attribute(Tracer.KEY_ATTRIBUTE, config.getDocument().getKey());
+      }
+      return config;
+    } catch (OnlyofficeEditorException | RepositoryException | RuntimeException e) {
+      span.error(e);
+      throw e;
+    } finally {
+      span.end();
+      createTime.stop(start);
+    }
+  }
+
+  /**
+   * Create or get an editor of the document for the user, it's the actual
+   * work of {@link #createEditor(String, String, int, String, String, String)}.
+   *
+   * @param schema the schema
+   * @param host the host
+   * @param port the port
+   * @param userId the user id
+   * @param workspace the workspace
+   * @param docId the document ID
+   * @return the editor config
+   * @throws OnlyofficeEditorException the onlyoffice editor exception
+   * @throws RepositoryException the repository exception
+   */
+  protected Config openEditor(String schema,
+                              String host,
+                              int port,
+                              String userId,
+                              String workspace,
+                              String docId) throws OnlyofficeEditorException, RepositoryException {
     if (workspace == null) {
       workspace = jcrService.getCurrentRepository().getConfiguration().getDefaultWorkspaceName();
     }
@@ -582,10 +1294,10 @@ public class OnlyofficeEditorServiceImpl implements OnlyofficeEditorService, Sta
 
     Config config = getEditor(userId, docId, true);
     if (config == null) {
-      // we should care about concurrent calls here
-      activeLock.lock();
+      // we should care about concurrent calls here, but only for this document
+      DocumentLock lock = lockDocument(docId);
       try {
-        ConcurrentMap<String, Config> configs = activeCache.get(docId);
+        ConcurrentMap<String, Config> configs = getConfigs(docId);
         if (configs != null) {
           config = getEditor(userId, docId, true);
           if (config == null) {
@@ -654,19 +1366,20 @@ public class OnlyofficeEditorServiceImpl implements OnlyofficeEditorService, Sta
           // ECMS explorer page URL
           String ecmsPageLink = explorerLink(path);
           builder.explorerUri(explorerUri(schema, host, port, ecmsPageLink));
-          builder.secret(documentserverSecret);
+          builder.signingKey(tokenService.getKey());
 
           config = builder.build();
+          stampEditorPage(config.getEditorPage(), node, userId);
           // Create users' config map and add first user
-          configs = new ConcurrentHashMap<String, Config>();
+          // Compact format of the map will share document strings of all users
+          configs = CompactFormat.isLegacy() ? new ConcurrentHashMap<String, Config>() : new ConfigMap();
           configs.put(userId, config);
 
-          // mapping by unique file key for updateDocument()
-          activeCache.put(key, configs);
-          activeCache.put(docId, configs);
+          // mapping by docId and unique file key for updateDocument()
+          addConfigs(key, docId, configs);
         }
       } finally {
-        activeLock.unlock();
+        unlockDocument(docId, lock);
       }
       DocumentStatus status = new DocumentStatus.Builder().config(config)
                                                           .users(new String[] { userId })
@@ -676,22 +1389,154 @@ public class OnlyofficeEditorServiceImpl implements OnlyofficeEditorService, Sta
 
       fireCreated(status);
     } else {
-      // Update fields
-      config.getEditorPage().setDisplayPath(getDisplayPath(node, userId));
-      config.getEditorPage().setRenameAllowed(canRenameDocument(node));
-      config.getEditorPage().setComment(nodeComment(node));
-      config.getEditorPage().setLastModifier(getLastModifier(node));
-      config.getEditorPage().setLastModified(getLastModified(node));
+      // Update fields changed since the last refresh
+      refreshEditorPage(config.getEditorPage(), node, userId);
     }
     return config;
   }
 
+  /**
+   * Refresh the editor page fields of an existing editor. Only fields whose
+   * source changed since the previous refresh recomputed: the last modifier and
+   * date when the node modification date changed, the comment when the comment
+   * id changed, the display path and rename flag when the user, the node path
+   * or the parent permissions changed (the display path also on modification,
+   * for a new title).
+   *
+   * @param page the editor page
+   * @param node the document node
+   * @param userId the user id
+   * @throws RepositoryException the repository exception
+   * @throws OnlyofficeEditorException the onlyoffice editor exception
+   */
+  protected void refreshEditorPage(EditorPage page, Node node, String userId) throws RepositoryException,
+                                                                               OnlyofficeEditorException {
+    long modified = modifiedStamp(node);
+    boolean modifiedChanged = !page.matchesModified(modified);
+    if (modifiedChanged) {
+      page.setLastModifier(getLastModifier(node));
+      page.setLastModified(getLastModified(node));
+    }
+    String access = accessStamp(node, userId);
+    if (modifiedChanged || !page.matchesAccess(access)) {
+      page.setDisplayPath(getDisplayPath(node, userId));
+      page.setRenameAllowed(canRenameDocument(node));
+      page.setAccessStamp(access);
+    }
+    // stamp after the fields, a failed refresh will be repeated
+    page.setModifiedStamp(modified);
+    String commentId = commentStamp(node);
+    if (!page.matchesComment(commentId)) {
+      page.setComment(nodeComment(node));
+      page.setCommentStamp(commentId);
+    }
+  }
+
+  /**
+   * Stamp the editor page fields just computed from given node.
+   *
+   * @param page the editor page
+   * @param node the document node
+   * @param userId the user id
+   * @throws RepositoryException the repository exception
+   */
+  protected void stampEditorPage(EditorPage page, Node node, String userId) throws RepositoryException {
+    page.setModifiedStamp(modifiedStamp(node));
+    page.setCommentStamp(commentStamp(node));
+    page.setAccessStamp(accessStamp(node, userId));
+  }
+
+  /**
+   * Node modification date used to stamp the editor page.
+   *
+   * @param node the node
+   * @return the date in milliseconds, zero if not set
+   * @throws RepositoryException the repository exception
+   */
+  protected long modifiedStamp(Node node) throws RepositoryException {
+    if (node.hasProperty("exo:lastModifiedDate")) {
+      return node.getProperty("exo:lastModifiedDate").getDate().getTimeInMillis();
+    }
+    return 0;
+  }
+
+  /**
+   * Node comment id used to stamp the editor page.
+   *
+   * @param node the node
+   * @return the comment id, empty string if not set
+   */
+  protected String commentStamp(Node node) {
+    try {
+      if (node.hasProperty("eoo:commentId")) {
+        return node.getProperty("eoo:commentId").getString();
+      }
+    } catch (RepositoryException e) {
+      LOG.warn("Cannot get eoo:commentId of node.", e);
+    }
+    return EMPTY_TEXT;
+  }
+
+  /**
+   * Access stamp of the editor page: the user, node path and permissions of the
+   * parent node.
+   *
+   * @param node the node
+   * @param userId the user id
+   * @return the stamp
+   * @throws RepositoryException the repository exception
+   */
+  protected String accessStamp(Node node, String userId) throws RepositoryException {
+    StringBuilder stamp = new StringBuilder(userId).append('@').append(node.getPath());
+    try {
+      AccessControlList acl = ((NodeImpl) node.getParent()).getACL();
+      stamp.append('#').append(acl.getOwner());
+      for (AccessControlEntry entry : acl.getPermissionEntries()) {
+        stamp.append(';').append(entry.getAsString());
+      }
+    } catch (AccessDeniedException e) {
+      // parent not readable: the rename not allowed whatever its permissions
+      stamp.append("#-");
+    }
+    return stamp.toString();
+  }
+
+  /**
+   * Acquire a lock of given document. Threads working on different documents
+   * will not wait for each other. Each call should be followed by
+   * {@link #unlockDocument(String, DocumentLock)} in finally block.
+   *
+   * @param docId the doc id
+   * @return the document lock
+   */
+  protected DocumentLock lockDocument(String docId) {
+    DocumentLock lock = activeLocks.compute(docId, (id, existing) -> {
+      DocumentLock l = existing != null ? existing : new DocumentLock();
+      l.holders++;
+      return l;
+    });
+    lock.lock();
+    return lock;
+  }
+
+  /**
+   * Release a lock of given document acquired by {@link #lockDocument(String)}.
+   * The lock will be removed when no other thread refers it.
+   *
+   * @param docId the doc id
+   * @param lock the lock
+   */
+  protected void unlockDocument(String docId, DocumentLock lock) {
+    lock.unlock();
+    activeLocks.computeIfPresent(docId, (id, l) -> --l.holders > 0 ? l : null);
+  }
+
   /**
    * {@inheritDoc}
    */
   @Override
   public DocumentContent getContent(String userId, String key) throws OnlyofficeEditorException, RepositoryException {
-    ConcurrentMap<String, Config> configs = activeCache.get(key);
+    ConcurrentMap<String, Config> configs = getConfigs(key);
     if (configs != null) {
       Config config = configs.get(userId);
       if (config != null) {
@@ -754,7 +1599,7 @@ public class OnlyofficeEditorServiceImpl implements OnlyofficeEditorService, Sta
    */
   @Override
   public ChangeState getState(String userId, String key) throws OnlyofficeEditorException {
-    ConcurrentMap<String, Config> configs = activeCache.get(key);
+    ConcurrentMap<String, Config> configs = getConfigs(key);
     if (configs != null) {
       Config config = configs.get(userId);
       if (config != null) {
@@ -770,13 +1615,49 @@ public class OnlyofficeEditorServiceImpl implements OnlyofficeEditorService, Sta
     }
   }
 
+  /**
+   * Name of the status handling timer: known status codes of Document Server
+   * (0-7) timed apart, others together.
+   *
+   * @param status the status code
+   * @return the timer name
+   */
+  protected String statusTimerName(Long status) {
+    return status != null && status >= 0 && status <= 7 ? "status." + status : "status.other";
+  }
+
   /**
    * {@inheritDoc}
    */
   @Override
   public void updateDocument(DocumentStatus status) throws OnlyofficeEditorException, RepositoryException {
+    Timer timer = metrics.timer(statusTimerName(status.getStatus()));
+    long start = timer.start();
+    Span span = tracer.start("onlyoffice.status", status.getKey())
+                      .attribute("onlyoffice.status", status.getStatus())
+                      .attribute(Tracer.USER_ATTRIBUTE, status.getUserId());
+    try {
+      handleStatus(status);
+    } catch (OnlyofficeEditorException | RepositoryException | RuntimeException e) {
+      span.error(e);
+      throw e;
+    } finally {
+      span.end();
+      timer.stop(start);
+    }
+  }
+
+  /**
+   * Handle the document status sent by Document Server, it's the actual work
+   * of {@link #updateDocument(DocumentStatus)}.
+   *
+   * @param status the status
+   * @throws OnlyofficeEditorException the onlyoffice editor exception
+   * @throws RepositoryException the repository exception
+   */
+  protected void handleStatus(DocumentStatus status) throws OnlyofficeEditorException, RepositoryException {
     String key = status.getKey();
-    ConcurrentMap<String, Config> configs = activeCache.get(key);
+    ConcurrentMap<String, Config> configs = getConfigs(key);
     if (configs != null) {
       Config config = configs.get(status.getUserId());
       if (config != null) {
@@ -804,8 +1685,7 @@ public class OnlyofficeEditorServiceImpl implements OnlyofficeEditorService, Sta
         if (statusCode == 0) {
           // Onlyoffice doesn't know about such document: we clean our records
           // and raise an error
-          activeCache.remove(key);
-          activeCache.remove(config.getDocId());
+          removeConfigs(key, config);
           LOG.warn("Received Onlyoffice status: no document with the key identifier could be found. Key: " + key + ". Document: "
               + nodePath);
           throw new OnlyofficeEditorException("Error editing document: document ID not found");
@@ -821,21 +1701,20 @@ public class OnlyofficeEditorServiceImpl implements OnlyofficeEditorService, Sta
           // configs of gone users
           if (syncUsers(configs, status.getUsers())) {
             // Update cached (for replicated cache)
-            activeCache.put(key, configs);
-            activeCache.put(config.getDocId(), configs);
+            putConfigs(key, configs);
           }
         } else if (statusCode == 2) {
           Editor.User lastUser = getUser(key, status.getLastUser());
           Editor.User lastModifier = getLastModifier(key);
           // We download if there were modifications after the last saving.
           if (lastModifier.getId().equals(lastUser.getId()) && lastUser.getLastModified() > lastUser.getLastSaved()) {
-            downloadClosed(status);
+            // configs stay in the cache until the content saved
+            submitSave(status);
           } else {
             config.closed();
             broadcastEvent(status, OnlyofficeEditorService.EDITOR_CLOSED_EVENT);
+            removeConfigs(key, config);
           }
-          activeCache.remove(key);
-          activeCache.remove(config.getDocId());
         } else if (statusCode == 3) {
           // it's an error of saving in Onlyoffice
           // we sync to remote editors list first
@@ -846,23 +1725,14 @@ public class OnlyofficeEditorServiceImpl implements OnlyofficeEditorService, Sta
             if (url != null && url.length() > 0) {
               // if URL available then we can download it assuming it's last
               // successful modification the same behaviour as for status (2)
-              downloadClosed(status);
-              activeCache.remove(key);
-              activeCache.remove(config.getDocId());
-              config.setError("Error in editor (" + status.getError() + "). Last change was successfully saved");
-              fireError(status);
-              broadcastEvent(status, OnlyofficeEditorService.EDITOR_ERROR_EVENT);
-              LOG.warn("Received Onlyoffice error of saving document. Key: " + key + ". Users: "
-                  + Arrays.toString(status.getUsers()) + ". Error: " + status.getError()
-                  + ". Last change was successfully saved for " + nodePath);
+              submitSave(status);
             } else {
               // if error without content URL and last user: it's error state
               LOG.warn("Received Onlyoffice error of saving document without changes URL. Key: " + key + ". Users: "
                   + Arrays.toString(status.getUsers()) + ". Document: " + nodePath + ". Error: " + status.getError());
               config.setError("Error in editor (" + status.getError() + "). No changes saved");
               // Update cached (for replicated cache)
-              activeCache.put(key, configs);
-              activeCache.put(config.getDocId(), configs);
+              putConfigs(key, configs);
               fireError(status);
               broadcastEvent(status, OnlyofficeEditorService.EDITOR_ERROR_EVENT);
               // No sense to throw an ex here: it will be caught by the
@@ -876,8 +1746,7 @@ public class OnlyofficeEditorServiceImpl implements OnlyofficeEditorService, Sta
                 + Arrays.toString(status.getUsers()) + ". Document: " + nodePath);
             config.setError("Error in editor. Document still in editing state");
             // Update cached (for replicated cache)
-            activeCache.put(key, configs);
-            activeCache.put(config.getDocId(), configs);
+            putConfigs(key, configs);
             fireError(status);
             broadcastEvent(status, OnlyofficeEditorService.EDITOR_ERROR_EVENT);
           }
@@ -886,8 +1755,7 @@ public class OnlyofficeEditorServiceImpl implements OnlyofficeEditorService, Sta
           // fire onLeaved event(s)
           syncUsers(configs, status.getUsers());
           // and remove this document from active configs
-          activeCache.remove(key);
-          activeCache.remove(config.getDocId());
+          removeConfigs(key, config);
         } else if (statusCode == 6) {
           // forcedsave done, save the version with its URL
           if (LOG.isDebugEnabled()) {
@@ -897,7 +1765,7 @@ public class OnlyofficeEditorServiceImpl implements OnlyofficeEditorService, Sta
           // Here we decide if we need to download content or just save the link
           if (status.isSaved()) {
             status.setConfig(getEditorByKey(status.getUserId(), key));
-            downloadVersion(status);
+            submitSave(status);
           } else {
             saveLink(status.getUserId(), key, status.getUrl());
           }
@@ -1022,50 +1890,151 @@ public class OnlyofficeEditorServiceImpl implements OnlyofficeEditorService, Sta
    */
   @Override
   public List<Version> getVersions(String workspace, String docId) throws Exception {
-    List<Version> versions = new ArrayList<>() ;
-    Node currentNode = getDocumentById(workspace, docId);
-    if(currentNode != null) {
-      VersionNode rootVersion = new VersionNode(currentNode, currentNode.getSession());
-
-      List<VersionNode> versionNodes = getNodeVersions(rootVersion.getChildren(), new ArrayList<>());
-      int versionNodesLength = versionNodes.size() > 3 ? 3 : versionNodes.size();
+    return getVersions(workspace, docId, 0, VERSIONS_PAGE_DEFAULT);
+  }
 
-      for (int i = 0 ; i < versionNodesLength; i++) {
-        VersionNode versionNode = versionNodes.get(i);
-        Version version = new Version();
-        version.setAuthor(versionNode.getAuthor());
-        version.setName(versionNode.getName());
-        version.setDisplayName(versionNode.getDisplayName());
-        version.setFullName(getUser(versionNode.getAuthor()).getDisplayName());
-        version.setVersionLabels(versionNode.getVersionLabels());
-        version.setCreatedTime(versionNode.getCreatedTime().getTimeInMillis());
-        versions.add(version);
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public List<Version> getVersions(String workspace, String docId, int offset, int limit) throws Exception {
+    // the node read in user session to check its permissions also for cached
+    // versions
+    Node node = getDocumentById(workspace, docId);
+    if (node != null && node.isNodeType("mix:versionable") && offset >= 0 && offset <= VERSIONS_OFFSET_MAX && limit > 0) {
+      limit = Math.min(limit, VERSIONS_PAGE_MAX);
+      if (offset + limit > VERSIONS_PAGE_MAX) {
+        // older versions not cached
+        return readVersions(node, offset, limit);
       }
+      String key = versionsKey(node.getSession().getWorkspace().getName(), docId);
+      List<Version> newest = versionCache.get(key);
+      if (newest == null) {
+        // if invalidated while reading, the read versions will not be cached
+        long epoch = versionEpoch.get();
+        newest = readVersions(node, 0, VERSIONS_PAGE_MAX);
+        if (epoch == versionEpoch.get()) {
+          versionCache.put(key, newest);
+        }
+      }
+      return new ArrayList<>(newest.subList(Math.min(offset, newest.size()), Math.min(offset + limit, newest.size())));
     }
+    return new ArrayList<>();
+  }
 
+  /**
+   * Read a page of the node versions from its version history, newest first.
+   *
+   * @param node the node
+   * @param offset the number of newest versions to skip
+   * @param limit the max number of versions in the page
+   * @return the versions
+   * @throws Exception the exception
+   */
+  protected List<Version> readVersions(Node node, int offset, int limit) throws Exception {
+    List<Version> versions = new ArrayList<>();
+    int size = offset + limit;
+    VersionHistory history = node.getVersionHistory();
+    String rootVersion = history.getRootVersion().getName();
+    // the newest versions by created time, the oldest of them on the top
+    PriorityQueue<Entry<Long, javax.jcr.version.Version>> newest = new PriorityQueue<>(Entry.comparingByKey());
+    for (VersionIterator viter = history.getAllVersions(); viter.hasNext();) {
+      javax.jcr.version.Version version = viter.nextVersion();
+      if (!rootVersion.equals(version.getName())) {
+        newest.add(new AbstractMap.SimpleImmutableEntry<>(version.getCreated().getTimeInMillis(), version));
+        if (newest.size() > size) {
+          newest.poll();
+        }
+      }
+    }
+    List<Entry<Long, javax.jcr.version.Version>> page = new ArrayList<>(newest);
+    page.sort(Entry.<Long, javax.jcr.version.Version> comparingByKey().reversed());
+    Map<String, String> displayNames = versionDisplayNames(node);
+    // users resolved once per author
+    Map<String, String> fullNames = new HashMap<>();
+    for (int i = offset; i < page.size(); i++) {
+      javax.jcr.version.Version jcrVersion = page.get(i).getValue();
+      Node frozen = jcrVersion.getNode("jcr:frozenNode");
+      String author = frozen.hasProperty("exo:lastModifier") ? frozen.getProperty("exo:lastModifier").getString() : null;
+      String fullName = author;
+      if (author != null) {
+        fullName = fullNames.get(author);
+        if (fullName == null) {
+          User user = getUser(author);
+          fullName = user != null ? user.getDisplayName() : author;
+          fullNames.put(author, fullName);
+        }
+      }
+      Version version = new Version();
+      version.setAuthor(author);
+      version.setName(jcrVersion.getName());
+      version.setDisplayName(versionDisplayName(jcrVersion.getName(), displayNames));
+      version.setFullName(fullName);
+      version.setVersionLabels(history.getVersionLabels(jcrVersion));
+      version.setCreatedTime(page.get(i).getKey());
+      versions.add(version);
+    }
     return versions;
   }
 
-  private List<VersionNode> getNodeVersions(List<VersionNode> children, List<VersionNode> versionNodes) throws Exception {
-    for(int i = 0; i < children.size(); i ++){
-      versionNodes.add(children.get(i));
-      List<VersionNode> child = children.get(i).getChildren() ;
-      if(!child.isEmpty()) {
-        getNodeVersions(child, versionNodes) ;
+  /**
+   * Invalidate cached versions of the document.
+   *
+   * @param workspace the workspace
+   * @param docId the document ID
+   */
+  protected void invalidateVersions(String workspace, String docId) {
+    versionEpoch.incrementAndGet();
+    versionCache.remove(versionsKey(workspace, docId));
+  }
+
+  /**
+   * Key of cached versions of the document.
+   *
+   * @param workspace the workspace
+   * @param docId the document ID
+   * @return the key
+   */
+  protected String versionsKey(String workspace, String docId) {
+    return new StringBuilder(workspace).append(':').append(docId).toString();
+  }
+
+  /**
+   * Display names of the node versions renamed by ECMS (when older versions
+   * restored or removed), as in {@link VersionNode}.
+   *
+   * @param node the node
+   * @return the map of version names to their display names
+   * @throws RepositoryException the repository exception
+   */
+  protected Map<String, String> versionDisplayNames(Node node) throws RepositoryException {
+    Map<String, String> names = new HashMap<>();
+    if (node.isNodeType(MIX_VERSION_DISPLAY_NAME) && node.hasProperty(VERSION_LIST)) {
+      for (Value value : node.getProperty(VERSION_LIST).getValues()) {
+        String[] entry = value.getString().split(VERSION_SEPARATOR);
+        if (entry.length > 1) {
+          names.put(entry[0], entry[1]);
+        }
       }
     }
-    versionNodes.sort((v1, v2) -> {
-      try {
-        if (Integer.parseInt(v1.getName()) < Integer.parseInt(v2.getName())) {
-          return 1;
-        } else {
-          return 0;
-        }
-      } catch (Exception e) {
-        return 0;
-      }
-    });
-    return versionNodes;
+    return names;
+  }
+
+  /**
+   * Display name of a version: its number (or the number it was renamed to)
+   * less one, as in {@link VersionNode}.
+   *
+   * @param name the version name
+   * @param displayNames the display names of renamed versions
+   * @return the display name
+   */
+  protected String versionDisplayName(String name, Map<String, String> displayNames) {
+    String number = displayNames.getOrDefault(name, name);
+    try {
+      return String.valueOf(Integer.parseInt(number) - 1);
+    } catch (NumberFormatException e) {
+      return number;
+    }
   }
 
   /**
@@ -1109,6 +2078,17 @@ public class OnlyofficeEditorServiceImpl implements OnlyofficeEditorService, Sta
         }
       }
     }
+    // invalidate cached users on their changes
+    organization.getUserHandler().addUserEventListener(new UserCacheListener());
+    organization.getUserProfileHandler().addUserProfileEventListener(new UserProfileCacheListener());
+    // invalidate cached drive labels on groups and spaces changes
+    organization.getGroupHandler().addGroupEventListener(new GroupCacheListener());
+    spaceService.registerSpaceListenerPlugin(new SpaceCacheListener());
+    // invalidate cached versions on their changes also made outside the editor
+    observeVersions();
+    versionRetention.start();
+    // saves not finished before last stop
+    replaySaves();
     LOG.info("Onlyoffice Editor service successfuly started");
   }
 
@@ -1117,9 +2097,154 @@ public class OnlyofficeEditorServiceImpl implements OnlyofficeEditorService, Sta
    */
   @Override
   public void stop() {
+    versionRetention.stop();
+    synchronized (versionSessions) {
+      versionSessions.forEach(Session::logout);
+      versionSessions.clear();
+    }
+    if (saveExecutor != null && !saveExecutor.shutdown(saveQueueWait * 6, TimeUnit.MILLISECONDS)) {
+      LOG.warn("Not all queued documents saved on stop, they will be saved on next start: " + saveExecutor.getQueueSize());
+    }
+    if (eventsExecutor != null && !eventsExecutor.shutdown(EVENTS_QUEUE_WAIT * 30, TimeUnit.MILLISECONDS)) {
+      LOG.warn("Not all queued events dispatched on stop: " + eventsExecutor.getQueueSize());
+    }
+    try {
+      documentserverClient.close();
+    } catch (IOException e) {
+      LOG.warn("Error closing Document Server connections", e);
+    }
     LOG.info("Onlyoffice  Editor service successfuly stopped");
   }
 
+  /**
+   * Register listeners of versions changes in all workspaces of current
+   * repository. The listeners remain registered while their sessions are
+   * open.
+   */
+  protected void observeVersions() {
+    try {
+      ManageableRepository repository = jcrService.getCurrentRepository();
+      for (String workspace : repository.getWorkspaceNames()) {
+        Session session = repository.getSystemSession(workspace);
+        session.getWorkspace()
+               .getObservationManager()
+               .addEventListener(new VersionCacheListener(workspace),
+                                 Event.PROPERTY_ADDED | Event.PROPERTY_CHANGED,
+                                 "/",
+                                 true,
+                                 null,
+                                 new String[] { "mix:versionable" },
+                                 false);
+        synchronized (versionSessions) {
+          versionSessions.add(session);
+        }
+      }
+    } catch (RepositoryException e) {
+      LOG.error("Cannot observe versions of documents, cached versions will expire by time", e);
+    }
+  }
+
+  /**
+   * Gets the HTTP client of Document Server (with connection pool metrics).
+   *
+   * @return the Document Server client
+   */
+  public DocumentServerClient getDocumentserverClient() {
+    return documentserverClient;
+  }
+
+  /**
+   * Gets the count of users found in the cache.
+   *
+   * @return the user cache hits
+   */
+  public int getUserCacheHits() {
+    return userCache.getCacheHit() + langCache.getCacheHit();
+  }
+
+  /**
+   * Gets the count of users not found in the cache and read from organization
+   * service.
+   *
+   * @return the user cache misses
+   */
+  public int getUserCacheMisses() {
+    return userCache.getCacheMiss() + langCache.getCacheMiss();
+  }
+
+  /**
+   * Gets the count of drive labels and symlinks found in the cache.
+   *
+   * @return the display path cache hits
+   */
+  public int getDisplayPathCacheHits() {
+    return driveCache.getCacheHit() + symlinkCache.getCacheHit();
+  }
+
+  /**
+   * Gets the count of drive labels and symlinks not found in the cache.
+   *
+   * @return the display path cache misses
+   */
+  public int getDisplayPathCacheMisses() {
+    return driveCache.getCacheMiss() + symlinkCache.getCacheMiss();
+  }
+
+  /**
+   * Gets the count of version pages found in the cache.
+   *
+   * @return the version cache hits
+   */
+  public int getVersionCacheHits() {
+    return versionCache.getCacheHit();
+  }
+
+  /**
+   * Gets the count of version pages not found in the cache.
+   *
+   * @return the version cache misses
+   */
+  public int getVersionCacheMisses() {
+    return versionCache.getCacheMiss();
+  }
+
+  /**
+   * Gets the tokens service (with validated tokens cache metrics).
+   *
+   * @return the token service
+   */
+  public TokenService getTokenService() {
+    return tokenService;
+  }
+
+  /**
+   * Gets the fetcher of edited content (with download metrics).
+   *
+   * @return the content fetcher
+   */
+  public ContentFetcher getContentFetcher() {
+    return contentFetcher;
+  }
+
+  /**
+   * Gets the timer of waiting for documents locked by other users (with a
+   * histogram of wait times).
+   *
+   * @return the lock wait timer
+   */
+  public Timer getLockWaitTime() {
+    return lockWaitTime;
+  }
+
+  /**
+   * Gets the count of lock waits ended by timeout.
+   *
+   * @return the lock timeouts count
+   */
+  public long getLockTimeouts() {
+    return lockTimeouts.getCount();
+  }
+
   /**
    * {@inheritDoc}
    */
@@ -1214,7 +2339,11 @@ public class OnlyofficeEditorServiceImpl implements OnlyofficeEditorService, Sta
                                                         .coEdited(coEdited)
                                                         .forcesaved(forcesaved)
                                                         .build();
-    downloadVersion(status);
+    try {
+      downloadVersion(status);
+    } catch (RepositoryException | OnlyofficeEditorException e) {
+      // already logged
+    }
   }
 
   /**
@@ -1222,12 +2351,13 @@ public class OnlyofficeEditorServiceImpl implements OnlyofficeEditorService, Sta
    */
   @Override
   public Editor.User getLastModifier(String key) {
-    ConcurrentMap<String, Config> configs = activeCache.get(key);
+    ConcurrentMap<String, Config> configs = getConfigs(key);
     Editor.User lastUser = null;
     if (configs != null) {
+      String docId = resolveDocId(key);
       long maxLastModified = 0;
       for (Entry<String, Config> entry : configs.entrySet()) {
-        Editor.User user = entry.getValue().getEditorConfig().getUser();
+        Editor.User user = readUserState(docId, entry.getValue().getEditorConfig().getUser());
         long lastModified = user.getLastModified();
         if (lastModified > maxLastModified) {
           maxLastModified = lastModified;
@@ -1243,12 +2373,23 @@ public class OnlyofficeEditorServiceImpl implements OnlyofficeEditorService, Sta
    */
   @Override
   public void setLastModifier(String key, String userId) {
-    ConcurrentMap<String, Config> configs = activeCache.get(key);
+    setLastModifier(key, userId, System.currentTimeMillis());
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void setLastModifier(String key, String userId, long lastModified) {
+    ConcurrentMap<String, Config> configs = getConfigs(key);
     if (configs != null) {
       Config config = configs.get(userId);
-      config.getEditorConfig().getUser().setLastModified(System.currentTimeMillis());
-      activeCache.put(key, configs);
-      activeCache.put(config.getDocId(), configs);
+      String docId = resolveDocId(key);
+      Editor.User user = readUserState(docId, config.getEditorConfig().getUser());
+      if (lastModified > user.getLastModified()) {
+        user.setLastModified(lastModified);
+        saveUserState(docId, user);
+      }
     }
   }
 
@@ -1257,9 +2398,9 @@ public class OnlyofficeEditorServiceImpl implements OnlyofficeEditorService, Sta
    */
   @Override
   public Editor.User getUser(String key, String userId) {
-    ConcurrentMap<String, Config> configs = activeCache.get(key);
+    ConcurrentMap<String, Config> configs = getConfigs(key);
     if (configs != null && configs.containsKey(userId)) {
-      return configs.get(userId).getEditorConfig().getUser();
+      return readUserState(resolveDocId(key), configs.get(userId).getEditorConfig().getUser());
     }
     return null;
   }
@@ -1268,76 +2409,143 @@ public class OnlyofficeEditorServiceImpl implements OnlyofficeEditorService, Sta
    * {@inheritDoc}
    */
   @Override
-  public void forceSave(String userId, String key, boolean download, boolean coEdit, boolean forcesaved, String comment) {
-    HttpURLConnection connection = null;
+  public boolean forceSave(String userId, String key, boolean download, boolean coEdit, boolean forcesaved, String comment) {
+    Span span = tracer.start("onlyoffice.forcesave", key)
+                      .attribute(Tracer.USER_ATTRIBUTE, userId)
+                      .attribute("onlyoffice.download", download);
     try {
       Userdata userdata = new Userdata(userId, download, coEdit, forcesaved, comment);
       String json = new JSONObject().put("c", "forcesave").put("key", key).put("userdata", userdata.toJSON()).toString();
-      byte[] postDataBytes = json.toString().getBytes("UTF-8");
-
-      URL url = new URL(commandServiceUrl);
-      connection = (HttpURLConnection) url.openConnection();
-      connection.setRequestMethod("POST");
-      connection.setRequestProperty("Content-Type", "application/json; charset=UTF-8");
-      connection.setRequestProperty("Content-Length", String.valueOf(postDataBytes.length));
-      connection.setDoOutput(true);
-      connection.setDoInput(true);
-
-      if (documentserverSecret != null && !documentserverSecret.trim().isEmpty()) {
-        String jwtToken = Jwts.builder()
-                              .setSubject("exo-onlyoffice")
-                              .claim("c", "forcesave")
-                              .claim("key", key)
-                              .claim("userdata", userdata.toJSON())
-                              .signWith(Keys.hmacShaKeyFor(documentserverSecret.getBytes()))
-                              .compact();
-        connection.setRequestProperty("Authorization", "Bearer " + jwtToken);
-      }
-
-      try (OutputStream outputStream = connection.getOutputStream()) {
-        outputStream.write(postDataBytes);
-      }
-      catch(Exception e) {
-        LOG.error("Error occured while sending request to Document Server: ", e);
-      }
-      // read the response
-      InputStream in = new BufferedInputStream(connection.getInputStream());
-      String response = IOUtils.toString(in, "UTF-8");
+
+      Map<String, Object> claims = new LinkedHashMap<>();
+      claims.put("c", "forcesave");
+      claims.put("key", key);
+      claims.put("userdata", userdata.toJSON());
+      String jwtToken = tokenService.createToken(claims);
+
+      // send the command over a pooled connection
+      String response;
+      long start = forceSaveTime.start();
+      try {
+        response = documentserverClient.postJSON(commandServiceUrl, json, jwtToken);
+      } finally {
+        forceSaveTime.stop(start);
+      }
       if (LOG.isDebugEnabled()) {
         LOG.debug("Command service responded on forcesave command: " + response);
       }
+      // count the command results by error code (0 is success)
+      String error = commandError(response);
+      metrics.counter("forcesave.error." + error).increment();
+      span.attribute("onlyoffice.command.error", error);
+      return "0".equals(error);
     } catch (Exception e) {
+      metrics.counter("forcesave.failures").increment();
+      span.error(e);
       LOG.error("Error in sending forcesave command. UserId: " + userId + ". Key: " + key + ". Download: " + download, e);
+      return false;
     } finally {
-      if (connection != null) {
-        connection.disconnect();
-      }
+      span.end();
     }
   }
 
-  @Override
-  public boolean validateToken(String token, String key) {
-    if (documentserverSecret == null || documentserverSecret.trim().isEmpty()) {
-      return true;
+  /**
+   * Read the error code of Command Service response.
+   *
+   * @param response the response
+   * @return the error code, or <code>unknown</code> if it cannot be read
+   */
+  protected String commandError(String response) {
+    if (response != null) {
+      try {
+        JSONObject json = new JSONObject(response);
+        if (json.has("error")) {
+          return String.valueOf(json.getInt("error"));
+        }
+      } catch (JSONException e) {
+        LOG.warn("Cannot read Command Service response: " + response);
+      }
     }
-    if (token != null && key != null) {
+    return "unknown";
+  }
+
+  /**
+   * Register metrics of the editors in the registry: sizes of editing
+   * documents cache, saves, downloads, locks and caches of this service.
+   */
+  protected void registerMetrics() {
+    metrics.gauge("documents.active", () -> activeCache.getCacheSize());
+    metrics.gauge("editors.active", () -> {
+      int open = 0;
       try {
-        Jws<Claims> jws = Jwts.parser().setSigningKey(Keys.hmacShaKeyFor(documentserverSecret.getBytes())).parseClaimsJws(token);
-        @SuppressWarnings("unchecked")
-        Map<String, Object> claims = (Map<String, Object>) jws.getBody().get("payload");
-        if (claims != null) {
-          if (claims.containsKey("key")) {
-            return String.valueOf(claims.get("key")).equals(key);
-          }
-          if (claims.containsKey("url")) {
-            return String.valueOf(claims.get("url")).endsWith(key);
+        for (ConcurrentMap<String, Config> configs : activeCache.getCachedObjects()) {
+          for (Config config : configs.values()) {
+            if (config.isOpen()) {
+              open++;
+            }
           }
         }
       } catch (Exception e) {
-        LOG.warn("Couldn't validate the token: {} key: {} :", token, key, e.getMessage());
+        LOG.warn("Cannot count active editors: " + e.getMessage());
+        return null;
       }
+      return open;
+    });
+    metrics.register("save", saveTime);
+    metrics.register("save.failed", saveFailures);
+    if (saveExecutor != null) {
+      metrics.gauge("save.queue", saveExecutor::getQueueSize);
+      metrics.gauge("save.active", saveExecutor::getActiveCount);
+      metrics.register("save.rejected", saveExecutor.getRejected());
+      metrics.register("save.replayed", savesReplayed);
+      metrics.register("save.wait", saveExecutor.getQueueTime());
     }
-    return false;
+    metrics.gauge("versions.pending", versionRetention::getPending);
+    metrics.register("versions.pruned", versionRetention.getPruned());
+    metrics.register("versions.failures", versionRetention.getFailures());
+    metrics.register("versions.prune", versionRetention.getPruneTime());
+    metrics.gauge("versions.history.last", versionRetention::getHistoryLast);
+    metrics.gauge("versions.history.max", versionRetention::getHistoryMax);
+    if (eventsExecutor != null) {
+      metrics.gauge("events.queue", eventsExecutor::getQueueSize);
+      metrics.gauge("events.active", eventsExecutor::getActiveCount);
+      metrics.register("events.rejected", eventsExecutor.getRejected());
+      metrics.register("events.overflow", eventsExecutor.getOverflowed());
+      metrics.register("events.wait", eventsExecutor.getQueueTime());
+      metrics.register("events.run", eventsExecutor.getRunTime());
+    }
+    metrics.register("download", contentFetcher.getFetchTime());
+    metrics.gauge("download.bytes", contentFetcher::getBytes);
+    metrics.gauge("download.retries", contentFetcher::getRetries);
+    metrics.gauge("download.failures", contentFetcher::getFailures);
+    metrics.register("http.request", documentserverClient.getRequestTime());
+    metrics.gauge("http.leased", () -> documentserverClient.getPoolStats().getLeased());
+    metrics.gauge("http.pending", () -> documentserverClient.getPoolStats().getPending());
+    metrics.gauge("http.available", () -> documentserverClient.getPoolStats().getAvailable());
+    metrics.register("lock.wait", lockWaitTime);
+    metrics.register("lock.timeouts", lockTimeouts);
+    metrics.gauge("token.cache.hits", tokenService::getCacheHits);
+    metrics.gauge("token.cache.misses", tokenService::getCacheMisses);
+    metrics.gauge("user.cache.hits", this::getUserCacheHits);
+    metrics.gauge("user.cache.misses", this::getUserCacheMisses);
+    metrics.gauge("path.cache.hits", this::getDisplayPathCacheHits);
+    metrics.gauge("path.cache.misses", this::getDisplayPathCacheMisses);
+    metrics.gauge("versions.cache.hits", this::getVersionCacheHits);
+    metrics.gauge("versions.cache.misses", this::getVersionCacheMisses);
+  }
+
+  /**
+   * Gets the metrics registry.
+   *
+   * @return the metrics
+   */
+  public MetricsRegistry getMetrics() {
+    return metrics;
+  }
+
+  @Override
+  public boolean validateToken(String token, String key) {
+    return tokenService.validate(token, key);
   }
 
   @Override
@@ -1402,11 +2610,18 @@ public class OnlyofficeEditorServiceImpl implements OnlyofficeEditorService, Sta
    */
   @Override
   public User getUser(String username) throws OnlyofficeEditorException {
-    try {
-      return organization.getUserHandler().findUserByName(username);
-    } catch (Exception e) {
-      throw new OnlyofficeEditorException("Error searching user " + username, e);
+    User user = userCache.get(username);
+    if (user == null) {
+      try {
+        user = organization.getUserHandler().findUserByName(username);
+      } catch (Exception e) {
+        throw new OnlyofficeEditorException("Error searching user " + username, e);
+      }
+      if (user != null) {
+        userCache.put(username, user);
+      }
     }
+    return user;
   }
 
   /**
@@ -1436,6 +2651,7 @@ public class OnlyofficeEditorServiceImpl implements OnlyofficeEditorService, Sta
     }
     userPreferences.setProperty("path", path);
     node.save();
+    symlinkCache.remove(symlinkKey(node, userId));
   }
 
   // *********************** implementation level ***************
@@ -1448,22 +2664,221 @@ public class OnlyofficeEditorServiceImpl implements OnlyofficeEditorService, Sta
    * @param url the url
    */
   protected void saveLink(String userId, String key, String url) {
-    ConcurrentMap<String, Config> configs = activeCache.get(key);
+    ConcurrentMap<String, Config> configs = getConfigs(key);
     if (configs != null) {
       Config config = configs.get(userId);
-      config.getEditorConfig().getUser().setDownloadLink(url);
-      config.getEditorConfig().getUser().setLinkSaved(System.currentTimeMillis());
-      activeCache.put(key, configs);
-      activeCache.put(config.getDocId(), configs);
+      String docId = resolveDocId(key);
+      Editor.User user = readUserState(docId, config.getEditorConfig().getUser());
+      user.setDownloadLink(url);
+      user.setLinkSaved(System.currentTimeMillis());
+      saveUserState(docId, user);
+    }
+  }
+
+  /**
+   * Run a save of a document status: content of a closed document, of a saving
+   * error or a forcesaved version. By default the save runs in the caller
+   * thread and its failure goes to the caller: the Document Server gets an
+   * error and will retry the callback later. If asynchronous saving
+   * configured, the save recorded in the saves journal, queued after already
+   * queued saves of the document and this method return immediately. The
+   * journal entry removed when the content stored, a failed save stays in the
+   * journal and will be replayed on next start. If the save cannot be recorded,
+   * or the queue is full longer than {@value #CONFIG_SAVE_QUEUE_WAIT}, the
+   * caller fails.
+   *
+   * @param status the status
+   * @throws OnlyofficeEditorException if the save cannot be queued or failed
+   * @throws RepositoryException if the save cannot be recorded or failed in the
+   *           storage
+   */
+  protected void submitSave(DocumentStatus status) throws OnlyofficeEditorException, RepositoryException {
+    if (saveExecutor != null) {
+      String docId = status.getConfig().getDocId();
+      String entryId;
+      try {
+        entryId = saveJournal.add(docId, status.toBytes());
+      } catch (IOException e) {
+        throw new OnlyofficeEditorException("Cannot record document save " + docId, e);
+      }
+      if (!queueSave(docId, entryId, statusSave(status))) {
+        saveJournal.remove(entryId);
+        throw new OnlyofficeEditorException("Too many documents saving, cannot save now " + docId);
+      }
+    } else {
+      timedSave(statusSave(status));
+    }
+  }
+
+  /**
+   * Queue a recorded save after already queued saves of the document. The save
+   * removed from the journal when the content stored, or if nothing to store
+   * (the document not found), a failure is logged and the save stays in the
+   * journal.
+   *
+   * @param docId the document ID
+   * @param entryId the journal entry ID
+   * @param save the save
+   * @return <code>true</code> if queued, <code>false</code> if the queue stays
+   *         full or interrupted
+   */
+  protected boolean queueSave(String docId, String entryId, Save save) {
+    Runnable queuedSave = () -> {
+      try {
+        timedSave(save);
+      } catch (OnlyofficeEditorException | RepositoryException e) {
+        LOG.error("Error saving document asynchronously, it will be saved again on next start. docId: " + docId, e);
+        return;
+      }
+      try {
+        saveJournal.remove(entryId);
+      } catch (RepositoryException e) {
+        LOG.error("Error removing stored document save from journal, it will be saved again on next start. docId: " + docId, e);
+      }
+    };
+    try {
+      return saveExecutor.execute(docId, new ContainerTask(queuedSave), saveQueueWait, TimeUnit.MILLISECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return false;
+    }
+  }
+
+  /**
+   * Save of a document status.
+   *
+   * @param status the status of a closed document (2), saving error (3) or
+   *          forcesaved version (6)
+   * @return the save
+   */
+  protected Save statusSave(DocumentStatus status) {
+    long statusCode = status.getStatus();
+    if (statusCode == 2) {
+      return () -> {
+        downloadClosed(status);
+        removeConfigs(status.getKey(), status.getConfig());
+      };
+    } else if (statusCode == 3) {
+      return () -> saveLastChange(status);
+    } else {
+      return () -> downloadVersion(status);
+    }
+  }
+
+  /**
+   * Save the last successful change reported with a saving error (status 3).
+   * The error reported to the editor, the save failure not thrown: Document
+   * Server doesn't retry the error.
+   *
+   * @param status the status
+   */
+  protected void saveLastChange(DocumentStatus status) {
+    String key = status.getKey();
+    Config config = status.getConfig();
+    try {
+      downloadClosed(status);
+    } catch (OnlyofficeEditorException | RepositoryException e) {
+      // No sense to throw here, as for the error without URL
+      config.setError("Error in editor (" + status.getError() + "). Last change cannot be saved");
+      ConcurrentMap<String, Config> configs = getConfigs(key);
+      if (configs != null) {
+        // Update cached (for replicated cache)
+        putConfigs(key, configs);
+      }
+      fireError(status);
+      broadcastEvent(status, OnlyofficeEditorService.EDITOR_ERROR_EVENT);
+      return;
+    }
+    removeConfigs(key, config);
+    config.setError("Error in editor (" + status.getError() + "). Last change was successfully saved");
+    fireError(status);
+    broadcastEvent(status, OnlyofficeEditorService.EDITOR_ERROR_EVENT);
+    LOG.warn("Received Onlyoffice error of saving document. Key: " + key + ". Users: " + Arrays.toString(status.getUsers())
+        + ". Error: " + status.getError() + ". Last change was successfully saved for " + nodePath(config));
+  }
+
+  /**
+   * Replay saves left in the journal after a stop or a crash, in order of their
+   * record. A save replayed not more than {@value #SAVE_REPLAY_ATTEMPTS} times,
+   * then removed from the journal with an error.
+   */
+  protected void replaySaves() {
+    if (saveJournal != null) {
+      try {
+        for (SaveJournal.Entry entry : saveJournal.entries()) {
+          String docId = entry.getDocId();
+          if (entry.getAttempts() >= SAVE_REPLAY_ATTEMPTS) {
+            LOG.error("Document save failed after " + entry.getAttempts() + " replays, last changes not stored. docId: " + docId);
+            saveJournal.remove(entry.getId());
+            continue;
+          }
+          DocumentStatus status;
+          try {
+            status = DocumentStatus.fromBytes(entry.getData());
+          } catch (IOException | ClassNotFoundException | RuntimeException e) {
+            LOG.error("Cannot read recorded document save, last changes not stored. docId: " + docId, e);
+            saveJournal.remove(entry.getId());
+            continue;
+          }
+          saveJournal.attempted(entry.getId());
+          if (queueSave(docId, entry.getId(), statusSave(status))) {
+            savesReplayed.increment();
+          } else {
+            LOG.warn("Cannot queue recorded document save, it will be replayed on next start. docId: " + docId);
+          }
+        }
+      } catch (RepositoryException e) {
+        LOG.error("Error replaying recorded document saves", e);
+      }
+    }
+  }
+
+  /**
+   * Run a save counting its time and failures.
+   *
+   * @param save the save
+   * @throws OnlyofficeEditorException if the save failed
+   * @throws RepositoryException if the save failed in the storage
+   */
+  protected void timedSave(Save save) throws OnlyofficeEditorException, RepositoryException {
+    long start = saveTime.start();
+    try {
+      save.run();
+    } catch (OnlyofficeEditorException | RepositoryException | RuntimeException e) {
+      saveFailures.increment();
+      throw e;
+    } finally {
+      saveTime.stop(start);
+    }
+  }
+
+  /**
+   * Gets a numeric configuration value.
+   *
+   * @param name the name
+   * @param defaultValue the default value
+   * @return the value
+   */
+  protected long configNumber(String name, long defaultValue) {
+    String value = config.get(name);
+    if (value != null && (value = value.trim()).length() > 0) {
+      try {
+        return Long.parseLong(value);
+      } catch (NumberFormatException e) {
+        LOG.warn("Wrong number in configuration " + name + ": " + value + ". Default value will be used: " + defaultValue);
+      }
     }
+    return defaultValue;
   }
 
   /**
    * Downloads document's content to the JCR node when the editor is closed.
    * 
    * @param status the status
+   * @throws OnlyofficeEditorException if the content cannot be downloaded
+   * @throws RepositoryException if the content cannot be stored
    */
-  protected void downloadClosed(DocumentStatus status) {
+  protected void downloadClosed(DocumentStatus status) throws OnlyofficeEditorException, RepositoryException {
     Config config = status.getConfig();
     // First mark closing, then do actual download and save in storage
     config.closing();
@@ -1471,9 +2886,14 @@ public class OnlyofficeEditorServiceImpl implements OnlyofficeEditorService, Sta
     try {
       download(status);
       config.getEditorConfig().getUser().setLastSaved(System.currentTimeMillis());
+      saveUserState(resolveDocId(status.getKey()), config.getEditorConfig().getUser());
       config.closed(); // reset transient closing state
+    } catch (DocumentNotFoundException e) {
+      // nothing to save in, Document Server should not retry
+      LOG.warn("Document not found to save its content [Closed]. docId: " + config.getDocId() + ". " + e.getMessage());
     } catch (OnlyofficeEditorException | RepositoryException e) {
       LOG.error("Error occured while downloading document content [Closed]. docId: " + config.getDocId(), e);
+      throw e;
     }
   }
 
@@ -1593,13 +3013,7 @@ public class OnlyofficeEditorServiceImpl implements OnlyofficeEditorService, Sta
    * @return the uuid
    */
   protected UUID generateId(String workspace, String path) {
-    StringBuilder s = new StringBuilder();
-    s.append(workspace);
-    s.append(path);
-    s.append(System.currentTimeMillis());
-    s.append(String.valueOf(RANDOM.nextLong()));
-
-    return UUID.nameUUIDFromBytes(s.toString().getBytes());
+    return CoEditing.generateId(workspace, path);
   }
 
   /**
@@ -1631,42 +3045,41 @@ public class OnlyofficeEditorServiceImpl implements OnlyofficeEditorService, Sta
    * @return true, if actually changed editor config user(s)
    */
   protected boolean syncUsers(ConcurrentMap<String, Config> configs, String[] users) {
-    Set<String> editors = new HashSet<String>(Arrays.asList(users));
-    // remove gone editors
-    boolean updated = false;
-    for (Iterator<Map.Entry<String, Config>> ceiter = configs.entrySet().iterator(); ceiter.hasNext();) {
-      Map.Entry<String, Config> ce = ceiter.next();
-      String user = ce.getKey();
-      Config config = ce.getValue();
-
-      DocumentStatus status = new DocumentStatus.Builder().config(config)
-                                                          .key(config.getDocument().getKey())
-                                                          .url(config.getEditorUrl())
-                                                          .users(users)
-                                                          .build();
-
-      if (editors.contains(user)) {
-        if (config.isCreated() || config.isClosed()) {
-          // editor was (re)opened by user
-          config.open();
-          fireJoined(status);
-          broadcastEvent(status, OnlyofficeEditorService.EDITOR_OPENED_EVENT);
-          updated = true;
-        }
+    // opened and closed configs in one list to fire events in order of users
+    List<Config> changed = new ArrayList<>();
+    CoEditing.syncUsers(configs, users, changed, changed);
+    // statuses built only for changed editors
+    for (Config config : changed) {
+      if (config.isClosed()) {
+        // the recent state kept in the config (replicated with the configs),
+        // not in the states cache
+        Editor.User user = readUserState(config.getDocId(), config.getEditorConfig().getUser());
+        stateCache.remove(userStateKey(config.getDocId(), user.getId()));
+        DocumentStatus status = userStatus(config, users);
+        fireLeaved(status);
+        broadcastEvent(status, OnlyofficeEditorService.EDITOR_CLOSED_EVENT);
       } else {
-        // editor was closed by user: it will be closing if closed via WebUI of
-        // ECMS explorer, open in general case
-        if (config.isClosing() || config.isOpen()) {
-          // closed because user sync happens when someone else still editing or
-          // nothing edited
-          config.closed();
-          fireLeaved(status);
-          broadcastEvent(status, OnlyofficeEditorService.EDITOR_CLOSED_EVENT);
-          updated = true;
-        }
+        DocumentStatus status = userStatus(config, users);
+        fireJoined(status);
+        broadcastEvent(status, OnlyofficeEditorService.EDITOR_OPENED_EVENT);
       }
     }
-    return updated;
+    return changed.size() > 0;
+  }
+
+  /**
+   * Status of an user editor for co-editing events.
+   *
+   * @param config the config
+   * @param users the users
+   * @return the document status
+   */
+  protected DocumentStatus userStatus(Config config, String[] users) {
+    return new DocumentStatus.Builder().config(config)
+                                       .key(config.getDocument().getKey())
+                                       .url(config.getEditorUrl())
+                                       .users(users)
+                                       .build();
   }
 
   /**
@@ -1676,42 +3089,62 @@ public class OnlyofficeEditorServiceImpl implements OnlyofficeEditorService, Sta
    * @return the current users
    */
   protected String[] getActiveUsers(ConcurrentMap<String, Config> configs) {
-    // copy key set to avoid confuses w/ concurrency
-    Set<String> userIds = new LinkedHashSet<String>(configs.keySet());
-    // remove not existing locally (just removed), not yet open (created) or
-    // already closed
-    for (Iterator<String> uiter = userIds.iterator(); uiter.hasNext();) {
-      String userId = uiter.next();
-      Config config = configs.get(userId);
-      if (config == null || config.isCreated() || config.isClosed()) {
-        uiter.remove();
-      }
-    }
-    return userIds.toArray(new String[userIds.size()]);
+    return CoEditing.activeUsers(configs);
   }
 
   /**
    * Downloads document's content to the JCR node creating a new version.
    * 
    * @param status the status
+   * @throws OnlyofficeEditorException if the content cannot be downloaded
+   * @throws RepositoryException if the content cannot be stored
    */
-  protected void downloadVersion(DocumentStatus status) {
+  protected void downloadVersion(DocumentStatus status) throws OnlyofficeEditorException, RepositoryException {
     try {
       download(status);
-      status.getConfig().getEditorConfig().getUser().setLastSaved(System.currentTimeMillis());
+      Editor.User user = status.getConfig().getEditorConfig().getUser();
+      user.setLastSaved(System.currentTimeMillis());
+      saveUserState(resolveDocId(status.getKey()), user);
+    } catch (DocumentNotFoundException e) {
+      // nothing to save in, Document Server should not retry
+      LOG.warn("Document not found to save its content [Version]. docId: " + status.getConfig().getDocId() + ". "
+          + e.getMessage());
     } catch (RepositoryException | OnlyofficeEditorException e) {
       LOG.error("Error occured while downloading document [Version]. docId: " + status.getConfig().getDocId(), e);
+      throw e;
     }
   }
 
   /**
-   * Downloads document's content to the JCR node.
+   * Downloads document's content to the JCR node, traced in stages: fetch,
+   * read, lock, write, version and events.
    * 
    * @param status the status
    * @throws OnlyofficeEditorException the OnlyofficeEditorException
    * @throws RepositoryException the RepositoryException
    */
   protected void download(DocumentStatus status) throws OnlyofficeEditorException, RepositoryException {
+    Span span = tracer.start("onlyoffice.download", status.getConfig().getDocument().getKey())
+                      .attribute(Tracer.USER_ATTRIBUTE, status.getUserId())
+                      .attribute("onlyoffice.status", status.getStatus());
+    try {
+      downloadContent(status);
+    } catch (OnlyofficeEditorException | RepositoryException | RuntimeException e) {
+      span.error(e);
+      throw e;
+    } finally {
+      span.end();
+    }
+  }
+
+  /**
+   * Downloads document's content to the JCR node.
+   * 
+   * @param status the status
+   * @throws OnlyofficeEditorException the OnlyofficeEditorException
+   * @throws RepositoryException the RepositoryException
+   */
+  protected void downloadContent(DocumentStatus status) throws OnlyofficeEditorException, RepositoryException {
     Config config = status.getConfig();
     String workspace = config.getWorkspace();
     String path = config.getPath();
@@ -1724,17 +3157,16 @@ public class OnlyofficeEditorServiceImpl implements OnlyofficeEditorService, Sta
     validateUser(userId, config);
     String contentUrl = status.getUrl();
     Calendar editedTime = Calendar.getInstance();
-    HttpURLConnection connection = null;
+    ContentFetcher.Content fetched = null;
     InputStream data = null;
-    // If we have content to download
+    Span stage = tracer.start("onlyoffice.download.fetch");
+    // If we have content to download: fetch it before locking the document
     if (contentUrl != null) {
       try {
-        URL url = new URL(contentUrl);
-        connection = (HttpURLConnection) url.openConnection();
-        data = connection.getInputStream();
-        if (data == null) {
-          logError(userId, config.getPath(), config.getDocId(), config.getDocument().getKey(), "Content stream is null");
-          throw new OnlyofficeEditorException("Content stream is null");
+        fetched = contentFetcher.fetch(contentUrl);
+        data = fetched.getStream();
+        if (LOG.isDebugEnabled()) {
+          LOG.debug("Fetched content of {} ({} bytes, spooled: {})", path, fetched.getSize(), fetched.isSpooled());
         }
       } catch (MalformedURLException e) {
         logError(userId, config.getPath(), config.getDocId(), config.getDocument().getKey(), "Error parsing content URL");
@@ -1745,6 +3177,8 @@ public class OnlyofficeEditorServiceImpl implements OnlyofficeEditorService, Sta
       }
     }
 
+    stage = stage.next("onlyoffice.download.read");
+
     // remember real context state and session provider to restore them at the end
     ConversationState contextState = ConversationState.getCurrent();
     SessionProvider contextProvider = sessionProviders.getSessionProvider(null);
@@ -1799,10 +3233,34 @@ public class OnlyofficeEditorServiceImpl implements OnlyofficeEditorService, Sta
 
       Node content = nodeContent(node);
       String nodePath = nodePath(workspace, node.getPath());
+      // Comment of the version posted to the document activity before the
+      // lock, under the lock only its ID written and the version labeled
+      stage = stage.next("onlyoffice.download.comment");
+      String activityId = null;
+      if (status.getComment() != null && !status.getComment().trim().isEmpty()) {
+        activityId = ActivityTypeUtils.getActivityId(node);
+      }
+      long commentStart = commentTime.start();
+      String commentId = postComment(activityId, status);
+      commentTime.stop(commentStart);
       // lock node first, this also will check if node isn't locked by another
       // user (will throw exception)
-      final LockState lock = lock(node, config);
+      stage = stage.next("onlyoffice.download.lock");
+      final LockState lock;
+      try {
+        lock = lock(node, config);
+      } catch (OnlyofficeEditorException | RepositoryException | RuntimeException e) {
+        discardComment(activityId, commentId);
+        throw e;
+      }
+      stage = stage.next("onlyoffice.download.write");
       if (lock.canEdit()) {
+        // Only JCR changes and versioning done under the lock, events of the
+        // saved document after the unlock
+        long lockStart = lockHoldTime.start();
+        boolean saved = false;
+        String baseVersion = null;
+        List<Runnable> events = new ArrayList<>();
         // This modifierConfig can be different from 'config'
         Config modifierConfig = getEditor(userId, config.getDocId(), false);
         if (modifierConfig == null) {
@@ -1858,25 +3316,9 @@ public class OnlyofficeEditorServiceImpl implements OnlyofficeEditorService, Sta
             node.setProperty("exo:dateModified", editedTime);
           }
 
-          // Add comment to the FileActivity with current file
-          String commentId = null;
-          String versionSummary = null;
-          if (status.getComment() != null && !status.getComment().trim().isEmpty()) {
-            String activityId = ActivityTypeUtils.getActivityId(node);
-            if (activityId != null) {
-              commentId = addComment(activityId, status.getComment(), userId);
-              versionSummary = status.getComment().trim();
-            }
-          }
-
-          if (commentId != null) {
-            node.setProperty("eoo:commentId", commentId);
-            config.getEditorPage().setComment(status.getComment());
-          } else {
-            node.setProperty("eoo:commentId", "");
-            config.getEditorPage().setComment(null);
-          }
-          updateCache(config);
+          // the comment ID also marks the node commented for
+          // DocumentUpdateActivityListener
+          node.setProperty("eoo:commentId", commentId != null ? commentId : "");
 
           // update document
           if (data != null) {
@@ -1885,31 +3327,20 @@ public class OnlyofficeEditorServiceImpl implements OnlyofficeEditorService, Sta
             // Set the same data to call listeners
             content.setProperty("jcr:data", content.getProperty("jcr:data").getStream());
           }
-          node.save();
           long statusCode = status.getStatus() != null ? status.getStatus() : -1;
-
-          String versioningUser = null;
-          if (frozen.hasProperty("eoo:versionOwner")) {
-            versioningUser = frozen.getProperty("eoo:versionOwner").getString();
-          }
-
-          // Version accumulation for same user
-          if (!status.isForcesaved() && versionable && userId.equals(versioningUser)) {
-            String versionName = node.getBaseVersion().getName();
-            if (LOG.isDebugEnabled()) {
-              LOG.debug("Version accumulation: removig version " + versionName + " from node " + nodePath);
-            }
-            node.getVersionHistory().removeVersion(versionName);
-          }
-
+          // accumulated versions of the same user collapsed by the retention
           if (statusCode != 2 && !status.isForcesaved()) {
             node.setProperty("eoo:versionOwner", userId);
           } else {
             node.setProperty("eoo:versionOwner", "");
           }
           node.setProperty("eoo:onlyofficeVersion", true);
-
+          // content and version properties saved at once
           node.save();
+          lockWriteTime.stop(lockStart);
+          stage = stage.next("onlyoffice.download.version");
+          long versionStart = lockVersionTime.start();
+
           // manage version only if node already mix:versionable
           if (checkout(node)) {
             // Make a new version from the downloaded state
@@ -1921,29 +3352,34 @@ public class OnlyofficeEditorServiceImpl implements OnlyofficeEditorService, Sta
             // Remove properties from node
             node.setProperty("eoo:versionOwner", "");
             node.setProperty("eoo:onlyofficeVersion", false);
+            node.save();
 
-            // Add version summary
-            if (versionable && versionSummary != null) {
-              String baseVersion = node.getBaseVersion().getName();
-              try {
-                node.getVersionHistory().addVersionLabel(baseVersion, versionSummary, false);
-              } catch (Exception e) {
-                LOG.debug("Cannot add version label {}", e.getMessage());
+            if (versionable) {
+              baseVersion = node.getBaseVersion().getName();
+              // Add version summary
+              if (commentId != null) {
+                try {
+                  node.getVersionHistory().addVersionLabel(baseVersion, status.getComment().trim(), false);
+                } catch (Exception e) {
+                  LOG.debug("Cannot add version label {}", e.getMessage());
+                }
               }
             }
-            node.save();
 
             // If the status code == 2, the EDITOR_SAVED_EVENT should be thrown.
             if (statusCode != 2) {
-              broadcastEvent(status, OnlyofficeEditorService.EDITOR_VERSION_EVENT);
+              events.add(() -> broadcastEvent(status, OnlyofficeEditorService.EDITOR_VERSION_EVENT));
             }
           }
 
-          fireSaved(status);
+          events.add(() -> fireSaved(status));
           if (statusCode == 2) {
-            broadcastEvent(status, OnlyofficeEditorService.EDITOR_SAVED_EVENT);
+            events.add(() -> broadcastEvent(status, OnlyofficeEditorService.EDITOR_SAVED_EVENT));
           }
+          lockVersionTime.stop(versionStart);
+          saved = true;
         } catch (RepositoryException e) {
+          stage.error(e);
           try {
             node.refresh(false); // rollback JCR modifications
           } catch (Throwable re) {
@@ -1954,27 +3390,18 @@ public class OnlyofficeEditorServiceImpl implements OnlyofficeEditorService, Sta
           // Remove values after usage in DocumentUdateActivityListener
           modifierConfig.setPreviousModified(null);
           modifierConfig.setSameModifier(null);
-          if (data != null) {
-            try {
-              data.close();
-            } catch (Throwable e) {
-              logError(userId,
-                       nodePath,
-                       config.getDocId(),
-                       config.getDocument().getKey(),
-                       "Error closing exported content stream");
-            }
-          }
-          if (connection != null) {
-            try {
-              connection.disconnect();
-            } catch (Throwable e) {
-              logError(userId, nodePath, config.getDocId(), config.getDocument().getKey(), "Error closing export connection");
-            }
+          if (!saved && commentId != null) {
+            // still under the lock
+            resetComment(node, commentId);
+            discardComment(activityId, commentId);
           }
           try {
-            if (node.isLocked() && lock.wasLocked()) {
-              unlock(node, lock);
+            if (lock.wasLocked()) {
+              if (node.isLocked()) {
+                unlock(node, lock);
+              } else {
+                localLocks.released(lockKey(node));
+              }
             }
           } catch (Throwable e) {
             logError(userId,
@@ -1983,26 +3410,172 @@ public class OnlyofficeEditorServiceImpl implements OnlyofficeEditorService, Sta
                      config.getDocument().getKey(),
                      "Error unlocking edited document");
           }
+          lockHoldTime.stop(lockStart);
         }
+        commentVersion(status, commentId);
+        if (baseVersion != null) {
+          invalidateVersions(workspace, config.getDocId());
+          versionRetention.schedule(workspace, config.getDocId());
+        }
+        stage = stage.next("onlyoffice.download.events");
+        events.forEach(Runnable::run);
       } else {
+        discardComment(activityId, commentId);
         logError(userId, config.getPath(), config.getDocId(), config.getDocument().getKey(), "Document locked");
         throw new OnlyofficeEditorException("Document locked " + nodePath);
       }
     } finally {
+      stage.end();
+      if (fetched != null) {
+        try {
+          fetched.close();
+        } catch (Throwable e) {
+          logError(userId, path, config.getDocId(), config.getDocument().getKey(), "Error closing exported content");
+        }
+      }
       restoreConvoState(contextState, contextProvider);
     }
   }
 
+  /**
+   * Gets the configs of an editing document by its key or ID. Configs stored by
+   * the document key in older, double-keyed, layout of the cache will be moved
+   * to the document ID entry with an index record for the key.
+   *
+   * @param keyOrDocId the document key or ID
+   * @return the configs map or <code>null</code> if not editing
+   */
+  protected ConcurrentMap<String, Config> getConfigs(String keyOrDocId) {
+    String docId = keyCache.get(keyOrDocId);
+    if (docId != null) {
+      return activeCache.get(docId);
+    }
+    ConcurrentMap<String, Config> configs = activeCache.get(keyOrDocId);
+    if (configs != null) {
+      Iterator<Config> citer = configs.values().iterator();
+      if (citer.hasNext()) {
+        Config config = citer.next();
+        docId = config.getDocId();
+        if (keyOrDocId.equals(config.getDocument().getKey()) && docId != null && !docId.equals(keyOrDocId)) {
+          // It's an entry of the legacy layout: migrate it
+          if (activeCache.get(docId) == null) {
+            activeCache.put(docId, configs);
+          }
+          keyCache.put(keyOrDocId, docId);
+          activeCache.remove(keyOrDocId);
+          if (LOG.isDebugEnabled()) {
+            LOG.debug("Migrated editor configs of {} from key {}", docId, keyOrDocId);
+          }
+        }
+      }
+    }
+    return configs;
+  }
+
+  /**
+   * Adds configs of a new editing document to the cache and index its key.
+   *
+   * @param key the document key
+   * @param docId the document ID
+   * @param configs the configs
+   */
+  protected void addConfigs(String key, String docId, ConcurrentMap<String, Config> configs) {
+    activeCache.put(docId, configs);
+    keyCache.put(key, docId);
+  }
+
+  /**
+   * Puts configs of an editing document to the cache (it should be done on
+   * each change for replicated cache).
+   *
+   * @param keyOrDocId the document key or ID
+   * @param configs the configs
+   */
+  protected void putConfigs(String keyOrDocId, ConcurrentMap<String, Config> configs) {
+    activeCache.put(resolveDocId(keyOrDocId), configs);
+  }
+
+  /**
+   * Removes configs of an editing document from the cache and its key from
+   * the index.
+   *
+   * @param keyOrDocId the document key or ID
+   * @param config the config of the document
+   */
+  protected void removeConfigs(String keyOrDocId, Config config) {
+    String key = config.getDocument().getKey();
+    String docId = keyCache.get(key);
+    if (docId == null) {
+      docId = keyOrDocId;
+    }
+    ConcurrentMap<String, Config> configs = activeCache.remove(docId);
+    keyCache.remove(key);
+    if (configs != null) {
+      for (String userId : configs.keySet()) {
+        stateCache.remove(userStateKey(docId, userId));
+      }
+    }
+  }
+
+  /**
+   * Resolve document ID by given document key or ID.
+   *
+   * @param keyOrDocId the document key or ID
+   * @return the document ID
+   */
+  protected String resolveDocId(String keyOrDocId) {
+    String docId = keyCache.get(keyOrDocId);
+    return docId != null ? docId : keyOrDocId;
+  }
+
+  /**
+   * Key of an editor user state in the states cache.
+   *
+   * @param docId the document ID
+   * @param userId the user ID
+   * @return the key
+   */
+  protected String userStateKey(String docId, String userId) {
+    return new StringBuilder(docId).append('/').append(userId).toString();
+  }
+
+  /**
+   * Apply recent state of given editor user from the states cache. Configs
+   * replicated earlier than the state may have outdated user fields.
+   *
+   * @param docId the document ID
+   * @param user the editor user
+   * @return the same user with recent state
+   */
+  protected Editor.User readUserState(String docId, Editor.User user) {
+    EditorUserState state = stateCache.get(userStateKey(docId, user.getId()));
+    if (state != null) {
+      state.applyTo(user);
+    }
+    return user;
+  }
+
+  /**
+   * Save state of given editor user to the states cache. Only the state will
+   * be replicated, not the whole configs of the document.
+   *
+   * @param docId the document ID
+   * @param user the editor user
+   */
+  protected void saveUserState(String docId, Editor.User user) {
+    stateCache.put(userStateKey(docId, user.getId()), new EditorUserState(user));
+  }
+
   /**
    * Updates config in the activeCache.
    *
    * @param config the config
    */
   protected void updateCache(Config config) {
-    ConcurrentMap<String, Config> configs = activeCache.get(config.getDocument().getKey());
+    String key = config.getDocument().getKey();
+    ConcurrentMap<String, Config> configs = getConfigs(key);
     if (configs != null) {
-      activeCache.put(config.getDocument().getKey(), configs);
-      activeCache.put(config.getDocId(), configs);
+      putConfigs(key, configs);
     }
   }
 
@@ -2029,6 +3602,75 @@ public class OnlyofficeEditorServiceImpl implements OnlyofficeEditorService, Sta
 
   }
 
+  /**
+   * Post the comment of a version to the document activity. It's done before
+   * locking the document, a failure of the comment doesn't fail the save.
+   *
+   * @param activityId the document activity ID, <code>null</code> if nothing
+   *          to comment
+   * @param status the status
+   * @return the comment ID, <code>null</code> if not commented
+   */
+  protected String postComment(String activityId, DocumentStatus status) {
+    if (activityId != null) {
+      try {
+        // Add comment to the FileActivity with current file
+        return addComment(activityId, status.getComment(), status.getUserId());
+      } catch (Exception e) {
+        LOG.warn("Cannot comment saved version of " + status.getConfig().getPath(), e);
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Remove the comment posted for a version that was not saved.
+   *
+   * @param activityId the document activity ID
+   * @param commentId the comment ID, <code>null</code> if not commented
+   */
+  protected void discardComment(String activityId, String commentId) {
+    if (commentId != null) {
+      try {
+        activityManager.deleteComment(activityId, commentId);
+      } catch (Exception e) {
+        LOG.warn("Cannot remove comment " + commentId + " of not saved version of activity " + activityId, e);
+      }
+    }
+  }
+
+  /**
+   * Reset the comment ID of a document if a failed save already stored it. It
+   * should be called under the document lock.
+   *
+   * @param node the node
+   * @param commentId the comment ID
+   */
+  protected void resetComment(Node node, String commentId) {
+    try {
+      // not saved changes of the failed save discarded first
+      node.refresh(false);
+      if (node.hasProperty("eoo:commentId") && commentId.equals(node.getProperty("eoo:commentId").getString())) {
+        node.setProperty("eoo:commentId", "");
+        node.save();
+      }
+    } catch (RepositoryException e) {
+      LOG.warn("Cannot reset comment of not saved version", e);
+    }
+  }
+
+  /**
+   * Show the comment of a saved version in the editor page of the document.
+   *
+   * @param status the status
+   * @param commentId the comment ID, <code>null</code> if not commented
+   */
+  protected void commentVersion(DocumentStatus status, String commentId) {
+    Config config = status.getConfig();
+    config.getEditorPage().setComment(commentId != null ? status.getComment() : null);
+    updateCache(config);
+  }
+
   /**
    * Creates a version of draft. Used to create version after manually uploaded
    * content.
@@ -2143,23 +3785,43 @@ public class OnlyofficeEditorServiceImpl implements OnlyofficeEditorService, Sta
    * @throws RepositoryException the repository exception
    */
   protected void unlock(Node node, LockState lock) throws OnlyofficeEditorException, RepositoryException {
-    node.unlock();
+    String lockKey = lockKey(node);
     try {
-      LockUtil.removeLock(node);
-    } catch (Exception e) {
-      if (RepositoryException.class.isAssignableFrom(e.getClass())) {
-        throw RepositoryException.class.cast(e);
-      } else {
-        logError(null, node.getPath(), node.getUUID(), null, "Error removing document lock");
-        throw new OnlyofficeEditorException("Error removing document lock", e);
+      node.unlock();
+      try {
+        LockUtil.removeLock(node);
+      } catch (Exception e) {
+        if (RepositoryException.class.isAssignableFrom(e.getClass())) {
+          throw RepositoryException.class.cast(e);
+        } else {
+          logError(null, node.getPath(), node.getUUID(), null, "Error removing document lock");
+          throw new OnlyofficeEditorException("Error removing document lock", e);
+        }
       }
+    } finally {
+      // wake up threads waiting for this lock
+      localLocks.released(lockKey);
     }
   }
 
   /**
-   * Lock the node by current user. If lock attempts will succeed in predefined
-   * time this method will throw {@link OnlyofficeEditorException}. If node
-   * isn't mix:lockable it will be added first and node saved.
+   * Key of given node in the registry of locks held locally.
+   *
+   * @param node the node
+   * @return the string
+   * @throws RepositoryException the repository exception
+   */
+  protected String lockKey(Node node) throws RepositoryException {
+    return nodePath(node.getSession().getWorkspace().getName(), node.getPath());
+  }
+
+  /**
+   * Lock the node by current user. If the node is locked by another user, this
+   * method waits for the unlock: a lock acquired by this service in this JVM
+   * will notify the waiters on its release, a lock held elsewhere will be
+   * polled with exponential backoff. If the lock will not be released in
+   * {@link #LOCK_WAIT_MAX} time, the returned state will not allow editing. If
+   * node isn't mix:lockable it will be added first and node saved.
    *
    * @param node {@link Node}
    * @param config {@link Config}
@@ -2177,11 +3839,13 @@ public class OnlyofficeEditorServiceImpl implements OnlyofficeEditorService, Sta
     }
 
     Config.Editor.User user = config.getEditorConfig().getUser();
-    LockState lock;
+    String lockKey = lockKey(node);
+    LockState lock = null;
     int attempts = 0;
+    long waitStart = 0;
+    long deadline = 0;
     try {
       do {
-        attempts++;
         if (node.isLocked()) {
           String lockToken;
           try {
@@ -2204,8 +3868,26 @@ public class OnlyofficeEditorServiceImpl implements OnlyofficeEditorService, Sta
             lock = new LockState(lockToken);
           } else {
             // need wait for unlock
-            Thread.sleep(LOCK_WAIT_TIMEOUT);
-            lock = null;
+            if (attempts++ == 0) {
+              waitStart = lockWaitTime.start();
+              deadline = System.currentTimeMillis() + LOCK_WAIT_MAX;
+            }
+            long remaining = deadline - System.currentTimeMillis();
+            if (remaining <= 0) {
+              lockTimeouts.increment();
+              if (LOG.isDebugEnabled()) {
+                LOG.debug("Lock wait timeout for " + lockKey + " after " + attempts + " attempts");
+              }
+              break;
+            }
+            if (localLocks.isHeld(lockKey)) {
+              // locked by this service in this JVM: wait for a notification
+              // from unlock(), but re-check the lock from time to time
+              localLocks.awaitRelease(lockKey, Math.min(remaining, LOCK_POLL_MAX));
+            } else {
+              // locked outside: poll the lock
+              Thread.sleep(Math.min(remaining, localLocks.pollDelay(attempts)));
+            }
           }
         } else {
           Lock jcrLock = node.lock(true, false);
@@ -2224,9 +3906,10 @@ public class OnlyofficeEditorServiceImpl implements OnlyofficeEditorService, Sta
               throw new OnlyofficeEditorException("Error saving document lock", e);
             }
           }
+          localLocks.acquired(lockKey);
           lock = new LockState(jcrLock);
         }
-      } while (lock == null && attempts <= LOCK_WAIT_ATTEMTS);
+      } while (lock == null);
     } catch (InterruptedException e) {
       Thread.currentThread().interrupt();
       logError(config.getEditorConfig().getUser().getId(),
@@ -2235,6 +3918,10 @@ public class OnlyofficeEditorServiceImpl implements OnlyofficeEditorService, Sta
                config.getDocument().getKey(),
                "Error waiting for a lock");
       throw new OnlyofficeEditorException("Error waiting for lock of " + nodePath(config.getWorkspace(), config.getPath()), e);
+    } finally {
+      if (attempts > 0) {
+        lockWaitTime.stop(waitStart);
+      }
     }
     return lock == null ? new LockState() : lock;
   }
@@ -2264,28 +3951,46 @@ public class OnlyofficeEditorServiceImpl implements OnlyofficeEditorService, Sta
    *         language in it or user profile error
    */
   protected String getUserLang(String userId) {
+    String lang = langCache.get(userId);
+    if (lang == null) {
+      try {
+        lang = findUserLang(userId);
+      } catch (Exception e) {
+        LOG.warn("Error searching user profile " + userId, e);
+        return null;
+      }
+      langCache.put(userId, lang != null ? lang : EMPTY_TEXT);
+      return lang;
+    }
+    return lang.length() > 0 ? lang : null;
+  }
+
+  /**
+   * Find the user lang in organization service.
+   *
+   * @param userId the user id
+   * @return the lang can be <code>null</code> if user has no profile or
+   *         language in it
+   * @throws Exception if user profile error
+   */
+  protected String findUserLang(String userId) throws Exception {
     UserProfileHandler hanlder = organization.getUserProfileHandler();
-    try {
-      UserProfile userProfile = hanlder.findUserProfileByName(userId);
-      if (userProfile != null) {
-        String lang = userProfile.getAttribute(Constants.USER_LANGUAGE);
-        if (lang != null) {
-          // XXX Onlyoffice doesn't support country codes (as of Apr 6, 2016)
-          // All supported langauges here
-          // http://helpcenter.onlyoffice.com/tipstricks/available-languages.aspx
-          int cci = lang.indexOf("_");
-          if (cci > 0) {
-            lang = lang.substring(0, cci);
-          }
-        } else {
-          lang = null;
+    UserProfile userProfile = hanlder.findUserProfileByName(userId);
+    if (userProfile != null) {
+      String lang = userProfile.getAttribute(Constants.USER_LANGUAGE);
+      if (lang != null) {
+        // XXX Onlyoffice doesn't support country codes (as of Apr 6, 2016)
+        // All supported langauges here
+        // http://helpcenter.onlyoffice.com/tipstricks/available-languages.aspx
+        int cci = lang.indexOf("_");
+        if (cci > 0) {
+          lang = lang.substring(0, cci);
         }
-        return lang;
       } else {
-        return null;
+        lang = null;
       }
-    } catch (Exception e) {
-      LOG.warn("Error searching user profile " + userId, e);
+      return lang;
+    } else {
       return null;
     }
   }
@@ -2399,39 +4104,120 @@ public class OnlyofficeEditorServiceImpl implements OnlyofficeEditorService, Sta
   }
 
   /**
-   * Broadcasts an event using the listenerService.
+   * Broadcasts an event using the listenerService. In asynchronous events mode
+   * the event dispatched in order with other events of the document, with a
+   * snapshot of the status.
    * 
    * @param status the status
    * @param eventType the eventType
    */
   protected void broadcastEvent(DocumentStatus status, String eventType) {
+    if (eventsExecutor != null) {
+      Span parent = tracer.current();
+      DocumentStatus snapshot = status.snapshot();
+      dispatch(snapshot, () -> broadcastEvent(snapshot, eventType, tracer.startChild("onlyoffice.event", parent)));
+    } else {
+      broadcastEvent(status, eventType, tracer.start("onlyoffice.event"));
+    }
+  }
+
+  /**
+   * Broadcasts an event using the listenerService in current thread.
+   *
+   * @param status the status
+   * @param eventType the eventType
+   * @param span the span of the event
+   */
+  protected void broadcastEvent(DocumentStatus status, String eventType, Span span) {
+    span.attribute("onlyoffice.event", eventType);
     try {
       if (LOG.isDebugEnabled()) {
         LOG.debug("Fire {} event. DocumentStatus: {}", eventType, status.toJSON());
       }
       listenerService.broadcast(eventType, this, status);
     } catch (Exception e) {
+      span.error(e);
       LOG.error("Error firing listener with Onlyoffice {} event for user: {}, document: {}",
                 eventType,
                 status.getConfig().getEditorConfig().getUser().getId(),
                 status.getConfig().getDocId(),
                 e);
+    } finally {
+      span.end();
     }
   }
 
   /**
-   * Fire created.
+   * Dispatch an event of the document asynchronously, in order with other
+   * events of the document. If the events queue stays full, the event queued
+   * over its bound (counted as overflow), the same if current thread
+   * interrupted, but never run ahead of already queued events of the document.
    *
    * @param status the status
+   * @param event the event
    */
-  protected void fireCreated(DocumentStatus status) {
+  protected void dispatch(DocumentStatus status, Runnable event) {
+    String docId = status.getConfig() != null ? status.getConfig().getDocId() : status.getKey();
+    // queued also when interrupted, the interrupt flag then restored
+    eventsExecutor.executeOrOverflow(docId != null ? docId : "", new ContainerTask(event), EVENTS_QUEUE_WAIT, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Notify editor listeners. Listeners annotated as {@link Asynchronous}
+   * notified in the events executor (if events dispatched asynchronously) with
+   * a snapshot of the status, others in current thread.
+   *
+   * @param status the status
+   * @param notification the notification of a listener
+   * @param error the error message
+   */
+  protected void fire(DocumentStatus status,
+                      BiConsumer<OnlyofficeEditorListener, DocumentStatus> notification,
+                      String error) {
+    List<OnlyofficeEditorListener> async = null;
     for (OnlyofficeEditorListener l : listeners) {
-      try {
-        l.onCreate(status);
-      } catch (Throwable t) {
-        LOG.warn("Creation listener error", t);
+      if (eventsExecutor != null && l.getClass().isAnnotationPresent(Asynchronous.class)) {
+        if (async == null) {
+          async = new ArrayList<>();
+        }
+        async.add(l);
+      } else {
+        notifyListener(l, status, notification, error);
       }
     }
+    if (async != null) {
+      List<OnlyofficeEditorListener> asyncListeners = async;
+      DocumentStatus snapshot = status.snapshot();
+      dispatch(snapshot, () -> asyncListeners.forEach(l -> notifyListener(l, snapshot, notification, error)));
+    }
+  }
+
+  /**
+   * Notify an editor listener.
+   *
+   * @param listener the listener
+   * @param status the status
+   * @param notification the notification
+   * @param error the error message
+   */
+  protected void notifyListener(OnlyofficeEditorListener listener,
+                                DocumentStatus status,
+                                BiConsumer<OnlyofficeEditorListener, DocumentStatus> notification,
+                                String error) {
+    try {
+      notification.accept(listener, status);
+    } catch (Throwable t) {
+      LOG.warn(error, t);
+    }
+  }
+
+  /**
+   * Fire created.
+   *
+   * @param status the status
+   */
+  protected void fireCreated(DocumentStatus status) {
+    fire(status, OnlyofficeEditorListener::onCreate, "Creation listener error");
   }
 
   /**
@@ -2440,13 +4226,7 @@ public class OnlyofficeEditorServiceImpl implements OnlyofficeEditorService, Sta
    * @param status the status
    */
   protected void fireGet(DocumentStatus status) {
-    for (OnlyofficeEditorListener l : listeners) {
-      try {
-        l.onGet(status);
-      } catch (Throwable t) {
-        LOG.warn("Read (Get) listener error", t);
-      }
-    }
+    fire(status, OnlyofficeEditorListener::onGet, "Read (Get) listener error");
   }
 
   /**
@@ -2455,13 +4235,7 @@ public class OnlyofficeEditorServiceImpl implements OnlyofficeEditorService, Sta
    * @param status the status
    */
   protected void fireJoined(DocumentStatus status) {
-    for (OnlyofficeEditorListener l : listeners) {
-      try {
-        l.onJoined(status);
-      } catch (Throwable t) {
-        LOG.warn("User joining listener error", t);
-      }
-    }
+    fire(status, OnlyofficeEditorListener::onJoined, "User joining listener error");
   }
 
   /**
@@ -2470,13 +4244,7 @@ public class OnlyofficeEditorServiceImpl implements OnlyofficeEditorService, Sta
    * @param status the status
    */
   protected void fireLeaved(DocumentStatus status) {
-    for (OnlyofficeEditorListener l : listeners) {
-      try {
-        l.onLeaved(status);
-      } catch (Throwable t) {
-        LOG.warn("User leaving listener error", t);
-      }
-    }
+    fire(status, OnlyofficeEditorListener::onLeaved, "User leaving listener error");
   }
 
   /**
@@ -2485,13 +4253,7 @@ public class OnlyofficeEditorServiceImpl implements OnlyofficeEditorService, Sta
    * @param status the status
    */
   protected void fireSaved(DocumentStatus status) {
-    for (OnlyofficeEditorListener l : listeners) {
-      try {
-        l.onSaved(status);
-      } catch (Throwable t) {
-        LOG.warn("Saving listener error", t);
-      }
-    }
+    fire(status, OnlyofficeEditorListener::onSaved, "Saving listener error");
   }
 
   /**
@@ -2500,13 +4262,7 @@ public class OnlyofficeEditorServiceImpl implements OnlyofficeEditorService, Sta
    * @param status the status
    */
   protected void fireError(DocumentStatus status) {
-    for (OnlyofficeEditorListener l : listeners) {
-      try {
-        l.onError(status);
-      } catch (Throwable t) {
-        LOG.warn("Error listener error", t);
-      }
-    }
+    fire(status, OnlyofficeEditorListener::onError, "Error listener error");
   }
 
   /**
@@ -2743,28 +4499,10 @@ public class OnlyofficeEditorServiceImpl implements OnlyofficeEditorService, Sta
               parentFolder = HIDDEN_FOLDER;
             }
           }
-          // Spaces's documents
-        } else if (driveName.startsWith(".spaces.")) {
-          String spacePrettyName = driveName.substring(driveName.lastIndexOf(".") + 1);
-          Space space = spaceService.getSpaceByPrettyName(spacePrettyName);
-          if (space != null) {
-            drive = "spaces/" + space.getDisplayName();
-          } else {
-            LOG.warn("Cannot find space by pretty name {}", spacePrettyName);
-            drive = spacePrettyName;
-          }
-          // Group's documents
-        } else if (driveName.startsWith(".platform.")) {
-          String groupId = driveName.replaceAll("\\.", "/");
-          Group group = organization.getGroupHandler().findGroupById(groupId);
-          if (group != null) {
-            drive = group.getLabel();
-          } else {
-            LOG.warn("Cannot find group by id {}", groupId);
-            drive = groupId;
-          }
-        }
-        else {
+          // Spaces's and group's documents
+        } else if (driveName.startsWith(".spaces.") || driveName.startsWith(".platform.")) {
+          drive = getDriveLabel(driveName);
+        } else {
           drive = driveData.getName();
         }
       }
@@ -2775,6 +4513,62 @@ public class OnlyofficeEditorServiceImpl implements OnlyofficeEditorService, Sta
     }
   }
 
+  /**
+   * Gets the label of a space or group drive, cached by the drive name.
+   *
+   * @param driveName the drive name
+   * @return the drive label
+   * @throws Exception the exception
+   */
+  protected String getDriveLabel(String driveName) throws Exception {
+    String label = driveCache.get(driveName);
+    if (label == null) {
+      label = findDriveLabel(driveName);
+      driveCache.put(driveName, label);
+    }
+    return label;
+  }
+
+  /**
+   * Find the label of a space or group drive in social and organization
+   * services.
+   *
+   * @param driveName the drive name
+   * @return the drive label
+   * @throws Exception the exception
+   */
+  protected String findDriveLabel(String driveName) throws Exception {
+    if (driveName.startsWith(".spaces.")) {
+      String spacePrettyName = driveName.substring(driveName.lastIndexOf(".") + 1);
+      Space space = spaceService.getSpaceByPrettyName(spacePrettyName);
+      if (space != null) {
+        return "spaces/" + space.getDisplayName();
+      } else {
+        LOG.warn("Cannot find space by pretty name {}", spacePrettyName);
+        return spacePrettyName;
+      }
+    } else {
+      String groupId = driveName.replaceAll("\\.", "/");
+      Group group = organization.getGroupHandler().findGroupById(groupId);
+      if (group != null) {
+        return group.getLabel();
+      } else {
+        LOG.warn("Cannot find group by id {}", groupId);
+        return groupId;
+      }
+    }
+  }
+
+  /**
+   * Drive name of a group (or space) drive.
+   *
+   * @param groupId the group id
+   * @return the drive name
+   */
+  protected String driveName(String groupId) {
+    return groupId.replace('/', '.');
+  }
+
   /**
    * Gets parent folder of the file based on file preferences
    * @param node the node
@@ -2783,17 +4577,61 @@ public class OnlyofficeEditorServiceImpl implements OnlyofficeEditorService, Sta
    * @throws Exception the exception
    */
   protected Node getSymlink(Node node, String userId) throws Exception {
+    String key = symlinkKey(node, userId);
+    String path = symlinkCache.get(key);
+    if (path == null) {
+      path = findSymlinkPath(node, userId);
+      symlinkCache.put(key, path != null ? path : EMPTY_TEXT);
+    } else if (path.isEmpty()) {
+      return null;
+    }
+    if (path != null) {
+      try {
+        return (Node) node.getSession().getItem(path);
+      } catch (PathNotFoundException e) {
+        // symlink moved or removed since cached
+        symlinkCache.remove(key);
+        throw e;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Find the symlink path in the node preferences of given user.
+   *
+   * @param node the node
+   * @param userId the user id
+   * @return the path or <code>null</code> if not found
+   * @throws RepositoryException the repository exception
+   */
+  protected String findSymlinkPath(Node node, String userId) throws RepositoryException {
     if (node.hasNode("eoo:preferences")) {
       Node filePreferences = node.getNode("eoo:preferences");
       if (filePreferences.hasNode(userId)) {
         Node userPreferences = filePreferences.getNode(userId);
-        String path = userPreferences.getProperty("path").getString();
-        return (Node) node.getSession().getItem(path);
+        return userPreferences.getProperty("path").getString();
       }
     }
     return null;
   }
 
+  /**
+   * Key of a symlink in the cache.
+   *
+   * @param node the node
+   * @param userId the user id
+   * @return the key
+   * @throws RepositoryException the repository exception
+   */
+  protected String symlinkKey(Node node, String userId) throws RepositoryException {
+    return new StringBuilder(userId).append('@')
+                                    .append(node.getSession().getWorkspace().getName())
+                                    .append(':')
+                                    .append(((NodeImpl) node).getInternalIdentifier())
+                                    .toString();
+  }
+
   /**
    * Gets userId from node path.
    * 
@@ -0,0 +1,331 @@
+/*
+ * Copyright (C) 2003-2020 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.exoplatform.onlyoffice;
+
+import java.nio.charset.StandardCharsets;
+import java.security.Key;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.crypto.SecretKey;
+
+import org.exoplatform.onlyoffice.metrics.Counter;
+import org.exoplatform.services.log.ExoLogger;
+import org.exoplatform.services.log.Log;
+
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwtParser;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.io.Deserializer;
+import io.jsonwebtoken.io.JacksonDeserializer;
+import io.jsonwebtoken.io.JacksonSerializer;
+import io.jsonwebtoken.io.Serializer;
+import io.jsonwebtoken.security.Keys;
+
+/**
+ * JWT tokens of Document Server requests. The signing key derived from the
+ * secret once, the parser is configured once and shared by threads. Tokens of
+ * Document Server callbacks validated once and then cached (by a hash of the
+ * token) until their expiration: repeated callbacks with the same token skip
+ * the signature verification.<br>
+ * Created by The eXo Platform SAS.
+ */
+public class TokenService {
+
+  /** The Constant LOG. */
+  protected static final Log                              LOG          = ExoLogger.getLogger(TokenService.class);
+
+  /** The Constant SUBJECT. */
+  public static final String                              SUBJECT      = "exo-onlyoffice";
+
+  /** The shared JSON serializer (thread-safe). */
+  protected static final Serializer<Map<String, ?>>       SERIALIZER   = new JacksonSerializer<>();
+
+  /** The shared JSON deserializer (thread-safe). */
+  protected static final Deserializer<Map<String, ?>>     DESERIALIZER = new JacksonDeserializer<>();
+
+  /** The digest used to hash cached tokens. */
+  protected static final ThreadLocal<MessageDigest>       DIGEST       = ThreadLocal.withInitial(() -> {
+                                                                         try {
+                                                                           return MessageDigest.getInstance("SHA-256");
+                                                                         } catch (NoSuchAlgorithmException e) {
+                                                                           throw new IllegalStateException("SHA-256 not available",
+                                                                                                           e);
+                                                                         }
+                                                                       });
+
+  /**
+   * Claims of a validated token required to check a document key.
+   */
+  protected static class ValidToken {
+
+    /** The key claim. */
+    final String key;
+
+    /** The URL claim. */
+    final String url;
+
+    /** The expiration time. */
+    final long   expires;
+
+    /**
+     * Instantiates a new valid token.
+     *
+     * @param key the key
+     * @param url the url
+     * @param expires the expires
+     */
+    ValidToken(String key, String url, long expires) {
+      this.key = key;
+      this.url = url;
+      this.expires = expires;
+    }
+
+    /**
+     * Check if the token claims given document key.
+     *
+     * @param docKey the document key
+     * @return true, if successful
+     */
+    boolean matches(String docKey) {
+      if (key != null) {
+        return key.equals(docKey);
+      }
+      return url != null && url.endsWith(docKey);
+    }
+  }
+
+  /** The signing key, <code>null</code> if no secret configured. */
+  protected final SecretKey                       key;
+
+  /** The parser, <code>null</code> if no secret configured. */
+  protected final JwtParser                       parser;
+
+  /** The cache size. */
+  protected final int                             cacheSize;
+
+  /** The time to keep in cache a token without expiration in milliseconds. */
+  protected final long                            cacheTtl;
+
+  /** The validated tokens cache (LRU). */
+  protected final Map<String, ValidToken>         validated;
+
+  /** The cache hits. */
+  protected final Counter                         hits   = new Counter();
+
+  /** The cache misses. */
+  protected final Counter                         misses = new Counter();
+
+  /**
+   * Instantiates a new token service.
+   *
+   * @param secret the Document Server secret, can be <code>null</code> or
+   *          empty if tokens not used
+   * @param cacheSize the max number of cached validated tokens, zero to
+   *          disable the cache
+   * @param cacheTtl the time to keep in cache a validated token without
+   *          expiration, in milliseconds
+   */
+  public TokenService(String secret, final int cacheSize, long cacheTtl) {
+    this.key = signingKey(secret);
+    this.parser = key != null ? Jwts.parser().setSigningKey(key).deserializeJsonWith(DESERIALIZER) : null;
+    this.cacheSize = cacheSize;
+    this.cacheTtl = cacheTtl;
+    this.validated = new LinkedHashMap<String, ValidToken>(16, 0.75f, true) {
+      private static final long serialVersionUID = -3285628371962538372L;
+
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String, ValidToken> eldest) {
+        return size() > cacheSize;
+      }
+    };
+  }
+
+  /**
+   * Derive a signing key from given secret.
+   *
+   * @param secret the secret
+   * @return the secret key or <code>null</code> if secret is
+   *         <code>null</code> or empty
+   */
+  public static SecretKey signingKey(String secret) {
+    if (secret != null && !secret.trim().isEmpty()) {
+      return Keys.hmacShaKeyFor(secret.getBytes());
+    }
+    return null;
+  }
+
+  /**
+   * Create a token with given claims signed by given key.
+   *
+   * @param key the key
+   * @param claims the claims
+   * @return the token
+   */
+  public static String createToken(Key key, Map<String, Object> claims) {
+    return Jwts.builder().serializeToJsonWith(SERIALIZER).setSubject(SUBJECT).addClaims(claims).signWith(key).compact();
+  }
+
+  /**
+   * Checks if tokens enabled (a secret configured).
+   *
+   * @return true, if enabled
+   */
+  public boolean isEnabled() {
+    return key != null;
+  }
+
+  /**
+   * Gets the signing key.
+   *
+   * @return the key, <code>null</code> if tokens not enabled
+   */
+  public SecretKey getKey() {
+    return key;
+  }
+
+  /**
+   * Create a token with given claims.
+   *
+   * @param claims the claims
+   * @return the token or <code>null</code> if tokens not enabled
+   */
+  public String createToken(Map<String, Object> claims) {
+    return key != null ? createToken(key, claims) : null;
+  }
+
+  /**
+   * Parse and verify a token.
+   *
+   * @param token the token
+   * @return the claims
+   */
+  public Claims parse(String token) {
+    return parser.parseClaimsJws(token).getBody();
+  }
+
+  /**
+   * Validate a token of Document Server request for given document key. If
+   * tokens not enabled, any token is valid.
+   *
+   * @param token the token
+   * @param docKey the document key
+   * @return true, if token is valid
+   */
+  public boolean validate(String token, String docKey) {
+    if (key == null) {
+      return true;
+    }
+    if (token == null || docKey == null) {
+      return false;
+    }
+    String hash = cacheSize > 0 ? hash(token) : null;
+    if (hash != null) {
+      ValidToken valid;
+      synchronized (validated) {
+        valid = validated.get(hash);
+      }
+      if (valid != null) {
+        if (valid.expires > System.currentTimeMillis()) {
+          hits.increment();
+          return valid.matches(docKey);
+        }
+        synchronized (validated) {
+          validated.remove(hash);
+        }
+      }
+      misses.increment();
+    }
+    try {
+      Claims claims = parse(token);
+      @SuppressWarnings("unchecked")
+      Map<String, Object> payload = (Map<String, Object>) claims.get("payload");
+      if (payload != null) {
+        String payloadKey = payload.containsKey("key") ? String.valueOf(payload.get("key")) : null;
+        String payloadUrl = payload.containsKey("url") ? String.valueOf(payload.get("url")) : null;
+        ValidToken valid = new ValidToken(payloadKey, payloadUrl, expires(claims));
+        if (hash != null) {
+          synchronized (validated) {
+            validated.put(hash, valid);
+          }
+        }
+        return valid.matches(docKey);
+      }
+    } catch (Exception e) {
+      LOG.warn("Couldn't validate the token: {} key: {} : {}", token, docKey, e.getMessage());
+    }
+    return false;
+  }
+
+  /**
+   * Gets the count of validations found in cache.
+   *
+   * @return the cache hits
+   */
+  public long getCacheHits() {
+    return hits.getCount();
+  }
+
+  /**
+   * Gets the count of validations not found in cache.
+   *
+   * @return the cache misses
+   */
+  public long getCacheMisses() {
+    return misses.getCount();
+  }
+
+  /**
+   * Gets the count of cached validated tokens.
+   *
+   * @return the cache size
+   */
+  public int getCachedCount() {
+    synchronized (validated) {
+      return validated.size();
+    }
+  }
+
+  /**
+   * Expiration time of a validated token in the cache.
+   *
+   * @param claims the claims
+   * @return the time in milliseconds
+   */
+  protected long expires(Claims claims) {
+    Date exp = claims.getExpiration();
+    return exp != null ? exp.getTime() : System.currentTimeMillis() + cacheTtl;
+  }
+
+  /**
+   * Hash a token to use as cache key.
+   *
+   * @param token the token
+   * @return the string
+   */
+  protected String hash(String token) {
+    MessageDigest digest = DIGEST.get();
+    digest.reset();
+    return Base64.getEncoder().encodeToString(digest.digest(token.getBytes(StandardCharsets.UTF_8)));
+  }
+}
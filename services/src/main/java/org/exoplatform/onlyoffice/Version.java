@@ -1,6 +1,11 @@
 package org.exoplatform.onlyoffice;
 
-public class Version {
+import java.io.Serializable;
+
+public class Version implements Serializable {
+
+  /** The Constant serialVersionUID. */
+  private static final long serialVersionUID = 4725918305627381190L;
 
   private String   author              = "";
 
@@ -0,0 +1,225 @@
+/*
+ * Copyright (C) 2003-2020 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.exoplatform.onlyoffice.cometd;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.exoplatform.onlyoffice.metrics.Counter;
+import org.exoplatform.services.log.ExoLogger;
+import org.exoplatform.services.log.Log;
+
+/**
+ * Coalescing of document changes by user. The first change of a user in a
+ * document applied at once and opens a window, next changes of the user in the
+ * window only update the latest change time, it will be applied once when the
+ * window closes (and opens a new window). Thus changes of an user in a document
+ * applied not more often than once per window and the latest change time is
+ * never lost.<br>
+ * Created by The eXo Platform SAS.
+ */
+public class ChangesCoalescer {
+
+  /**
+   * Handler of coalesced changes.
+   */
+  public interface Handler {
+
+    /**
+     * Apply a change.
+     *
+     * @param docId the document ID
+     * @param key the document key
+     * @param userId the user ID
+     * @param time the latest change time
+     * @param first <code>true</code> for the first change opening a window,
+     *          <code>false</code> for the changes coalesced in a window
+     */
+    void apply(String docId, String key, String userId, long time, boolean first);
+  }
+
+  /**
+   * Changes of an user in a document within current window.
+   */
+  static class Changes {
+
+    /** The document ID. */
+    final String docId;
+
+    /** The user ID. */
+    final String userId;
+
+    /** The document key. */
+    String       key;
+
+    /** The latest change time. */
+    long         time;
+
+    /** The changes not applied yet. */
+    boolean      pending;
+
+    /**
+     * Instantiates a new changes.
+     *
+     * @param docId the document ID
+     * @param key the key
+     * @param userId the user ID
+     * @param time the time
+     */
+    Changes(String docId, String key, String userId, long time) {
+      this.docId = docId;
+      this.key = key;
+      this.userId = userId;
+      this.time = time;
+    }
+  }
+
+  /** The Constant LOG. */
+  protected static final Log                     LOG       = ExoLogger.getLogger(ChangesCoalescer.class);
+
+  /** The changes in open windows, by document and user. */
+  protected final ConcurrentMap<String, Changes> changes   = new ConcurrentHashMap<>();
+
+  /** The coalesced changes counter. */
+  protected final Counter                        coalesced = new Counter();
+
+  /** The window in milliseconds. */
+  protected final long                           window;
+
+  /** The timer closing windows. */
+  protected final ScheduledExecutorService       timer;
+
+  /** The handler. */
+  protected final Handler                        handler;
+
+  /**
+   * Instantiates a new changes coalescer.
+   *
+   * @param window the window in milliseconds, zero or negative to apply each
+   *          change at once
+   * @param timer the timer closing windows
+   * @param handler the handler
+   */
+  public ChangesCoalescer(long window, ScheduledExecutorService timer, Handler handler) {
+    this.window = window;
+    this.timer = timer;
+    this.handler = handler;
+  }
+
+  /**
+   * A user changed a document.
+   *
+   * @param docId the document ID
+   * @param key the document key
+   * @param userId the user ID
+   * @param time the change time
+   * @return <code>true</code> if the change applied at once,
+   *         <code>false</code> if coalesced in the open window
+   */
+  public boolean change(String docId, String key, String userId, long time) {
+    if (window <= 0) {
+      handler.apply(docId, key, userId, time, true);
+      return true;
+    }
+    String id = docId + "/" + userId;
+    Changes opened = new Changes(docId, key, userId, time);
+    Changes current = changes.compute(id, (k, c) -> {
+      if (c == null) {
+        return opened;
+      }
+      c.key = key;
+      c.time = Math.max(c.time, time);
+      c.pending = true;
+      return c;
+    });
+    if (current == opened) {
+      try {
+        handler.apply(docId, key, userId, time, true);
+      } finally {
+        schedule(id);
+      }
+      return true;
+    }
+    coalesced.increment();
+    return false;
+  }
+
+  /**
+   * Close the window: apply pending changes and open a new window, or forget
+   * the user changes if nothing pending.
+   *
+   * @param id the changes ID
+   */
+  protected void close(String id) {
+    Changes[] apply = new Changes[1];
+    changes.computeIfPresent(id, (k, c) -> {
+      if (c.pending) {
+        c.pending = false;
+        apply[0] = new Changes(c.docId, c.key, c.userId, c.time);
+        return c;
+      }
+      return null;
+    });
+    Changes c = apply[0];
+    if (c != null) {
+      try {
+        handler.apply(c.docId, c.key, c.userId, c.time, false);
+      } catch (Throwable e) {
+        LOG.error("Error applying changes of " + c.userId + " in document " + c.docId, e);
+      } finally {
+        schedule(id);
+      }
+    }
+  }
+
+  /**
+   * Schedule closing of the window.
+   *
+   * @param id the changes ID
+   */
+  protected void schedule(String id) {
+    try {
+      timer.schedule(() -> close(id), window, TimeUnit.MILLISECONDS);
+    } catch (RejectedExecutionException e) {
+      // stopping: pending changes will not be applied
+      changes.remove(id);
+    }
+  }
+
+  /**
+   * Gets the count of users changing documents in open windows.
+   *
+   * @return the open windows count
+   */
+  public int getOpen() {
+    return changes.size();
+  }
+
+  /**
+   * Gets the counter of coalesced changes.
+   *
+   * @return the coalesced counter
+   */
+  public Counter getCoalesced() {
+    return coalesced;
+  }
+}
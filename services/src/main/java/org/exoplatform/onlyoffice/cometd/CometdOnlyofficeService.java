@@ -18,15 +18,14 @@
  */
 package org.exoplatform.onlyoffice.cometd;
 
+import java.util.Collections;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.LinkedBlockingQueue;
-import java.util.concurrent.ThreadFactory;
-import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.stream.Collectors;
 
@@ -54,75 +53,43 @@ import org.exoplatform.container.ExoContainer;
 import org.exoplatform.container.ExoContainerContext;
 import org.exoplatform.container.PortalContainer;
 import org.exoplatform.container.component.RequestLifeCycle;
+import org.exoplatform.container.xml.InitParams;
+import org.exoplatform.container.xml.PropertiesParam;
 import org.exoplatform.onlyoffice.Config.Editor;
 import org.exoplatform.onlyoffice.DocumentStatus;
 import org.exoplatform.onlyoffice.OnlyofficeEditorException;
 import org.exoplatform.onlyoffice.OnlyofficeEditorListener;
 import org.exoplatform.onlyoffice.OnlyofficeEditorService;
+import org.exoplatform.onlyoffice.concurrent.KeyedExecutor;
+import org.exoplatform.onlyoffice.concurrent.NamedThreadFactory;
+import org.exoplatform.onlyoffice.concurrent.VirtualThreads;
+import org.exoplatform.onlyoffice.metrics.Counter;
+import org.exoplatform.onlyoffice.metrics.MetricsRegistry;
+import org.exoplatform.onlyoffice.tracing.Span;
+import org.exoplatform.onlyoffice.tracing.Tracer;
 import org.exoplatform.services.log.ExoLogger;
 import org.exoplatform.services.log.Log;
 import org.exoplatform.services.organization.User;
+import org.exoplatform.services.security.ConversationState;
 
 /**
  * The CometdOnlyofficeService.
  */
 public class CometdOnlyofficeService implements Startable {
 
-  /**
-   * Command thread factory adapted from {@link Executors#DefaultThreadFactory}.
-   */
-  static class CommandThreadFactory implements ThreadFactory {
-
-    /** The group. */
-    final ThreadGroup   group;
-
-    /** The thread number. */
-    final AtomicInteger threadNumber = new AtomicInteger(1);
-
-    /** The name prefix. */
-    final String        namePrefix;
-
-    /**
-     * Instantiates a new command thread factory.
-     *
-     * @param namePrefix the name prefix
-     */
-    CommandThreadFactory(String namePrefix) {
-      SecurityManager s = System.getSecurityManager();
-      this.group = (s != null) ? s.getThreadGroup() : Thread.currentThread().getThreadGroup();
-      this.namePrefix = namePrefix;
-    }
-
-    public Thread newThread(Runnable r) {
-      Thread t = new Thread(group, r, namePrefix + threadNumber.getAndIncrement(), 0) {
-
-        /**
-         * {@inheritDoc}
-         */
-        @Override
-        protected void finalize() throws Throwable {
-          super.finalize();
-          threadNumber.decrementAndGet();
-        }
-
-      };
-      if (t.isDaemon()) {
-        t.setDaemon(false);
-      }
-      if (t.getPriority() != Thread.NORM_PRIORITY) {
-        t.setPriority(Thread.NORM_PRIORITY);
-      }
-      return t;
-    }
-  }
-
   /**
    * The Class ContainerCommand.
    */
   abstract class ContainerCommand implements Runnable {
 
     /** The container name. */
-    final String containerName;
+    final String            containerName;
+
+    /** The span of the event submitted the command. */
+    final Span              parent;
+
+    /** The conversation state of the thread submitted the command. */
+    final ConversationState state;
 
     /**
      * Instantiates a new container command.
@@ -131,6 +98,8 @@ public class CometdOnlyofficeService implements Startable {
      */
     ContainerCommand(String containerName) {
       this.containerName = containerName;
+      this.parent = tracer.current();
+      this.state = ConversationState.getCurrent();
     }
 
     /**
@@ -157,15 +126,23 @@ public class CometdOnlyofficeService implements Startable {
       ExoContainer exoContainer = ExoContainerContext.getContainerByName(containerName);
       if (exoContainer != null) {
         ExoContainer contextContainer = ExoContainerContext.getCurrentContainerIfPresent();
+        ConversationState contextState = ConversationState.getCurrent();
+        Span span = tracer.startChild("onlyoffice.cometd.command", parent);
         try {
           // Container context
           ExoContainerContext.setCurrentContainer(exoContainer);
+          ConversationState.setCurrent(state);
           RequestLifeCycle.begin(exoContainer);
           // do the work here
           execute(exoContainer);
+        } catch (RuntimeException e) {
+          span.error(e);
+          throw e;
         } finally {
+          span.end();
           // Restore context
           RequestLifeCycle.end();
+          ConversationState.setCurrent(contextState);
           ExoContainerContext.setCurrentContainer(contextContainer);
         }
       } else {
@@ -211,13 +188,7 @@ public class CometdOnlyofficeService implements Startable {
   public static final String              EDITOR_CLOSED_EVENT    = "EDITOR_CLOSED";
 
   /**
-   * Base minimum number of threads for document updates thread executors.
-   */
-  public static final int                 MIN_THREADS            = 2;
-
-  /**
-   * Minimal number of threads maximum possible for document updates thread
-   * executors.
+   * Minimal number of threads for document events executor.
    */
   public static final int                 MIN_MAX_THREADS        = 4;
 
@@ -225,14 +196,35 @@ public class CometdOnlyofficeService implements Startable {
   public static final int                 THREAD_IDLE_TIME       = 120;
 
   /**
-   * Maximum threads per CPU for thread executors of document changes channel.
+   * Default threads per CPU for document events executor.
    */
-  public static final int                 MAX_FACTOR             = 20;
+  public static final int                 THREADS_FACTOR         = 4;
 
   /**
-   * Queue size per CPU for thread executors of document updates channel.
+   * Default queue size per CPU for document events executor.
    */
-  public static final int                 QUEUE_FACTOR           = MAX_FACTOR * 2;
+  public static final int                 QUEUE_FACTOR           = 40;
+
+  /** The Constant CONFIG_THREADS. */
+  public static final String              CONFIG_THREADS         = "threads";
+
+  /** The Constant CONFIG_QUEUE_MAX. */
+  public static final String              CONFIG_QUEUE_MAX       = "queue-max";
+
+  /** The Constant CONFIG_QUEUE_WAIT. */
+  public static final String              CONFIG_QUEUE_WAIT      = "queue-wait";
+
+  /** The Constant CONFIG_VIRTUAL_THREADS. */
+  public static final String              CONFIG_VIRTUAL_THREADS = "virtual-threads";
+
+  /** The Constant CONFIG_CHANGES_WINDOW. */
+  public static final String              CONFIG_CHANGES_WINDOW  = "changes-window";
+
+  /**
+   * Time in milliseconds after which a requested version download not
+   * considered in progress if its result not yet known.
+   */
+  public static final long                VERSION_REQUEST_TIMEOUT = 60000;
 
   /**
    * Thread name used for the executor.
@@ -248,20 +240,88 @@ public class CometdOnlyofficeService implements Startable {
   /** The service. */
   protected final CometdService           service;
 
-  /** The call handlers. */
-  protected final ExecutorService         eventsHandlers;
+  /**
+   * The call handlers: events of a document handled one by one in order of
+   * arrival, events of different documents in parallel.
+   */
+  protected final KeyedExecutor           eventsHandlers;
+
+  /**
+   * The time to wait for a place in the full events queue, in milliseconds.
+   */
+  protected final long                    queueWait;
+
+  /** The tracer. */
+  protected final Tracer                  tracer;
+
+  /** The timer of changes windows. */
+  protected final ScheduledThreadPoolExecutor changesTimer;
+
+  /** The changes of documents coalesced by user. */
+  protected final ChangesCoalescer        changes;
+
+  /**
+   * The documents with requested version download in progress: document ID to
+   * request time.
+   */
+  protected final ConcurrentMap<String, Long> versionRequests = new ConcurrentHashMap<>();
+
+  /**
+   * The version downloads requested while another one in progress: document ID
+   * to the document key, requested again when the download in progress
+   * finished.
+   */
+  protected final ConcurrentMap<String, String> versionFollowUps = new ConcurrentHashMap<>();
+
+  /** The version downloads deferred until the one in progress finished. */
+  protected final Counter                 versionsDeferred;
+
+  /**
+   * The deferred version downloads replaced by a later request or not needed
+   * when their turn came.
+   */
+  protected final Counter                 versionsSkipped;
 
   /**
    * Instantiates the CometdOnlyofficeService.
    *
    * @param exoBayeux the exoBayeux
    * @param onlyofficeEditorService the onlyoffice editor service
+   * @param metrics the metrics registry
+   * @param tracer the tracer
+   * @param params the params
    */
-  public CometdOnlyofficeService(EXoContinuationBayeux exoBayeux, OnlyofficeEditorService onlyofficeEditorService) {
+  public CometdOnlyofficeService(EXoContinuationBayeux exoBayeux,
+                                 OnlyofficeEditorService onlyofficeEditorService,
+                                 MetricsRegistry metrics,
+                                 Tracer tracer,
+                                 InitParams params) {
     this.exoBayeux = exoBayeux;
     this.editors = onlyofficeEditorService;
+    this.tracer = tracer;
     this.service = new CometdService();
-    this.eventsHandlers = createThreadExecutor(THREAD_PREFIX, MAX_FACTOR, QUEUE_FACTOR);
+    PropertiesParam param = params != null ? params.getPropertiesParam("cometd-configuration") : null;
+    Map<String, String> config = param != null ? param.getProperties() : Collections.emptyMap();
+    final int cpus = Runtime.getRuntime().availableProcessors();
+    int threads = (int) configNumber(config, CONFIG_THREADS, Math.max(MIN_MAX_THREADS, cpus * THREADS_FACTOR));
+    int queueMax = (int) configNumber(config, CONFIG_QUEUE_MAX, Math.max(QUEUE_FACTOR, cpus * QUEUE_FACTOR));
+    this.queueWait = configNumber(config, CONFIG_QUEUE_WAIT, 0);
+    boolean virtual = Boolean.parseBoolean(config.get(CONFIG_VIRTUAL_THREADS));
+    this.eventsHandlers = createExecutor(threads, queueMax, virtual);
+    this.changesTimer = new ScheduledThreadPoolExecutor(1, new NamedThreadFactory("onlyoffice-changes-thread-"));
+    this.changes = new ChangesCoalescer(configNumber(config, CONFIG_CHANGES_WINDOW, 1000), changesTimer, this::applyChanges);
+    metrics.gauge("cometd.queue", eventsHandlers::getQueueSize);
+    metrics.gauge("cometd.active", eventsHandlers::getActiveCount);
+    metrics.gauge("cometd.documents", eventsHandlers::getActiveKeys);
+    metrics.register("cometd.rejected", eventsHandlers.getRejected());
+    metrics.register("cometd.failed", eventsHandlers.getFailed());
+    metrics.register("cometd.wait", eventsHandlers.getQueueTime());
+    metrics.register("cometd.run", eventsHandlers.getRunTime());
+    metrics.gauge("cometd.changes.open", changes::getOpen);
+    metrics.register("cometd.changes.coalesced", changes.getCoalesced());
+    metrics.gauge("cometd.versions.active", versionRequests::size);
+    this.versionsDeferred = metrics.counter("cometd.versions.deferred");
+    this.versionsSkipped = metrics.counter("cometd.versions.skipped");
   }
 
   /**
@@ -354,6 +414,7 @@ public class CometdOnlyofficeService implements Startable {
 
         @Override
         public void onSaved(DocumentStatus status) {
+          versionDone(status.getConfig().getDocId(), null);
           publishSavedEvent(status.getConfig().getDocId(), status.getUserId(), status.getConfig().getEditorPage().getComment());
         }
 
@@ -374,6 +435,7 @@ public class CometdOnlyofficeService implements Startable {
 
         @Override
         public void onError(DocumentStatus status) {
+          versionDone(status.getConfig().getDocId(), null);
           if (status.getError() == OnlyofficeEditorListener.FILE_DELETED_ERROR) {
             publishDeletedEvent(status.getConfig().getDocId());
           }
@@ -409,25 +471,35 @@ public class CometdOnlyofficeService implements Startable {
       Map<String, Object> data = message.getDataAsMap();
       String type = (String) data.get("type");
 
-      switch (type) {
-      case DOCUMENT_CHANGED_EVENT:
-        handleDocumentChangeEvent(data, docId);
-        break;
-      case DOCUMENT_VERSION_EVENT:
-        handleDocumentVersionEvent(data, docId);
-        break;
-      case DOCUMENT_LINK_EVENT:
-        handleDocumentLinkEvent(data, docId);
-        break;
-      case DOCUMENT_TITLE_UPDATED:
-        handleDocumentTitleUpdatedEvent(data, docId);
-        break;
-      case DOCUMENT_USERSAVED:
-        handleDocumentUsersavedEvent(data, docId);
-        break;
-      case EDITOR_CLOSED_EVENT:
-        handleEditorClosedEvent(data, docId);
-        break;
+      Span span = tracer.start("onlyoffice.cometd." + type, (String) data.get("key"))
+                        .attribute(Tracer.DOCUMENT_ATTRIBUTE, docId)
+                        .attribute(Tracer.USER_ATTRIBUTE, data.get("userId"));
+      try {
+        switch (type) {
+        case DOCUMENT_CHANGED_EVENT:
+          handleDocumentChangeEvent(data, docId);
+          break;
+        case DOCUMENT_VERSION_EVENT:
+          handleDocumentVersionEvent(data, docId);
+          break;
+        case DOCUMENT_LINK_EVENT:
+          handleDocumentLinkEvent(data, docId);
+          break;
+        case DOCUMENT_TITLE_UPDATED:
+          handleDocumentTitleUpdatedEvent(data, docId);
+          break;
+        case DOCUMENT_USERSAVED:
+          handleDocumentUsersavedEvent(data, docId);
+          break;
+        case EDITOR_CLOSED_EVENT:
+          handleEditorClosedEvent(data, docId);
+          break;
+        }
+      } catch (RuntimeException e) {
+        span.error(e);
+        throw e;
+      } finally {
+        span.end();
       }
       if (LOG.isDebugEnabled()) {
         LOG.debug("Event published in " + message.getChannel() + ", docId: " + docId + ", data: " + message.getJSON());
@@ -457,7 +529,7 @@ public class CometdOnlyofficeService implements Startable {
       String userId = (String) data.get("userId");
       String title = (String) data.get("title");
       String workspace = (String) data.get("workspace");
-      eventsHandlers.submit(new ContainerCommand(PortalContainer.getCurrentPortalContainerName()) {
+      submit(docId, DOCUMENT_TITLE_UPDATED, new ContainerCommand(PortalContainer.getCurrentPortalContainerName()) {
         @Override
         void onContainerError(String error) {
           LOG.error("An error has occured in container: {}", containerName);
@@ -495,7 +567,7 @@ public class CometdOnlyofficeService implements Startable {
         // user. In that case the Command Service will respond with error 3,
         // and we just ignore it
         if (users.length > 0) {
-          eventsHandlers.submit(new ContainerCommand(PortalContainer.getCurrentPortalContainerName()) {
+          submit(docId, EDITOR_CLOSED_EVENT, new ContainerCommand(PortalContainer.getCurrentPortalContainerName()) {
             @Override
             void onContainerError(String error) {
               LOG.error("An error has occured in container: {}", containerName);
@@ -543,7 +615,7 @@ public class CometdOnlyofficeService implements Startable {
         }
       }
 
-      eventsHandlers.submit(new ContainerCommand(PortalContainer.getCurrentPortalContainerName()) {
+      submit(docId, DOCUMENT_VERSION_EVENT, new ContainerCommand(PortalContainer.getCurrentPortalContainerName()) {
         @Override
         void onContainerError(String error) {
           LOG.error("An error has occured in container: {}", containerName);
@@ -573,44 +645,8 @@ public class CometdOnlyofficeService implements Startable {
     protected void handleDocumentChangeEvent(Map<String, Object> data, String docId) {
       String userId = (String) data.get("userId");
       String key = (String) data.get("key");
-      Editor.User lastUser = editors.getLastModifier(key);
-
-      // We download user version if another user started changing the document
-      if (lastUser != null && !userId.equals(lastUser.getId()) && lastUser.getLastModified() > lastUser.getLastSaved()) {
-        eventsHandlers.submit(new ContainerCommand(PortalContainer.getCurrentPortalContainerName()) {
-          @Override
-          void onContainerError(String error) {
-            LOG.error("An error has occured in container: {}", containerName);
-          }
-
-          @Override
-          void execute(ExoContainer exoContainer) {
-            // If we have an actual link, download from it. Otherwise - ask the
-            // command server for the link.
-            if (lastUser.getLinkSaved() >= lastUser.getLastModified()) {
-              if (LOG.isDebugEnabled()) {
-                LOG.debug("Downloading from existing link. User: {}, Key: {}, Link: {}",
-                          lastUser.getId(),
-                          key,
-                          lastUser.getDownloadLink());
-              }
-              editors.downloadVersion(lastUser.getId(), key, true, false, null, lastUser.getDownloadLink());
-            } else {
-              if (LOG.isDebugEnabled()) {
-                LOG.debug("Download a new version of document: user " + lastUser.getId() + ", docId: " + docId);
-              }
-              editors.forceSave(lastUser.getId(), key, true, true, false, null);
-            }
-
-          }
-        });
-        if (LOG.isDebugEnabled()) {
-          LOG.debug("Started collecting changes for: " + userId + ", docId: " + docId);
-        }
-      }
-      editors.setLastModifier(key, userId);
-      if (LOG.isDebugEnabled()) {
-        LOG.debug("Changes collected from: " + userId + ", docId: " + docId);
+      if (!changes.change(docId, key, userId, System.currentTimeMillis()) && LOG.isDebugEnabled()) {
+        LOG.debug("Changes coalesced from: " + userId + ", docId: " + docId);
       }
     }
 
@@ -624,7 +660,7 @@ public class CometdOnlyofficeService implements Startable {
       String userId = (String) data.get("userId");
       String key = (String) data.get("key");
       String comment = (String) data.get("comment");
-      eventsHandlers.submit(new ContainerCommand(PortalContainer.getCurrentPortalContainerName()) {
+      submit(docId, DOCUMENT_USERSAVED, new ContainerCommand(PortalContainer.getCurrentPortalContainerName()) {
         @Override
         void onContainerError(String error) {
           LOG.error("An error has occured in container: {}", containerName);
@@ -715,12 +751,176 @@ public class CometdOnlyofficeService implements Startable {
     return channels.stream().map(c -> c.getId()).collect(Collectors.joining(", "));
   }
 
+  /**
+   * Apply changes of an user in a document. The first changes of the user
+   * applied in the Bayeux thread: if another user has not saved changes, its
+   * version will be downloaded. Changes coalesced in a window only update the
+   * user modification time, in order with other events of the document.
+   *
+   * @param docId the document ID
+   * @param key the document key
+   * @param userId the user ID
+   * @param time the latest changes time
+   * @param first the first changes of the user
+   */
+  protected void applyChanges(String docId, String key, String userId, long time, boolean first) {
+    if (first) {
+      Editor.User lastUser = editors.getLastModifier(key);
+      // We download user version if another user started changing the document
+      if (lastUser != null && !userId.equals(lastUser.getId()) && lastUser.getLastModified() > lastUser.getLastSaved()) {
+        requestVersion(docId, key, lastUser);
+        if (LOG.isDebugEnabled()) {
+          LOG.debug("Started collecting changes for: " + userId + ", docId: " + docId);
+        }
+      }
+      editors.setLastModifier(key, userId, time);
+      if (LOG.isDebugEnabled()) {
+        LOG.debug("Changes collected from: " + userId + ", docId: " + docId);
+      }
+    } else {
+      submit(docId, DOCUMENT_CHANGED_EVENT, new ContainerCommand(PortalContainer.getCurrentPortalContainerName()) {
+        @Override
+        void onContainerError(String error) {
+          LOG.error("An error has occured in container: {}", containerName);
+        }
+
+        @Override
+        void execute(ExoContainer exoContainer) {
+          editors.setLastModifier(key, userId, time);
+          if (LOG.isDebugEnabled()) {
+            LOG.debug("Coalesced changes collected from: " + userId + ", docId: " + docId);
+          }
+        }
+      });
+    }
+  }
+
+  /**
+   * Download a version of the last modifier. Not more than one version download
+   * requested at a time for a document: it's in progress until the document
+   * saved, an error happened or the Command Service refused the forcesave (or
+   * not longer than {@link #VERSION_REQUEST_TIMEOUT}). A request meanwhile
+   * deferred until the download in progress finished, then the last modifier
+   * read again and its version downloaded if it has not saved changes.
+   *
+   * @param docId the document ID
+   * @param key the document key
+   * @param lastUser the last modifier
+   */
+  protected void requestVersion(String docId, String key, Editor.User lastUser) {
+    long now = System.currentTimeMillis();
+    Long requested = versionRequests.putIfAbsent(docId, now);
+    if (requested != null
+        && (now - requested < VERSION_REQUEST_TIMEOUT || !versionRequests.replace(docId, requested, now))) {
+      versionsDeferred.increment();
+      if (versionFollowUps.put(docId, key) != null) {
+        versionsSkipped.increment();
+      }
+      if (LOG.isDebugEnabled()) {
+        LOG.debug("Version download already in progress, deferred for user " + lastUser.getId() + ", docId: " + docId);
+      }
+      // the download in progress may finish before we deferred the request
+      if (!versionRequests.containsKey(docId)) {
+        runFollowUp(docId);
+      }
+      return;
+    }
+    boolean submitted = false;
+    try {
+      submitted = submit(docId, DOCUMENT_CHANGED_EVENT, new ContainerCommand(PortalContainer.getCurrentPortalContainerName()) {
+        @Override
+        void onContainerError(String error) {
+          versionDone(docId, now);
+          LOG.error("An error has occured in container: {}", containerName);
+        }
+
+        @Override
+        void execute(ExoContainer exoContainer) {
+          // If we have an actual link, download from it. Otherwise - ask the
+          // command server for the link.
+          boolean done = false;
+          try {
+            if (lastUser.getLinkSaved() >= lastUser.getLastModified()) {
+              if (LOG.isDebugEnabled()) {
+                LOG.debug("Downloading from existing link. User: {}, Key: {}, Link: {}",
+                          lastUser.getId(),
+                          key,
+                          lastUser.getDownloadLink());
+              }
+              editors.downloadVersion(lastUser.getId(), key, true, false, null, lastUser.getDownloadLink());
+              done = true;
+            } else {
+              if (LOG.isDebugEnabled()) {
+                LOG.debug("Download a new version of document: user " + lastUser.getId() + ", docId: " + docId);
+              }
+              // the version will be downloaded on the Document Server callback,
+              // no callback will come if the command not accepted
+              done = !editors.forceSave(lastUser.getId(), key, true, true, false, null);
+            }
+          } catch (RuntimeException e) {
+            done = true;
+            throw e;
+          } finally {
+            if (done) {
+              versionDone(docId, now);
+            }
+          }
+        }
+      });
+    } finally {
+      if (!submitted) {
+        versionDone(docId, now);
+      }
+    }
+  }
+
+  /**
+   * Finish a version download of a document and run a request deferred
+   * meanwhile.
+   *
+   * @param docId the document ID
+   * @param requested the request time, or <code>null</code> to finish any
+   *          download in progress
+   */
+  protected void versionDone(String docId, Long requested) {
+    boolean finished = requested != null ? versionRequests.remove(docId, requested) : versionRequests.remove(docId) != null;
+    if (finished) {
+      runFollowUp(docId);
+    }
+  }
+
+  /**
+   * Run a version download deferred for a document, if any. The last modifier
+   * of the document may change or save meanwhile, thus it read again and the
+   * download skipped if nothing to save.
+   *
+   * @param docId the document ID
+   */
+  protected void runFollowUp(String docId) {
+    String key = versionFollowUps.remove(docId);
+    if (key != null) {
+      Editor.User lastUser = editors.getLastModifier(key);
+      if (lastUser != null && lastUser.getLastModified() > lastUser.getLastSaved()) {
+        requestVersion(docId, key, lastUser);
+      } else {
+        versionsSkipped.increment();
+        if (LOG.isDebugEnabled()) {
+          LOG.debug("Deferred version download not needed, no unsaved changes, docId: " + docId);
+        }
+      }
+    }
+  }
+
   /**
    * {@inheritDoc}
    */
   @Override
   public void stop() {
-    // Nothing
+    // pending coalesced changes not needed after the stop
+    changesTimer.shutdownNow();
+    if (!eventsHandlers.shutdown(THREAD_IDLE_TIME / 4, TimeUnit.SECONDS)) {
+      LOG.warn("Not all document events handled on stop, queued: " + eventsHandlers.getQueueSize());
+    }
   }
 
   /**
@@ -743,37 +943,70 @@ public class CometdOnlyofficeService implements Startable {
   }
 
   /**
-   * Create a new thread executor service.
+   * Create the executor of document events. Its threads pool doesn't reject
+   * tasks, the queue bound applied by the keyed executor: when the queue is
+   * full an event waits for a place not longer than {@link #queueWait} and
+   * then discarded, it never runs in the Bayeux thread. In virtual threads mode
+   * each event runs in a new virtual thread and the threads count limits how
+   * many run at the same time.
    *
-   * @param threadNamePrefix the thread name prefix
-   * @param maxFactor - max processes per CPU core
-   * @param queueFactor - queue size per CPU core
-   * @return the executor service
+   * @param threads the threads count
+   * @param queueMax the max queued events
+   * @param virtual use virtual threads if the JVM supports them
+   * @return the keyed executor
    */
-  protected ExecutorService createThreadExecutor(String threadNamePrefix, int maxFactor, int queueFactor) {
-    // Executor will queue all commands and run them in maximum set of threads.
-    // Minimum set of threads will be
-    // maintained online even idle, other inactive will be stopped in two
-    // minutes.
-    final int cpus = Runtime.getRuntime().availableProcessors();
-    int poolThreads = cpus / 4;
-    poolThreads = poolThreads < MIN_THREADS ? MIN_THREADS : poolThreads;
-    int maxThreads = Math.round(cpus * 1f * maxFactor);
-    maxThreads = maxThreads > 0 ? maxThreads : 1;
-    maxThreads = maxThreads < MIN_MAX_THREADS ? MIN_MAX_THREADS : maxThreads;
-    int queueSize = cpus * queueFactor;
-    queueSize = queueSize < queueFactor ? queueFactor : queueSize;
+  protected KeyedExecutor createExecutor(int threads, int queueMax, boolean virtual) {
+    if (LOG.isDebugEnabled()) {
+      LOG.debug("Creating events executor " + THREAD_PREFIX + "* for " + threads + (virtual ? " virtual" : "")
+          + " threads, queue size " + queueMax);
+    }
+    ExecutorService pool = VirtualThreads.newExecutor(THREAD_PREFIX, threads, THREAD_IDLE_TIME, virtual);
+    return new KeyedExecutor("onlyoffice-comet", pool, queueMax);
+  }
+
+  /**
+   * Submit a command handling an event of the document. Commands of the same
+   * document run in order of submission.
+   *
+   * @param docId the document ID
+   * @param event the event type (for logs)
+   * @param command the command
+   * @return <code>true</code> if the command queued, <code>false</code> if
+   *         discarded as the queue is full
+   */
+  protected boolean submit(String docId, String event, ContainerCommand command) {
+    try {
+      if (eventsHandlers.execute(docId, command, queueWait, TimeUnit.MILLISECONDS)) {
+        return true;
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    // the executor already warned about the full queue
     if (LOG.isDebugEnabled()) {
-      LOG.debug("Creating thread executor " + threadNamePrefix + "* for " + poolThreads + ".." + maxThreads
-          + " threads, queue size " + queueSize);
+      LOG.debug("Discarded {} event of document {}", event, docId);
+    }
+    return false;
+  }
+
+  /**
+   * Gets a numeric configuration value.
+   *
+   * @param config the config
+   * @param name the name
+   * @param defaultValue the default value
+   * @return the value
+   */
+  protected static long configNumber(Map<String, String> config, String name, long defaultValue) {
+    String value = config.get(name);
+    if (value != null && (value = value.trim()).length() > 0) {
+      try {
+        return Long.parseLong(value);
+      } catch (NumberFormatException e) {
+        LOG.warn("Wrong number in Cometd configuration " + name + ": " + value + ". Default value will be used: " + defaultValue);
+      }
     }
-    return new ThreadPoolExecutor(poolThreads,
-                                  maxThreads,
-                                  THREAD_IDLE_TIME,
-                                  TimeUnit.SECONDS,
-                                  new LinkedBlockingQueue<Runnable>(queueSize),
-                                  new CommandThreadFactory(threadNamePrefix),
-                                  new ThreadPoolExecutor.CallerRunsPolicy());
+    return defaultValue;
   }
 
   /**
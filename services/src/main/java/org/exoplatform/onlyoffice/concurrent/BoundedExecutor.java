@@ -0,0 +1,140 @@
+/*
+ * Copyright (C) 2003-2020 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.exoplatform.onlyoffice.concurrent;
+
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Executor running tasks in a delegate executor with concurrency limited by a
+ * semaphore instead of a threads count. Intended for thread-per-task executors
+ * (of virtual threads): a task thread waits for a permit before the work, so
+ * no more than given count of tasks run at the same time. Lifecycle methods
+ * are delegated.<br>
+ * Created by The eXo Platform SAS.
+ */
+public class BoundedExecutor extends AbstractExecutorService {
+
+  /** The delegate executor. */
+  protected final ExecutorService executor;
+
+  /** The permits. */
+  protected final Semaphore       permits;
+
+  /** The max concurrency. */
+  protected final int             limit;
+
+  /**
+   * Instantiates a new bounded executor.
+   *
+   * @param executor the delegate executor
+   * @param limit the max count of tasks running at the same time
+   */
+  public BoundedExecutor(ExecutorService executor, int limit) {
+    if (limit <= 0) {
+      throw new IllegalArgumentException("Limit should be positive: " + limit);
+    }
+    this.executor = executor;
+    this.limit = limit;
+    this.permits = new Semaphore(limit, true);
+  }
+
+  /**
+   * {@inheritDoc} An accepted task always runs: if its thread interrupted while
+   * waiting for a permit, the task still waits for it and runs, the interrupt
+   * status restored after the task. Tasks may release resources held for them
+   * (e.g. places of {@link KeyedExecutor} queue).
+   */
+  @Override
+  public void execute(Runnable command) {
+    executor.execute(() -> {
+      permits.acquireUninterruptibly();
+      boolean interrupted = Thread.interrupted();
+      try {
+        command.run();
+      } finally {
+        permits.release();
+        if (interrupted) {
+          Thread.currentThread().interrupt();
+        }
+      }
+    });
+  }
+
+  /**
+   * Gets the max count of tasks running at the same time.
+   *
+   * @return the limit
+   */
+  public int getLimit() {
+    return limit;
+  }
+
+  /**
+   * Gets the count of running tasks.
+   *
+   * @return the running count
+   */
+  public int getRunning() {
+    return limit - permits.availablePermits();
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void shutdown() {
+    executor.shutdown();
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public List<Runnable> shutdownNow() {
+    return executor.shutdownNow();
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public boolean isShutdown() {
+    return executor.isShutdown();
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public boolean isTerminated() {
+    return executor.isTerminated();
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+    return executor.awaitTermination(timeout, unit);
+  }
+}
@@ -0,0 +1,72 @@
+/*
+ * Copyright (C) 2003-2020 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.exoplatform.onlyoffice.concurrent;
+
+import org.exoplatform.container.ExoContainer;
+import org.exoplatform.container.ExoContainerContext;
+import org.exoplatform.container.component.RequestLifeCycle;
+import org.exoplatform.services.security.ConversationState;
+
+/**
+ * Task running in eXo container context of the thread which created it. It
+ * sets the current container and user conversation state, and begins a request
+ * lifecycle for the task execution in another (platform or virtual) thread.<br>
+ * Created by The eXo Platform SAS.
+ */
+public class ContainerTask implements Runnable {
+
+  /** The task. */
+  protected final Runnable          task;
+
+  /** The container. */
+  protected final ExoContainer      container;
+
+  /** The conversation state. */
+  protected final ConversationState state;
+
+  /**
+   * Instantiates a new container task in current container context.
+   *
+   * @param task the task
+   */
+  public ContainerTask(Runnable task) {
+    this.task = task;
+    this.container = ExoContainerContext.getCurrentContainer();
+    this.state = ConversationState.getCurrent();
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void run() {
+    ExoContainer contextContainer = ExoContainerContext.getCurrentContainerIfPresent();
+    ConversationState contextState = ConversationState.getCurrent();
+    try {
+      ExoContainerContext.setCurrentContainer(container);
+      ConversationState.setCurrent(state);
+      RequestLifeCycle.begin(container);
+      task.run();
+    } finally {
+      RequestLifeCycle.end();
+      ConversationState.setCurrent(contextState);
+      ExoContainerContext.setCurrentContainer(contextContainer);
+    }
+  }
+}
@@ -0,0 +1,364 @@
+/*
+ * Copyright (C) 2003-2020 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.exoplatform.onlyoffice.concurrent;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.exoplatform.onlyoffice.metrics.Counter;
+import org.exoplatform.onlyoffice.metrics.Timer;
+import org.exoplatform.services.log.ExoLogger;
+import org.exoplatform.services.log.Log;
+
+/**
+ * Executor running tasks of the same key (e.g. a document ID) one by one in
+ * submission order, while tasks of different keys run in parallel in an
+ * underlying executor. Number of queued tasks is bounded: when the bound is
+ * reached a submission waits for a free place and then rejected, unless
+ * submitted as an overflow of the bound.<br>
+ * Created by The eXo Platform SAS.
+ */
+public class KeyedExecutor {
+
+  /** The Constant LOG. */
+  protected static final Log                          LOG            = ExoLogger.getLogger(KeyedExecutor.class);
+
+  /** Max tasks of a key to run in a row before letting other keys run. */
+  protected static final int                          TASKS_PER_TURN = 16;
+
+  /**
+   * Task queued with its submission time.
+   */
+  class QueuedTask {
+
+    /** The task. */
+    final Runnable task;
+
+    /** The queued time. */
+    final long     queuedTime;
+
+    /** The task queued over the bound, it holds no place in the queue. */
+    final boolean  overflow;
+
+    /**
+     * Instantiates a new queued task.
+     *
+     * @param task the task
+     * @param overflow the task queued over the bound
+     */
+    QueuedTask(Runnable task, boolean overflow) {
+      this.task = task;
+      this.queuedTime = queueTime.start();
+      this.overflow = overflow;
+    }
+  }
+
+  /** The name. */
+  protected final String                              name;
+
+  /** The executor. */
+  protected final Executor                            executor;
+
+  /** The queue bound. */
+  protected final int                                 maxQueued;
+
+  /** The free places in the queue. */
+  protected final Semaphore                           places;
+
+  /** The tasks queues, a queue exists while its key has tasks. */
+  protected final ConcurrentHashMap<String, Queue<QueuedTask>> queues = new ConcurrentHashMap<>();
+
+  /** The running tasks count. */
+  protected final AtomicInteger                       active         = new AtomicInteger();
+
+  /** The submitted tasks. */
+  protected final Counter                             submitted      = new Counter();
+
+  /** The rejected tasks. */
+  protected final Counter                             rejected       = new Counter();
+
+  /** The tasks queued over the bound. */
+  protected final Counter                             overflowed     = new Counter();
+
+  /** The failed tasks. */
+  protected final Counter                             failed         = new Counter();
+
+  /** The time tasks spent in the queue. */
+  protected final Timer                               queueTime      = new Timer();
+
+  /** The time of tasks execution. */
+  protected final Timer                               runTime        = new Timer();
+
+  /**
+   * Instantiates a new keyed executor.
+   *
+   * @param name the name (for logs)
+   * @param executor the underlying executor, it should not reject tasks
+   * @param maxQueued the max queued tasks (including running ones)
+   */
+  public KeyedExecutor(String name, Executor executor, int maxQueued) {
+    this.name = name;
+    this.executor = executor;
+    this.maxQueued = maxQueued;
+    this.places = new Semaphore(maxQueued);
+  }
+
+  /**
+   * Submit a task to run after already queued tasks of the same key.
+   *
+   * @param key the key
+   * @param task the task
+   * @param timeout the time to wait for a free place if the queue is full
+   * @param unit the timeout unit
+   * @return <code>true</code> if the task queued, <code>false</code> if
+   *         rejected as the queue stays full
+   * @throws InterruptedException if interrupted while waiting for a place
+   */
+  public boolean execute(String key, Runnable task, long timeout, TimeUnit unit) throws InterruptedException {
+    if (!places.tryAcquire(timeout, unit)) {
+      rejected.increment();
+      LOG.warn("Executor {} queue is full ({} tasks), task for {} rejected", name, maxQueued, key);
+      return false;
+    }
+    enqueue(key, new QueuedTask(task, false));
+    return true;
+  }
+
+  /**
+   * Submit a task to run after already queued tasks of the same key, even if
+   * the queue is full: the task then queued over the bound and counted as
+   * overflow. For tasks that cannot be rejected and should not run out of
+   * order of their key. The task is never lost: if interrupted while waiting
+   * for a place, the task queued over the bound and the interrupt flag of
+   * current thread restored.
+   *
+   * @param key the key
+   * @param task the task
+   * @param timeout the time to wait for a free place if the queue is full
+   * @param unit the timeout unit
+   */
+  public void executeOrOverflow(String key, Runnable task, long timeout, TimeUnit unit) {
+    boolean placed;
+    try {
+      placed = places.tryAcquire(timeout, unit);
+      if (!placed) {
+        LOG.warn("Executor {} queue is full ({} tasks), task for {} queued over the bound", name, maxQueued, key);
+      }
+    } catch (InterruptedException e) {
+      placed = false;
+      LOG.warn("Executor {} interrupted waiting for a place, task for {} queued over the bound", name, key);
+      Thread.currentThread().interrupt();
+    }
+    if (!placed) {
+      overflowed.increment();
+    }
+    enqueue(key, new QueuedTask(task, !placed));
+  }
+
+  /**
+   * Add a task to the queue of its key and start draining the queue if it was
+   * empty.
+   *
+   * @param key the key
+   * @param queued the queued task
+   */
+  protected void enqueue(String key, QueuedTask queued) {
+    submitted.increment();
+    boolean[] start = new boolean[1];
+    queues.compute(key, (k, q) -> {
+      if (q == null) {
+        q = new ArrayDeque<>();
+        start[0] = true;
+      }
+      q.add(queued);
+      return q;
+    });
+    if (start[0]) {
+      executor.execute(() -> drain(key));
+    }
+  }
+
+  /**
+   * Run queued tasks of given key. Only one drain of a key is active at a
+   * time: it exists while the key queue is in the map.
+   *
+   * @param key the key
+   */
+  protected void drain(String key) {
+    for (int i = 0; i < TASKS_PER_TURN; i++) {
+      QueuedTask[] next = new QueuedTask[1];
+      queues.computeIfPresent(key, (k, q) -> {
+        next[0] = q.poll();
+        return next[0] != null ? q : null;
+      });
+      if (next[0] == null) {
+        return;
+      }
+      run(key, next[0]);
+    }
+    // let other keys run and continue later
+    executor.execute(() -> drain(key));
+  }
+
+  /**
+   * Run a task.
+   *
+   * @param key the key
+   * @param queued the queued task
+   */
+  protected void run(String key, QueuedTask queued) {
+    queueTime.stop(queued.queuedTime);
+    long start = runTime.start();
+    active.incrementAndGet();
+    try {
+      queued.task.run();
+    } catch (Throwable e) {
+      failed.increment();
+      LOG.error("Executor " + name + " task failed for " + key, e);
+    } finally {
+      active.decrementAndGet();
+      runTime.stop(start);
+      if (!queued.overflow) {
+        places.release();
+      }
+    }
+  }
+
+  /**
+   * Shutdown the underlying executor (if it's an {@link ExecutorService}) and
+   * wait for the queued tasks completion.
+   *
+   * @param timeout the timeout
+   * @param unit the unit
+   * @return <code>true</code> if all tasks completed
+   */
+  public boolean shutdown(long timeout, TimeUnit unit) {
+    long deadline = System.nanoTime() + unit.toNanos(timeout);
+    try {
+      // drains resubmit themselves, thus wait for empty queues first
+      while (!queues.isEmpty() && System.nanoTime() < deadline) {
+        Thread.sleep(50);
+      }
+      if (executor instanceof ExecutorService) {
+        ExecutorService service = (ExecutorService) executor;
+        service.shutdown();
+        return service.awaitTermination(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS) && queues.isEmpty();
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    return queues.isEmpty();
+  }
+
+  /**
+   * Gets the name.
+   *
+   * @return the name
+   */
+  public String getName() {
+    return name;
+  }
+
+  /**
+   * Gets the queued tasks count (including running ones).
+   *
+   * @return the queue size
+   */
+  public int getQueueSize() {
+    return maxQueued - places.availablePermits();
+  }
+
+  /**
+   * Gets the keys having tasks.
+   *
+   * @return the keys count
+   */
+  public int getActiveKeys() {
+    return queues.size();
+  }
+
+  /**
+   * Gets the running tasks count.
+   *
+   * @return the active count
+   */
+  public int getActiveCount() {
+    return active.get();
+  }
+
+  /**
+   * Gets the submitted tasks counter.
+   *
+   * @return the submitted
+   */
+  public Counter getSubmitted() {
+    return submitted;
+  }
+
+  /**
+   * Gets the rejected tasks counter.
+   *
+   * @return the rejected
+   */
+  public Counter getRejected() {
+    return rejected;
+  }
+
+  /**
+   * Gets the counter of tasks queued over the bound.
+   *
+   * @return the overflowed
+   */
+  public Counter getOverflowed() {
+    return overflowed;
+  }
+
+  /**
+   * Gets the failed tasks counter.
+   *
+   * @return the failed
+   */
+  public Counter getFailed() {
+    return failed;
+  }
+
+  /**
+   * Gets the timer of time spent by tasks in the queue.
+   *
+   * @return the queue time
+   */
+  public Timer getQueueTime() {
+    return queueTime;
+  }
+
+  /**
+   * Gets the timer of tasks execution.
+   *
+   * @return the run time
+   */
+  public Timer getRunTime() {
+    return runTime;
+  }
+}
@@ -0,0 +1,128 @@
+/*
+ * Copyright (C) 2003-2020 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.exoplatform.onlyoffice.concurrent;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Registry of locks (e.g. JCR locks) acquired in this JVM. Threads waiting for
+ * a lock held locally get notified when it will be released, without polling
+ * the lock storage. For locks held elsewhere (another cluster node, an user
+ * session) it offers a polling delay with exponential backoff and jitter.<br>
+ * Created by The eXo Platform SAS.
+ */
+public class LocalLocks {
+
+  /** The held locks, a latch released with its lock. */
+  private final ConcurrentHashMap<String, CountDownLatch> held = new ConcurrentHashMap<>();
+
+  /** The min poll delay in milliseconds. */
+  private final long                                      minPoll;
+
+  /** The max poll delay in milliseconds. */
+  private final long                                      maxPoll;
+
+  /**
+   * Instantiates a new local locks registry.
+   *
+   * @param minPoll the min poll delay in milliseconds
+   * @param maxPoll the max poll delay in milliseconds
+   */
+  public LocalLocks(long minPoll, long maxPoll) {
+    this.minPoll = Math.max(1, minPoll);
+    this.maxPoll = Math.max(this.minPoll, maxPoll);
+  }
+
+  /**
+   * Mark a lock acquired in this JVM.
+   *
+   * @param key the lock key
+   */
+  public void acquired(String key) {
+    CountDownLatch previous = held.put(key, new CountDownLatch(1));
+    if (previous != null) {
+      // should not happen, but don't leave waiters of a lost latch
+      previous.countDown();
+    }
+  }
+
+  /**
+   * Mark a lock released and notify its waiters.
+   *
+   * @param key the lock key
+   */
+  public void released(String key) {
+    CountDownLatch latch = held.remove(key);
+    if (latch != null) {
+      latch.countDown();
+    }
+  }
+
+  /**
+   * Checks if a lock is held in this JVM.
+   *
+   * @param key the lock key
+   * @return true, if held locally
+   */
+  public boolean isHeld(String key) {
+    return held.containsKey(key);
+  }
+
+  /**
+   * Wait for release of a lock held in this JVM. If the lock isn't held
+   * locally, this method returns immediately.
+   *
+   * @param key the lock key
+   * @param timeout the timeout in milliseconds
+   * @return true, if the lock was released (or not held locally), false if
+   *         the timeout elapsed
+   * @throws InterruptedException if the current thread was interrupted
+   */
+  public boolean awaitRelease(String key, long timeout) throws InterruptedException {
+    CountDownLatch latch = held.get(key);
+    return latch == null || latch.await(timeout, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Next delay to poll a lock held outside this JVM: exponential backoff from
+   * the min to the max delay, with a random jitter of up to a half of the
+   * delay to spread the polling of concurrent waiters.
+   *
+   * @param attempt the attempt number, starting from 1
+   * @return the delay in milliseconds
+   */
+  public long pollDelay(int attempt) {
+    long delay = minPoll << Math.min(Math.max(attempt - 1, 0), 20);
+    delay = Math.min(delay, maxPoll);
+    long jitter = delay / 2;
+    return jitter > 0 ? delay - jitter + ThreadLocalRandom.current().nextLong(jitter + 1) : delay;
+  }
+
+  /**
+   * Gets the count of locks held in this JVM.
+   *
+   * @return the size
+   */
+  public int size() {
+    return held.size();
+  }
+}
@@ -0,0 +1,144 @@
+/*
+ * Copyright (C) 2003-2020 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.exoplatform.onlyoffice.concurrent;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.exoplatform.services.log.ExoLogger;
+import org.exoplatform.services.log.Log;
+
+/**
+ * Executors of virtual threads when the JVM supports them (Java 21+), with a
+ * fallback to a pool of platform threads. The virtual threads API is accessed
+ * reflectively as the project compiles for Java 8.<br>
+ * Created by The eXo Platform SAS.
+ */
+public final class VirtualThreads {
+
+  /** The Constant LOG. */
+  private static final Log    LOG = ExoLogger.getLogger(VirtualThreads.class);
+
+  /** The factory of executors: Executors.newThreadPerTaskExecutor(). */
+  private static final Method NEW_EXECUTOR;
+
+  /** The virtual thread builder factory: Thread.ofVirtual(). */
+  private static final Method OF_VIRTUAL;
+
+  /** The builder name method: Thread.Builder.name(String, long). */
+  private static final Method BUILDER_NAME;
+
+  /** The builder factory method: Thread.Builder.factory(). */
+  private static final Method BUILDER_FACTORY;
+
+  static {
+    Method newExecutor = null;
+    Method ofVirtual = null;
+    Method builderName = null;
+    Method builderFactory = null;
+    try {
+      Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+      ofVirtual = Thread.class.getMethod("ofVirtual");
+      builderName = builderClass.getMethod("name", String.class, long.class);
+      builderFactory = builderClass.getMethod("factory");
+      newExecutor = Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class);
+      // check the API enabled (it's a preview in Java 19-20)
+      builderFactory.invoke(ofVirtual.invoke(null));
+    } catch (Throwable e) {
+      if (LOG.isDebugEnabled()) {
+        LOG.debug("Virtual threads not supported by the JVM: " + e);
+      }
+      newExecutor = null;
+    }
+    NEW_EXECUTOR = newExecutor;
+    OF_VIRTUAL = ofVirtual;
+    BUILDER_NAME = builderName;
+    BUILDER_FACTORY = builderFactory;
+  }
+
+  /**
+   * Instantiates a new virtual threads (not used).
+   */
+  private VirtualThreads() {
+  }
+
+  /**
+   * Checks if virtual threads supported by the JVM.
+   *
+   * @return true, if supported
+   */
+  public static boolean isSupported() {
+    return NEW_EXECUTOR != null;
+  }
+
+  /**
+   * Create an executor starting a new virtual thread for each task.
+   *
+   * @param namePrefix the threads name prefix
+   * @return the executor or <code>null</code> if virtual threads not supported
+   */
+  public static ExecutorService newThreadPerTaskExecutor(String namePrefix) {
+    if (isSupported()) {
+      try {
+        Object builder = BUILDER_NAME.invoke(OF_VIRTUAL.invoke(null), namePrefix, 1L);
+        ThreadFactory factory = (ThreadFactory) BUILDER_FACTORY.invoke(builder);
+        return (ExecutorService) NEW_EXECUTOR.invoke(null, factory);
+      } catch (Exception e) {
+        LOG.warn("Cannot create virtual threads executor " + namePrefix + "*", e);
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Create an executor running not more than given count of tasks at the same
+   * time. If virtual threads requested and supported, each task runs in a new
+   * virtual thread and the concurrency limited by a semaphore, otherwise it's a
+   * pool of platform threads of the limit size, idle threads stop after given
+   * time.
+   *
+   * @param namePrefix the threads name prefix
+   * @param limit the max count of running tasks
+   * @param idleSeconds the idle time of platform threads in seconds
+   * @param virtual use virtual threads if supported
+   * @return the executor
+   */
+  public static ExecutorService newExecutor(String namePrefix, int limit, long idleSeconds, boolean virtual) {
+    if (virtual) {
+      ExecutorService executor = newThreadPerTaskExecutor(namePrefix);
+      if (executor != null) {
+        return new BoundedExecutor(executor, limit);
+      }
+      LOG.warn("Virtual threads not supported, platform threads will be used for " + namePrefix + "*");
+    }
+    ThreadPoolExecutor pool = new ThreadPoolExecutor(limit,
+                                                     limit,
+                                                     idleSeconds,
+                                                     TimeUnit.SECONDS,
+                                                     new LinkedBlockingQueue<Runnable>(),
+                                                     new NamedThreadFactory(namePrefix));
+    pool.allowCoreThreadTimeOut(true);
+    return pool;
+  }
+}
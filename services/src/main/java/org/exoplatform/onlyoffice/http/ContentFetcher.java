@@ -0,0 +1,501 @@
+/*
+ * Copyright (C) 2003-2020 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.exoplatform.onlyoffice.http;
+
+import java.io.Closeable;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.MalformedURLException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpStatus;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.CloseableHttpResponse;
+
+import org.exoplatform.onlyoffice.metrics.Counter;
+import org.exoplatform.onlyoffice.metrics.Timer;
+import org.exoplatform.services.log.ExoLogger;
+import org.exoplatform.services.log.Log;
+
+/**
+ * Fetches document content from Document Server, using the shared
+ * {@link DocumentServerClient}, with connect and read timeouts, a limit of the
+ * content size and retries on transient failures (I/O errors and HTTP 5xx
+ * responses). The content can be spooled to a temporary file first: it lets
+ * retry a download failed in the middle and offers a replayable stream to the
+ * storage.<br>
+ * Created by The eXo Platform SAS.
+ */
+public class ContentFetcher {
+
+  /** The Constant LOG. */
+  protected static final Log LOG            = ExoLogger.getLogger(ContentFetcher.class);
+
+  /** The size of a chunk transferred to a spool file at once. */
+  protected static final long TRANSFER_CHUNK = 1024 * 1024;
+
+  /**
+   * Content fetching failure that will not be retried: the server rejected the
+   * request or the content is too large.
+   */
+  public static class ContentException extends IOException {
+
+    /** The Constant serialVersionUID. */
+    private static final long serialVersionUID = 4915234687416582519L;
+
+    /**
+     * Instantiates a new content exception.
+     *
+     * @param message the message
+     */
+    public ContentException(String message) {
+      super(message);
+    }
+  }
+
+  /**
+   * Fetched content. It should be closed after use to release the connection
+   * or remove the spool file.
+   */
+  public static class Content implements Closeable {
+
+    /** The spool file, <code>null</code> if not spooled. */
+    private final Path        file;
+
+    /** The stream. */
+    private final InputStream stream;
+
+    /** The size, -1 if not known. */
+    private final long        size;
+
+    /**
+     * Instantiates a new content spooled to a file.
+     *
+     * @param file the file
+     * @param size the size
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    Content(Path file, long size) throws IOException {
+      this.file = file;
+      this.stream = Files.newInputStream(file);
+      this.size = size;
+    }
+
+    /**
+     * Instantiates a new content streamed from a connection.
+     *
+     * @param stream the stream
+     * @param size the size or -1 if not known
+     */
+    Content(InputStream stream, long size) {
+      this.file = null;
+      this.stream = stream;
+      this.size = size;
+    }
+
+    /**
+     * Gets the content stream.
+     *
+     * @return the stream
+     */
+    public InputStream getStream() {
+      return stream;
+    }
+
+    /**
+     * Gets the content size.
+     *
+     * @return the size in bytes, -1 if not known
+     */
+    public long getSize() {
+      return size;
+    }
+
+    /**
+     * Checks if the content spooled to a file.
+     *
+     * @return true, if spooled
+     */
+    public boolean isSpooled() {
+      return file != null;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void close() throws IOException {
+      try {
+        stream.close();
+      } finally {
+        if (file != null) {
+          Files.deleteIfExists(file);
+        }
+      }
+    }
+  }
+
+  /**
+   * Stream of a response that fails if read more than allowed bytes or ends
+   * before its content length, and records the fetch metrics on close.
+   */
+  protected class LimitedStream extends FilterInputStream {
+
+    /** The response. */
+    private final CloseableHttpResponse response;
+
+    /** The start time. */
+    private final long                  startTime;
+
+    /** The content length, -1 if not known. */
+    private final long                  length;
+
+    /** The count of read bytes. */
+    private long                        count;
+
+    /** The closed flag. */
+    private boolean                     closed;
+
+    /**
+     * Instantiates a new limited stream.
+     *
+     * @param response the response
+     * @param entity the response entity
+     * @param startTime the start time
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    protected LimitedStream(CloseableHttpResponse response, HttpEntity entity, long startTime) throws IOException {
+      super(entity.getContent());
+      this.response = response;
+      this.startTime = startTime;
+      this.length = entity.getContentLength();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int read() throws IOException {
+      int b = super.read();
+      if (b >= 0) {
+        count(1);
+      } else {
+        checkEnd();
+      }
+      return b;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+      int n = super.read(b, off, len);
+      if (n > 0) {
+        count(n);
+      } else if (n < 0) {
+        checkEnd();
+      }
+      return n;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long skip(long n) throws IOException {
+      long skipped = super.skip(n);
+      count(skipped);
+      return skipped;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean markSupported() {
+      return false;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void close() throws IOException {
+      if (!closed) {
+        closed = true;
+        try {
+          // a fully read content lets reuse the connection
+          super.close();
+        } finally {
+          response.close();
+          fetchTime.stop(startTime);
+          bytes.add(count);
+        }
+      }
+    }
+
+    /**
+     * Count read bytes.
+     *
+     * @param n the n
+     * @throws ContentException if the content is too large
+     */
+    private void count(long n) throws ContentException {
+      count += n;
+      if (maxSize > 0 && count > maxSize) {
+        throw new ContentException("Content larger than " + maxSize + " bytes");
+      }
+    }
+
+    /**
+     * Check the content fully read at its end: a connection closed in the
+     * middle of the content may end the stream without an error.
+     *
+     * @throws IOException if the content is truncated
+     */
+    private void checkEnd() throws IOException {
+      if (length >= 0 && count < length) {
+        throw new IOException("Content truncated at " + count + " of " + length + " bytes");
+      }
+    }
+  }
+
+  /** The client. */
+  protected final DocumentServerClient client;
+
+  /** The request config with content timeouts. */
+  protected final RequestConfig        requestConfig;
+
+  /** The max content size in bytes, zero or negative for unlimited. */
+  protected final long                 maxSize;
+
+  /** The count of retries after a failed attempt. */
+  protected final int                  retries;
+
+  /** The delay before a retry in milliseconds, it grows with each attempt. */
+  protected final long                 retryDelay;
+
+  /** Spool content to a temporary file. */
+  protected final boolean              spool;
+
+  /** The fetch timer. */
+  protected final Timer                fetchTime     = new Timer();
+
+  /** The fetched bytes. */
+  protected final Counter              bytes         = new Counter();
+
+  /** The retried attempts. */
+  protected final Counter              retryAttempts = new Counter();
+
+  /** The failed fetches. */
+  protected final Counter              failures      = new Counter();
+
+  /**
+   * Instantiates a new content fetcher.
+   *
+   * @param client the Document Server client
+   * @param connectTimeout the connect timeout in milliseconds
+   * @param readTimeout the read timeout in milliseconds
+   * @param maxSize the max content size in bytes, zero or negative for
+   *          unlimited
+   * @param retries the count of retries after a failed attempt
+   * @param retryDelay the delay before a first retry in milliseconds
+   * @param spool spool content to a temporary file
+   */
+  public ContentFetcher(DocumentServerClient client,
+                        int connectTimeout,
+                        int readTimeout,
+                        long maxSize,
+                        int retries,
+                        long retryDelay,
+                        boolean spool) {
+    this.client = client;
+    this.requestConfig = RequestConfig.custom()
+                                      .setConnectTimeout(connectTimeout)
+                                      .setSocketTimeout(readTimeout)
+                                      .setConnectionRequestTimeout(connectTimeout)
+                                      .build();
+    this.maxSize = maxSize;
+    this.retries = Math.max(0, retries);
+    this.retryDelay = Math.max(0, retryDelay);
+    this.spool = spool;
+  }
+
+  /**
+   * Fetch content from given URL.
+   *
+   * @param contentUrl the content URL
+   * @return the content, it should be closed after use
+   * @throws MalformedURLException if the URL cannot be parsed
+   * @throws IOException if the content cannot be fetched
+   */
+  public Content fetch(String contentUrl) throws MalformedURLException, IOException {
+    URI url;
+    try {
+      url = new URI(contentUrl);
+      if (!url.isAbsolute()) {
+        throw new MalformedURLException("Not absolute URL: " + contentUrl);
+      }
+    } catch (URISyntaxException e) {
+      MalformedURLException me = new MalformedURLException(e.getMessage());
+      me.initCause(e);
+      throw me;
+    }
+    int attempt = 0;
+    while (true) {
+      attempt++;
+      try {
+        return fetch(url);
+      } catch (IOException e) {
+        if (e instanceof ContentException || e instanceof InterruptedIOException || attempt > retries) {
+          failures.increment();
+          throw e;
+        }
+        retryAttempts.increment();
+        LOG.warn("Error fetching content from {} (attempt {} of {}): {}", url.getHost(), attempt, retries + 1, e.getMessage());
+        try {
+          Thread.sleep(retryDelay * attempt);
+        } catch (InterruptedException ie) {
+          Thread.currentThread().interrupt();
+          failures.increment();
+          throw new InterruptedIOException("Interrupted before retry of content fetching");
+        }
+      }
+    }
+  }
+
+  /**
+   * Fetch content in a single attempt.
+   *
+   * @param url the URL
+   * @return the content
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  protected Content fetch(URI url) throws IOException {
+    long start = fetchTime.start();
+    CloseableHttpResponse response = client.get(url.toString(), requestConfig);
+    try {
+      int code = response.getStatusLine().getStatusCode();
+      if (code != HttpStatus.SC_OK) {
+        if (code >= 500) {
+          throw new IOException("Server error " + code);
+        }
+        throw new ContentException("Unexpected response " + code);
+      }
+      HttpEntity entity = response.getEntity();
+      if (entity == null) {
+        throw new ContentException("Response without content");
+      }
+      long length = entity.getContentLength();
+      if (maxSize > 0 && length > maxSize) {
+        throw new ContentException("Content length " + length + " exceeds allowed " + maxSize + " bytes");
+      }
+      LimitedStream stream = new LimitedStream(response, entity, start);
+      if (spool) {
+        return spool(stream);
+      }
+      return new Content(stream, length);
+    } catch (IOException | RuntimeException e) {
+      response.close();
+      throw e;
+    }
+  }
+
+  /**
+   * Spool given stream to a temporary file. The stream will be closed.
+   *
+   * @param stream the stream
+   * @return the content
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  protected Content spool(InputStream stream) throws IOException {
+    Path file = Files.createTempFile("onlyoffice-content-", ".tmp");
+    try {
+      long size = 0;
+      try (ReadableByteChannel src = Channels.newChannel(stream);
+          FileChannel dst = FileChannel.open(file, StandardOpenOption.WRITE)) {
+        long n;
+        while ((n = dst.transferFrom(src, size, TRANSFER_CHUNK)) > 0) {
+          size += n;
+        }
+      }
+      return new Content(file, size);
+    } catch (IOException | RuntimeException e) {
+      Files.deleteIfExists(file);
+      throw e;
+    }
+  }
+
+  /**
+   * Gets the fetch timer.
+   *
+   * @return the fetch time
+   */
+  public Timer getFetchTime() {
+    return fetchTime;
+  }
+
+  /**
+   * Gets the count of fetched bytes.
+   *
+   * @return the bytes
+   */
+  public long getBytes() {
+    return bytes.getCount();
+  }
+
+  /**
+   * Gets the count of retried attempts.
+   *
+   * @return the retries
+   */
+  public long getRetries() {
+    return retryAttempts.getCount();
+  }
+
+  /**
+   * Gets the count of failed fetches.
+   *
+   * @return the failures
+   */
+  public long getFailures() {
+    return failures.getCount();
+  }
+
+  /**
+   * Gets the average download throughput.
+   *
+   * @return the throughput in bytes per second
+   */
+  public double getThroughput() {
+    double seconds = fetchTime.getTotalTime() / 1000;
+    return seconds > 0 ? bytes.getCount() / seconds : 0;
+  }
+}
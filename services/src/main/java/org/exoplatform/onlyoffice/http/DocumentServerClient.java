@@ -0,0 +1,187 @@
+/*
+ * Copyright (C) 2003-2020 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.exoplatform.onlyoffice.http;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.pool.PoolStats;
+import org.apache.http.protocol.HttpContext;
+import org.apache.http.util.EntityUtils;
+
+import org.exoplatform.onlyoffice.metrics.Timer;
+
+/**
+ * HTTP client shared by all requests to Document Server (commands and content
+ * downloads). Connections are pooled and kept alive between requests, the pool
+ * limits concurrent connections in total and per route (a Document Server
+ * host).<br>
+ * Created by The eXo Platform SAS.
+ */
+public class DocumentServerClient implements Closeable {
+
+  /** The connection manager. */
+  protected final PoolingHttpClientConnectionManager connections;
+
+  /** The client. */
+  protected final CloseableHttpClient                client;
+
+  /** The requests timer. */
+  protected final Timer                              requestTime = new Timer();
+
+  /**
+   * Instantiates a new Document Server client.
+   *
+   * @param maxTotal the max connections in total
+   * @param maxPerRoute the max connections per route
+   * @param keepAlive the max time to keep an idle connection in milliseconds
+   * @param connectTimeout the connect timeout in milliseconds
+   * @param socketTimeout the socket (read) timeout in milliseconds
+   */
+  public DocumentServerClient(int maxTotal, int maxPerRoute, final long keepAlive, int connectTimeout, int socketTimeout) {
+    this.connections = new PoolingHttpClientConnectionManager(keepAlive, TimeUnit.MILLISECONDS);
+    this.connections.setMaxTotal(maxTotal);
+    this.connections.setDefaultMaxPerRoute(maxPerRoute);
+    // check stale connections that were idle for a while
+    this.connections.setValidateAfterInactivity(2000);
+
+    ConnectionKeepAliveStrategy keepAliveStrategy = new ConnectionKeepAliveStrategy() {
+      @Override
+      public long getKeepAliveDuration(HttpResponse response, HttpContext context) {
+        // respect a shorter timeout of the server
+        long duration = DefaultConnectionKeepAliveStrategy.INSTANCE.getKeepAliveDuration(response, context);
+        return duration > 0 ? Math.min(duration, keepAlive) : keepAlive;
+      }
+    };
+    RequestConfig requestConfig = RequestConfig.custom()
+                                               .setConnectTimeout(connectTimeout)
+                                               .setSocketTimeout(socketTimeout)
+                                               .setConnectionRequestTimeout(connectTimeout)
+                                               .build();
+    this.client = HttpClients.custom()
+                             .setConnectionManager(connections)
+                             .setKeepAliveStrategy(keepAliveStrategy)
+                             .setDefaultRequestConfig(requestConfig)
+                             .evictExpiredConnections()
+                             .evictIdleConnections(keepAlive, TimeUnit.MILLISECONDS)
+                             .disableCookieManagement()
+                             .build();
+  }
+
+  /**
+   * Execute GET request. The response should be closed after use, its
+   * connection will be returned to the pool if the content was fully consumed.
+   *
+   * @param url the URL
+   * @param config the request config or <code>null</code> to use default
+   * @return the response
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  public CloseableHttpResponse get(String url, RequestConfig config) throws IOException {
+    HttpGet request = new HttpGet(url);
+    if (config != null) {
+      request.setConfig(config);
+    }
+    return client.execute(request);
+  }
+
+  /**
+   * Post JSON and read the response text.
+   *
+   * @param url the URL
+   * @param json the JSON
+   * @param token the JWT token for authorization or <code>null</code>
+   * @return the response text
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  public String postJSON(String url, String json, String token) throws IOException {
+    HttpPost request = new HttpPost(url);
+    request.setEntity(new StringEntity(json, ContentType.APPLICATION_JSON.withCharset(StandardCharsets.UTF_8)));
+    if (token != null) {
+      request.setHeader("Authorization", "Bearer " + token);
+    }
+    long start = requestTime.start();
+    try (CloseableHttpResponse response = client.execute(request)) {
+      int code = response.getStatusLine().getStatusCode();
+      String text = response.getEntity() != null ? EntityUtils.toString(response.getEntity(), StandardCharsets.UTF_8) : null;
+      if (code >= 300) {
+        throw new IOException("Unexpected response " + code + ": " + text);
+      }
+      return text;
+    } finally {
+      requestTime.stop(start);
+    }
+  }
+
+  /**
+   * Gets the total statistics of the connection pool.
+   *
+   * @return the pool stats
+   */
+  public PoolStats getPoolStats() {
+    return connections.getTotalStats();
+  }
+
+  /**
+   * Gets the statistics of the connection pool per route.
+   *
+   * @return the map of route host to the pool stats
+   */
+  public Map<String, PoolStats> getRouteStats() {
+    Map<String, PoolStats> stats = new LinkedHashMap<>();
+    for (HttpRoute route : connections.getRoutes()) {
+      stats.put(route.getTargetHost().toURI(), connections.getStats(route));
+    }
+    return stats;
+  }
+
+  /**
+   * Gets the timer of command requests.
+   *
+   * @return the request time
+   */
+  public Timer getRequestTime() {
+    return requestTime;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void close() throws IOException {
+    client.close();
+  }
+}
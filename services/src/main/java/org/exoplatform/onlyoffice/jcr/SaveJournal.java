@@ -0,0 +1,332 @@
+/*
+ * Copyright (C) 2003-2020 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.exoplatform.onlyoffice.jcr;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.jcr.ItemExistsException;
+import javax.jcr.Node;
+import javax.jcr.NodeIterator;
+import javax.jcr.PathNotFoundException;
+import javax.jcr.RepositoryException;
+import javax.jcr.Session;
+
+import org.apache.commons.io.IOUtils;
+
+/**
+ * Journal of document saves acknowledged to Document Server before the content
+ * stored. A save recorded in JCR before its callback acknowledged and removed
+ * when the content stored: saves left after a stop or a crash can be replayed
+ * on the next start. Entries kept by owner (a cluster node), each node replays
+ * only own saves.<br>
+ *
+ * Created by The eXo Platform SAS.
+ */
+public class SaveJournal {
+
+  /**
+   * Provider of JCR sessions to the journal.
+   */
+  public interface Sessions {
+
+    /**
+     * Open a system session in the journal workspace, the caller will logout
+     * it.
+     *
+     * @return the session
+     * @throws RepositoryException the repository exception
+     */
+    Session open() throws RepositoryException;
+  }
+
+  /**
+   * A recorded save.
+   */
+  public static class Entry {
+
+    /** The entry ID. */
+    protected final String id;
+
+    /** The document ID. */
+    protected final String docId;
+
+    /** The record time. */
+    protected final long   queued;
+
+    /** The replay attempts. */
+    protected final long   attempts;
+
+    /** The save data. */
+    protected final byte[] data;
+
+    /**
+     * Instantiates a new entry.
+     *
+     * @param id the id
+     * @param docId the document ID
+     * @param queued the record time
+     * @param attempts the replay attempts
+     * @param data the data
+     */
+    protected Entry(String id, String docId, long queued, long attempts, byte[] data) {
+      this.id = id;
+      this.docId = docId;
+      this.queued = queued;
+      this.attempts = attempts;
+      this.data = data;
+    }
+
+    /**
+     * Gets the entry ID.
+     *
+     * @return the ID
+     */
+    public String getId() {
+      return id;
+    }
+
+    /**
+     * Gets the document ID.
+     *
+     * @return the document ID
+     */
+    public String getDocId() {
+      return docId;
+    }
+
+    /**
+     * Gets the record time.
+     *
+     * @return the record time
+     */
+    public long getQueued() {
+      return queued;
+    }
+
+    /**
+     * Gets the count of replays already started for this save.
+     *
+     * @return the attempts
+     */
+    public long getAttempts() {
+      return attempts;
+    }
+
+    /**
+     * Gets the save data.
+     *
+     * @return the data
+     */
+    public byte[] getData() {
+      return data;
+    }
+  }
+
+  /** The path of the journal relative to the workspace root. */
+  public static final String    PATH     = "exo:applications/onlyoffice/saves";
+
+  /** The Constant DOC_ID. */
+  protected static final String DOC_ID   = "docId";
+
+  /** The Constant OWNER. */
+  protected static final String OWNER    = "owner";
+
+  /** The Constant QUEUED. */
+  protected static final String QUEUED   = "queued";
+
+  /** The Constant ATTEMPTS. */
+  protected static final String ATTEMPTS = "attempts";
+
+  /** The Constant DATA. */
+  protected static final String DATA     = "data";
+
+  /** The sessions. */
+  protected final Sessions      sessions;
+
+  /** The owner of entries. */
+  protected final String        owner;
+
+  /** The sequence of entries recorded in the same time. */
+  protected final AtomicLong    sequence = new AtomicLong();
+
+  /**
+   * Instantiates a new save journal.
+   *
+   * @param sessions the sessions
+   * @param owner the owner of recorded entries
+   */
+  public SaveJournal(Sessions sessions, String owner) {
+    this.sessions = sessions;
+    this.owner = owner;
+  }
+
+  /**
+   * Record a save of the document.
+   *
+   * @param docId the document ID
+   * @param data the save data
+   * @return the entry ID
+   * @throws RepositoryException if the save cannot be recorded
+   */
+  public String add(String docId, byte[] data) throws RepositoryException {
+    long queued = System.currentTimeMillis();
+    String id = new StringBuilder(docId).append('-').append(queued).append('-').append(sequence.incrementAndGet()).toString();
+    Session session = sessions.open();
+    try {
+      Node entry = journal(session).addNode(id, "nt:unstructured");
+      entry.setProperty(DOC_ID, docId);
+      entry.setProperty(OWNER, owner);
+      entry.setProperty(QUEUED, queued);
+      entry.setProperty(ATTEMPTS, 0L);
+      entry.setProperty(DATA, new ByteArrayInputStream(data));
+      session.save();
+    } finally {
+      session.logout();
+    }
+    return id;
+  }
+
+  /**
+   * Remove a save when its content stored. A removed entry is ignored.
+   *
+   * @param id the entry ID
+   * @throws RepositoryException if the save cannot be removed
+   */
+  public void remove(String id) throws RepositoryException {
+    Session session = sessions.open();
+    try {
+      session.getRootNode().getNode(PATH).getNode(id).remove();
+      session.save();
+    } catch (PathNotFoundException e) {
+      // already removed
+    } finally {
+      session.logout();
+    }
+  }
+
+  /**
+   * Count a replay of a save.
+   *
+   * @param id the entry ID
+   * @throws RepositoryException if the save cannot be updated
+   */
+  public void attempted(String id) throws RepositoryException {
+    Session session = sessions.open();
+    try {
+      Node entry = session.getRootNode().getNode(PATH).getNode(id);
+      entry.setProperty(ATTEMPTS, entry.getProperty(ATTEMPTS).getLong() + 1);
+      session.save();
+    } finally {
+      session.logout();
+    }
+  }
+
+  /**
+   * Saves of this owner in order of their record.
+   *
+   * @return the entries
+   * @throws RepositoryException if the journal cannot be read
+   */
+  public List<Entry> entries() throws RepositoryException {
+    List<Entry> entries = new ArrayList<>();
+    Session session = sessions.open();
+    try {
+      Node root = session.getRootNode();
+      if (root.hasNode(PATH)) {
+        NodeIterator nodes = root.getNode(PATH).getNodes();
+        while (nodes.hasNext()) {
+          Node entry = nodes.nextNode();
+          if (owner.equals(entry.getProperty(OWNER).getString())) {
+            entries.add(new Entry(entry.getName(),
+                                  entry.getProperty(DOC_ID).getString(),
+                                  entry.getProperty(QUEUED).getLong(),
+                                  entry.getProperty(ATTEMPTS).getLong(),
+                                  read(entry)));
+          }
+        }
+      }
+    } finally {
+      session.logout();
+    }
+    entries.sort(Comparator.comparingLong(Entry::getQueued).thenComparingLong(SaveJournal::sequence));
+    return entries;
+  }
+
+  /**
+   * Gets the journal node, creates it if not found.
+   *
+   * @param session the session
+   * @return the journal node
+   * @throws RepositoryException the repository exception
+   */
+  protected Node journal(Session session) throws RepositoryException {
+    Node root = session.getRootNode();
+    if (!root.hasNode(PATH)) {
+      synchronized (this) {
+        Node node = root;
+        for (String name : PATH.split("/")) {
+          node = node.hasNode(name) ? node.getNode(name) : node.addNode(name, "nt:unstructured");
+        }
+        try {
+          session.save();
+        } catch (ItemExistsException e) {
+          // created by another cluster node meanwhile
+          session.refresh(false);
+        }
+      }
+    }
+    return root.getNode(PATH);
+  }
+
+  /**
+   * Read the save data of an entry.
+   *
+   * @param entry the entry node
+   * @return the data
+   * @throws RepositoryException the repository exception
+   */
+  protected byte[] read(Node entry) throws RepositoryException {
+    try (InputStream data = entry.getProperty(DATA).getStream()) {
+      return IOUtils.toByteArray(data);
+    } catch (IOException e) {
+      throw new RepositoryException("Cannot read save data " + entry.getName(), e);
+    }
+  }
+
+  /**
+   * Sequence of an entry recorded in the same time.
+   *
+   * @param entry the entry
+   * @return the sequence
+   */
+  protected static long sequence(Entry entry) {
+    String id = entry.getId();
+    try {
+      return Long.parseLong(id.substring(id.lastIndexOf('-') + 1));
+    } catch (NumberFormatException e) {
+      return 0;
+    }
+  }
+}
@@ -0,0 +1,431 @@
+/*
+ * Copyright (C) 2003-2020 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.exoplatform.onlyoffice.jcr;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+
+import javax.jcr.ItemNotFoundException;
+import javax.jcr.Node;
+import javax.jcr.RepositoryException;
+import javax.jcr.Session;
+import javax.jcr.version.Version;
+import javax.jcr.version.VersionHistory;
+import javax.jcr.version.VersionIterator;
+
+import org.exoplatform.onlyoffice.concurrent.ContainerTask;
+import org.exoplatform.onlyoffice.concurrent.NamedThreadFactory;
+import org.exoplatform.onlyoffice.metrics.Counter;
+import org.exoplatform.onlyoffice.metrics.Timer;
+import org.exoplatform.services.log.ExoLogger;
+import org.exoplatform.services.log.Log;
+
+/**
+ * Retention of saved versions of edited documents. Versions of a document
+ * pruned in background after its saves, by batches of documents:
+ * <ul>
+ * <li>a version accumulated by its author (with <code>eoo:versionOwner</code>)
+ * collapsed into the next version by the same author if it was created within
+ * the collapse window (any time if the window is zero)</li>
+ * <li>only the last versions kept if the max number of versions set</li>
+ * </ul>
+ * The base version and labeled (commented) versions never removed.<br>
+ * Created by The eXo Platform SAS.
+ */
+public class VersionRetention {
+
+  /**
+   * Provider of JCR sessions to prune versions.
+   */
+  public interface Sessions {
+
+    /**
+     * Open a system session in the workspace, the caller will logout it.
+     *
+     * @param workspace the workspace
+     * @return the session
+     * @throws RepositoryException the repository exception
+     */
+    Session open(String workspace) throws RepositoryException;
+  }
+
+  /**
+   * A version of the document history.
+   */
+  static class Entry {
+
+    /** The name. */
+    final String  name;
+
+    /** The created time. */
+    final long    created;
+
+    /** The author. */
+    final String  author;
+
+    /** The owner of accumulated version, <code>null</code> if not such. */
+    final String  owner;
+
+    /** The protected from removal. */
+    final boolean kept;
+
+    /**
+     * Instantiates a new entry.
+     *
+     * @param name the name
+     * @param created the created
+     * @param author the author
+     * @param owner the owner
+     * @param kept the kept
+     */
+    Entry(String name, long created, String author, String owner, boolean kept) {
+      this.name = name;
+      this.created = created;
+      this.author = author;
+      this.owner = owner;
+      this.kept = kept;
+    }
+  }
+
+  /** The Constant LOG. */
+  protected static final Log                  LOG          = ExoLogger.getLogger(VersionRetention.class);
+
+  /** The Constant ROOT_VERSION. */
+  protected static final String               ROOT_VERSION = "jcr:rootVersion";
+
+  /** The documents to prune: workspace and document ID. */
+  protected final Queue<String[]>             pending      = new ConcurrentLinkedQueue<>();
+
+  /** The queued documents. */
+  protected final Set<String>                 queued       = ConcurrentHashMap.newKeySet();
+
+  /** The removed versions. */
+  protected final Counter                     pruned       = new Counter();
+
+  /** The prune failures. */
+  protected final Counter                     failures     = new Counter();
+
+  /** The batches prune time. */
+  protected final Timer                       pruneTime    = new Timer();
+
+  /** The max history size seen. */
+  protected final AtomicLong                  historyMax   = new AtomicLong();
+
+  /** The history size of the last pruned document. */
+  protected final AtomicLong                  historyLast  = new AtomicLong();
+
+  /** The max number of versions to keep, zero for unlimited. */
+  protected final int                         maxVersions;
+
+  /** The window in milliseconds to collapse versions of the same author. */
+  protected final long                        collapseWindow;
+
+  /** The prune interval in milliseconds. */
+  protected final long                        interval;
+
+  /** The max number of documents pruned in a batch. */
+  protected final int                         batchSize;
+
+  /** The sessions. */
+  protected final Sessions                    sessions;
+
+  /** The consumer of pruned documents (workspace and document ID). */
+  protected final BiConsumer<String, String>  onPruned;
+
+  /** The timer, running when started. */
+  protected ScheduledExecutorService          timer;
+
+  /**
+   * Instantiates a new version retention.
+   *
+   * @param maxVersions the max number of versions to keep, zero for unlimited
+   * @param collapseWindow the window in milliseconds to collapse versions of
+   *          the same author, zero for no time limit
+   * @param interval the prune interval in milliseconds
+   * @param batchSize the max number of documents pruned in a batch
+   * @param sessions the sessions provider
+   */
+  public VersionRetention(int maxVersions, long collapseWindow, long interval, int batchSize, Sessions sessions) {
+    this(maxVersions, collapseWindow, interval, batchSize, sessions, (workspace, docId) -> {
+    });
+  }
+
+  /**
+   * Instantiates a new version retention notifying about documents with
+   * removed versions.
+   *
+   * @param maxVersions the max number of versions to keep, zero for unlimited
+   * @param collapseWindow the window in milliseconds to collapse versions of
+   *          the same author, zero for no time limit
+   * @param interval the prune interval in milliseconds
+   * @param batchSize the max number of documents pruned in a batch
+   * @param sessions the sessions provider
+   * @param onPruned the consumer of workspace and ID of documents with removed
+   *          versions
+   */
+  public VersionRetention(int maxVersions,
+                          long collapseWindow,
+                          long interval,
+                          int batchSize,
+                          Sessions sessions,
+                          BiConsumer<String, String> onPruned) {
+    this.maxVersions = maxVersions;
+    this.collapseWindow = collapseWindow;
+    this.interval = interval;
+    this.batchSize = batchSize;
+    this.sessions = sessions;
+    this.onPruned = onPruned;
+  }
+
+  /**
+   * Start pruning in background in current container context.
+   */
+  public synchronized void start() {
+    if (timer == null) {
+      ScheduledThreadPoolExecutor scheduler = new ScheduledThreadPoolExecutor(1,
+                                                                              new NamedThreadFactory("onlyoffice-versions-thread-"));
+      scheduler.scheduleWithFixedDelay(new ContainerTask(this::pruneBatch), interval, interval, TimeUnit.MILLISECONDS);
+      this.timer = scheduler;
+    }
+  }
+
+  /**
+   * Stop background pruning, not pruned documents remain pending.
+   */
+  public synchronized void stop() {
+    if (timer != null) {
+      timer.shutdownNow();
+      timer = null;
+    }
+  }
+
+  /**
+   * Schedule pruning of the document versions.
+   *
+   * @param workspace the workspace
+   * @param docId the document ID
+   * @return <code>true</code> if scheduled, <code>false</code> if already
+   *         pending
+   */
+  public boolean schedule(String workspace, String docId) {
+    if (queued.add(workspace + ":" + docId)) {
+      pending.add(new String[] { workspace, docId });
+      return true;
+    }
+    return false;
+  }
+
+  /**
+   * Prune a batch of pending documents.
+   *
+   * @return the number of pruned documents
+   */
+  public int pruneBatch() {
+    Map<String, Session> batchSessions = new HashMap<>();
+    int count = 0;
+    long start = pruneTime.start();
+    try {
+      String[] doc;
+      while (count < batchSize && (doc = pending.poll()) != null) {
+        String workspace = doc[0];
+        String docId = doc[1];
+        queued.remove(workspace + ":" + docId);
+        count++;
+        try {
+          Session session = batchSessions.get(workspace);
+          if (session == null) {
+            session = sessions.open(workspace);
+            batchSessions.put(workspace, session);
+          }
+          if (prune(session.getNodeByUUID(docId)) > 0) {
+            onPruned.accept(workspace, docId);
+          }
+        } catch (ItemNotFoundException e) {
+          // document removed meanwhile
+        } catch (RepositoryException e) {
+          failures.increment();
+          LOG.warn("Cannot prune versions of document {} in {}: {}", docId, workspace, e.getMessage());
+        }
+      }
+    } catch (Throwable e) {
+      // keep the timer running
+      LOG.error("Error pruning versions of documents", e);
+    } finally {
+      for (Session session : batchSessions.values()) {
+        session.logout();
+      }
+      if (count > 0) {
+        pruneTime.stop(start);
+      }
+    }
+    return count;
+  }
+
+  /**
+   * Prune versions of the node.
+   *
+   * @param node the node
+   * @return the number of removed versions
+   * @throws RepositoryException the repository exception
+   */
+  public int prune(Node node) throws RepositoryException {
+    if (!node.isNodeType("mix:versionable")) {
+      return 0;
+    }
+    VersionHistory history = node.getVersionHistory();
+    String baseVersion = node.getBaseVersion().getName();
+    List<Entry> versions = new ArrayList<>();
+    for (VersionIterator viter = history.getAllVersions(); viter.hasNext();) {
+      Version version = viter.nextVersion();
+      String name = version.getName();
+      if (!ROOT_VERSION.equals(name)) {
+        Node frozen = version.getNode("jcr:frozenNode");
+        String author = frozen.hasProperty("exo:lastModifier") ? frozen.getProperty("exo:lastModifier").getString() : null;
+        String owner = frozen.hasProperty("eoo:versionOwner") ? frozen.getProperty("eoo:versionOwner").getString() : null;
+        boolean kept = name.equals(baseVersion) || history.getVersionLabels(version).length > 0;
+        versions.add(new Entry(name,
+                               version.getCreated().getTimeInMillis(),
+                               author,
+                               owner != null && !owner.isEmpty() ? owner : null,
+                               kept));
+      }
+    }
+    versions.sort((v1, v2) -> Long.compare(v1.created, v2.created));
+    List<Entry> removed = select(versions);
+    int count = 0;
+    for (Entry version : removed) {
+      try {
+        history.removeVersion(version.name);
+        count++;
+      } catch (RepositoryException e) {
+        // e.g. referenced version, it will be tried on next prune
+        if (LOG.isDebugEnabled()) {
+          LOG.debug("Cannot remove version {} of {}: {}", version.name, node.getPath(), e.getMessage());
+        }
+      }
+    }
+    pruned.add(count);
+    long size = versions.size() - count;
+    historyLast.set(size);
+    historyMax.accumulateAndGet(size, Math::max);
+    if (count > 0 && LOG.isDebugEnabled()) {
+      LOG.debug("Pruned {} versions of {}, {} remain", count, node.getPath(), size);
+    }
+    return count;
+  }
+
+  /**
+   * Select versions to remove. The versions sorted from oldest to newest, they
+   * will be removed in the same order.
+   *
+   * @param versions the versions
+   * @return the versions to remove
+   */
+  protected List<Entry> select(List<Entry> versions) {
+    List<Entry> removed = new ArrayList<>();
+    List<Entry> remain = new ArrayList<>();
+    for (int i = 0; i < versions.size(); i++) {
+      Entry version = versions.get(i);
+      Entry next = i + 1 < versions.size() ? versions.get(i + 1) : null;
+      if (next != null && !version.kept && version.owner != null && version.owner.equals(next.author)
+          && (collapseWindow <= 0 || next.created - version.created <= collapseWindow)) {
+        removed.add(version);
+      } else {
+        remain.add(version);
+      }
+    }
+    if (maxVersions > 0) {
+      int excess = remain.size() - maxVersions;
+      for (int i = 0; excess > 0 && i < remain.size(); i++) {
+        Entry version = remain.get(i);
+        if (!version.kept) {
+          removed.add(version);
+          excess--;
+        }
+      }
+      removed.sort((v1, v2) -> Long.compare(v1.created, v2.created));
+    }
+    return removed;
+  }
+
+  /**
+   * Gets the number of documents pending to prune.
+   *
+   * @return the pending
+   */
+  public int getPending() {
+    return queued.size();
+  }
+
+  /**
+   * Gets the counter of removed versions.
+   *
+   * @return the pruned
+   */
+  public Counter getPruned() {
+    return pruned;
+  }
+
+  /**
+   * Gets the counter of prune failures.
+   *
+   * @return the failures
+   */
+  public Counter getFailures() {
+    return failures;
+  }
+
+  /**
+   * Gets the timer of prune batches.
+   *
+   * @return the prune time
+   */
+  public Timer getPruneTime() {
+    return pruneTime;
+  }
+
+  /**
+   * Gets the max history size seen.
+   *
+   * @return the history max
+   */
+  public long getHistoryMax() {
+    return historyMax.get();
+  }
+
+  /**
+   * Gets the history size of the last pruned document.
+   *
+   * @return the history size
+   */
+  public long getHistoryLast() {
+    return historyLast.get();
+  }
+}
@@ -0,0 +1,64 @@
+/*
+ * Copyright (C) 2003-2020 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.exoplatform.onlyoffice.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Monotonic counter of events.<br>
+ * Created by The eXo Platform SAS.
+ */
+public class Counter {
+
+  /** The count. */
+  private final LongAdder count = new LongAdder();
+
+  /**
+   * Increment the counter.
+   */
+  public void increment() {
+    count.increment();
+  }
+
+  /**
+   * Add given amount to the counter.
+   *
+   * @param amount the amount
+   */
+  public void add(long amount) {
+    count.add(amount);
+  }
+
+  /**
+   * Gets the count.
+   *
+   * @return the count
+   */
+  public long getCount() {
+    return count.sum();
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public String toString() {
+    return String.valueOf(getCount());
+  }
+}
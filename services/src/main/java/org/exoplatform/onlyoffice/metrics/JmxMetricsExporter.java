@@ -0,0 +1,180 @@
+/*
+ * Copyright (C) 2003-2020 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.exoplatform.onlyoffice.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.ReflectionException;
+
+import org.exoplatform.container.xml.InitParams;
+import org.exoplatform.container.xml.ValueParam;
+
+/**
+ * Exporter of Onlyoffice metrics as read-only attributes of a JMX MBean (by
+ * default <code>exo:service=onlyoffice,name=metrics</code>). Attributes are
+ * the names of the registry snapshot and they read on each JMX request.<br>
+ * Created by The eXo Platform SAS.
+ */
+public class JmxMetricsExporter extends MetricsExporterPlugin {
+
+  /** The Constant OBJECT_NAME param. */
+  public static final String OBJECT_NAME         = "object-name";
+
+  /** The Constant DEFAULT_OBJECT_NAME. */
+  public static final String DEFAULT_OBJECT_NAME = "exo:service=onlyoffice,name=metrics";
+
+  /**
+   * The MBean of the registry metrics.
+   */
+  protected static class MetricsMBean implements DynamicMBean {
+
+    /** The registry. */
+    protected final MetricsRegistry registry;
+
+    /**
+     * Instantiates a new metrics MBean.
+     *
+     * @param registry the registry
+     */
+    protected MetricsMBean(MetricsRegistry registry) {
+      this.registry = registry;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Object getAttribute(String attribute) throws AttributeNotFoundException {
+      Number value = registry.snapshot().get(attribute);
+      if (value == null) {
+        throw new AttributeNotFoundException(attribute);
+      }
+      return value;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setAttribute(Attribute attribute) throws AttributeNotFoundException {
+      throw new AttributeNotFoundException("Metrics are read-only: " + attribute.getName());
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public AttributeList getAttributes(String[] attributes) {
+      Map<String, Number> values = registry.snapshot();
+      AttributeList list = new AttributeList();
+      for (String name : attributes) {
+        Number value = values.get(name);
+        if (value != null) {
+          list.add(new Attribute(name, value));
+        }
+      }
+      return list;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public AttributeList setAttributes(AttributeList attributes) {
+      return new AttributeList();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Object invoke(String actionName, Object[] params, String[] signature) throws ReflectionException {
+      throw new ReflectionException(new NoSuchMethodException(actionName), "Metrics have no operations");
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public MBeanInfo getMBeanInfo() {
+      Map<String, Number> values = registry.snapshot();
+      MBeanAttributeInfo[] attrs = new MBeanAttributeInfo[values.size()];
+      int i = 0;
+      for (Map.Entry<String, Number> v : values.entrySet()) {
+        attrs[i++] = new MBeanAttributeInfo(v.getKey(), v.getValue().getClass().getName(), v.getKey(), true, false, false);
+      }
+      return new MBeanInfo(getClass().getName(), "Onlyoffice metrics", attrs, null, null, null);
+    }
+  }
+
+  /** The object name. */
+  protected final ObjectName objectName;
+
+  /** The MBean server where registered. */
+  protected MBeanServer      server;
+
+  /**
+   * Instantiates a new JMX metrics exporter.
+   *
+   * @param params the params
+   * @throws Exception if the object name is not valid
+   */
+  public JmxMetricsExporter(InitParams params) throws Exception {
+    ValueParam name = params != null ? params.getValueParam(OBJECT_NAME) : null;
+    String value = name != null ? name.getValue() : null;
+    this.objectName = new ObjectName(value != null && value.trim().length() > 0 ? value.trim() : DEFAULT_OBJECT_NAME);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void start(MetricsRegistry registry) throws Exception {
+    MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    if (server.isRegistered(objectName)) {
+      server.unregisterMBean(objectName);
+    }
+    server.registerMBean(new MetricsMBean(registry), objectName);
+    this.server = server;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void stop() {
+    if (server != null) {
+      try {
+        server.unregisterMBean(objectName);
+      } catch (Exception e) {
+        // already unregistered
+      }
+      server = null;
+    }
+  }
+}
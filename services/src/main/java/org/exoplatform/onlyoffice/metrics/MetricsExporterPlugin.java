@@ -0,0 +1,42 @@
+/*
+ * Copyright (C) 2003-2020 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.exoplatform.onlyoffice.metrics;
+
+import org.exoplatform.container.component.BaseComponentPlugin;
+
+/**
+ * Plugin of {@link MetricsRegistry} publishing its metrics to a monitoring
+ * system (e.g. JMX). Exporters started and stopped with the registry.<br>
+ * Created by The eXo Platform SAS.
+ */
+public abstract class MetricsExporterPlugin extends BaseComponentPlugin {
+
+  /**
+   * Start publishing metrics of the registry.
+   *
+   * @param registry the registry
+   * @throws Exception if the exporter cannot start
+   */
+  public abstract void start(MetricsRegistry registry) throws Exception;
+
+  /**
+   * Stop publishing metrics.
+   */
+  public abstract void stop();
+}
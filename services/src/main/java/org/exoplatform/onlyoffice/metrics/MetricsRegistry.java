@@ -0,0 +1,218 @@
+/*
+ * Copyright (C) 2003-2020 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.exoplatform.onlyoffice.metrics;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.picocontainer.Startable;
+
+import org.exoplatform.container.component.ComponentPlugin;
+import org.exoplatform.services.log.ExoLogger;
+import org.exoplatform.services.log.Log;
+
+/**
+ * Registry of Onlyoffice metrics: named {@link Counter}, {@link Timer} and
+ * {@link Gauge} instances shared by the editor services. The metrics read as a
+ * flat snapshot of numbers (timers expand to count, mean, max and percentiles)
+ * and published by {@link MetricsExporterPlugin} plugins.<br>
+ * Created by The eXo Platform SAS.
+ */
+public class MetricsRegistry implements Startable {
+
+  /** The Constant LOG. */
+  protected static final Log                                  LOG         = ExoLogger.getLogger(MetricsRegistry.class);
+
+  /** The Constant PREFIX of metric names. */
+  public static final String                                  PREFIX      = "onlyoffice.";
+
+  /** The percentiles of timers in the snapshot. */
+  protected static final double[]                             PERCENTILES = { 0.5, 0.95, 0.99 };
+
+  /** The metrics sorted by name. */
+  protected final Map<String, Object>                         metrics     = new ConcurrentSkipListMap<>();
+
+  /** The exporters. */
+  protected final CopyOnWriteArrayList<MetricsExporterPlugin> exporters   = new CopyOnWriteArrayList<>();
+
+  /**
+   * Gets or creates a counter.
+   *
+   * @param name the name (without {@link #PREFIX})
+   * @return the counter
+   */
+  public Counter counter(String name) {
+    return get(name, Counter.class, new Counter());
+  }
+
+  /**
+   * Gets or creates a timer.
+   *
+   * @param name the name (without {@link #PREFIX})
+   * @return the timer
+   */
+  public Timer timer(String name) {
+    return get(name, Timer.class, new Timer());
+  }
+
+  /**
+   * Register a gauge, it replaces an existing gauge with the same name.
+   *
+   * @param name the name (without {@link #PREFIX})
+   * @param gauge the gauge
+   */
+  public void gauge(String name, Gauge gauge) {
+    metrics.put(PREFIX + name, gauge);
+  }
+
+  /**
+   * Register an existing metric (of a component having own metrics),
+   * it replaces a metric with the same name.
+   *
+   * @param name the name (without {@link #PREFIX})
+   * @param metric the {@link Counter}, {@link Timer} or {@link Gauge}
+   */
+  public void register(String name, Object metric) {
+    if (metric instanceof Counter || metric instanceof Timer || metric instanceof Gauge) {
+      metrics.put(PREFIX + name, metric);
+    } else {
+      throw new IllegalArgumentException("Not a metric: " + metric);
+    }
+  }
+
+  /**
+   * Remove a metric.
+   *
+   * @param name the name (without {@link #PREFIX})
+   */
+  public void remove(String name) {
+    metrics.remove(PREFIX + name);
+  }
+
+  /**
+   * Gets the metrics mapped by full name.
+   *
+   * @return the metrics
+   */
+  public Map<String, Object> getMetrics() {
+    return Collections.unmodifiableMap(metrics);
+  }
+
+  /**
+   * Read current values of all the metrics. Timer values in milliseconds with
+   * names suffixed by <code>.count</code>, <code>.mean</code>,
+   * <code>.max</code>, <code>.p50</code>, <code>.p95</code> and
+   * <code>.p99</code>.
+   *
+   * @return the values mapped by name, sorted
+   */
+  public Map<String, Number> snapshot() {
+    Map<String, Number> values = new LinkedHashMap<>();
+    for (Map.Entry<String, Object> me : metrics.entrySet()) {
+      String name = me.getKey();
+      Object metric = me.getValue();
+      if (metric instanceof Counter) {
+        values.put(name, ((Counter) metric).getCount());
+      } else if (metric instanceof Timer) {
+        Timer timer = (Timer) metric;
+        values.put(name + ".count", timer.getCount());
+        values.put(name + ".mean", timer.getMean());
+        values.put(name + ".max", timer.getMax());
+        for (double p : PERCENTILES) {
+          values.put(name + ".p" + Math.round(p * 100), timer.getPercentile(p));
+        }
+      } else if (metric instanceof Gauge) {
+        try {
+          Number value = ((Gauge) metric).getValue();
+          if (value != null) {
+            values.put(name, value);
+          }
+        } catch (RuntimeException e) {
+          LOG.warn("Error reading gauge " + name + ": " + e.getMessage());
+        }
+      }
+    }
+    return values;
+  }
+
+  /**
+   * Adds the exporter plugin.
+   *
+   * @param plugin the plugin
+   */
+  public void addPlugin(ComponentPlugin plugin) {
+    if (plugin instanceof MetricsExporterPlugin) {
+      exporters.add((MetricsExporterPlugin) plugin);
+    } else {
+      LOG.warn("Not a metrics exporter plugin: " + plugin.getClass().getName());
+    }
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void start() {
+    for (MetricsExporterPlugin exporter : exporters) {
+      try {
+        exporter.start(this);
+        LOG.info("Onlyoffice metrics exporter started: " + exporter.getName());
+      } catch (Exception e) {
+        LOG.error("Error starting Onlyoffice metrics exporter " + exporter.getName(), e);
+      }
+    }
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void stop() {
+    for (MetricsExporterPlugin exporter : exporters) {
+      try {
+        exporter.stop();
+      } catch (RuntimeException e) {
+        LOG.warn("Error stopping Onlyoffice metrics exporter " + exporter.getName(), e);
+      }
+    }
+  }
+
+  /**
+   * Gets a metric of given type or registers a new one.
+   *
+   * @param <M> the metric type
+   * @param name the name
+   * @param type the type
+   * @param metric the new metric
+   * @return the metric
+   */
+  protected <M> M get(String name, Class<M> type, M metric) {
+    Object existing = metrics.putIfAbsent(PREFIX + name, metric);
+    if (existing == null) {
+      return metric;
+    } else if (type.isInstance(existing)) {
+      return type.cast(existing);
+    } else {
+      throw new IllegalArgumentException("Metric " + PREFIX + name + " already registered as " + existing.getClass().getSimpleName());
+    }
+  }
+}
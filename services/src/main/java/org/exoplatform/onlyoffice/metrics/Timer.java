@@ -0,0 +1,191 @@
+/*
+ * Copyright (C) 2003-2020 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.exoplatform.onlyoffice.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Timer of operations with a histogram of durations in fixed buckets. The
+ * buckets let estimate percentiles without keeping samples.<br>
+ * Created by The eXo Platform SAS.
+ */
+public class Timer {
+
+  /** Upper bounds of the histogram buckets in milliseconds. */
+  public static final long[] BUCKETS = { 1, 2, 5, 10, 25, 50, 100, 250, 500, 1000, 2500, 5000, 10000, 30000, 60000 };
+
+  /** The count. */
+  private final LongAdder    count   = new LongAdder();
+
+  /** The total time in nanoseconds. */
+  private final LongAdder    total   = new LongAdder();
+
+  /** The max time in nanoseconds. */
+  private final AtomicLong   max     = new AtomicLong();
+
+  /** The histogram, last bucket for durations longer than all bounds. */
+  private final LongAdder[]  buckets = new LongAdder[BUCKETS.length + 1];
+
+  /**
+   * Instantiates a new timer.
+   */
+  public Timer() {
+    for (int i = 0; i < buckets.length; i++) {
+      buckets[i] = new LongAdder();
+    }
+  }
+
+  /**
+   * Start timing of an operation.
+   *
+   * @return the start time to use in {@link #stop(long)}
+   */
+  public long start() {
+    return System.nanoTime();
+  }
+
+  /**
+   * Record the time passed since given start.
+   *
+   * @param startTime the start time returned by {@link #start()}
+   * @return the recorded duration in nanoseconds
+   */
+  public long stop(long startTime) {
+    long duration = System.nanoTime() - startTime;
+    record(duration);
+    return duration;
+  }
+
+  /**
+   * Record a duration.
+   *
+   * @param nanos the duration in nanoseconds
+   */
+  public void record(long nanos) {
+    if (nanos < 0) {
+      nanos = 0;
+    }
+    count.increment();
+    total.add(nanos);
+    long current;
+    while (nanos > (current = max.get()) && !max.compareAndSet(current, nanos)) {
+      // retry
+    }
+    long millis = TimeUnit.NANOSECONDS.toMillis(nanos);
+    int i = 0;
+    while (i < BUCKETS.length && millis > BUCKETS[i]) {
+      i++;
+    }
+    buckets[i].increment();
+  }
+
+  /**
+   * Gets the count of recorded operations.
+   *
+   * @return the count
+   */
+  public long getCount() {
+    return count.sum();
+  }
+
+  /**
+   * Gets the total time in milliseconds.
+   *
+   * @return the total time
+   */
+  public double getTotalTime() {
+    return total.sum() / 1000000d;
+  }
+
+  /**
+   * Gets the mean time in milliseconds.
+   *
+   * @return the mean time
+   */
+  public double getMean() {
+    long c = count.sum();
+    return c > 0 ? total.sum() / 1000000d / c : 0;
+  }
+
+  /**
+   * Gets the max time in milliseconds.
+   *
+   * @return the max time
+   */
+  public double getMax() {
+    return max.get() / 1000000d;
+  }
+
+  /**
+   * Gets the histogram: count of durations per bucket of {@link #BUCKETS}, the
+   * last element counts durations longer than all the bounds.
+   *
+   * @return the histogram
+   */
+  public long[] getHistogram() {
+    long[] histogram = new long[buckets.length];
+    for (int i = 0; i < buckets.length; i++) {
+      histogram[i] = buckets[i].sum();
+    }
+    return histogram;
+  }
+
+  /**
+   * Gets an estimation of a percentile in milliseconds: upper bound of the
+   * bucket where the percentile falls (or the max for the last bucket).
+   *
+   * @param percentile the percentile, from 0 to 1 (e.g. 0.99)
+   * @return the percentile
+   */
+  public double getPercentile(double percentile) {
+    long[] histogram = getHistogram();
+    long c = 0;
+    for (long h : histogram) {
+      c += h;
+    }
+    if (c == 0) {
+      return 0;
+    }
+    long rank = (long) Math.ceil(percentile * c);
+    long seen = 0;
+    for (int i = 0; i < BUCKETS.length; i++) {
+      seen += histogram[i];
+      if (seen >= rank) {
+        return Math.min(BUCKETS[i], getMax());
+      }
+    }
+    return getMax();
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public String toString() {
+    return new StringBuilder("count: ").append(getCount())
+                                       .append(", mean: ")
+                                       .append(getMean())
+                                       .append("ms, max: ")
+                                       .append(getMax())
+                                       .append("ms")
+                                       .toString();
+  }
+}
@@ -27,11 +27,13 @@ import java.util.concurrent.ConcurrentHashMap;
 import javax.annotation.security.RolesAllowed;
 import javax.jcr.RepositoryException;
 import javax.servlet.http.HttpServletRequest;
+import javax.ws.rs.DefaultValue;
 import javax.ws.rs.GET;
 import javax.ws.rs.POST;
 import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
 import javax.ws.rs.core.Context;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
@@ -40,13 +42,10 @@ import javax.ws.rs.core.UriInfo;
 
 import org.apache.commons.lang3.StringUtils;
 import org.exoplatform.onlyoffice.*;
-import org.json.simple.JSONArray;
+import org.exoplatform.onlyoffice.metrics.MetricsRegistry;
 import org.json.simple.JSONObject;
-import org.json.simple.parser.JSONParser;
 import org.json.simple.parser.ParseException;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
-
 import org.exoplatform.services.log.ExoLogger;
 import org.exoplatform.services.log.Log;
 import org.exoplatform.services.rest.resource.ResourceContainer;
@@ -152,13 +151,18 @@ public class EditorService implements ResourceContainer {
   /** The initiated. */
   protected final Map<UUID, Config>       initiated = new ConcurrentHashMap<UUID, Config>();
 
+  /** The metrics. */
+  protected final MetricsRegistry         metrics;
+
   /**
    * REST cloudDrives uses {@link OnlyofficeEditorService} for actual job.
    *
    * @param editors the editors
+   * @param metrics the metrics registry
    */
-  public EditorService(OnlyofficeEditorService editors) {
+  public EditorService(OnlyofficeEditorService editors, MetricsRegistry metrics) {
     this.editors = editors;
+    this.metrics = metrics;
   }
 
   /**
@@ -193,50 +197,16 @@ public class EditorService implements ResourceContainer {
     EditorResponse resp = new EditorResponse();
     if (editors.canDownloadBy(clientHost) || editors.canDownloadBy(clientIp)) {
       try {
-        JSONParser parser = new JSONParser();
-        Object obj = parser.parse(statusText);
-        JSONObject jsonObj = (JSONObject) obj;
+        JSONObject statusJson = StatusParser.parseJSON(statusText);
         String token = request.getHeader("Authorization");
         if (token != null) {
           token = token.replace("Bearer", "").trim();
         }
-        String statusKey = (String) jsonObj.get("key");
-        String userdataJson = (String) jsonObj.get("userdata");
-        long statusCode = (long) jsonObj.get("status");
-        String statusUrl = (String) jsonObj.get("url");
-        Object errorObj = jsonObj.get("error");
-        long error = errorObj != null ? Long.parseLong(errorObj.toString()) : 0;
-
-        // Oct 2017: When Document server calls with status 4 (user closed w/o
-        // modification), the users array will be null
-        JSONArray statusUsersArray = (JSONArray) jsonObj.get("users");
-
-        @SuppressWarnings("unchecked")
-        String[] statusUsers = statusUsersArray != null ? (String[]) statusUsersArray.toArray(new String[statusUsersArray.size()])
-                                                        : new String[0];
-
         if (key != null && key.length() > 0) {
           if (userId != null && userId.length() > 0) {
             if (editors.validateToken(token, key)) {
-              DocumentStatus.Builder statusBuilder = new DocumentStatus.Builder();
-              statusBuilder.key(statusKey != null && statusKey.length() > 0 ? statusKey : key)
-                           .status(statusCode)
-                           .url(statusUrl)
-                           .users(statusUsers)
-                           .error(error);
-              Userdata userdata = userdataJson != null ? new ObjectMapper().readValue(userdataJson, Userdata.class) : null;
-              if (userdata != null) {
-                statusBuilder.userId(userdata.getUserId());
-                statusBuilder.coEdited(userdata.getCoEdited());
-                statusBuilder.forcesaved(userdata.isForcesaved());
-                statusBuilder.saved(userdata.isDownload());
-                statusBuilder.comment(userdata.getComment());
-              } else if (statusUsers != null && statusUsers.length > 0) {
-                // Last user
-                statusBuilder.userId(statusUsers[0]);
-              } else {
-                statusBuilder.userId(userId);
-              }
+              // user data read only for a valid token
+              DocumentStatus.Builder statusBuilder = StatusParser.build(statusJson, key, userId);
               try {
                 editors.updateDocument(statusBuilder.build());
                 resp.entity("{\"error\": 0}");
@@ -445,6 +415,21 @@ public class EditorService implements ResourceContainer {
                    .build();
   }
 
+  /**
+   * Current values of Onlyoffice metrics (editors, Document Server
+   * interactions, saves and locks) for monitoring.
+   *
+   * @param uriInfo - request info
+   * @return response with the metrics mapped by name
+   */
+  @GET
+  @Path("/metrics")
+  @RolesAllowed("administrators")
+  @Produces(MediaType.APPLICATION_JSON)
+  public Response metrics(@Context UriInfo uriInfo) {
+    return Response.ok().entity(JSONObject.toJSONString(metrics.snapshot())).type(MediaType.APPLICATION_JSON).build();
+  }
+
   /**
    * Editing document state in local storage.
    *
@@ -496,6 +481,8 @@ public class EditorService implements ResourceContainer {
    * @param request the request
    * @param workspace the document workspace
    * @param key the document key
+   * @param offset the number of newest versions to skip
+   * @param limit the max number of versions to return
    * @return {@link Response}
    */
   @GET
@@ -503,7 +490,9 @@ public class EditorService implements ResourceContainer {
   @RolesAllowed("users")
   @Produces(MediaType.APPLICATION_JSON)
   public Response getVersions(@Context UriInfo uriInfo, @Context HttpServletRequest request, @PathParam("workspace") String workspace,
-                              @PathParam("key") String key) {
+                              @PathParam("key") String key,
+                              @QueryParam("offset") @DefaultValue("0") int offset,
+                              @QueryParam("limit") @DefaultValue("3") int limit) {
     if (LOG.isDebugEnabled()) {
       LOG.debug("> get versions of doc " + key + " in workspace " + workspace);
     }
@@ -514,8 +503,12 @@ public class EditorService implements ResourceContainer {
       if (StringUtils.isBlank(key)) {
          return Response.status(Response.Status.BAD_REQUEST).build();
       }
+      if (offset < 0 || offset > OnlyofficeEditorService.VERSIONS_OFFSET_MAX) {
+         return Response.status(Response.Status.BAD_REQUEST).build();
+      }
+      limit = Math.max(1, Math.min(limit, OnlyofficeEditorService.VERSIONS_PAGE_MAX));
 
-      List<Version> versions = editors.getVersions(workspace, key);
+      List<Version> versions = editors.getVersions(workspace, key, offset, limit);
       if (versions != null) {
          return Response.ok(versions).build();
       } else {
@@ -0,0 +1,126 @@
+/*
+ * Copyright (C) 2003-2020 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.exoplatform.onlyoffice.rest;
+
+import java.io.IOException;
+
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+import org.json.simple.parser.JSONParser;
+import org.json.simple.parser.ParseException;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+
+import org.exoplatform.onlyoffice.DocumentStatus;
+import org.exoplatform.onlyoffice.Userdata;
+
+/**
+ * Parser of document status JSON posted by Document Server to the status
+ * callback.<br>
+ * Created by The eXo Platform SAS.
+ */
+public class StatusParser {
+
+  /** The userdata reader (thread-safe, shared by requests). */
+  protected static final ObjectReader USERDATA_READER = new ObjectMapper().readerFor(Userdata.class);
+
+  /**
+   * Instantiates a new status parser (not used).
+   */
+  private StatusParser() {
+  }
+
+  /**
+   * Parse status JSON to a document status builder.
+   *
+   * @param statusText the status JSON
+   * @param key the document key of the callback URL, used if the status has
+   *          no key
+   * @param userId the user ID of the callback URL, used if the status has no
+   *          user data and users
+   * @return the document status builder
+   * @throws ParseException if the status isn't valid JSON
+   * @throws IOException if the user data cannot be read
+   */
+  public static DocumentStatus.Builder parse(String statusText, String key, String userId) throws ParseException, IOException {
+    return build(parseJSON(statusText), key, userId);
+  }
+
+  /**
+   * Parse status JSON.
+   *
+   * @param statusText the status JSON
+   * @return the status JSON object
+   * @throws ParseException if the status isn't valid JSON
+   */
+  public static JSONObject parseJSON(String statusText) throws ParseException {
+    JSONParser parser = new JSONParser();
+    return (JSONObject) parser.parse(statusText);
+  }
+
+  /**
+   * Build a document status from the parsed status JSON.
+   *
+   * @param jsonObj the status JSON object
+   * @param key the document key of the callback URL, used if the status has
+   *          no key
+   * @param userId the user ID of the callback URL, used if the status has no
+   *          user data and users
+   * @return the document status builder
+   * @throws IOException if the user data cannot be read
+   */
+  public static DocumentStatus.Builder build(JSONObject jsonObj, String key, String userId) throws IOException {
+    String statusKey = (String) jsonObj.get("key");
+    String userdataJson = (String) jsonObj.get("userdata");
+    long statusCode = (long) jsonObj.get("status");
+    String statusUrl = (String) jsonObj.get("url");
+    Object errorObj = jsonObj.get("error");
+    long error = errorObj != null ? Long.parseLong(errorObj.toString()) : 0;
+
+    // Oct 2017: When Document server calls with status 4 (user closed w/o
+    // modification), the users array will be null
+    JSONArray statusUsersArray = (JSONArray) jsonObj.get("users");
+
+    @SuppressWarnings("unchecked")
+    String[] statusUsers = statusUsersArray != null ? (String[]) statusUsersArray.toArray(new String[statusUsersArray.size()])
+                                                    : new String[0];
+
+    DocumentStatus.Builder statusBuilder = new DocumentStatus.Builder();
+    statusBuilder.key(statusKey != null && statusKey.length() > 0 ? statusKey : key)
+                 .status(statusCode)
+                 .url(statusUrl)
+                 .users(statusUsers)
+                 .error(error);
+    Userdata userdata = userdataJson != null ? USERDATA_READER.<Userdata> readValue(userdataJson) : null;
+    if (userdata != null) {
+      statusBuilder.userId(userdata.getUserId());
+      statusBuilder.coEdited(userdata.getCoEdited());
+      statusBuilder.forcesaved(userdata.isForcesaved());
+      statusBuilder.saved(userdata.isDownload());
+      statusBuilder.comment(userdata.getComment());
+    } else if (statusUsers.length > 0) {
+      // Last user
+      statusBuilder.userId(statusUsers[0]);
+    } else {
+      statusBuilder.userId(userId);
+    }
+    return statusBuilder;
+  }
+}
@@ -0,0 +1,187 @@
+/*
+ * Copyright (C) 2003-2020 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.exoplatform.onlyoffice.tracing;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+
+/**
+ * Exporter of spans to a file in OTLP/JSON format: each batch is appended as a
+ * line with an <code>ExportTraceServiceRequest</code> object. Such file can be
+ * read by OpenTelemetry Collector (<code>otlpjsonfile</code> receiver) and
+ * forwarded to a tracing backend.<br>
+ * Created by The eXo Platform SAS.
+ */
+public class OtlpJsonFileExporter implements SpanExporter {
+
+  /** The Constant SCOPE_NAME. */
+  public static final String SCOPE_NAME   = "org.exoplatform.onlyoffice";
+
+  /** The OTLP span kind internal. */
+  protected static final int SPAN_KIND    = 1;
+
+  /** The OTLP status code of errors. */
+  protected static final int STATUS_ERROR = 2;
+
+  /** The file. */
+  protected final Path       file;
+
+  /** The service name. */
+  protected final String     serviceName;
+
+  /**
+   * Instantiates a new OTLP/JSON file exporter.
+   *
+   * @param file the file
+   * @param serviceName the service name
+   * @throws IOException if cannot create the file directory
+   */
+  public OtlpJsonFileExporter(Path file, String serviceName) throws IOException {
+    this.file = file;
+    this.serviceName = serviceName;
+    Path dir = file.toAbsolutePath().getParent();
+    if (dir != null) {
+      Files.createDirectories(dir);
+    }
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public synchronized void export(List<Span> spans) throws IOException {
+    if (spans.isEmpty()) {
+      return;
+    }
+    try (BufferedWriter writer = Files.newBufferedWriter(file,
+                                                         StandardCharsets.UTF_8,
+                                                         StandardOpenOption.CREATE,
+                                                         StandardOpenOption.APPEND)) {
+      writer.write(toJSON(spans));
+      writer.newLine();
+    }
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void close() {
+    // nothing to release: the file opened for each batch
+  }
+
+  /**
+   * Gets the file.
+   *
+   * @return the file
+   */
+  public Path getFile() {
+    return file;
+  }
+
+  /**
+   * Build OTLP/JSON request of the spans.
+   *
+   * @param spans the spans
+   * @return the JSON text
+   */
+  @SuppressWarnings("unchecked")
+  protected String toJSON(List<Span> spans) {
+    JSONArray otlpSpans = new JSONArray();
+    for (Span span : spans) {
+      JSONObject s = new JSONObject();
+      s.put("traceId", span.getTraceId());
+      s.put("spanId", span.getSpanId());
+      if (span.getParentId() != null) {
+        s.put("parentSpanId", span.getParentId());
+      }
+      s.put("name", span.getName());
+      s.put("kind", SPAN_KIND);
+      // 64-bit integers are strings in OTLP/JSON
+      s.put("startTimeUnixNano", String.valueOf(span.getStartTime()));
+      s.put("endTimeUnixNano", String.valueOf(span.getEndTime()));
+      s.put("attributes", attributes(span.getAttributes()));
+      if (span.getError() != null) {
+        JSONObject status = new JSONObject();
+        status.put("code", STATUS_ERROR);
+        status.put("message", span.getError());
+        s.put("status", status);
+      }
+      otlpSpans.add(s);
+    }
+    JSONObject scope = new JSONObject();
+    scope.put("name", SCOPE_NAME);
+    JSONObject scopeSpans = new JSONObject();
+    scopeSpans.put("scope", scope);
+    scopeSpans.put("spans", otlpSpans);
+    JSONArray scopeSpansList = new JSONArray();
+    scopeSpansList.add(scopeSpans);
+
+    JSONObject resource = new JSONObject();
+    resource.put("attributes", attributes(Collections.singletonMap("service.name", serviceName)));
+    JSONObject resourceSpans = new JSONObject();
+    resourceSpans.put("resource", resource);
+    resourceSpans.put("scopeSpans", scopeSpansList);
+    JSONArray resourceSpansList = new JSONArray();
+    resourceSpansList.add(resourceSpans);
+
+    JSONObject request = new JSONObject();
+    request.put("resourceSpans", resourceSpansList);
+    return request.toJSONString();
+  }
+
+  /**
+   * Build OTLP key-values of attributes.
+   *
+   * @param attributes the attributes
+   * @return the JSON array
+   */
+  @SuppressWarnings("unchecked")
+  protected JSONArray attributes(Map<String, ?> attributes) {
+    JSONArray list = new JSONArray();
+    for (Map.Entry<String, ?> a : attributes.entrySet()) {
+      Object v = a.getValue();
+      JSONObject value = new JSONObject();
+      if (v instanceof Boolean) {
+        value.put("boolValue", v);
+      } else if (v instanceof Long || v instanceof Integer || v instanceof Short || v instanceof Byte) {
+        value.put("intValue", String.valueOf(v));
+      } else if (v instanceof Number) {
+        value.put("doubleValue", ((Number) v).doubleValue());
+      } else {
+        value.put("stringValue", String.valueOf(v));
+      }
+      JSONObject kv = new JSONObject();
+      kv.put("key", a.getKey());
+      kv.put("value", value);
+      list.add(kv);
+    }
+    return list;
+  }
+}
@@ -0,0 +1,248 @@
+/*
+ * Copyright (C) 2003-2020 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.exoplatform.onlyoffice.tracing;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A timed operation of the editor service, a part of a trace. Spans of an
+ * editing document are correlated by its key: root spans started for a key get
+ * the trace ID derived from the key, and nested spans inherit the trace of
+ * their parent. A span ends by {@link #end()} or {@link #close()} (in
+ * try-with-resources), ending twice has no effect. A disabled tracer returns
+ * spans that record nothing.<br>
+ * Created by The eXo Platform SAS.
+ */
+public class Span implements AutoCloseable {
+
+  /** The span of disabled tracing. */
+  static final Span                   NOOP       = new Span(null, null, null, null, null, null);
+
+  /** The tracer, <code>null</code> for not recording span. */
+  protected final Tracer              tracer;
+
+  /** The trace ID. */
+  protected final String              traceId;
+
+  /** The span ID. */
+  protected final String              spanId;
+
+  /** The parent span ID, <code>null</code> for a root span. */
+  protected final String              parentId;
+
+  /** The name. */
+  protected final String              name;
+
+  /** The span current in the thread before this span, restored on end. */
+  protected final Span                previous;
+
+  /** The attributes. */
+  protected final Map<String, Object> attributes = new LinkedHashMap<>();
+
+  /** The start time in nanoseconds since the epoch. */
+  protected final long                startTime;
+
+  /** The start of monotonic time, to measure the duration. */
+  protected final long                startNanos;
+
+  /** The end time in nanoseconds since the epoch, zero if not ended. */
+  protected volatile long             endTime;
+
+  /** The error message, <code>null</code> if not failed. */
+  protected volatile String           error;
+
+  /**
+   * Instantiates a new span.
+   *
+   * @param tracer the tracer
+   * @param traceId the trace id
+   * @param spanId the span id
+   * @param parentId the parent id
+   * @param name the name
+   * @param previous the previous current span
+   */
+  protected Span(Tracer tracer, String traceId, String spanId, String parentId, String name, Span previous) {
+    this.tracer = tracer;
+    this.traceId = traceId;
+    this.spanId = spanId;
+    this.parentId = parentId;
+    this.name = name;
+    this.previous = previous;
+    this.startTime = System.currentTimeMillis() * 1000000;
+    this.startNanos = System.nanoTime();
+  }
+
+  /**
+   * Set an attribute, <code>null</code> values ignored.
+   *
+   * @param name the name
+   * @param value the value (string, number or boolean)
+   * @return this span
+   */
+  public Span attribute(String name, Object value) {
+    if (tracer != null && value != null) {
+      synchronized (attributes) {
+        attributes.put(name, value);
+      }
+    }
+    return this;
+  }
+
+  /**
+   * Mark the span failed.
+   *
+   * @param cause the cause
+   * @return this span
+   */
+  public Span error(Throwable cause) {
+    if (tracer != null) {
+      String message = cause.getMessage();
+      this.error = cause.getClass().getSimpleName() + (message != null ? ": " + message : "");
+    }
+    return this;
+  }
+
+  /**
+   * End this span and start next one with the same parent (the next stage of
+   * an operation).
+   *
+   * @param name the name of next span
+   * @return the next span
+   */
+  public Span next(String name) {
+    end();
+    return tracer != null ? tracer.start(name) : this;
+  }
+
+  /**
+   * End the span.
+   */
+  public void end() {
+    if (tracer != null && endTime == 0) {
+      endTime = startTime + System.nanoTime() - startNanos;
+      tracer.ended(this);
+    }
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void close() {
+    end();
+  }
+
+  /**
+   * Checks if the span records its data.
+   *
+   * @return true, if is recording
+   */
+  public boolean isRecording() {
+    return tracer != null;
+  }
+
+  /**
+   * Gets the trace ID.
+   *
+   * @return the trace ID (32 hex chars)
+   */
+  public String getTraceId() {
+    return traceId;
+  }
+
+  /**
+   * Gets the span ID.
+   *
+   * @return the span ID (16 hex chars)
+   */
+  public String getSpanId() {
+    return spanId;
+  }
+
+  /**
+   * Gets the parent span ID.
+   *
+   * @return the parent ID or <code>null</code> for a root span
+   */
+  public String getParentId() {
+    return parentId;
+  }
+
+  /**
+   * Gets the name.
+   *
+   * @return the name
+   */
+  public String getName() {
+    return name;
+  }
+
+  /**
+   * Gets the attributes.
+   *
+   * @return the attributes
+   */
+  public Map<String, Object> getAttributes() {
+    synchronized (attributes) {
+      return Collections.unmodifiableMap(new LinkedHashMap<>(attributes));
+    }
+  }
+
+  /**
+   * Gets the start time.
+   *
+   * @return the start time in nanoseconds since the epoch
+   */
+  public long getStartTime() {
+    return startTime;
+  }
+
+  /**
+   * Gets the end time.
+   *
+   * @return the end time in nanoseconds since the epoch, zero if not ended
+   */
+  public long getEndTime() {
+    return endTime;
+  }
+
+  /**
+   * Gets the error.
+   *
+   * @return the error message or <code>null</code> if not failed
+   */
+  public String getError() {
+    return error;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public String toString() {
+    return new StringBuilder(String.valueOf(name)).append('[')
+                                                  .append(traceId)
+                                                  .append('/')
+                                                  .append(spanId)
+                                                  .append(']')
+                                                  .toString();
+  }
+}
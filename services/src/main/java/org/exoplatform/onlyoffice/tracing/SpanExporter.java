@@ -0,0 +1,42 @@
+/*
+ * Copyright (C) 2003-2020 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.exoplatform.onlyoffice.tracing;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Exporter of ended spans to a tracing backend.<br>
+ * Created by The eXo Platform SAS.
+ */
+public interface SpanExporter {
+
+  /**
+   * Export a batch of ended spans.
+   *
+   * @param spans the spans
+   * @throws IOException if the export failed
+   */
+  void export(List<Span> spans) throws IOException;
+
+  /**
+   * Release resources of the exporter.
+   */
+  void close();
+}
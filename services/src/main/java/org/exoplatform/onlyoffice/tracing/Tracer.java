@@ -0,0 +1,371 @@
+/*
+ * Copyright (C) 2003-2020 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.exoplatform.onlyoffice.tracing;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.picocontainer.Startable;
+
+import org.exoplatform.container.xml.InitParams;
+import org.exoplatform.container.xml.PropertiesParam;
+import org.exoplatform.onlyoffice.concurrent.NamedThreadFactory;
+import org.exoplatform.services.log.ExoLogger;
+import org.exoplatform.services.log.Log;
+
+/**
+ * Lightweight tracer of the editor service operations (editor creation,
+ * Document Server statuses, content download stages, forcesave commands,
+ * Cometd events and listeners broadcast). The current span is kept per thread
+ * and new spans become its children. Ended spans queued and exported in
+ * batches by {@link SpanExporter} (OTLP/JSON file when
+ * <code>export-file</code> configured). When tracing is disabled all spans are
+ * no-op and cost nothing but a call.<br>
+ * Created by The eXo Platform SAS.
+ */
+public class Tracer implements Startable {
+
+  /** The Constant LOG. */
+  protected static final Log                  LOG                    = ExoLogger.getLogger(Tracer.class);
+
+  /** The Constant CONFIG_ENABLED. */
+  public static final String                  CONFIG_ENABLED         = "enabled";
+
+  /** The Constant CONFIG_EXPORT_FILE. */
+  public static final String                  CONFIG_EXPORT_FILE     = "export-file";
+
+  /** The Constant CONFIG_EXPORT_INTERVAL. */
+  public static final String                  CONFIG_EXPORT_INTERVAL = "export-interval";
+
+  /** The Constant CONFIG_QUEUE_MAX. */
+  public static final String                  CONFIG_QUEUE_MAX       = "queue-max";
+
+  /** The Constant CONFIG_SERVICE_NAME. */
+  public static final String                  CONFIG_SERVICE_NAME    = "service-name";
+
+  /** The Constant KEY_ATTRIBUTE of the document key. */
+  public static final String                  KEY_ATTRIBUTE          = "onlyoffice.document.key";
+
+  /** The Constant DOCUMENT_ATTRIBUTE of the document ID. */
+  public static final String                  DOCUMENT_ATTRIBUTE     = "onlyoffice.document.id";
+
+  /** The Constant USER_ATTRIBUTE of the user ID. */
+  public static final String                  USER_ATTRIBUTE         = "onlyoffice.user.id";
+
+  /** The enabled flag. */
+  protected final boolean                     enabled;
+
+  /** The exporter, <code>null</code> if spans not exported. */
+  protected final SpanExporter                exporter;
+
+  /** The export interval in milliseconds. */
+  protected final long                        exportInterval;
+
+  /** The max count of spans waiting for export. */
+  protected final int                         queueMax;
+
+  /** The current span of threads. */
+  protected final ThreadLocal<Span>           current                = new ThreadLocal<>();
+
+  /** The ended spans waiting for export. */
+  protected final ConcurrentLinkedQueue<Span> queue                  = new ConcurrentLinkedQueue<>();
+
+  /** The size of the queue. */
+  protected final AtomicInteger               queueSize              = new AtomicInteger();
+
+  /** The count of spans dropped as the queue was full. */
+  protected final AtomicLong                  dropped                = new AtomicLong();
+
+  /** The export scheduler. */
+  protected ScheduledExecutorService          scheduler;
+
+  /**
+   * Instantiates a new tracer from configuration.
+   *
+   * @param params the params
+   * @throws IOException if cannot create the export file directory
+   */
+  public Tracer(InitParams params) throws IOException {
+    PropertiesParam param = params != null ? params.getPropertiesParam("tracing-configuration") : null;
+    Map<String, String> config = param != null ? param.getProperties() : Collections.emptyMap();
+    this.enabled = Boolean.parseBoolean(config.get(CONFIG_ENABLED));
+    String file = config.get(CONFIG_EXPORT_FILE);
+    if (enabled && file != null && file.trim().length() > 0) {
+      String serviceName = config.get(CONFIG_SERVICE_NAME);
+      this.exporter = new OtlpJsonFileExporter(Paths.get(file.trim()),
+                                               serviceName != null && serviceName.trim().length() > 0 ? serviceName.trim()
+                                                                                                      : "onlyoffice");
+    } else {
+      this.exporter = null;
+    }
+    this.exportInterval = number(config.get(CONFIG_EXPORT_INTERVAL), 5000);
+    this.queueMax = (int) number(config.get(CONFIG_QUEUE_MAX), 10000);
+  }
+
+  /**
+   * Instantiates a new tracer.
+   *
+   * @param enabled the enabled flag
+   * @param exporter the exporter, can be <code>null</code>
+   * @param exportInterval the export interval in milliseconds
+   * @param queueMax the max count of spans waiting for export
+   */
+  protected Tracer(boolean enabled, SpanExporter exporter, long exportInterval, int queueMax) {
+    this.enabled = enabled;
+    this.exporter = exporter;
+    this.exportInterval = exportInterval;
+    this.queueMax = queueMax;
+  }
+
+  /**
+   * Start a span as a child of the current span in this thread, or a root span
+   * of a new trace.
+   *
+   * @param name the name
+   * @return the span, it should be ended by the caller
+   */
+  public Span start(String name) {
+    if (enabled) {
+      Span parent = current.get();
+      return open(name, parent != null ? parent.getTraceId() : randomId(16), parent);
+    }
+    return Span.NOOP;
+  }
+
+  /**
+   * Start a span of an editing document. A root span gets the trace ID derived
+   * from the document key, thus all the operations of the document editing
+   * correlated in one trace.
+   *
+   * @param name the name
+   * @param key the document key
+   * @return the span, it should be ended by the caller
+   */
+  public Span start(String name, String key) {
+    if (enabled) {
+      Span parent = current.get();
+      String traceId = parent != null ? parent.getTraceId() : key != null ? traceId(key) : randomId(16);
+      return open(name, traceId, parent).attribute(KEY_ATTRIBUTE, key);
+    }
+    return Span.NOOP;
+  }
+
+  /**
+   * Start a span as a child of given span, e.g. of a span started in another
+   * thread that submitted a task.
+   *
+   * @param name the name
+   * @param parent the parent span, if <code>null</code> or not recording then
+   *          the same as {@link #start(String)}
+   * @return the span, it should be ended by the caller
+   */
+  public Span startChild(String name, Span parent) {
+    if (enabled) {
+      if (parent != null && parent.isRecording()) {
+        return open(name, parent.getTraceId(), parent);
+      }
+      return start(name);
+    }
+    return Span.NOOP;
+  }
+
+  /**
+   * Gets the current span of this thread.
+   *
+   * @return the current span, not recording span if none
+   */
+  public Span current() {
+    Span span = current.get();
+    return span != null ? span : Span.NOOP;
+  }
+
+  /**
+   * Checks if tracing enabled.
+   *
+   * @return true, if is enabled
+   */
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  /**
+   * Gets the count of spans dropped as the export queue was full.
+   *
+   * @return the dropped count
+   */
+  public long getDropped() {
+    return dropped.get();
+  }
+
+  /**
+   * Export the ended spans now.
+   *
+   * @return the count of exported spans
+   */
+  public int flush() {
+    List<Span> batch = new ArrayList<>();
+    Span span;
+    while ((span = queue.poll()) != null) {
+      queueSize.decrementAndGet();
+      batch.add(span);
+    }
+    if (exporter != null && batch.size() > 0) {
+      try {
+        exporter.export(batch);
+      } catch (IOException | RuntimeException e) {
+        LOG.warn("Error exporting " + batch.size() + " spans: " + e.getMessage());
+        return 0;
+      }
+    }
+    return batch.size();
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void start() {
+    if (enabled) {
+      if (exporter != null) {
+        scheduler = Executors.newSingleThreadScheduledExecutor(new NamedThreadFactory("onlyoffice-tracing-thread-"));
+        scheduler.scheduleWithFixedDelay(this::flush, exportInterval, exportInterval, TimeUnit.MILLISECONDS);
+      }
+      LOG.info("Onlyoffice tracing enabled" + (exporter != null ? ", spans exported each " + exportInterval + "ms" : ""));
+    }
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void stop() {
+    if (scheduler != null) {
+      scheduler.shutdownNow();
+      scheduler = null;
+    }
+    if (exporter != null) {
+      flush();
+      exporter.close();
+    }
+  }
+
+  /**
+   * Span ended: restore the thread current span and queue it for export. If
+   * the span has not ended children (e.g. left by an exception), they also
+   * removed from the thread.
+   *
+   * @param span the span
+   */
+  protected void ended(Span span) {
+    for (Span s = current.get(); s != null; s = s.previous) {
+      if (s == span) {
+        if (span.previous != null) {
+          current.set(span.previous);
+        } else {
+          current.remove();
+        }
+        break;
+      }
+    }
+    if (exporter != null) {
+      if (queueSize.incrementAndGet() <= queueMax) {
+        queue.add(span);
+      } else {
+        queueSize.decrementAndGet();
+        dropped.incrementAndGet();
+      }
+    } else if (LOG.isDebugEnabled()) {
+      LOG.debug("Span {} ended in {}ms {}",
+                span,
+                (span.getEndTime() - span.getStartTime()) / 1000000d,
+                span.getError() != null ? span.getError() : "");
+    }
+  }
+
+  /**
+   * Create a span and make it current in this thread.
+   *
+   * @param name the name
+   * @param traceId the trace id
+   * @param parent the parent
+   * @return the span
+   */
+  protected Span open(String name, String traceId, Span parent) {
+    Span span = new Span(this, traceId, randomId(8), parent != null ? parent.getSpanId() : null, name, current.get());
+    current.set(span);
+    return span;
+  }
+
+  /**
+   * Trace ID of a document key.
+   *
+   * @param key the key
+   * @return the trace ID (32 hex chars)
+   */
+  public static String traceId(String key) {
+    return UUID.nameUUIDFromBytes(key.getBytes(StandardCharsets.UTF_8)).toString().replace("-", "");
+  }
+
+  /**
+   * Random ID in hex.
+   *
+   * @param bytes the bytes count
+   * @return the ID
+   */
+  protected static String randomId(int bytes) {
+    StringBuilder id = new StringBuilder(bytes * 2);
+    ThreadLocalRandom random = ThreadLocalRandom.current();
+    for (int i = 0; i < bytes; i++) {
+      int b = random.nextInt(256);
+      id.append(Character.forDigit(b >> 4, 16)).append(Character.forDigit(b & 0xF, 16));
+    }
+    return id.toString();
+  }
+
+  /**
+   * Parse a number of configuration.
+   *
+   * @param value the value
+   * @param defaultValue the default value
+   * @return the number
+   */
+  protected static long number(String value, long defaultValue) {
+    if (value != null && (value = value.trim()).length() > 0) {
+      try {
+        return Long.parseLong(value);
+      } catch (NumberFormatException e) {
+        LOG.warn("Wrong number in tracing configuration: " + value + ". Default value will be used: " + defaultValue);
+      }
+    }
+    return defaultValue;
+  }
+}
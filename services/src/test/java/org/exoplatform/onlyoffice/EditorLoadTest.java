@@ -0,0 +1,533 @@
+package org.exoplatform.onlyoffice;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import javax.jcr.Node;
+import javax.jcr.Session;
+import javax.ws.rs.core.MultivaluedMap;
+
+import org.junit.Test;
+
+import org.exoplatform.container.PortalContainer;
+import org.exoplatform.container.component.RequestLifeCycle;
+import org.exoplatform.container.xml.InitParams;
+import org.exoplatform.container.xml.PropertiesParam;
+import org.exoplatform.onlyoffice.jcr.SaveJournal;
+import org.exoplatform.onlyoffice.rest.StatusParser;
+import org.exoplatform.onlyoffice.test.AbstractResourceTest;
+import org.exoplatform.onlyoffice.test.FakeDocumentServer;
+import org.exoplatform.onlyoffice.test.LoadHarness;
+import org.exoplatform.services.jcr.access.PermissionType;
+import org.exoplatform.services.jcr.impl.core.NodeImpl;
+import org.exoplatform.services.listener.Asynchronous;
+import org.exoplatform.services.log.ExoLogger;
+import org.exoplatform.services.log.Log;
+import org.exoplatform.services.organization.OrganizationService;
+import org.exoplatform.services.organization.User;
+import org.exoplatform.services.organization.UserHandler;
+import org.exoplatform.services.rest.impl.ContainerResponse;
+import org.exoplatform.services.rest.impl.MultivaluedMapImpl;
+
+/**
+ * End-to-end load test of co-editing with a fake Document Server: the editor
+ * service receives status callbacks through its REST service and downloads
+ * content from the fake server on the loopback interface. Sizes of the load
+ * can be set by system properties <code>onlyoffice.load.documents</code>,
+ * <code>onlyoffice.load.users</code>, <code>onlyoffice.load.saves</code> and
+ * <code>onlyoffice.load.threads</code>, by default the load is small to run in
+ * CI.
+ */
+public class EditorLoadTest extends AbstractResourceTest {
+
+  /** The Constant LOG. */
+  protected static final Log    LOG          = ExoLogger.getLogger(EditorLoadTest.class);
+
+  /** The Constant RESOURCE_URL. */
+  protected static final String RESOURCE_URL = "/onlyoffice/editor";
+
+  /** The Constant SECRET_KEY. */
+  protected static final String SECRET_KEY   = "1fRW5pBZu3UIBEdebbpDpKJ4hwExSQoSe97tw8gyYNhqnM1biHb";
+
+  /** The Constant DOCUMENTS. */
+  protected static final int    DOCUMENTS    = Integer.getInteger("onlyoffice.load.documents", 4);
+
+  /** The Constant USERS. */
+  protected static final int    USERS        = Integer.getInteger("onlyoffice.load.users", 3);
+
+  /** The Constant SAVES. */
+  protected static final int    SAVES        = Integer.getInteger("onlyoffice.load.saves", 2);
+
+  /** The Constant THREADS. */
+  protected static final int    THREADS      = Integer.getInteger("onlyoffice.load.threads", 4);
+
+  /**
+   * The port of the fake Document Server the editor service configured with
+   * (see <code>onlyoffice.documentserver.host</code> in test exo.properties).
+   */
+  protected static final int    DOCUMENTSERVER_PORT = Integer.getInteger("onlyoffice.test.documentserver.port", 18190);
+
+  /** The Constant CONTENT. */
+  protected static final byte[] CONTENT      = "Load testing content".getBytes(StandardCharsets.UTF_8);
+
+  /**
+   * Test co-editing of documents by several users under load.
+   *
+   * @throws Exception the exception
+   */
+  @Test
+  public void testCoeditingLoad() throws Exception {
+    // Given
+    startSessionAs("john");
+    List<String> users = createUsers(USERS);
+    List<String> docIds = new ArrayList<>();
+    for (int i = 0; i < DOCUMENTS; i++) {
+      docIds.add(createDocument("Load Document " + i + ".docx"));
+    }
+    try (FakeDocumentServer documentServer = new FakeDocumentServer(SECRET_KEY, this::postStatus)) {
+      LoadHarness harness = new LoadHarness(documentServer, new LoadHarness.Editors() {
+        @Override
+        public String open(String docId, String userId) throws Exception {
+          startSessionAs(userId);
+          return onlyofficeEditorService.createEditor("http", "localhost", 8080, userId, null, docId).getDocument().getKey();
+        }
+
+        @Override
+        public void modified(String key, String userId) throws Exception {
+          onlyofficeEditorService.setLastModifier(key, userId);
+        }
+      }, CONTENT);
+
+      // When
+      LoadHarness.Report report = harness.run(docIds, users, SAVES, THREADS, 300000);
+      LOG.info("Co-editing of {} documents by {} users with {} forcesaves:\n{}", DOCUMENTS, USERS, SAVES, report);
+
+      // Then
+      assertEquals(0, report.getErrors());
+      assertEquals(0, documentServer.getFailedCallbacks());
+      assertEquals(DOCUMENTS * USERS, report.get(LoadHarness.OPEN).getCount());
+      assertEquals(DOCUMENTS * SAVES, report.get(LoadHarness.SAVE).getCount());
+      assertEquals(DOCUMENTS * USERS, report.get(LoadHarness.CLOSE).getCount());
+      // each forcesave and the last close download the content
+      assertTrue(documentServer.getDownloads() >= DOCUMENTS * (SAVES + 1));
+    }
+  }
+
+  /**
+   * Test forcesave command of the editor service accepted by the fake Document
+   * Server and its status callback.
+   *
+   * @throws Exception the exception
+   */
+  @Test
+  public void testForcesaveCommand() throws Exception {
+    // Given
+    startSessionAs("john");
+    String docId = createDocument("Forcesave Document.docx");
+    try (FakeDocumentServer documentServer = new FakeDocumentServer(SECRET_KEY, this::postStatus, DOCUMENTSERVER_PORT)) {
+      String key = onlyofficeEditorService.createEditor("http", "localhost", 8080, "john", null, docId).getDocument().getKey();
+      assertEquals(200, documentServer.open(key, "john", CONTENT));
+      documentServer.edit(key, "john");
+      onlyofficeEditorService.setLastModifier(key, "john");
+
+      // When
+      boolean accepted = onlyofficeEditorService.forceSave("john", key, true, false, true, null);
+      documentServer.awaitCallbacks(30000);
+
+      // Then
+      assertTrue(accepted);
+      assertEquals(1, documentServer.getCommands().size());
+      Map<String, Object> command = documentServer.getCommands().get(0);
+      assertEquals("forcesave", command.get("c"));
+      assertEquals(key, command.get("key"));
+      assertEquals(1, documentServer.getDownloads());
+      assertEquals(0, documentServer.getFailedCallbacks());
+      session.refresh(false);
+      String stored = session.getNodeByUUID(docId).getNode("jcr:content").getProperty("jcr:data").getString();
+      assertEquals(new String(CONTENT, StandardCharsets.UTF_8) + "\nEdited by john (1)", stored);
+      assertEquals(200, documentServer.close(key, "john"));
+    }
+  }
+
+  /**
+   * Test a document closed by its last editor saved asynchronously: the status
+   * callback acknowledged when the save queued, the content stored then.
+   *
+   * @throws Exception the exception
+   */
+  @Test
+  public void testAsyncSaveOnClose() throws Exception {
+    // Given
+    startSessionAs("john");
+    String docId = createDocument("Async Save Document.docx");
+    OnlyofficeEditorServiceImpl asyncService = createService(OnlyofficeEditorServiceImpl.CONFIG_SAVE_ASYNC, "true");
+    try (FakeDocumentServer documentServer = new FakeDocumentServer(SECRET_KEY, (userId, key, statusJson, token) -> {
+      asyncService.updateDocument(StatusParser.parse(statusJson, key, userId).build());
+      return 200;
+    })) {
+      String key = onlyofficeEditorService.createEditor("http", "localhost", 8080, "john", null, docId).getDocument().getKey();
+      assertEquals(200, documentServer.open(key, "john", CONTENT));
+      documentServer.edit(key, "john");
+      onlyofficeEditorService.setLastModifier(key, "john");
+
+      // When
+      assertEquals(200, documentServer.close(key, "john"));
+      assertTrue(asyncService.saveExecutor.shutdown(30, TimeUnit.SECONDS));
+
+      // Then
+      assertEquals(1, documentServer.getDownloads());
+      assertEquals(0, asyncService.saveFailures.getCount());
+      session.refresh(false);
+      Node node = session.getNodeByUUID(docId);
+      String stored = node.getNode("jcr:content").getProperty("jcr:data").getString();
+      assertEquals(new String(CONTENT, StandardCharsets.UTF_8) + "\nEdited by john (1)", stored);
+      assertNull(onlyofficeEditorService.getEditorByKey("john", key));
+      assertTrue(journal(asyncService, docId).isEmpty());
+    } finally {
+      asyncService.stop();
+    }
+  }
+
+  /**
+   * Test a save acknowledged to Document Server, but not done before the
+   * service stopped, replayed from the saves journal by the service started
+   * next.
+   *
+   * @throws Exception the exception
+   */
+  @Test
+  public void testAsyncSaveReplayed() throws Exception {
+    // Given
+    startSessionAs("john");
+    String docId = createDocument("Replayed Save Document.docx");
+    OnlyofficeEditorServiceImpl stoppedService = createService(OnlyofficeEditorServiceImpl.CONFIG_SAVE_ASYNC, "true");
+    CountDownLatch release = new CountDownLatch(1);
+    try (FakeDocumentServer documentServer = new FakeDocumentServer(SECRET_KEY, (userId, key, statusJson, token) -> {
+      stoppedService.updateDocument(StatusParser.parse(statusJson, key, userId).build());
+      return 200;
+    })) {
+      String key = onlyofficeEditorService.createEditor("http", "localhost", 8080, "john", null, docId).getDocument().getKey();
+      assertEquals(200, documentServer.open(key, "john", CONTENT));
+      documentServer.edit(key, "john");
+      onlyofficeEditorService.setLastModifier(key, "john");
+      // saves of the document wait as if the service stopped
+      assertTrue(stoppedService.saveExecutor.execute(docId, () -> {
+        try {
+          release.await();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+      }, 0, TimeUnit.MILLISECONDS));
+      assertEquals(200, documentServer.close(key, "john"));
+      assertEquals(1, journal(stoppedService, docId).size());
+      assertEquals(0, documentServer.getDownloads());
+
+      // When
+      OnlyofficeEditorServiceImpl startedService = createService(OnlyofficeEditorServiceImpl.CONFIG_SAVE_ASYNC, "true");
+      try {
+        startedService.replaySaves();
+        assertTrue(startedService.saveExecutor.shutdown(30, TimeUnit.SECONDS));
+
+        // Then
+        assertEquals(1, documentServer.getDownloads());
+        assertEquals(1, startedService.savesReplayed.getCount());
+        assertEquals(0, startedService.saveFailures.getCount());
+        session.refresh(false);
+        Node node = session.getNodeByUUID(docId);
+        String stored = node.getNode("jcr:content").getProperty("jcr:data").getString();
+        assertEquals(new String(CONTENT, StandardCharsets.UTF_8) + "\nEdited by john (1)", stored);
+        assertNull(onlyofficeEditorService.getEditorByKey("john", key));
+        assertTrue(journal(startedService, docId).isEmpty());
+      } finally {
+        startedService.stop();
+      }
+    } finally {
+      release.countDown();
+      stoppedService.stop();
+    }
+  }
+
+  /**
+   * Test a recorded save that cannot be read removed from the journal on
+   * replay.
+   *
+   * @throws Exception the exception
+   */
+  @Test
+  public void testUnreadableSaveRemoved() throws Exception {
+    // Given
+    OnlyofficeEditorServiceImpl asyncService = createService(OnlyofficeEditorServiceImpl.CONFIG_SAVE_ASYNC, "true");
+    String docId = "unreadable-save";
+    try {
+      asyncService.saveJournal.add(docId, new byte[] { 1, 2, 3 });
+
+      // When
+      asyncService.replaySaves();
+
+      // Then
+      assertTrue(journal(asyncService, docId).isEmpty());
+      assertEquals(0, asyncService.savesReplayed.getCount());
+    } finally {
+      asyncService.stop();
+    }
+  }
+
+  /**
+   * Test events dispatched asynchronously: an {@link Asynchronous} listener
+   * notified in the events thread, in order of the document events, the saved
+   * event after the document unlocked, with snapshots of the status not changed
+   * by later events.
+   *
+   * @throws Exception the exception
+   */
+  @Test
+  public void testAsyncEventsAfterUnlock() throws Exception {
+    // Given
+    startSessionAs("john");
+    String docId = createDocument("Async Events Document.docx");
+    OnlyofficeEditorServiceImpl asyncService = createService(OnlyofficeEditorServiceImpl.CONFIG_EVENTS_ASYNC, "true");
+    EventsRecorder recorder = new EventsRecorder(docId);
+    asyncService.addListener(recorder);
+    try (FakeDocumentServer documentServer = new FakeDocumentServer(SECRET_KEY, (userId, key, statusJson, token) -> {
+      asyncService.updateDocument(StatusParser.parse(statusJson, key, userId).build());
+      return 200;
+    })) {
+      String key = onlyofficeEditorService.createEditor("http", "localhost", 8080, "john", null, docId).getDocument().getKey();
+      assertEquals(200, documentServer.open(key, "john", CONTENT));
+      documentServer.edit(key, "john");
+      onlyofficeEditorService.setLastModifier(key, "john");
+
+      // When
+      assertEquals(200, documentServer.close(key, "john"));
+      assertTrue(asyncService.eventsExecutor.shutdown(30, TimeUnit.SECONDS));
+
+      // Then
+      assertEquals(1, documentServer.getDownloads());
+      assertEquals("joined", recorder.events.get(0));
+      assertEquals("saved", recorder.events.get(recorder.events.size() - 1));
+      for (String thread : recorder.threads) {
+        assertTrue(thread, thread.startsWith("onlyoffice-event-thread-"));
+      }
+      assertFalse(recorder.lockedOnSave);
+      // the editor closed after the joined event, but not its snapshot
+      assertTrue(recorder.joined.getConfig().isOpen());
+      assertEquals(0, asyncService.eventsExecutor.getOverflowed().getCount());
+    } finally {
+      asyncService.stop();
+    }
+  }
+
+  /**
+   * Recorded saves of a document in the saves journal of the service.
+   *
+   * @param service the service
+   * @param docId the document ID
+   * @return the journal entries
+   * @throws Exception the exception
+   */
+  protected List<SaveJournal.Entry> journal(OnlyofficeEditorServiceImpl service, String docId) throws Exception {
+    return service.saveJournal.entries().stream().filter(e -> docId.equals(e.getDocId())).collect(Collectors.toList());
+  }
+
+  /**
+   * Post a status to the REST service of the editor (callback of the fake
+   * Document Server).
+   *
+   * @param userId the user id
+   * @param key the key
+   * @param statusJson the status json
+   * @param token the token
+   * @return the HTTP status
+   * @throws Exception the exception
+   */
+  protected int postStatus(String userId, String key, String statusJson, String token) throws Exception {
+    MultivaluedMap<String, String> headers = new MultivaluedMapImpl();
+    if (token != null) {
+      headers.putSingle("authorization", "Bearer " + token);
+    }
+    ContainerResponse response = service("POST",
+                                         RESOURCE_URL + "/status/" + userId + "/" + key,
+                                         "",
+                                         headers,
+                                         statusJson.getBytes(StandardCharsets.UTF_8));
+    return response.getStatus();
+  }
+
+  /**
+   * Create co-editing users (if not already exist).
+   *
+   * @param count the count
+   * @return the user names
+   * @throws Exception the exception
+   */
+  protected List<String> createUsers(int count) throws Exception {
+    List<String> names = new ArrayList<>();
+    names.add("john");
+    OrganizationService organization = getContainer().getComponentInstanceOfType(OrganizationService.class);
+    RequestLifeCycle.begin(PortalContainer.getInstance());
+    try {
+      UserHandler userHandler = organization.getUserHandler();
+      for (int i = 1; i < count; i++) {
+        String name = "loaduser" + i;
+        if (userHandler.findUserByName(name) == null) {
+          User user = userHandler.createUserInstance(name);
+          user.setFirstName("Load");
+          user.setLastName("User " + i);
+          user.setEmail(name + "@acme.com");
+          user.setPassword("exo");
+          userHandler.createUser(user, true);
+        }
+        names.add(name);
+      }
+    } finally {
+      RequestLifeCycle.end();
+    }
+    return names;
+  }
+
+  /**
+   * Create a document editable by all users.
+   *
+   * @param title the title
+   * @return the document ID
+   * @throws Exception the exception
+   */
+  protected String createDocument(String title) throws Exception {
+    session = sessionProvider.getSession("portal-test", jcrService.getCurrentRepository());
+    Node root = session.getRootNode();
+    if (root.hasNode(title)) {
+      root.getNode(title).remove();
+    }
+    NodeImpl node = (NodeImpl) root.addNode(title, "nt:file");
+    node.addMixin("mix:referenceable");
+    node.addMixin("mix:versionable");
+    node.addMixin("exo:privilegeable");
+    node.addMixin("exo:datetime");
+    node.addMixin("exo:modify");
+    node.setPermission("any", PermissionType.ALL);
+    node.setProperty("exo:dateModified", Calendar.getInstance());
+    node.setProperty("exo:lastModifier", "john");
+    node.setProperty("exo:lastModifiedDate", Calendar.getInstance());
+    Node content = node.addNode("jcr:content", "nt:unstructured");
+    content.setProperty("jcr:mimeType", "application/vnd.openxmlformats-officedocument.wordprocessingml.document");
+    content.setProperty("jcr:lastModified", Calendar.getInstance());
+    content.setProperty("jcr:data", new String(CONTENT, StandardCharsets.UTF_8));
+    session.save();
+    return onlyofficeEditorService.initDocument(node);
+  }
+
+  /**
+   * Create an editor service with the configuration of the container service
+   * and given property changed. The service shares caches with the container
+   * one, it should be stopped after use.
+   *
+   * @param name the property name
+   * @param value the property value
+   * @return the editor service
+   * @throws Exception the exception
+   */
+  protected OnlyofficeEditorServiceImpl createService(String name, String value) throws Exception {
+    PropertiesParam config = new PropertiesParam();
+    config.setName("editor-configuration");
+    ((OnlyofficeEditorServiceImpl) onlyofficeEditorService).config.forEach(config::setProperty);
+    config.setProperty(name, value);
+    InitParams params = new InitParams();
+    params.addParameter(config);
+    return getContainer().createComponent(OnlyofficeEditorServiceImpl.class, params);
+  }
+
+  /**
+   * Asynchronous listener recording events of a document, the threads they
+   * notified in and the document lock on the saved event.
+   */
+  @Asynchronous
+  public class EventsRecorder implements OnlyofficeEditorListener {
+
+    /** The document ID. */
+    protected final String       docId;
+
+    /** The events. */
+    protected final List<String> events  = new ArrayList<>();
+
+    /** The threads. */
+    protected final List<String> threads = new ArrayList<>();
+
+    /** The status of the joined event. */
+    protected DocumentStatus     joined;
+
+    /** The document locked on the saved event. */
+    protected boolean            lockedOnSave;
+
+    /**
+     * Instantiates a new events recorder.
+     *
+     * @param docId the document ID
+     */
+    public EventsRecorder(String docId) {
+      this.docId = docId;
+    }
+
+    /**
+     * Record an event.
+     *
+     * @param event the event
+     * @param status the status
+     */
+    protected void record(String event, DocumentStatus status) {
+      if (docId.equals(status.getConfig().getDocId())) {
+        events.add(event);
+        threads.add(Thread.currentThread().getName());
+      }
+    }
+
+    @Override
+    public void onCreate(DocumentStatus status) {
+      record("created", status);
+    }
+
+    @Override
+    public void onGet(DocumentStatus status) {
+      record("get", status);
+    }
+
+    @Override
+    public void onJoined(DocumentStatus status) {
+      if (joined == null) {
+        joined = status;
+      }
+      record("joined", status);
+    }
+
+    @Override
+    public void onLeaved(DocumentStatus status) {
+      record("leaved", status);
+    }
+
+    @Override
+    public void onSaved(DocumentStatus status) {
+      try {
+        Session system = jcrService.getCurrentRepository().getSystemSession("portal-test");
+        try {
+          lockedOnSave = system.getNodeByUUID(docId).isLocked();
+        } finally {
+          system.logout();
+        }
+      } catch (Exception e) {
+        LOG.error("Cannot read the document lock", e);
+        lockedOnSave = true;
+      }
+      record("saved", status);
+    }
+
+    @Override
+    public void onError(DocumentStatus status) {
+      record("error", status);
+    }
+  }
+}
@@ -198,4 +198,23 @@ public class EditorServiceTest extends AbstractResourceTest {
     assertEquals("{\"error\":\"The token is not valid\"}", response.getEntity());
   }
 
+  /**
+   * Test metrics.
+   *
+   * @throws Exception the exception
+   */
+  @Test
+  public void testMetrics() throws Exception {
+    startSessionAs(USER);
+    ContainerResponse response = service("GET", RESOURCE_URL + "/metrics", "", null, null);
+
+    assertNotNull(response);
+    assertEquals(200, response.getStatus());
+    String metrics = String.valueOf(response.getEntity());
+    // the editor of test document created before
+    assertTrue(metrics.contains("\"onlyoffice.editor.create.count\":"));
+    assertTrue(metrics.contains("\"onlyoffice.documents.active\":"));
+    assertTrue(metrics.contains("\"onlyoffice.lock.timeouts\":0"));
+  }
+
 }
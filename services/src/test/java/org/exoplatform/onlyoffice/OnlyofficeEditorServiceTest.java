@@ -1,9 +1,20 @@
 package org.exoplatform.onlyoffice;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.util.*;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 import javax.jcr.Node;
+import javax.jcr.RepositoryException;
 
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang.ArrayUtils;
@@ -15,6 +26,7 @@ import org.exoplatform.component.test.ConfigurationUnit;
 import org.exoplatform.component.test.ConfiguredBy;
 import org.exoplatform.component.test.ContainerScope;
 import org.exoplatform.container.ExoContainerContext;
+import org.exoplatform.onlyoffice.mock.ActivityManagerMock;
 import org.exoplatform.services.jcr.access.PermissionType;
 import org.exoplatform.services.jcr.ext.app.SessionProviderService;
 import org.exoplatform.services.jcr.ext.common.SessionProvider;
@@ -24,6 +36,7 @@ import org.exoplatform.services.log.Log;
 import org.exoplatform.services.security.ConversationState;
 import org.exoplatform.services.security.Identity;
 import org.exoplatform.services.security.MembershipEntry;
+import org.exoplatform.social.core.manager.ActivityManager;
 
 import io.jsonwebtoken.Jwts;
 import io.jsonwebtoken.security.Keys;
@@ -317,6 +330,56 @@ public class OnlyofficeEditorServiceTest extends BaseCommonsTestCase {
     node.remove();
   }
 
+  /**
+   * Test concurrent creation of editors of the same document ends with a single
+   * configs map of the document.
+   */
+  @Test
+  public void testCreateEditorConcurrently() throws Exception {
+    // Given
+    startSessionAs("john");
+    OnlyofficeEditorServiceImpl editorServiceImpl = (OnlyofficeEditorServiceImpl) editorService;
+    Node node = createDocument("Test Concurrent Document.docx", "nt:file", "testContent", true);
+    String docId = node.getUUID();
+    String[] users = new String[] { "john", "Root" };
+    int threads = 8;
+    CountDownLatch start = new CountDownLatch(1);
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    List<Future<Config>> created = new ArrayList<>();
+    try {
+      // When
+      for (int i = 0; i < threads; i++) {
+        String userId = users[i % users.length];
+        created.add(executor.submit(() -> {
+          ExoContainerContext.setCurrentContainer(container);
+          startSessionAs(userId);
+          start.await();
+          return editorService.createEditor("http", "127.0.0.1", 8080, userId, null, docId);
+        }));
+      }
+      start.countDown();
+
+      // Then
+      String key = null;
+      for (Future<Config> config : created) {
+        String configKey = config.get(30, TimeUnit.SECONDS).getDocument().getKey();
+        key = key != null ? key : configKey;
+        assertEquals(key, configKey);
+      }
+      ConcurrentMap<String, Config> configs = editorServiceImpl.activeCache.get(docId);
+      assertNotNull(configs);
+      assertEquals(users.length, configs.size());
+      for (String userId : users) {
+        assertEquals(key, configs.get(userId).getDocument().getKey());
+      }
+      assertTrue(editorServiceImpl.activeLocks.isEmpty());
+    } finally {
+      executor.shutdownNow();
+      startSessionAs("john");
+      node.remove();
+    }
+  }
+
   /**
    * Test create new editor config and document key
    */
@@ -356,6 +419,44 @@ public class OnlyofficeEditorServiceTest extends BaseCommonsTestCase {
     session.save();
   }
 
+  /**
+   * Test document locks: threads of the same document wait for each other, but
+   * not for other documents, and the locks removed when released.
+   */
+  @Test
+  public void testDocumentLocks() throws Exception {
+    // Given
+    OnlyofficeEditorServiceImpl editorServiceImpl = (OnlyofficeEditorServiceImpl) editorService;
+    OnlyofficeEditorServiceImpl.DocumentLock lock = editorServiceImpl.lockDocument("doc-a");
+    ExecutorService executor = Executors.newFixedThreadPool(2);
+    try {
+      // When
+      Future<?> sameDocument = executor.submit(() -> editorServiceImpl.unlockDocument("doc-a",
+                                                                                     editorServiceImpl.lockDocument("doc-a")));
+      Future<?> otherDocument = executor.submit(() -> editorServiceImpl.unlockDocument("doc-b",
+                                                                                      editorServiceImpl.lockDocument("doc-b")));
+
+      // Then other document not waiting
+      otherDocument.get(5, TimeUnit.SECONDS);
+      for (int i = 0; i < 50 && !lock.hasQueuedThreads(); i++) {
+        Thread.sleep(100);
+      }
+      assertTrue(lock.hasQueuedThreads());
+      assertFalse(sameDocument.isDone());
+      assertEquals(2, editorServiceImpl.activeLocks.get("doc-a").holders);
+      assertNull(editorServiceImpl.activeLocks.get("doc-b"));
+
+      // When
+      editorServiceImpl.unlockDocument("doc-a", lock);
+
+      // Then
+      sameDocument.get(5, TimeUnit.SECONDS);
+      assertTrue(editorServiceImpl.activeLocks.isEmpty());
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
   /**
    * Test download version
    * Add comment to the FileActivity with current file
@@ -385,6 +486,83 @@ public class OnlyofficeEditorServiceTest extends BaseCommonsTestCase {
     node.remove();
   }
 
+  /**
+   * Test a version comment posted before the document locked, its ID and the
+   * version label written with the saved content
+   */
+  @Test
+  public void testDownloadVersionCommentedBeforeLock() throws Exception {
+    // Given
+    startSessionAs("john");
+    Node node = createDocument("Test Document.docx", "nt:file", "testContent", true);
+    ActivityTypeUtils.attachActivityId(node, "commentedActivity");
+    node.save();
+    ActivityManagerMock activities = (ActivityManagerMock) getContainer().getComponentInstanceOfType(ActivityManager.class);
+    activities.addActivity("commentedActivity");
+    List<Boolean> lockedOnComment = new ArrayList<>();
+    activities.setCommentListener(comment -> {
+      try {
+        lockedOnComment.add(node.isLocked());
+      } catch (RepositoryException e) {
+        throw new IllegalStateException(e);
+      }
+    });
+    Config config = editorService.createEditor("http", "127.0.0.1", 8080, "john", null, node.getUUID());
+
+    // When
+    try {
+      editorService.downloadVersion("john", node.getUUID(), false, false, "Commented version", null);
+    } finally {
+      activities.setCommentListener(null);
+    }
+
+    // Then
+    assertEquals(1, lockedOnComment.size());
+    assertFalse(lockedOnComment.get(0));
+    Node document = editorService.getDocumentById(config.getWorkspace(), config.getDocId());
+    String commentId = document.getProperty("eoo:commentId").getString();
+    assertTrue(activities.getComments().containsKey(commentId));
+    assertTrue(document.getVersionHistory().hasVersionLabel("Commented version"));
+    assertFalse(document.isLocked());
+    node.remove();
+  }
+
+  /**
+   * Test a failed version comment doesn't fail the save and leaves no comment
+   * ID of the document
+   */
+  @Test
+  public void testDownloadVersionWhenCommentFailed() throws Exception {
+    // Given
+    startSessionAs("john");
+    Node node = createDocument("Test Document.docx", "nt:file", "testContent", true);
+    ActivityTypeUtils.attachActivityId(node, "failedActivity");
+    node.save();
+    ActivityManagerMock activities = (ActivityManagerMock) getContainer().getComponentInstanceOfType(ActivityManager.class);
+    activities.addActivity("failedActivity");
+    activities.setCommentListener(comment -> {
+      throw new IllegalStateException("Test failure");
+    });
+    Config config = editorService.createEditor("http", "127.0.0.1", 8080, "john", null, node.getUUID());
+    int comments = activities.getComments().size();
+
+    // When
+    try {
+      editorService.downloadVersion("john", node.getUUID(), false, false, "Failed comment", null);
+    } finally {
+      activities.setCommentListener(null);
+    }
+
+    // Then
+    Node document = editorService.getDocumentById(config.getWorkspace(), config.getDocId());
+    assertEquals("", document.getProperty("eoo:commentId").getString());
+    assertEquals(comments, activities.getComments().size());
+    assertFalse(document.getVersionHistory().hasVersionLabel("Failed comment"));
+    assertTrue(ArrayUtils.contains(((NodeImpl) document).getMixinTypeNames(), "eoo:onlyofficeFile"));
+    assertFalse(document.isLocked());
+    node.remove();
+  }
+
   /**
    * Test download version when contentUrl not null
    */
@@ -636,6 +814,35 @@ public class OnlyofficeEditorServiceTest extends BaseCommonsTestCase {
     node.remove();
   }
 
+  /**
+   * Test editor page of existing editor refreshed only when the node changed
+   */
+  @Test
+  public void testRefreshEditorPageWhenNodeModified() throws Exception {
+    // Given
+    startSessionAs("john");
+    Node node = createDocument("Test Document.docx", "nt:file", "testContent", true);
+    Config config = editorService.createEditor("http", "127.0.0.1", 8080, "john", null, node.getUUID());
+    config.getEditorPage().setLastModifier("Nobody");
+
+    // When node not modified
+    editorService.createEditor("http", "127.0.0.1", 8080, "john", null, node.getUUID());
+
+    // Then
+    assertEquals("Nobody", config.getEditorPage().getLastModifier());
+
+    // When node modified
+    Calendar modified = Calendar.getInstance();
+    modified.setTimeInMillis(node.getProperty("exo:lastModifiedDate").getDate().getTimeInMillis() + 1000);
+    node.setProperty("exo:lastModifiedDate", modified);
+    node.save();
+    editorService.createEditor("http", "127.0.0.1", 8080, "john", null, node.getUUID());
+
+    // Then
+    assertEquals("John Smith", config.getEditorPage().getLastModifier());
+    node.remove();
+  }
+
   /**
    * Test get last modifier
    */
@@ -657,6 +864,72 @@ public class OnlyofficeEditorServiceTest extends BaseCommonsTestCase {
     node.remove();
   }
 
+  /**
+   * Test get editor by document key and ID, and its removal on close
+   */
+  @Test
+  public void testGetEditorByKeyAndDocId() throws Exception {
+    // Given
+    startSessionAs("john");
+    Node node = createDocument("Test Document.docx", "nt:file", "testContent", true);
+    Config config = editorService.createEditor("http", "127.0.0.1", 8080, "john", null, node.getUUID());
+    String key = config.getDocument().getKey();
+
+    // When
+    Config byKey = editorService.getEditorByKey("john", key);
+    Config byDocId = editorService.getEditorByKey("john", node.getUUID());
+
+    // Then
+    assertNotNull(byKey);
+    assertNotNull(byDocId);
+    assertEquals(key, byKey.getDocument().getKey());
+    assertEquals(key, byDocId.getDocument().getKey());
+
+    // When
+    DocumentStatus status = new DocumentStatus.Builder().status(4L)
+                                                        .users(new String[] {})
+                                                        .userId("john")
+                                                        .key(key)
+                                                        .build();
+    editorService.updateDocument(status);
+
+    // Then
+    assertNull(editorService.getEditorByKey("john", key));
+    assertNull(editorService.getEditorByKey("john", node.getUUID()));
+    node.remove();
+  }
+
+  /**
+   * Test serialization of editor configs in compact format
+   */
+  @Test
+  public void testConfigCompactSerialization() throws Exception {
+    // Given
+    startSessionAs("john");
+    Node node = createDocument("Test Document.docx", "nt:file", "testContent", true);
+    Config config = editorService.createEditor("http", "127.0.0.1", 8080, "john", null, node.getUUID());
+    ConfigMap configs = new ConfigMap();
+    configs.put("john", config);
+    configs.put("mary", config.forUser("mary", "Mary Williams", "en", SECRET_KEY));
+
+    // When
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+      out.writeObject(configs);
+    }
+    ConfigMap restored;
+    try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+      restored = (ConfigMap) in.readObject();
+    }
+
+    // Then
+    assertEquals(2, restored.size());
+    assertEquals(config.toJSON(), restored.get("john").toJSON());
+    assertEquals(config.getDocId(), restored.get("john").getDocId());
+    assertEquals(configs.get("mary").toJSON(), restored.get("mary").toJSON());
+    node.remove();
+  }
+
   /**
    * Test get state
    */
@@ -701,6 +974,111 @@ public class OnlyofficeEditorServiceTest extends BaseCommonsTestCase {
     }
   }
 
+  /**
+   * Test organization users cached and invalidated on update
+   */
+  @Test
+  public void testGetUserCached() throws Exception {
+    OnlyofficeEditorServiceImpl service = (OnlyofficeEditorServiceImpl) editorService;
+    // Given
+    org.exoplatform.services.organization.User john = editorService.getUser("john");
+    assertNotNull(john);
+    int hits = service.getUserCacheHits();
+    int misses = service.getUserCacheMisses();
+
+    // When
+    org.exoplatform.services.organization.User cached = editorService.getUser("john");
+
+    // Then
+    assertEquals("john", cached.getUserName());
+    assertEquals(hits + 1, service.getUserCacheHits());
+    assertEquals(misses, service.getUserCacheMisses());
+
+    // When user updated
+    service.new UserCacheListener().postSave(john, false);
+    assertEquals("john", editorService.getUser("john").getUserName());
+
+    // Then it read again from organization service
+    assertEquals(misses + 1, service.getUserCacheMisses());
+  }
+
+  /**
+   * Test editor configs of the legacy (double-keyed) cache layout migrated to
+   * the document ID entry with the key index
+   */
+  @Test
+  public void testGetConfigsMigratesLegacyLayout() throws Exception {
+    OnlyofficeEditorServiceImpl service = (OnlyofficeEditorServiceImpl) editorService;
+    // Given configs cached by the document key only, without the key index
+    startSessionAs("john");
+    Node node = createDocument("Test Legacy Document.docx", "nt:file", "testContent", true);
+    String docId = node.getUUID();
+    Config config = editorService.createEditor("http", "127.0.0.1", 8080, "john", null, docId);
+    String key = config.getDocument().getKey();
+    ConcurrentMap<String, Config> configs = service.activeCache.get(docId);
+    service.keyCache.remove(key);
+    service.activeCache.remove(docId);
+    service.activeCache.put(key, configs);
+
+    // When
+    ConcurrentMap<String, Config> migrated = service.getConfigs(key);
+
+    // Then
+    assertNotNull(migrated);
+    assertEquals(config.getDocId(), migrated.get("john").getDocId());
+    assertEquals(docId, service.keyCache.get(key));
+    assertNull(service.activeCache.get(key));
+    assertNotNull(service.activeCache.get(docId));
+    assertNotNull(editorService.getEditorByKey("john", key));
+
+    // Given configs cached by both the key and document ID (legacy)
+    service.keyCache.remove(key);
+    service.activeCache.put(key, configs);
+
+    // When
+    migrated = service.getConfigs(key);
+
+    // Then the document ID entry kept, the key entry replaced by the index
+    assertNotNull(migrated);
+    assertEquals(docId, service.keyCache.get(key));
+    assertNull(service.activeCache.get(key));
+    assertNotNull(service.activeCache.get(docId));
+    node.remove();
+  }
+
+  /**
+   * Test symlinks of shared document cached and invalidated on preferences
+   * update
+   */
+  @Test
+  public void testGetSymlinkCached() throws Exception {
+    OnlyofficeEditorServiceImpl service = (OnlyofficeEditorServiceImpl) editorService;
+    // Given
+    Node node = createDocument("Test Document.docx", "nt:file", "testContent", true);
+    Node link = createDocument("Test Link.docx", "nt:file", "testContent", true);
+    Node otherLink = createDocument("Test Other Link.docx", "nt:file", "testContent", true);
+    editorService.addFilePreferences(node, "mary", link.getPath());
+    assertEquals(link.getPath(), service.getSymlink(node, "mary").getPath());
+    int hits = service.getDisplayPathCacheHits();
+
+    // When
+    Node cached = service.getSymlink(node, "mary");
+
+    // Then
+    assertEquals(link.getPath(), cached.getPath());
+    assertEquals(hits + 1, service.getDisplayPathCacheHits());
+
+    // When preferences updated
+    editorService.addFilePreferences(node, "mary", otherLink.getPath());
+
+    // Then
+    assertEquals(otherLink.getPath(), service.getSymlink(node, "mary").getPath());
+    assertNull(service.getSymlink(node, "john"));
+    node.remove();
+    link.remove();
+    otherLink.remove();
+  }
+
   /**
    * Test get user from exoCache with key and userId when configuration is null
    */
@@ -1041,6 +1419,37 @@ public class OnlyofficeEditorServiceTest extends BaseCommonsTestCase {
     node.remove();
   }
 
+  /**
+   * Test update Document fot status code 2 fails when the content cannot be
+   * downloaded, the editor config kept for a retry of Document Server
+   */
+  @Test
+  public void testUpdateDocumentWhenContentNotDownloaded() throws Exception {
+    // Given
+    startSessionAs("john");
+    Node node = createDocument("Test Document.docx", "nt:file", "testContent", true);
+    Config config = editorService.createEditor("http", "127.0.0.1", 8080, "john", null, node.getUUID());
+    DocumentStatus status = new DocumentStatus.Builder().status(2L)
+                                                        .users(new String[] { "john" })
+                                                        .userId("john")
+                                                        .url("http://127.0.0.1:1/cache/files/output.docx")
+                                                        .key(config.getDocument().getKey())
+                                                        .build();
+    editorService.setLastModifier(node.getUUID(), "john");
+    long failures = ((OnlyofficeEditorServiceImpl) editorService).saveFailures.getCount();
+
+    // When
+    try {
+      editorService.updateDocument(status);
+      fail();
+    } catch (OnlyofficeEditorException e) {
+      // Then
+      assertNotNull(editorService.getEditorByKey("john", config.getDocument().getKey()));
+      assertEquals(failures + 1, ((OnlyofficeEditorServiceImpl) editorService).saveFailures.getCount());
+    }
+    node.remove();
+  }
+
   /**
    * Test update Document fot status code 3 "Error in editor. Document still in
    * editing state.
@@ -1222,6 +1631,51 @@ public class OnlyofficeEditorServiceTest extends BaseCommonsTestCase {
     node.remove();
   }
 
+  /**
+   * Test state of an user removed from the states cache when the user leaves
+   * co-editing
+   */
+  @Test
+  public void testUserStateRemovedOnLeave() throws Exception {
+    OnlyofficeEditorServiceImpl service = (OnlyofficeEditorServiceImpl) editorService;
+    // Given
+    startSessionAs("john");
+    Node node = createDocument("Test Leave Document.docx", "nt:file", "testContent", true);
+    String docId = node.getUUID();
+    Config config = editorService.createEditor("http", "127.0.0.1", 8080, "john", null, docId);
+    String key = config.getDocument().getKey();
+    editorService.updateDocument(new DocumentStatus.Builder().status(1L)
+                                                             .users(new String[] { "john" })
+                                                             .userId("john")
+                                                             .key(key)
+                                                             .build());
+    editorService.setLastModifier(key, "john");
+    assertNotNull(service.stateCache.get(service.userStateKey(docId, "john")));
+
+    // When the user gone while the document still edited
+    editorService.updateDocument(new DocumentStatus.Builder().status(1L).users(new String[] {}).userId("john").key(key).build());
+
+    // Then the state removed, but kept in the config
+    assertNull(service.stateCache.get(service.userStateKey(docId, "john")));
+    Config closed = service.activeCache.get(docId).get("john");
+    assertTrue(closed.isClosed());
+    assertTrue(closed.getEditorConfig().getUser().getLastModified() > 0);
+    node.remove();
+  }
+
+  /**
+   * Test status timers limited to known status codes
+   */
+  @Test
+  public void testStatusTimerName() throws Exception {
+    OnlyofficeEditorServiceImpl service = (OnlyofficeEditorServiceImpl) editorService;
+    assertEquals("status.0", service.statusTimerName(0L));
+    assertEquals("status.7", service.statusTimerName(7L));
+    assertEquals("status.other", service.statusTimerName(8L));
+    assertEquals("status.other", service.statusTimerName(-1L));
+    assertEquals("status.other", service.statusTimerName(null));
+  }
+
   /**
    * Test validate token
    */
@@ -1272,6 +1726,34 @@ public class OnlyofficeEditorServiceTest extends BaseCommonsTestCase {
     node.remove();
   }
 
+  /**
+   * Test validated tokens cache.
+   */
+  @Test
+  public void testValidateTokenCache() {
+    TokenService tokens = new TokenService(SECRET_KEY, 10, 60000);
+    Map<String, Object> payload = new HashMap<>();
+    payload.put("key", "document-key");
+    Map<String, Object> claims = new HashMap<>();
+    claims.put("payload", payload);
+    String token = tokens.createToken(claims);
+
+    assertTrue(tokens.validate(token, "document-key"));
+    assertEquals(1, tokens.getCacheMisses());
+    assertEquals(0, tokens.getCacheHits());
+    // second validation from the cache, but the key still checked
+    assertTrue(tokens.validate(token, "document-key"));
+    assertFalse(tokens.validate(token, "another-key"));
+    assertEquals(2, tokens.getCacheHits());
+    assertEquals(1, tokens.getCachedCount());
+
+    // expired token not valid and not cached
+    claims.put("exp", System.currentTimeMillis() / 1000 - 60);
+    String expiredToken = tokens.createToken(claims);
+    assertFalse(tokens.validate(expiredToken, "document-key"));
+    assertEquals(1, tokens.getCachedCount());
+  }
+
   /**
    * Test get list of versions
    */
@@ -1308,6 +1790,66 @@ public class OnlyofficeEditorServiceTest extends BaseCommonsTestCase {
     assertEquals(1, version2.getVersionLabels().length);
     assertEquals("Document updated", version2.getVersionLabels()[0]);
 
+    // When a page after the newest version
+    List<Version> page = editorService.getVersions("portal-test", node.getUUID(), 1, 1);
+
+    // Then
+    assertEquals(1, page.size());
+    assertEquals(version2.getName(), page.get(0).getName());
+    assertEquals(0, editorService.getVersions("portal-test", node.getUUID(), 2, 3).size());
+    // offset out of range doesn't overflow the page size
+    assertEquals(0, editorService.getVersions("portal-test", node.getUUID(), Integer.MAX_VALUE, 100).size());
+
+    node.remove();
+  }
+
+  /**
+   * Test versions cached and invalidated on a new version.
+   */
+  @Test
+  public void testGetVersionsCached() throws Exception {
+    // Given
+    startSessionAs("john");
+    OnlyofficeEditorServiceImpl editorServiceImpl = (OnlyofficeEditorServiceImpl) editorService;
+    Node node = createDocument("Test Cached Versions.docx", "nt:file", "testContent", false);
+    node.checkin();
+    node.checkout();
+    Thread.sleep(10);
+    node.checkin();
+    node.checkout();
+    List<Version> versions = editorService.getVersions("portal-test", node.getUUID());
+    int hits = editorServiceImpl.getVersionCacheHits();
+
+    // When
+    List<Version> cached = editorService.getVersions("portal-test", node.getUUID());
+
+    // Then
+    assertEquals(hits + 1, editorServiceImpl.getVersionCacheHits());
+    assertEquals(versions.size(), cached.size());
+    assertEquals(versions.get(0).getName(), cached.get(0).getName());
+
+    // When another page requested
+    int misses = editorServiceImpl.getVersionCacheMisses();
+    List<Version> page = editorService.getVersions("portal-test", node.getUUID(), 1, 1);
+
+    // Then it taken from the cached newest versions
+    assertEquals(misses, editorServiceImpl.getVersionCacheMisses());
+    assertEquals(versions.get(1).getName(), page.get(0).getName());
+
+    // When a version created outside the editor (later than the previous)
+    Thread.sleep(10);
+    node.checkin();
+    node.checkout();
+
+    // Then (JCR observation may notify asynchronously)
+    List<Version> updated = editorService.getVersions("portal-test", node.getUUID());
+    for (int i = 0; i < 50 && updated.size() == versions.size(); i++) {
+      Thread.sleep(100);
+      updated = editorService.getVersions("portal-test", node.getUUID());
+    }
+    assertEquals(versions.size() + 1, updated.size());
+    assertEquals(node.getBaseVersion().getName(), updated.get(0).getName());
+
     node.remove();
   }
 }
@@ -0,0 +1,129 @@
+package org.exoplatform.onlyoffice.cometd;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * The Class ChangesCoalescerTest.
+ */
+public class ChangesCoalescerTest {
+
+  /** The Constant DOC_ID. */
+  protected static final String       DOC_ID  = "a7b3c5d2-0f1e-4c6b-9a8d-2e4f6a8b0c1d";
+
+  /** The Constant KEY. */
+  protected static final String       KEY     = "e0b8f1c2-4c9a-4f0e-9d43-5b7a2f1c8d11";
+
+  /** The applied changes. */
+  protected final List<String>        applied = new CopyOnWriteArrayList<>();
+
+  /** The timer. */
+  protected ScheduledThreadPoolExecutor timer;
+
+  /**
+   * Setup.
+   */
+  @Before
+  public void setup() {
+    timer = new ScheduledThreadPoolExecutor(1);
+  }
+
+  /**
+   * Tear down.
+   */
+  @After
+  public void tearDown() {
+    timer.shutdownNow();
+  }
+
+  /**
+   * Test changes of an user coalesced in a window with the latest time kept.
+   *
+   * @throws Exception the exception
+   */
+  @Test
+  public void testChangesCoalescedInWindow() throws Exception {
+    // Given
+    ChangesCoalescer changes = new ChangesCoalescer(200, timer, this::apply);
+
+    // When
+    assertTrue(changes.change(DOC_ID, KEY, "john", 1));
+    assertFalse(changes.change(DOC_ID, KEY, "john", 3));
+    assertFalse(changes.change(DOC_ID, KEY, "john", 2));
+    assertTrue(changes.change(DOC_ID, KEY, "mary", 4));
+
+    // Then
+    assertEquals(2, applied.size());
+    assertEquals("john@1 first", applied.get(0));
+    assertEquals("mary@4 first", applied.get(1));
+    assertEquals(2, changes.getCoalesced().getCount());
+    assertEquals(2, changes.getOpen());
+
+    // When the window closes
+    awaitClosed(changes);
+
+    // Then
+    assertEquals(3, applied.size());
+    assertEquals("john@3", applied.get(2));
+
+    // When next change after the window
+    assertTrue(changes.change(DOC_ID, KEY, "john", 5));
+
+    // Then
+    assertEquals("john@5 first", applied.get(3));
+  }
+
+  /**
+   * Test each change applied without a window.
+   */
+  @Test
+  public void testNoWindow() {
+    // Given
+    ChangesCoalescer changes = new ChangesCoalescer(0, timer, this::apply);
+
+    // When
+    assertTrue(changes.change(DOC_ID, KEY, "john", 1));
+    assertTrue(changes.change(DOC_ID, KEY, "john", 2));
+
+    // Then
+    assertEquals(2, applied.size());
+    assertEquals(0, changes.getOpen());
+  }
+
+  /**
+   * Apply a change.
+   *
+   * @param docId the doc id
+   * @param key the key
+   * @param userId the user id
+   * @param time the time
+   * @param first the first
+   */
+  protected void apply(String docId, String key, String userId, long time, boolean first) {
+    applied.add(userId + "@" + time + (first ? " first" : ""));
+  }
+
+  /**
+   * Wait for all windows closed.
+   *
+   * @param changes the changes
+   * @throws InterruptedException the interrupted exception
+   */
+  protected void awaitClosed(ChangesCoalescer changes) throws InterruptedException {
+    long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(10);
+    while (changes.getOpen() > 0 && System.currentTimeMillis() < deadline) {
+      Thread.sleep(50);
+    }
+    assertEquals(0, changes.getOpen());
+  }
+}
@@ -0,0 +1,287 @@
+package org.exoplatform.onlyoffice.cometd;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import org.exoplatform.container.ExoContainerContext;
+import org.exoplatform.container.PortalContainer;
+import org.exoplatform.onlyoffice.Config.Editor;
+import org.exoplatform.onlyoffice.OnlyofficeEditorService;
+import org.exoplatform.onlyoffice.metrics.MetricsRegistry;
+import org.exoplatform.onlyoffice.tracing.Tracer;
+
+/**
+ * The Class CometdOnlyofficeServiceTest.
+ */
+public class CometdOnlyofficeServiceTest {
+
+  /** The Constant DOC_ID. */
+  protected static final String DOC_ID = "a7b3c5d2-0f1e-4c6b-9a8d-2e4f6a8b0c1d";
+
+  /** The Constant KEY. */
+  protected static final String KEY    = "e0b8f1c2-4c9a-4f0e-9d43-5b7a2f1c8d11";
+
+  /**
+   * Cometd service keeping submitted commands to run them by the test.
+   */
+  static class TestCometdService extends CometdOnlyofficeService {
+
+    /** The submitted commands. */
+    final List<ContainerCommand> commands = new CopyOnWriteArrayList<>();
+
+    /**
+     * Instantiates a new test cometd service.
+     *
+     * @param editors the editors service
+     */
+    TestCometdService(OnlyofficeEditorService editors) {
+      super(null, editors, new MetricsRegistry(), mock(Tracer.class), null);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected boolean submit(String docId, String event, ContainerCommand command) {
+      commands.add(command);
+      return true;
+    }
+  }
+
+  /** The editors service. */
+  protected OnlyofficeEditorService editors;
+
+  /** The cometd service. */
+  protected TestCometdService       cometd;
+
+  /**
+   * Setup.
+   */
+  @Before
+  public void setup() {
+    // commands created for the current portal container
+    ExoContainerContext.setCurrentContainer(mock(PortalContainer.class));
+    editors = mock(OnlyofficeEditorService.class);
+    cometd = new TestCometdService(editors);
+  }
+
+  /**
+   * Tear down.
+   */
+  @After
+  public void tearDown() {
+    cometd.stop();
+    ExoContainerContext.setCurrentContainer(null);
+  }
+
+  /**
+   * Test a version request deferred while another in progress and run, for the
+   * current last modifier, when the document saved.
+   *
+   * @throws Exception the exception
+   */
+  @Test
+  public void testDeferredUntilSaved() throws Exception {
+    // Given
+    Editor.User john = user("john", 2, 1);
+    Editor.User mary = user("mary", 4, 3);
+    when(editors.forceSave(anyString(), eq(KEY), anyBoolean(), anyBoolean(), anyBoolean(), any())).thenReturn(true);
+    cometd.requestVersion(DOC_ID, KEY, john);
+    cometd.commands.get(0).execute(null);
+
+    // When
+    cometd.requestVersion(DOC_ID, KEY, john);
+
+    // Then
+    assertEquals(1, cometd.commands.size());
+    assertEquals(1, cometd.versionsDeferred.getCount());
+    assertTrue(cometd.versionRequests.containsKey(DOC_ID));
+
+    // When saved (as the saving listener does), mary changed meanwhile
+    when(editors.getLastModifier(KEY)).thenReturn(mary);
+    cometd.versionDone(DOC_ID, null);
+
+    // Then
+    assertEquals(2, cometd.commands.size());
+    assertTrue(cometd.versionFollowUps.isEmpty());
+    cometd.commands.get(1).execute(null);
+    verify(editors).forceSave("john", KEY, true, true, false, null);
+    verify(editors).forceSave("mary", KEY, true, true, false, null);
+    assertEquals(0, cometd.versionsSkipped.getCount());
+  }
+
+  /**
+   * Test only the latest deferred request of a document run.
+   *
+   * @throws Exception the exception
+   */
+  @Test
+  public void testDeferredReplacedByLater() throws Exception {
+    // Given
+    Editor.User john = user("john", 2, 1);
+    when(editors.forceSave(anyString(), eq(KEY), anyBoolean(), anyBoolean(), anyBoolean(), any())).thenReturn(true);
+    when(editors.getLastModifier(KEY)).thenReturn(john);
+    cometd.requestVersion(DOC_ID, KEY, john);
+
+    // When
+    cometd.requestVersion(DOC_ID, KEY, john);
+    cometd.requestVersion(DOC_ID, KEY, john);
+    cometd.requestVersion(DOC_ID, KEY, john);
+
+    // Then
+    assertEquals(3, cometd.versionsDeferred.getCount());
+    assertEquals(2, cometd.versionsSkipped.getCount());
+    assertEquals(1, cometd.versionFollowUps.size());
+
+    // When saved
+    cometd.versionDone(DOC_ID, null);
+
+    // Then a single request run
+    assertEquals(2, cometd.commands.size());
+    assertTrue(cometd.versionFollowUps.isEmpty());
+  }
+
+  /**
+   * Test a deferred request skipped when the last modifier has no unsaved
+   * changes at its turn.
+   *
+   * @throws Exception the exception
+   */
+  @Test
+  public void testDeferredSkippedWhenNothingToSave() throws Exception {
+    // Given
+    Editor.User john = user("john", 2, 1);
+    cometd.requestVersion(DOC_ID, KEY, john);
+    cometd.requestVersion(DOC_ID, KEY, john);
+
+    // When the download in progress saved the last changes
+    when(editors.getLastModifier(KEY)).thenReturn(user("john", 2, 2));
+    cometd.versionDone(DOC_ID, null);
+
+    // Then
+    assertEquals(1, cometd.commands.size());
+    assertEquals(1, cometd.versionsSkipped.getCount());
+    assertTrue(cometd.versionRequests.isEmpty());
+    assertTrue(cometd.versionFollowUps.isEmpty());
+  }
+
+  /**
+   * Test a deferred request run when the saving failed.
+   *
+   * @throws Exception the exception
+   */
+  @Test
+  public void testDeferredRunOnError() throws Exception {
+    // Given
+    Editor.User john = user("john", 2, 1);
+    when(editors.getLastModifier(KEY)).thenReturn(john);
+    when(editors.forceSave(anyString(), eq(KEY), anyBoolean(), anyBoolean(), anyBoolean(), any())).thenThrow(new IllegalStateException("test"));
+    cometd.requestVersion(DOC_ID, KEY, john);
+    cometd.requestVersion(DOC_ID, KEY, john);
+
+    // When
+    try {
+      cometd.commands.get(0).execute(null);
+      fail("Error expected");
+    } catch (IllegalStateException e) {
+      // expected
+    }
+
+    // Then
+    assertEquals(2, cometd.commands.size());
+    assertTrue(cometd.versionFollowUps.isEmpty());
+    assertTrue(cometd.versionRequests.containsKey(DOC_ID));
+  }
+
+  /**
+   * Test a deferred request run at once when the Command Service refused the
+   * forcesave: no callback will come for it.
+   *
+   * @throws Exception the exception
+   */
+  @Test
+  public void testDeferredRunOnRefusedForcesave() throws Exception {
+    // Given
+    Editor.User john = user("john", 2, 1);
+    when(editors.getLastModifier(KEY)).thenReturn(john);
+    when(editors.forceSave(anyString(), eq(KEY), anyBoolean(), anyBoolean(), anyBoolean(), any())).thenReturn(false);
+    cometd.requestVersion(DOC_ID, KEY, john);
+    cometd.requestVersion(DOC_ID, KEY, john);
+
+    // When
+    cometd.commands.get(0).execute(null);
+
+    // Then
+    assertEquals(2, cometd.commands.size());
+    assertTrue(cometd.versionFollowUps.isEmpty());
+
+    // When also refused
+    cometd.commands.get(1).execute(null);
+
+    // Then nothing in progress
+    assertTrue(cometd.versionRequests.isEmpty());
+    verify(editors, times(2)).forceSave("john", KEY, true, true, false, null);
+  }
+
+  /**
+   * Test a request not deferred when the download in progress has no result
+   * longer than the timeout.
+   *
+   * @throws Exception the exception
+   */
+  @Test
+  public void testRequestAfterTimeout() throws Exception {
+    // Given
+    Editor.User john = user("john", 2, 1);
+    long requested = System.currentTimeMillis() - CometdOnlyofficeService.VERSION_REQUEST_TIMEOUT - 1;
+    cometd.versionRequests.put(DOC_ID, requested);
+
+    // When
+    cometd.requestVersion(DOC_ID, KEY, john);
+
+    // Then
+    assertEquals(1, cometd.commands.size());
+    assertEquals(0, cometd.versionsDeferred.getCount());
+    assertTrue(cometd.versionRequests.get(DOC_ID) > requested);
+
+    // When the timed out download finished late
+    cometd.versionDone(DOC_ID, requested);
+
+    // Then the new one still in progress
+    assertTrue(cometd.versionRequests.containsKey(DOC_ID));
+    verify(editors, never()).getLastModifier(KEY);
+  }
+
+  /**
+   * Mock an editor user.
+   *
+   * @param id the user ID
+   * @param lastModified the last modified time
+   * @param lastSaved the last saved time
+   * @return the editor user
+   */
+  protected Editor.User user(String id, long lastModified, long lastSaved) {
+    Editor.User user = mock(Editor.User.class);
+    when(user.getId()).thenReturn(id);
+    when(user.getLastModified()).thenReturn(lastModified);
+    when(user.getLastSaved()).thenReturn(lastSaved);
+    return user;
+  }
+}
@@ -0,0 +1,134 @@
+package org.exoplatform.onlyoffice.concurrent;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+/**
+ * The Class BoundedExecutorTest.
+ */
+public class BoundedExecutorTest {
+
+  /**
+   * Test not more tasks than the limit run at the same time.
+   *
+   * @throws Exception the exception
+   */
+  @Test
+  public void testLimit() throws Exception {
+    // Given
+    BoundedExecutor bounded = new BoundedExecutor(Executors.newCachedThreadPool(), 2);
+    AtomicInteger running = new AtomicInteger();
+    AtomicInteger maxRunning = new AtomicInteger();
+    CountDownLatch done = new CountDownLatch(10);
+
+    // When
+    for (int i = 0; i < 10; i++) {
+      bounded.execute(() -> {
+        maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+        try {
+          Thread.sleep(20);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+        running.decrementAndGet();
+        done.countDown();
+      });
+    }
+
+    // Then
+    assertTrue(done.await(10, TimeUnit.SECONDS));
+    assertEquals(2, maxRunning.get());
+    bounded.shutdown();
+    assertTrue(bounded.awaitTermination(5, TimeUnit.SECONDS));
+    assertEquals(0, bounded.getRunning());
+  }
+
+  /**
+   * Test a task interrupted while waiting for a permit still runs: a drain of
+   * {@link KeyedExecutor} releases its queue.
+   *
+   * @throws Exception the exception
+   */
+  @Test
+  public void testInterruptedTaskRuns() throws Exception {
+    // Given a permit held by a running task
+    BoundedExecutor bounded = new BoundedExecutor(Executors.newCachedThreadPool(), 1);
+    CountDownLatch holding = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    bounded.execute(() -> {
+      holding.countDown();
+      // holds the permit also when interrupted
+      while (release.getCount() > 0) {
+        try {
+          release.await();
+        } catch (InterruptedException e) {
+          // interrupted by shutdownNow
+        }
+      }
+    });
+    assertTrue(holding.await(5, TimeUnit.SECONDS));
+    KeyedExecutor keyed = new KeyedExecutor("test", bounded, 10);
+    CountDownLatch ran = new CountDownLatch(1);
+    keyed.execute("doc", ran::countDown, 1, TimeUnit.SECONDS);
+    while (!bounded.permits.hasQueuedThreads()) {
+      Thread.sleep(10);
+    }
+
+    // When the waiting threads interrupted and then the permit released
+    bounded.shutdownNow();
+    Thread.sleep(100);
+    release.countDown();
+
+    // Then
+    assertTrue(ran.await(5, TimeUnit.SECONDS));
+    assertTrue(bounded.awaitTermination(5, TimeUnit.SECONDS));
+    assertEquals(0, keyed.getActiveKeys());
+    assertEquals(0, keyed.getQueueSize());
+  }
+
+  /**
+   * Test platform threads pool used when virtual threads not requested or not
+   * supported.
+   *
+   * @throws Exception the exception
+   */
+  @Test
+  public void testPlatformThreadsFallback() throws Exception {
+    // When
+    ExecutorService platform = VirtualThreads.newExecutor("test-platform-", 2, 1, false);
+    ExecutorService virtual = VirtualThreads.newExecutor("test-virtual-", 2, 1, true);
+
+    // Then
+    assertTrue(platform instanceof ThreadPoolExecutor);
+    ThreadPoolExecutor pool = (ThreadPoolExecutor) platform;
+    assertEquals(2, pool.getCorePoolSize());
+    assertEquals(2, pool.getMaximumPoolSize());
+    assertTrue(pool.allowsCoreThreadTimeOut());
+    String[] name = new String[1];
+    CountDownLatch done = new CountDownLatch(1);
+    platform.execute(() -> {
+      name[0] = Thread.currentThread().getName();
+      done.countDown();
+    });
+    assertTrue(done.await(5, TimeUnit.SECONDS));
+    assertTrue(name[0].startsWith("test-platform-"));
+    if (VirtualThreads.isSupported()) {
+      assertTrue(virtual instanceof BoundedExecutor);
+      assertEquals(2, ((BoundedExecutor) virtual).getLimit());
+    } else {
+      assertTrue(virtual instanceof ThreadPoolExecutor);
+      assertEquals(2, ((ThreadPoolExecutor) virtual).getMaximumPoolSize());
+    }
+    platform.shutdown();
+    virtual.shutdown();
+  }
+}
@@ -0,0 +1,273 @@
+package org.exoplatform.onlyoffice.concurrent;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * The Class KeyedExecutorTest.
+ */
+public class KeyedExecutorTest {
+
+  /** The underlying executor. */
+  protected ExecutorService pool;
+
+  /** The count of tasks submitted to the underlying executor. */
+  protected AtomicInteger   executions;
+
+  /** The underlying executor counting submissions. */
+  protected Executor        executor;
+
+  /**
+   * Setup.
+   */
+  @Before
+  public void setup() {
+    pool = Executors.newFixedThreadPool(4);
+    executions = new AtomicInteger();
+    executor = command -> {
+      executions.incrementAndGet();
+      pool.execute(command);
+    };
+  }
+
+  /**
+   * Tear down.
+   */
+  @After
+  public void tearDown() {
+    pool.shutdownNow();
+  }
+
+  /**
+   * Test tasks of a key run in submission order, keys in parallel.
+   *
+   * @throws Exception the exception
+   */
+  @Test
+  public void testKeyOrder() throws Exception {
+    // Given
+    KeyedExecutor keyed = new KeyedExecutor("test", executor, 1000);
+    List<Integer> first = new ArrayList<>();
+    List<Integer> second = new ArrayList<>();
+    CountDownLatch done = new CountDownLatch(200);
+
+    // When
+    for (int i = 0; i < 100; i++) {
+      int n = i;
+      assertTrue(keyed.execute("first", () -> {
+        first.add(n);
+        done.countDown();
+      }, 1, TimeUnit.SECONDS));
+      assertTrue(keyed.execute("second", () -> {
+        second.add(n);
+        done.countDown();
+      }, 1, TimeUnit.SECONDS));
+    }
+
+    // Then
+    assertTrue(done.await(10, TimeUnit.SECONDS));
+    for (int i = 0; i < 100; i++) {
+      assertEquals(i, first.get(i).intValue());
+      assertEquals(i, second.get(i).intValue());
+    }
+    assertTrue(keyed.shutdown(5, TimeUnit.SECONDS));
+    assertEquals(0, keyed.getActiveKeys());
+    assertEquals(0, keyed.getQueueSize());
+    assertEquals(200, keyed.getSubmitted().getCount());
+  }
+
+  /**
+   * Test the queue bound: a task rejected when no place freed in time, places
+   * released when tasks complete.
+   *
+   * @throws Exception the exception
+   */
+  @Test
+  public void testQueueBoundAndRejection() throws Exception {
+    // Given
+    KeyedExecutor keyed = new KeyedExecutor("test", executor, 2);
+    CountDownLatch release = new CountDownLatch(1);
+    CountDownLatch done = new CountDownLatch(2);
+    Runnable blocked = () -> {
+      try {
+        release.await();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      done.countDown();
+    };
+    assertTrue(keyed.execute("first", blocked, 0, TimeUnit.MILLISECONDS));
+    assertTrue(keyed.execute("second", blocked, 0, TimeUnit.MILLISECONDS));
+
+    // When the queue is full
+    boolean accepted = keyed.execute("third", () -> {
+    }, 50, TimeUnit.MILLISECONDS);
+
+    // Then
+    assertFalse(accepted);
+    assertEquals(1, keyed.getRejected().getCount());
+    assertEquals(2, keyed.getQueueSize());
+
+    // When the tasks complete
+    release.countDown();
+    assertTrue(done.await(5, TimeUnit.SECONDS));
+
+    // Then places freed
+    assertTrue(keyed.execute("third", () -> {
+    }, 1, TimeUnit.SECONDS));
+    assertTrue(keyed.shutdown(5, TimeUnit.SECONDS));
+    assertEquals(0, keyed.getQueueSize());
+  }
+
+  /**
+   * Test a task submitted to the full queue as overflow queued after already
+   * queued tasks of its key, not run ahead of them, and doesn't free a place
+   * it not held.
+   *
+   * @throws Exception the exception
+   */
+  @Test
+  public void testOverflowKeepsKeyOrder() throws Exception {
+    // Given a full queue
+    KeyedExecutor keyed = new KeyedExecutor("test", executor, 2);
+    CountDownLatch release = new CountDownLatch(1);
+    List<String> order = new ArrayList<>();
+    CountDownLatch done = new CountDownLatch(3);
+    assertTrue(keyed.execute("doc", () -> {
+      try {
+        release.await();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      order.add("first");
+      done.countDown();
+    }, 0, TimeUnit.MILLISECONDS));
+    assertTrue(keyed.execute("doc", () -> {
+      order.add("second");
+      done.countDown();
+    }, 0, TimeUnit.MILLISECONDS));
+
+    // When
+    keyed.executeOrOverflow("doc", () -> {
+      order.add("overflow");
+      done.countDown();
+    }, 50, TimeUnit.MILLISECONDS);
+
+    // Then queued, not run in the caller thread
+    assertTrue(order.isEmpty());
+    assertEquals(1, keyed.getOverflowed().getCount());
+    assertEquals(0, keyed.getRejected().getCount());
+    release.countDown();
+    assertTrue(done.await(5, TimeUnit.SECONDS));
+    assertTrue(keyed.shutdown(5, TimeUnit.SECONDS));
+    assertEquals(3, order.size());
+    assertEquals("first", order.get(0));
+    assertEquals("second", order.get(1));
+    assertEquals("overflow", order.get(2));
+    assertEquals(0, keyed.getQueueSize());
+  }
+
+  /**
+   * Test a task queued over the bound, not lost, when the caller interrupted
+   * while waiting for a place, and the interrupt flag restored.
+   *
+   * @throws Exception the exception
+   */
+  @Test
+  public void testOverflowWhenInterrupted() throws Exception {
+    // Given
+    KeyedExecutor keyed = new KeyedExecutor("test", executor, 2);
+    CountDownLatch done = new CountDownLatch(1);
+
+    // When
+    Thread.currentThread().interrupt();
+    keyed.executeOrOverflow("doc", done::countDown, 1, TimeUnit.SECONDS);
+
+    // Then
+    assertTrue(Thread.interrupted());
+    assertEquals(1, keyed.getOverflowed().getCount());
+    assertTrue(done.await(5, TimeUnit.SECONDS));
+    assertTrue(keyed.shutdown(5, TimeUnit.SECONDS));
+    assertEquals(0, keyed.getQueueSize());
+  }
+
+  /**
+   * Test a key drain resubmitted to the underlying executor after a turn of
+   * tasks, in the same order.
+   *
+   * @throws Exception the exception
+   */
+  @Test
+  public void testResubmitAfterTurn() throws Exception {
+    // Given
+    KeyedExecutor keyed = new KeyedExecutor("test", executor, 100);
+    CountDownLatch release = new CountDownLatch(1);
+    List<Integer> order = new ArrayList<>();
+    int count = KeyedExecutor.TASKS_PER_TURN + 4;
+    CountDownLatch done = new CountDownLatch(count);
+    for (int i = 0; i < count; i++) {
+      int n = i;
+      keyed.execute("doc", () -> {
+        if (n == 0) {
+          try {
+            release.await();
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+          }
+        }
+        order.add(n);
+        done.countDown();
+      }, 1, TimeUnit.SECONDS);
+    }
+
+    // When all tasks queued before the first completes
+    release.countDown();
+
+    // Then
+    assertTrue(done.await(5, TimeUnit.SECONDS));
+    assertTrue(keyed.shutdown(5, TimeUnit.SECONDS));
+    // the first drain and one resubmission after a turn
+    assertEquals(2, executions.get());
+    for (int i = 0; i < count; i++) {
+      assertEquals(i, order.get(i).intValue());
+    }
+  }
+
+  /**
+   * Test a failed task doesn't stop next tasks of the key.
+   *
+   * @throws Exception the exception
+   */
+  @Test
+  public void testFailedTask() throws Exception {
+    // Given
+    KeyedExecutor keyed = new KeyedExecutor("test", executor, 10);
+    CountDownLatch done = new CountDownLatch(1);
+
+    // When
+    keyed.execute("doc", () -> {
+      throw new IllegalStateException("Test failure");
+    }, 1, TimeUnit.SECONDS);
+    keyed.execute("doc", done::countDown, 1, TimeUnit.SECONDS);
+
+    // Then
+    assertTrue(done.await(5, TimeUnit.SECONDS));
+    assertTrue(keyed.shutdown(5, TimeUnit.SECONDS));
+    assertEquals(1, keyed.getFailed().getCount());
+    assertEquals(0, keyed.getQueueSize());
+  }
+}
@@ -0,0 +1,101 @@
+package org.exoplatform.onlyoffice.concurrent;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Test;
+
+/**
+ * The Class LocalLocksTest.
+ */
+public class LocalLocksTest {
+
+  /**
+   * Test a waiter of a lock held locally notified on its release, before the
+   * timeout.
+   *
+   * @throws Exception the exception
+   */
+  @Test
+  public void testAwaitRelease() throws Exception {
+    // Given
+    LocalLocks locks = new LocalLocks(10, 100);
+    locks.acquired("doc");
+    CountDownLatch waiting = new CountDownLatch(1);
+    AtomicBoolean released = new AtomicBoolean();
+    CountDownLatch done = new CountDownLatch(1);
+    Thread waiter = new Thread(() -> {
+      try {
+        waiting.countDown();
+        released.set(locks.awaitRelease("doc", 10000));
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      done.countDown();
+    });
+    waiter.start();
+    assertTrue(waiting.await(5, TimeUnit.SECONDS));
+    assertTrue(locks.isHeld("doc"));
+
+    // When
+    long start = System.currentTimeMillis();
+    locks.released("doc");
+
+    // Then
+    assertTrue(done.await(5, TimeUnit.SECONDS));
+    assertTrue(released.get());
+    assertTrue(System.currentTimeMillis() - start < 5000);
+    assertFalse(locks.isHeld("doc"));
+    assertEquals(0, locks.size());
+  }
+
+  /**
+   * Test a wait for a lock not released ends by the timeout, and a wait for a
+   * lock not held locally returns immediately.
+   *
+   * @throws Exception the exception
+   */
+  @Test
+  public void testAwaitTimeout() throws Exception {
+    // Given
+    LocalLocks locks = new LocalLocks(10, 100);
+    locks.acquired("doc");
+
+    // When
+    long start = System.currentTimeMillis();
+    boolean released = locks.awaitRelease("doc", 50);
+
+    // Then
+    assertFalse(released);
+    assertTrue(System.currentTimeMillis() - start >= 50);
+    assertTrue(locks.isHeld("doc"));
+    assertTrue(locks.awaitRelease("other", 10000));
+    locks.released("doc");
+    assertTrue(locks.awaitRelease("doc", 10000));
+  }
+
+  /**
+   * Test the poll delay grows from the min to the max delay, with the jitter
+   * not more than a half of the delay.
+   */
+  @Test
+  public void testPollDelay() {
+    // Given
+    LocalLocks locks = new LocalLocks(10, 100);
+
+    // Then
+    for (int i = 0; i < 100; i++) {
+      long first = locks.pollDelay(1);
+      assertTrue(first >= 5 && first <= 10);
+      long third = locks.pollDelay(3);
+      assertTrue(third >= 20 && third <= 40);
+      long last = locks.pollDelay(Integer.MAX_VALUE);
+      assertTrue(last >= 50 && last <= 100);
+    }
+  }
+}
@@ -0,0 +1,344 @@
+package org.exoplatform.onlyoffice.http;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import org.exoplatform.onlyoffice.http.ContentFetcher.Content;
+import org.exoplatform.onlyoffice.http.ContentFetcher.ContentException;
+
+/**
+ * The Class ContentFetcherTest.
+ */
+public class ContentFetcherTest {
+
+  /** The content served. */
+  protected static final byte[] CONTENT = "Test content of a document".getBytes();
+
+  /** The server. */
+  protected HttpServer           server;
+
+  /** The client. */
+  protected DocumentServerClient client;
+
+  /** The count of requests to the server. */
+  protected AtomicInteger        requests;
+
+  /** The count of failed responses before the content served. */
+  protected AtomicInteger        failures;
+
+  /** The status of failed responses, zero to break the content. */
+  protected volatile int         failureStatus;
+
+  /** Serve the content without the content length. */
+  protected volatile boolean     chunked;
+
+  /**
+   * Setup.
+   *
+   * @throws Exception the exception
+   */
+  @Before
+  public void setup() throws Exception {
+    requests = new AtomicInteger();
+    failures = new AtomicInteger();
+    server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+    server.createContext("/content", this::serve);
+    server.start();
+    client = new DocumentServerClient(4, 4, 5000, 2000, 2000);
+  }
+
+  /**
+   * Tear down.
+   *
+   * @throws Exception the exception
+   */
+  @After
+  public void tearDown() throws Exception {
+    client.close();
+    server.stop(0);
+  }
+
+  /**
+   * Test a content fetched after retries of server errors.
+   *
+   * @throws Exception the exception
+   */
+  @Test
+  public void testRetryServerError() throws Exception {
+    // Given
+    ContentFetcher fetcher = new ContentFetcher(client, 2000, 2000, 0, 2, 1, false);
+    failures.set(2);
+    failureStatus = 503;
+
+    // When
+    try (Content content = fetcher.fetch(url())) {
+      // Then
+      assertArrayEquals(CONTENT, read(content.getStream()));
+      assertEquals(CONTENT.length, content.getSize());
+      assertFalse(content.isSpooled());
+    }
+    assertEquals(3, requests.get());
+    assertEquals(2, fetcher.getRetries());
+    assertEquals(0, fetcher.getFailures());
+    assertEquals(CONTENT.length, fetcher.getBytes());
+  }
+
+  /**
+   * Test a spooled content fetched after a retry of an I/O error (the
+   * connection closed in the middle of the content).
+   *
+   * @throws Exception the exception
+   */
+  @Test
+  public void testRetryIOError() throws Exception {
+    // Given
+    ContentFetcher fetcher = new ContentFetcher(client, 2000, 2000, 0, 1, 1, true);
+    failures.set(1);
+    failureStatus = 0;
+
+    // When
+    try (Content content = fetcher.fetch(url())) {
+      // Then
+      assertArrayEquals(CONTENT, read(content.getStream()));
+    }
+    assertEquals(2, requests.get());
+    assertEquals(1, fetcher.getRetries());
+  }
+
+  /**
+   * Test a server error fails the fetch when no retries left.
+   *
+   * @throws Exception the exception
+   */
+  @Test
+  public void testRetriesExhausted() throws Exception {
+    // Given
+    ContentFetcher fetcher = new ContentFetcher(client, 2000, 2000, 0, 2, 1, false);
+    failures.set(10);
+    failureStatus = 500;
+
+    // When
+    try {
+      fetcher.fetch(url()).close();
+      fail("Server error expected");
+    } catch (ContentException e) {
+      fail("Server error should not be a content failure");
+    } catch (IOException e) {
+      // Then
+      assertEquals(3, requests.get());
+      assertEquals(2, fetcher.getRetries());
+      assertEquals(1, fetcher.getFailures());
+    }
+  }
+
+  /**
+   * Test a client error not retried.
+   *
+   * @throws Exception the exception
+   */
+  @Test
+  public void testNoRetryClientError() throws Exception {
+    // Given
+    ContentFetcher fetcher = new ContentFetcher(client, 2000, 2000, 0, 2, 1, false);
+    failures.set(10);
+    failureStatus = 404;
+
+    // When
+    try {
+      fetcher.fetch(url()).close();
+      fail("Client error expected");
+    } catch (ContentException e) {
+      // Then
+      assertEquals(1, requests.get());
+      assertEquals(0, fetcher.getRetries());
+      assertEquals(1, fetcher.getFailures());
+    }
+  }
+
+  /**
+   * Test a content larger than allowed rejected by its length, without
+   * retries.
+   *
+   * @throws Exception the exception
+   */
+  @Test
+  public void testSizeLimitByLength() throws Exception {
+    // Given
+    ContentFetcher fetcher = new ContentFetcher(client, 2000, 2000, CONTENT.length - 1, 2, 1, false);
+
+    // When
+    try {
+      fetcher.fetch(url()).close();
+      fail("Size limit expected");
+    } catch (ContentException e) {
+      // Then
+      assertEquals(1, requests.get());
+      assertEquals(1, fetcher.getFailures());
+    }
+  }
+
+  /**
+   * Test a content of unknown length fails when read over the limit.
+   *
+   * @throws Exception the exception
+   */
+  @Test
+  public void testSizeLimitByReadBytes() throws Exception {
+    // Given
+    ContentFetcher fetcher = new ContentFetcher(client, 2000, 2000, CONTENT.length - 1, 2, 1, false);
+    chunked = true;
+
+    // When
+    try (Content content = fetcher.fetch(url())) {
+      assertEquals(-1, content.getSize());
+      read(content.getStream());
+      fail("Size limit expected");
+    } catch (ContentException e) {
+      // Then
+      assertEquals(1, requests.get());
+    }
+  }
+
+  /**
+   * Test a spooled content read from a temporary file, removed on close.
+   *
+   * @throws Exception the exception
+   */
+  @Test
+  public void testSpoolFileRemoved() throws Exception {
+    // Given
+    ContentFetcher fetcher = new ContentFetcher(client, 2000, 2000, 0, 2, 1, true);
+    Set<Path> before = spoolFiles();
+
+    // When
+    Content content = fetcher.fetch(url());
+    Set<Path> spooled = spoolFiles();
+    spooled.removeAll(before);
+
+    // Then
+    assertTrue(content.isSpooled());
+    assertEquals(CONTENT.length, content.getSize());
+    assertEquals(1, spooled.size());
+    assertArrayEquals(CONTENT, read(content.getStream()));
+    content.close();
+    assertFalse(Files.exists(spooled.iterator().next()));
+  }
+
+  /**
+   * Test no spool file left when spooling fails over the limit.
+   *
+   * @throws Exception the exception
+   */
+  @Test
+  public void testSpoolFileRemovedOnFailure() throws Exception {
+    // Given
+    ContentFetcher fetcher = new ContentFetcher(client, 2000, 2000, CONTENT.length - 1, 2, 1, true);
+    chunked = true;
+    Set<Path> before = spoolFiles();
+
+    // When
+    try {
+      fetcher.fetch(url()).close();
+      fail("Size limit expected");
+    } catch (ContentException e) {
+      // Then
+      Set<Path> left = spoolFiles();
+      left.removeAll(before);
+      assertTrue(left.isEmpty());
+    }
+  }
+
+  /**
+   * Serve a request: fail while failures left, then serve the content.
+   *
+   * @param exchange the exchange
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  protected void serve(HttpExchange exchange) throws IOException {
+    requests.incrementAndGet();
+    try {
+      if (failures.getAndDecrement() > 0) {
+        if (failureStatus > 0) {
+          exchange.sendResponseHeaders(failureStatus, -1);
+        } else {
+          // close the connection in the middle of the content
+          exchange.sendResponseHeaders(200, CONTENT.length);
+          exchange.getResponseBody().write(CONTENT, 0, CONTENT.length / 2);
+          exchange.getResponseBody().flush();
+        }
+        return;
+      }
+      exchange.sendResponseHeaders(200, chunked ? 0 : CONTENT.length);
+      try (OutputStream out = exchange.getResponseBody()) {
+        out.write(CONTENT);
+      }
+    } finally {
+      exchange.close();
+    }
+  }
+
+  /**
+   * Content URL.
+   *
+   * @return the string
+   */
+  protected String url() {
+    return "http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort() + "/content";
+  }
+
+  /**
+   * Read a stream fully.
+   *
+   * @param stream the stream
+   * @return the bytes
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  protected byte[] read(InputStream stream) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    byte[] buf = new byte[8];
+    int n;
+    while ((n = stream.read(buf)) > 0) {
+      out.write(buf, 0, n);
+    }
+    return out.toByteArray();
+  }
+
+  /**
+   * Spool files in the temporary directory.
+   *
+   * @return the paths
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  protected Set<Path> spoolFiles() throws IOException {
+    Set<Path> files = new HashSet<>();
+    try (DirectoryStream<Path> dir = Files.newDirectoryStream(Paths.get(System.getProperty("java.io.tmpdir")),
+                                                              "onlyoffice-content-*.tmp")) {
+      dir.forEach(files::add);
+    }
+    return files;
+  }
+}
@@ -0,0 +1,81 @@
+package org.exoplatform.onlyoffice.jcr;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.junit.Test;
+
+/**
+ * The Class VersionRetentionTest.
+ */
+public class VersionRetentionTest {
+
+  /**
+   * Test versions of the same author collapsed within the window.
+   */
+  @Test
+  public void testCollapseSameAuthor() {
+    // Given
+    VersionRetention retention = new VersionRetention(0, 600000, 60000, 20, null);
+    List<VersionRetention.Entry> versions = Arrays.asList(version("1", 0, "john", "john"),
+                                                          version("2", 60000, "john", "john"),
+                                                          version("3", 120000, "mary", "mary"),
+                                                          version("4", 1000000, "mary", null),
+                                                          version("5", 1060000, "john", "john"),
+                                                          version("6", 1120000, "john", null));
+
+    // When
+    List<String> removed = names(retention.select(versions));
+
+    // Then: 1 collapsed into 2, 3 too old for 4, 5 collapsed into forcesaved 6
+    assertEquals(Arrays.asList("1", "5"), removed);
+  }
+
+  /**
+   * Test only last versions kept, but not labeled or base ones.
+   */
+  @Test
+  public void testKeepLastVersions() {
+    // Given
+    VersionRetention retention = new VersionRetention(2, 0, 60000, 20, null);
+    List<VersionRetention.Entry> versions = new ArrayList<>();
+    versions.add(new VersionRetention.Entry("1", 0, "john", null, true));
+    versions.add(version("2", 1000, "mary", null));
+    versions.add(version("3", 2000, "john", "john"));
+    versions.add(version("4", 3000, "john", null));
+    versions.add(new VersionRetention.Entry("5", 4000, "mary", null, true));
+
+    // When
+    List<String> removed = names(retention.select(versions));
+
+    // Then: 3 collapsed into 4, 2 and 4 exceed the max, 1 labeled
+    assertEquals(Arrays.asList("2", "3", "4"), removed);
+  }
+
+  /**
+   * Version entry.
+   *
+   * @param name the name
+   * @param created the created
+   * @param author the author
+   * @param owner the owner
+   * @return the entry
+   */
+  protected VersionRetention.Entry version(String name, long created, String author, String owner) {
+    return new VersionRetention.Entry(name, created, author, owner, false);
+  }
+
+  /**
+   * Names of versions.
+   *
+   * @param versions the versions
+   * @return the names
+   */
+  protected List<String> names(List<VersionRetention.Entry> versions) {
+    return versions.stream().map(v -> v.name).collect(Collectors.toList());
+  }
+}
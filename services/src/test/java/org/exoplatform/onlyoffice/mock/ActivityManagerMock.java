@@ -1,12 +1,16 @@
 package org.exoplatform.onlyoffice.mock;
 
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
 
 import org.exoplatform.social.common.RealtimeListAccess;
 import org.exoplatform.social.core.ActivityProcessor;
 import org.exoplatform.social.core.BaseActivityProcessorPlugin;
 import org.exoplatform.social.core.activity.ActivityListenerPlugin;
 import org.exoplatform.social.core.activity.model.ExoSocialActivity;
+import org.exoplatform.social.core.activity.model.ExoSocialActivityImpl;
 import org.exoplatform.social.core.identity.model.Identity;
 import org.exoplatform.social.core.manager.ActivityManager;
 import org.exoplatform.social.core.storage.ActivityStorageException;
@@ -16,6 +20,46 @@ import org.exoplatform.social.core.storage.ActivityStorageException;
  */
 public class ActivityManagerMock implements ActivityManager {
 
+  /** The activities added by tests. */
+  protected final Map<String, ExoSocialActivity> activities = new ConcurrentHashMap<>();
+
+  /** The comments of the activities by ID. */
+  protected final Map<String, ExoSocialActivity> comments   = new ConcurrentHashMap<>();
+
+  /** The listener of saved comments. */
+  protected volatile Consumer<ExoSocialActivity> commentListener;
+
+  /**
+   * Add an activity that can be commented.
+   *
+   * @param activityId the activity ID
+   * @return the activity
+   */
+  public ExoSocialActivity addActivity(String activityId) {
+    ExoSocialActivity activity = new ExoSocialActivityImpl();
+    activity.setId(activityId);
+    activities.put(activityId, activity);
+    return activity;
+  }
+
+  /**
+   * Gets the saved comments by ID.
+   *
+   * @return the comments
+   */
+  public Map<String, ExoSocialActivity> getComments() {
+    return comments;
+  }
+
+  /**
+   * Sets the listener of saved comments, it can fail the save.
+   *
+   * @param commentListener the listener or <code>null</code>
+   */
+  public void setCommentListener(Consumer<ExoSocialActivity> commentListener) {
+    this.commentListener = commentListener;
+  }
+
   @Override
   public void saveActivityNoReturn(Identity streamOwner, ExoSocialActivity activity) {
   }
@@ -30,7 +74,7 @@ public class ActivityManagerMock implements ActivityManager {
 
   @Override
   public ExoSocialActivity getActivity(String activityId) {
-    return null;
+    return activityId != null ? activities.get(activityId) : null;
   }
 
   @Override
@@ -56,6 +100,14 @@ public class ActivityManagerMock implements ActivityManager {
 
   @Override
   public void saveComment(ExoSocialActivity activity, ExoSocialActivity newComment) {
+    if (activity != null) {
+      Consumer<ExoSocialActivity> listener = commentListener;
+      if (listener != null) {
+        listener.accept(newComment);
+      }
+      newComment.setId(activity.getId() + "-comment-" + (comments.size() + 1));
+      comments.put(newComment.getId(), newComment);
+    }
   }
 
   @Override
@@ -70,6 +122,7 @@ public class ActivityManagerMock implements ActivityManager {
 
   @Override
   public void deleteComment(String activityId, String commentId) {
+    comments.remove(commentId);
   }
 
   @Override
@@ -0,0 +1,560 @@
+package org.exoplatform.onlyoffice.test;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.io.IOUtils;
+import org.json.simple.JSONObject;
+import org.json.simple.parser.JSONParser;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import org.exoplatform.services.log.ExoLogger;
+import org.exoplatform.services.log.Log;
+
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.security.Keys;
+
+/**
+ * Stand-in of ONLYOFFICE Document Server for tests, on the JDK HTTP server
+ * bound to the loopback interface. It serves content of edited documents,
+ * accepts forcesave commands on <code>/coauthoring/CommandService.ashx</code>
+ * and drives the status callbacks of the editor service with sequences of a
+ * real server: 1 when users open or leave a document, 6 on forcesave, 2 when
+ * last user closed a modified document, 4 when closed without changes and 3
+ * on a saving error. Callbacks are delivered by a {@link StatusCallback}: it
+ * can call the REST service in the same JVM (no network required) or post to
+ * a running server.
+ */
+public class FakeDocumentServer implements Closeable {
+
+  /** The Constant LOG. */
+  protected static final Log LOG          = ExoLogger.getLogger(FakeDocumentServer.class);
+
+  /** The Constant COMMAND_PATH. */
+  public static final String COMMAND_PATH = "/coauthoring/CommandService.ashx";
+
+  /** The Constant FILES_PATH. */
+  public static final String FILES_PATH   = "/cache/files/";
+
+  /**
+   * Delivers a status to the editor service callback.
+   */
+  public interface StatusCallback {
+
+    /**
+     * Post the status.
+     *
+     * @param userId the user ID of the callback URL
+     * @param key the document key
+     * @param statusJson the status JSON
+     * @param token the JWT token or <code>null</code>
+     * @return the HTTP status of the callback response
+     * @throws Exception the exception
+     */
+    int post(String userId, String key, String statusJson, String token) throws Exception;
+  }
+
+  /**
+   * A co-editing session of a document.
+   */
+  protected static class Session {
+
+    /** The key. */
+    final String       key;
+
+    /** The users, in order of opening. */
+    final List<String> users    = new ArrayList<>();
+
+    /** The content. */
+    volatile byte[]    content;
+
+    /** The content version. */
+    int                version;
+
+    /** The modified flag. */
+    boolean            modified;
+
+    /**
+     * Instantiates a new session.
+     *
+     * @param key the key
+     * @param content the content
+     */
+    Session(String key, byte[] content) {
+      this.key = key;
+      this.content = content;
+    }
+  }
+
+  /** The server. */
+  protected final HttpServer                  server;
+
+  /** The callbacks executor (for commands). */
+  protected final ExecutorService             callbacks;
+
+  /** The secret, <code>null</code> to not sign callbacks. */
+  protected final String                      secret;
+
+  /** The callback. */
+  protected final StatusCallback              callback;
+
+  /** The sessions. */
+  protected final Map<String, Session>        sessions        = new ConcurrentHashMap<>();
+
+  /** The content downloads. */
+  protected final AtomicInteger               downloads       = new AtomicInteger();
+
+  /** The received commands. */
+  protected final List<Map<String, Object>>   commands        = new CopyOnWriteArrayList<>();
+
+  /** The callbacks failed or rejected by the editor service. */
+  protected final AtomicInteger               failedCallbacks = new AtomicInteger();
+
+  /**
+   * Instantiates a new fake Document Server and starts it on a free port.
+   *
+   * @param secret the secret or <code>null</code>
+   * @param callback the status callback
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  public FakeDocumentServer(String secret, StatusCallback callback) throws IOException {
+    this(secret, callback, 0);
+  }
+
+  /**
+   * Instantiates a new fake Document Server and starts it on given port, to
+   * let the editor service configured with the server host send commands to
+   * it.
+   *
+   * @param secret the secret or <code>null</code>
+   * @param callback the status callback
+   * @param port the port, 0 for a free port
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  public FakeDocumentServer(String secret, StatusCallback callback, int port) throws IOException {
+    this.secret = secret != null && secret.length() > 0 ? secret : null;
+    this.callback = callback;
+    this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+    this.server.setExecutor(Executors.newFixedThreadPool(8));
+    this.server.createContext(FILES_PATH, this::serveContent);
+    this.server.createContext(COMMAND_PATH, this::command);
+    this.callbacks = Executors.newSingleThreadExecutor();
+    this.server.start();
+  }
+
+  /**
+   * Gets the server URL.
+   *
+   * @return the URL
+   */
+  public String getUrl() {
+    InetSocketAddress address = server.getAddress();
+    return "http://" + address.getHostString() + ":" + address.getPort();
+  }
+
+  /**
+   * Gets the command service URL.
+   *
+   * @return the command service URL
+   */
+  public String getCommandServiceUrl() {
+    return getUrl() + COMMAND_PATH;
+  }
+
+  /**
+   * User opens an editor of a document: the server sends status 1 with
+   * current users.
+   *
+   * @param key the document key
+   * @param userId the user ID
+   * @param content the document content (used by first user)
+   * @return the HTTP status of the callback response
+   * @throws Exception the exception
+   */
+  public int open(String key, String userId, byte[] content) throws Exception {
+    Session session = sessions.computeIfAbsent(key, k -> new Session(k, content));
+    String[] users;
+    synchronized (session) {
+      if (!session.users.contains(userId)) {
+        session.users.add(userId);
+      }
+      users = usersOf(session);
+    }
+    return send(userId, status(key, 1, users, null, null, 0));
+  }
+
+  /**
+   * User changes a document, it will be saved on close.
+   *
+   * @param key the document key
+   * @param userId the user ID
+   */
+  public void edit(String key, String userId) {
+    Session session = session(key);
+    synchronized (session) {
+      session.modified = true;
+      session.version++;
+      session.content = (new String(session.content, StandardCharsets.UTF_8) + "\nEdited by " + userId + " (" + session.version
+          + ")").getBytes(StandardCharsets.UTF_8);
+    }
+  }
+
+  /**
+   * Forcesave of a document by an user: the server sends status 6 with the
+   * content URL.
+   *
+   * @param key the document key
+   * @param userId the user ID
+   * @return the HTTP status of the callback response
+   * @throws Exception the exception
+   */
+  public int forcesave(String key, String userId) throws Exception {
+    Session session = session(key);
+    String[] users;
+    String url;
+    synchronized (session) {
+      users = usersOf(session);
+      url = contentUrl(session);
+      session.modified = false;
+    }
+    String userdata = "{\"userId\":\"" + userId + "\",\"download\":true,\"coedited\":" + (users.length > 1)
+        + ",\"forcesaved\":true,\"comment\":null}";
+    return send(userId, status(key, 6, users, url, userdata, 0));
+  }
+
+  /**
+   * User closes an editor: the server sends status 1 with remaining users or,
+   * for the last user, 2 if the document was modified and 4 if not.
+   *
+   * @param key the document key
+   * @param userId the user ID
+   * @return the HTTP status of the callback response
+   * @throws Exception the exception
+   */
+  public int close(String key, String userId) throws Exception {
+    Session session = session(key);
+    Map<String, Object> status;
+    synchronized (session) {
+      session.users.remove(userId);
+      if (session.users.size() > 0) {
+        status = status(key, 1, usersOf(session), null, null, 0);
+      } else if (session.modified) {
+        status = status(key, 2, new String[] { userId }, contentUrl(session), null, 0);
+      } else {
+        status = status(key, 4, null, null, null, 0);
+      }
+    }
+    try {
+      return send(userId, status);
+    } finally {
+      if (((Number) status.get("status")).intValue() != 1) {
+        sessions.remove(key);
+      }
+    }
+  }
+
+  /**
+   * Saving error of a document: the server sends status 3 with the content URL
+   * of last saved state.
+   *
+   * @param key the document key
+   * @param userId the user ID
+   * @return the HTTP status of the callback response
+   * @throws Exception the exception
+   */
+  public int error(String key, String userId) throws Exception {
+    Session session = session(key);
+    String[] users;
+    String url;
+    synchronized (session) {
+      users = usersOf(session);
+      url = contentUrl(session);
+    }
+    return send(userId, status(key, 3, users, url, null, 3));
+  }
+
+  /**
+   * Gets the count of content downloads.
+   *
+   * @return the downloads
+   */
+  public int getDownloads() {
+    return downloads.get();
+  }
+
+  /**
+   * Gets the received commands.
+   *
+   * @return the commands
+   */
+  public List<Map<String, Object>> getCommands() {
+    return Collections.unmodifiableList(commands);
+  }
+
+  /**
+   * Gets the count of callbacks failed or rejected by the editor service.
+   *
+   * @return the failed callbacks
+   */
+  public int getFailedCallbacks() {
+    return failedCallbacks.get();
+  }
+
+  /**
+   * Wait for callbacks of already received commands.
+   *
+   * @param timeout the timeout in milliseconds
+   * @throws Exception the exception
+   */
+  public void awaitCallbacks(long timeout) throws Exception {
+    callbacks.submit(() -> null).get(timeout, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void close() {
+    server.stop(0);
+    callbacks.shutdownNow();
+    ((ExecutorService) server.getExecutor()).shutdownNow();
+  }
+
+  /**
+   * Serve document content.
+   *
+   * @param exchange the exchange
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  protected void serveContent(HttpExchange exchange) throws IOException {
+    try {
+      // /cache/files/{key}/output.docx
+      String path = exchange.getRequestURI().getPath().substring(FILES_PATH.length());
+      int slash = path.indexOf('/');
+      Session session = sessions.get(slash > 0 ? path.substring(0, slash) : path);
+      if (session == null || !"GET".equals(exchange.getRequestMethod())) {
+        exchange.sendResponseHeaders(404, -1);
+        return;
+      }
+      byte[] content = session.content;
+      exchange.getResponseHeaders().add("Content-Type", "application/octet-stream");
+      exchange.sendResponseHeaders(200, content.length);
+      try (OutputStream out = exchange.getResponseBody()) {
+        out.write(content);
+      }
+      downloads.incrementAndGet();
+    } finally {
+      exchange.close();
+    }
+  }
+
+  /**
+   * Handle a command. Only forcesave supported, its status callback sent after
+   * the response as a real server does.
+   *
+   * @param exchange the exchange
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  @SuppressWarnings("unchecked")
+  protected void command(HttpExchange exchange) throws IOException {
+    try {
+      String json;
+      try (InputStream in = exchange.getRequestBody()) {
+        json = IOUtils.toString(in, StandardCharsets.UTF_8.name());
+      }
+      Map<String, Object> command;
+      try {
+        command = (JSONObject) new JSONParser().parse(json);
+      } catch (Exception e) {
+        respond(exchange, "{\"error\":5}");
+        return;
+      }
+      if (secret != null && !validToken(exchange.getRequestHeaders().getFirst("Authorization"))) {
+        respond(exchange, "{\"error\":6}");
+        return;
+      }
+      commands.add(command);
+      String key = (String) command.get("key");
+      if (!"forcesave".equals(command.get("c"))) {
+        respond(exchange, "{\"error\":5}");
+      } else if (key == null || !sessions.containsKey(key)) {
+        respond(exchange, "{\"error\":1}");
+      } else {
+        respond(exchange, "{\"error\":0,\"key\":\"" + key + "\"}");
+        String userId = userId((String) command.get("userdata"));
+        callbacks.submit(() -> forcesave(key, userId != null ? userId : usersOf(session(key))[0]));
+      }
+    } finally {
+      exchange.close();
+    }
+  }
+
+  /**
+   * Respond with JSON.
+   *
+   * @param exchange the exchange
+   * @param json the json
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  protected void respond(HttpExchange exchange, String json) throws IOException {
+    byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
+    exchange.getResponseHeaders().add("Content-Type", "application/json");
+    exchange.sendResponseHeaders(200, bytes.length);
+    try (OutputStream out = exchange.getResponseBody()) {
+      out.write(bytes);
+    }
+  }
+
+  /**
+   * Check the Authorization header of a command.
+   *
+   * @param header the header
+   * @return true, if valid
+   */
+  protected boolean validToken(String header) {
+    if (header == null || !header.startsWith("Bearer ")) {
+      return false;
+    }
+    try {
+      Claims claims = Jwts.parser()
+                          .setSigningKey(Keys.hmacShaKeyFor(secret.getBytes()))
+                          .parseClaimsJws(header.substring(7).trim())
+                          .getBody();
+      return claims != null;
+    } catch (Exception e) {
+      return false;
+    }
+  }
+
+  /**
+   * Send a status to the editor service.
+   *
+   * @param userId the user ID of the callback URL
+   * @param status the status
+   * @return the HTTP status of the callback response
+   * @throws Exception the exception
+   */
+  protected int send(String userId, Map<String, Object> status) throws Exception {
+    String key = (String) status.get("key");
+    String token = secret != null ? Jwts.builder()
+                                        .setSubject("exo-onlyoffice")
+                                        .claim("payload", status)
+                                        .signWith(Keys.hmacShaKeyFor(secret.getBytes()))
+                                        .compact()
+                                  : null;
+    int code;
+    try {
+      code = callback.post(userId, key, JSONObject.toJSONString(status), token);
+    } catch (Exception e) {
+      failedCallbacks.incrementAndGet();
+      throw e;
+    }
+    if (code != 200) {
+      failedCallbacks.incrementAndGet();
+      LOG.warn("Status {} callback of {} responded {}", status.get("status"), key, code);
+    }
+    return code;
+  }
+
+  /**
+   * Build a status.
+   *
+   * @param key the key
+   * @param code the code
+   * @param users the users or <code>null</code>
+   * @param url the url or <code>null</code>
+   * @param userdata the userdata or <code>null</code>
+   * @param error the error
+   * @return the map
+   */
+  protected Map<String, Object> status(String key, int code, String[] users, String url, String userdata, int error) {
+    Map<String, Object> status = new LinkedHashMap<>();
+    status.put("key", key);
+    status.put("status", code);
+    if (users != null) {
+      List<String> list = new ArrayList<>();
+      Collections.addAll(list, users);
+      status.put("users", list);
+    }
+    if (url != null) {
+      status.put("url", url);
+    }
+    if (userdata != null) {
+      status.put("userdata", userdata);
+    }
+    if (error != 0) {
+      status.put("error", error);
+    }
+    return status;
+  }
+
+  /**
+   * Gets a session.
+   *
+   * @param key the key
+   * @return the session
+   */
+  protected Session session(String key) {
+    Session session = sessions.get(key);
+    if (session == null) {
+      throw new IllegalStateException("Document not open: " + key);
+    }
+    return session;
+  }
+
+  /**
+   * Users of a session, guarded by the session.
+   *
+   * @param session the session
+   * @return the users
+   */
+  protected String[] usersOf(Session session) {
+    return session.users.toArray(new String[session.users.size()]);
+  }
+
+  /**
+   * Content URL of a session, guarded by the session.
+   *
+   * @param session the session
+   * @return the URL
+   */
+  protected String contentUrl(Session session) {
+    return getUrl() + FILES_PATH + session.key + "/output.docx?v=" + session.version;
+  }
+
+  /**
+   * User ID from command userdata.
+   *
+   * @param userdata the userdata
+   * @return the user ID or <code>null</code>
+   */
+  protected String userId(String userdata) {
+    if (userdata != null) {
+      try {
+        return (String) ((JSONObject) new JSONParser().parse(userdata)).get("userId");
+      } catch (Exception e) {
+        LOG.warn("Cannot read command userdata: {}", userdata);
+      }
+    }
+    return null;
+  }
+}
@@ -0,0 +1,315 @@
+package org.exoplatform.onlyoffice.test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.exoplatform.services.log.ExoLogger;
+import org.exoplatform.services.log.Log;
+
+/**
+ * Load test harness: N documents co-edited by M users each, documents run in
+ * parallel, the users of a document act in sequence as Document Server sends
+ * statuses of a document one by one. Every user opens the document, then the
+ * users in turn modify and forcesave it, finally all close it and the last
+ * modifier closes last (its close saves the document). Latencies of open, save
+ * and close operations collected with percentiles and throughput.
+ */
+public class LoadHarness {
+
+  /** The Constant LOG. */
+  protected static final Log  LOG   = ExoLogger.getLogger(LoadHarness.class);
+
+  /** The Constant OPEN. */
+  public static final String  OPEN  = "open";
+
+  /** The Constant SAVE. */
+  public static final String  SAVE  = "save";
+
+  /** The Constant CLOSE. */
+  public static final String  CLOSE = "close";
+
+  /**
+   * Editors side of the scenario (the editor service).
+   */
+  public interface Editors {
+
+    /**
+     * Create an editor of the document for the user.
+     *
+     * @param docId the document ID
+     * @param userId the user ID
+     * @return the document key
+     * @throws Exception the exception
+     */
+    String open(String docId, String userId) throws Exception;
+
+    /**
+     * User modified the document in the editor.
+     *
+     * @param key the document key
+     * @param userId the user ID
+     * @throws Exception the exception
+     */
+    void modified(String key, String userId) throws Exception;
+  }
+
+  /**
+   * Latencies of an operation.
+   */
+  public static class Latencies {
+
+    /** The times in nanoseconds. */
+    private long[] times = new long[64];
+
+    /** The count. */
+    private int    count;
+
+    /** The errors. */
+    private int    errors;
+
+    /**
+     * Add an operation time.
+     *
+     * @param nanos the nanos
+     * @param failed the failed flag
+     */
+    synchronized void add(long nanos, boolean failed) {
+      if (count == times.length) {
+        times = Arrays.copyOf(times, count * 2);
+      }
+      times[count++] = nanos;
+      if (failed) {
+        errors++;
+      }
+    }
+
+    /**
+     * Gets the count of operations.
+     *
+     * @return the count
+     */
+    public synchronized int getCount() {
+      return count;
+    }
+
+    /**
+     * Gets the count of failed operations.
+     *
+     * @return the errors
+     */
+    public synchronized int getErrors() {
+      return errors;
+    }
+
+    /**
+     * Gets a percentile of the latency.
+     *
+     * @param percent the percent, 100 for the max
+     * @return the latency in milliseconds
+     */
+    public synchronized double percentile(double percent) {
+      if (count == 0) {
+        return 0;
+      }
+      long[] sorted = Arrays.copyOf(times, count);
+      Arrays.sort(sorted);
+      int index = (int) Math.ceil(percent / 100 * count) - 1;
+      return sorted[Math.max(0, Math.min(count - 1, index))] / 1000000d;
+    }
+  }
+
+  /**
+   * Results of a run.
+   */
+  public static class Report {
+
+    /** The operations latencies. */
+    final Map<String, Latencies> operations      = new LinkedHashMap<>();
+
+    /** The documents with aborted scenario. */
+    final AtomicInteger          failedDocuments = new AtomicInteger();
+
+    /** The wall time in milliseconds. */
+    long                         wallTime;
+
+    /**
+     * Instantiates a new report.
+     */
+    Report() {
+      operations.put(OPEN, new Latencies());
+      operations.put(SAVE, new Latencies());
+      operations.put(CLOSE, new Latencies());
+    }
+
+    /**
+     * Gets latencies of an operation.
+     *
+     * @param operation the operation
+     * @return the latencies
+     */
+    public Latencies get(String operation) {
+      return operations.get(operation);
+    }
+
+    /**
+     * Gets the total count of failed operations and aborted documents.
+     *
+     * @return the errors
+     */
+    public int getErrors() {
+      return operations.values().stream().mapToInt(Latencies::getErrors).sum() + failedDocuments.get();
+    }
+
+    /**
+     * Gets the throughput of an operation.
+     *
+     * @param operation the operation
+     * @return the operations per second
+     */
+    public double throughput(String operation) {
+      return wallTime > 0 ? get(operation).getCount() * 1000d / wallTime : 0;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString() {
+      StringBuilder s = new StringBuilder(String.format("%-6s %7s %6s %9s %9s %9s %9s %9s%n",
+                                                        "op",
+                                                        "count",
+                                                        "errors",
+                                                        "p50 ms",
+                                                        "p90 ms",
+                                                        "p99 ms",
+                                                        "max ms",
+                                                        "ops/s"));
+      for (Map.Entry<String, Latencies> op : operations.entrySet()) {
+        Latencies l = op.getValue();
+        s.append(String.format("%-6s %7d %6d %9.2f %9.2f %9.2f %9.2f %9.1f%n",
+                               op.getKey(),
+                               l.getCount(),
+                               l.getErrors(),
+                               l.percentile(50),
+                               l.percentile(90),
+                               l.percentile(99),
+                               l.percentile(100),
+                               throughput(op.getKey())));
+      }
+      s.append("failed documents ").append(failedDocuments.get()).append(", wall time ").append(wallTime).append(" ms");
+      return s.toString();
+    }
+  }
+
+  /** The server. */
+  protected final FakeDocumentServer server;
+
+  /** The editors. */
+  protected final Editors            editors;
+
+  /** The initial content of documents. */
+  protected final byte[]             content;
+
+  /**
+   * Instantiates a new load harness.
+   *
+   * @param server the fake Document Server
+   * @param editors the editors
+   * @param content the initial content of documents
+   */
+  public LoadHarness(FakeDocumentServer server, Editors editors, byte[] content) {
+    this.server = server;
+    this.editors = editors;
+    this.content = content;
+  }
+
+  /**
+   * Run the scenario on given documents.
+   *
+   * @param docIds the document IDs
+   * @param users the users co-editing each document
+   * @param saves the count of forcesaves of each document
+   * @param threads the count of documents run in parallel
+   * @param timeout the timeout of the run in milliseconds
+   * @return the report
+   * @throws InterruptedException if interrupted
+   */
+  public Report run(List<String> docIds, List<String> users, int saves, int threads, long timeout) throws InterruptedException {
+    Report report = new Report();
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    long start = System.currentTimeMillis();
+    try {
+      for (String docId : docIds) {
+        executor.submit(() -> runDocument(docId, users, saves, report));
+      }
+      executor.shutdown();
+      if (!executor.awaitTermination(timeout, TimeUnit.MILLISECONDS)) {
+        LOG.warn("Load test not finished in {} ms", timeout);
+      }
+    } finally {
+      executor.shutdownNow();
+      report.wallTime = System.currentTimeMillis() - start;
+    }
+    return report;
+  }
+
+  /**
+   * Run the scenario on a document.
+   *
+   * @param docId the document ID
+   * @param users the users
+   * @param saves the count of forcesaves
+   * @param report the report
+   */
+  protected void runDocument(String docId, List<String> users, int saves, Report report) {
+    try {
+      String key = null;
+      for (String userId : users) {
+        long start = System.nanoTime();
+        key = editors.open(docId, userId);
+        int code = server.open(key, userId, content);
+        report.get(OPEN).add(System.nanoTime() - start, code != 200);
+      }
+      String lastModifier = users.get(0);
+      for (int i = 0; i < saves; i++) {
+        lastModifier = users.get(i % users.size());
+        modify(key, lastModifier);
+        long start = System.nanoTime();
+        int code = server.forcesave(key, lastModifier);
+        report.get(SAVE).add(System.nanoTime() - start, code != 200);
+      }
+      // last changes saved when the last modifier closes the document
+      modify(key, lastModifier);
+      List<String> closing = new ArrayList<>(users);
+      closing.remove(lastModifier);
+      closing.add(lastModifier);
+      for (String userId : closing) {
+        long start = System.nanoTime();
+        int code = server.close(key, userId);
+        report.get(CLOSE).add(System.nanoTime() - start, code != 200);
+      }
+    } catch (Throwable e) {
+      LOG.error("Load test failed for document " + docId, e);
+      report.failedDocuments.incrementAndGet();
+    }
+  }
+
+  /**
+   * User modifies a document.
+   *
+   * @param key the key
+   * @param userId the user ID
+   * @throws Exception the exception
+   */
+  protected void modify(String key, String userId) throws Exception {
+    server.edit(key, userId);
+    editors.modified(key, userId);
+  }
+}
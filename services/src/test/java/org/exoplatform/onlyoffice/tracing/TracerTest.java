@@ -0,0 +1,147 @@
+package org.exoplatform.onlyoffice.tracing;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+import org.json.simple.parser.JSONParser;
+import org.junit.Test;
+
+/**
+ * The Class TracerTest.
+ */
+public class TracerTest {
+
+  /** The Constant KEY. */
+  protected static final String KEY = "e0b8f1c2-4c9a-4f0e-9d43-5b7a2f1c8d11";
+
+  /**
+   * Test nested spans correlated by the document key.
+   *
+   * @throws Exception the exception
+   */
+  @Test
+  public void testSpansCorrelatedByKey() throws Exception {
+    // Given
+    List<Span> exported = new ArrayList<>();
+    Tracer tracer = new Tracer(true, new SpanExporter() {
+      @Override
+      public void export(List<Span> spans) {
+        exported.addAll(spans);
+      }
+
+      @Override
+      public void close() {
+        // nothing
+      }
+    }, 1000, 100);
+
+    // When
+    Span download = tracer.start("onlyoffice.download", KEY);
+    Span stage = tracer.start("onlyoffice.download.fetch");
+    stage = stage.next("onlyoffice.download.write");
+    Span event = tracer.start("onlyoffice.event");
+    event.end();
+    stage.end();
+    download.end();
+    Span another = tracer.start("onlyoffice.forcesave", KEY);
+    another.end();
+
+    // Then
+    assertFalse(tracer.current().isRecording());
+    assertEquals(5, tracer.flush());
+    assertEquals(5, exported.size());
+    String traceId = Tracer.traceId(KEY);
+    for (Span span : exported) {
+      assertEquals(traceId, span.getTraceId());
+      assertTrue(span.getEndTime() >= span.getStartTime());
+    }
+    assertNull(download.getParentId());
+    assertEquals(KEY, download.getAttributes().get(Tracer.KEY_ATTRIBUTE));
+    assertEquals(download.getSpanId(), stage.getParentId());
+    assertEquals("onlyoffice.download.write", stage.getName());
+    assertEquals(stage.getSpanId(), event.getParentId());
+    assertNull(another.getParentId());
+  }
+
+  /**
+   * Test ending a span removes its not ended children from the thread.
+   */
+  @Test
+  public void testEndUnwindsChildren() {
+    Tracer tracer = new Tracer(true, null, 1000, 100);
+    Span root = tracer.start("root");
+    tracer.start("left-open");
+    root.end();
+
+    assertFalse(tracer.current().isRecording());
+    Span next = tracer.start("next");
+    assertNull(next.getParentId());
+    next.end();
+  }
+
+  /**
+   * Test disabled tracing.
+   */
+  @Test
+  public void testDisabled() {
+    Tracer tracer = new Tracer(false, null, 1000, 100);
+    Span span = tracer.start("onlyoffice.download", KEY).attribute("a", "b");
+    span.end();
+
+    assertFalse(span.isRecording());
+    assertSame(span, tracer.current());
+    assertTrue(span.getAttributes().isEmpty());
+    assertEquals(0, tracer.flush());
+  }
+
+  /**
+   * Test spans export in OTLP/JSON file.
+   *
+   * @throws Exception the exception
+   */
+  @Test
+  public void testOtlpJsonFile() throws Exception {
+    // Given
+    Path file = Files.createTempFile("onlyoffice-spans", ".json");
+    try {
+      OtlpJsonFileExporter exporter = new OtlpJsonFileExporter(file, "onlyoffice-test");
+      Tracer tracer = new Tracer(true, exporter, 1000, 100);
+      Span span = tracer.start("onlyoffice.status", KEY).attribute("onlyoffice.status", 2L);
+      tracer.start("onlyoffice.download").error(new IllegalStateException("Document locked")).end();
+      span.end();
+
+      // When
+      tracer.stop();
+
+      // Then
+      List<String> lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+      assertEquals(1, lines.size());
+      JSONObject request = (JSONObject) new JSONParser().parse(lines.get(0));
+      JSONObject resourceSpans = (JSONObject) ((JSONArray) request.get("resourceSpans")).get(0);
+      JSONObject scopeSpans = (JSONObject) ((JSONArray) resourceSpans.get("scopeSpans")).get(0);
+      JSONArray spans = (JSONArray) scopeSpans.get("spans");
+      assertEquals(2, spans.size());
+      JSONObject download = (JSONObject) spans.get(0);
+      assertEquals("onlyoffice.download", download.get("name"));
+      assertEquals(Tracer.traceId(KEY), download.get("traceId"));
+      assertEquals(span.getSpanId(), download.get("parentSpanId"));
+      assertEquals("IllegalStateException: Document locked", ((JSONObject) download.get("status")).get("message"));
+      JSONObject status = (JSONObject) spans.get(1);
+      assertNull(status.get("parentSpanId"));
+      assertTrue(status.get("attributes").toString().contains("{\"intValue\":\"2\"}"));
+    } finally {
+      Files.deleteIfExists(file);
+    }
+  }
+}
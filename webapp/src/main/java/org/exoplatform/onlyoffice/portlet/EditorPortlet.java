@@ -43,6 +43,7 @@ import org.exoplatform.onlyoffice.OnlyofficeEditorService;
 import org.exoplatform.services.log.ExoLogger;
 import org.exoplatform.services.log.Log;
 import org.exoplatform.services.resources.ResourceBundleService;
+import org.exoplatform.web.application.RequestContext;
 import org.exoplatform.webui.application.WebuiRequestContext;
 import org.exoplatform.ws.frameworks.json.impl.JsonException;
 import org.w3c.dom.Element;
@@ -53,13 +54,19 @@ import org.w3c.dom.Element;
 public class EditorPortlet extends GenericPortlet {
 
   /** The Constant LOG. */
-  private static final Log        LOG = ExoLogger.getLogger(EditorPortlet.class);
+  private static final Log          LOG              = ExoLogger.getLogger(EditorPortlet.class);
+
+  /**
+   * Prefix of portal request attribute with the editor config created for a
+   * document while rendering the portlet.
+   */
+  protected static final String     CONFIG_ATTRIBUTE = "onlyoffice.editor.config.";
 
   /** The onlyoffice. */
-  private OnlyofficeEditorService onlyoffice;
+  protected OnlyofficeEditorService onlyoffice;
 
   /** The i 18 n service. */
-  private ResourceBundleService   i18nService;
+  protected ResourceBundleService   i18nService;
 
   /**
    * {@inheritDoc}
@@ -130,19 +137,24 @@ public class EditorPortlet extends GenericPortlet {
   /**
    * Get editor config
    * If the config already exists, the createEditor returns it instead of creating a new one.
+   * The config will be created once per portal request and reused in both
+   * headers and view phases of the rendering.
    *
    * @param request the request
    * @param response the response
    * @param i18n the i18n resource bundle
    * @return the editor config
    */
-  private Config getConfig(RenderRequest request, RenderResponse response, ResourceBundle i18n) {
+  protected Config getConfig(RenderRequest request, RenderResponse response, ResourceBundle i18n) {
     Config config = null;
 
-    WebuiRequestContext webuiContext = WebuiRequestContext.getCurrentInstance();
-
-    String docId = webuiContext.getRequestParameter("docId");
+    String docId = getDocumentId(request);
     if (docId != null) {
+      config = (Config) getRenderAttribute(CONFIG_ATTRIBUTE + docId);
+      if (config != null) {
+        // already created in this request
+        return config;
+      }
       try {
         config = onlyoffice.createEditor(request.getScheme(),
                 request.getServerName(),
@@ -151,6 +163,7 @@ public class EditorPortlet extends GenericPortlet {
                 null,
                 docId);
         if (config != null) {
+          setRenderAttribute(CONFIG_ATTRIBUTE + docId, config);
           if (config.getEditorConfig().getLang() == null) {
             if (request.getLocale() != null) {
               // If user lang not defined use current request one
@@ -183,4 +196,39 @@ public class EditorPortlet extends GenericPortlet {
 
     return config;
   }
+
+  /**
+   * Gets the ID of the document requested for editing.
+   *
+   * @param request the request
+   * @return the document ID or <code>null</code>
+   */
+  protected String getDocumentId(RenderRequest request) {
+    return WebuiRequestContext.getCurrentInstance().getRequestParameter("docId");
+  }
+
+  /**
+   * Gets an attribute of the current portal request. The portal request spans
+   * all phases of the portlet rendering.
+   *
+   * @param name the name
+   * @return the attribute value or <code>null</code>
+   */
+  protected Object getRenderAttribute(String name) {
+    RequestContext portalContext = WebuiRequestContext.getCurrentInstance().getParentAppRequestContext();
+    return portalContext != null ? portalContext.getAttribute(name) : null;
+  }
+
+  /**
+   * Sets an attribute of the current portal request.
+   *
+   * @param name the name
+   * @param value the value
+   */
+  protected void setRenderAttribute(String name, Object value) {
+    RequestContext portalContext = WebuiRequestContext.getCurrentInstance().getParentAppRequestContext();
+    if (portalContext != null) {
+      portalContext.setAttribute(name, value);
+    }
+  }
 }
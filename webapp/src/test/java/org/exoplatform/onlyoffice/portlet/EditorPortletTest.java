@@ -0,0 +1,215 @@
+package org.exoplatform.onlyoffice.portlet;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.ArgumentMatchers.startsWith;
+import static org.mockito.Mockito.RETURNS_DEEP_STUBS;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.HashMap;
+import java.util.ListResourceBundle;
+import java.util.Locale;
+import java.util.Map;
+import java.util.ResourceBundle;
+
+import javax.portlet.MimeResponse;
+import javax.portlet.PortletConfig;
+import javax.portlet.PortletContext;
+import javax.portlet.PortletRequestDispatcher;
+import javax.portlet.RenderRequest;
+import javax.portlet.RenderResponse;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.w3c.dom.Element;
+
+import org.exoplatform.container.ExoContainer;
+import org.exoplatform.onlyoffice.Config;
+import org.exoplatform.onlyoffice.OnlyofficeEditorService;
+import org.exoplatform.onlyoffice.cometd.CometdOnlyofficeService;
+import org.exoplatform.services.resources.ResourceBundleService;
+import org.exoplatform.services.security.ConversationState;
+import org.exoplatform.services.security.Identity;
+import org.exoplatform.web.application.Application;
+import org.exoplatform.web.application.JavascriptManager;
+import org.exoplatform.web.application.RequestContext;
+import org.exoplatform.web.application.RequireJS;
+import org.exoplatform.webui.application.WebuiRequestContext;
+
+/**
+ * The Class EditorPortletTest.
+ */
+public class EditorPortletTest {
+
+  /** The Constant DOC_ID. */
+  protected static final String DOC_ID = "a7b3c5d2-0f1e-4c6b-9a8d-2e4f6a8b0c1d";
+
+  /**
+   * Editor portlet with services given instead of the container ones.
+   */
+  static class TestEditorPortlet extends EditorPortlet {
+
+    /** The editor service. */
+    final OnlyofficeEditorService editorService;
+
+    /** The i18n service. */
+    final ResourceBundleService   i18n;
+
+    /**
+     * Instantiates a new test editor portlet.
+     *
+     * @param onlyoffice the onlyoffice
+     * @param i18n the i18n service
+     */
+    TestEditorPortlet(OnlyofficeEditorService onlyoffice, ResourceBundleService i18n) {
+      this.editorService = onlyoffice;
+      this.i18n = i18n;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void init() {
+      this.onlyoffice = editorService;
+      this.i18nService = i18n;
+    }
+  }
+
+  /** The attributes of the portal request. */
+  protected Map<String, Object>      attributes;
+
+  /** The portal request context. */
+  protected RequestContext           portalContext;
+
+  /** The portlet request context. */
+  protected WebuiRequestContext      requestContext;
+
+  /** The RequireJS of the portlet. */
+  protected RequireJS                require;
+
+  /** The resource bundle service. */
+  protected ResourceBundleService    i18nService;
+
+  /** The portlet dispatcher to the editor page. */
+  protected PortletRequestDispatcher dispatcher;
+
+  /** The portlet config. */
+  protected PortletConfig            portletConfig;
+
+  /**
+   * Setup a portal request of an user with the document ID in parameters.
+   *
+   * @throws Exception the exception
+   */
+  @Before
+  public void setup() throws Exception {
+    ResourceBundle bundle = new ListResourceBundle() {
+      @Override
+      protected Object[][] getContents() {
+        return new Object[0][];
+      }
+    };
+    i18nService = mock(ResourceBundleService.class);
+    when(i18nService.getResourceBundle(any(String[].class), any(Locale.class))).thenReturn(bundle);
+    when(i18nService.getResourceBundle(anyString(), any(Locale.class))).thenReturn(bundle);
+
+    attributes = new HashMap<>();
+    portalContext = mock(RequestContext.class);
+    when(portalContext.getAttribute(anyString())).then(invocation -> attributes.get(invocation.getArgument(0)));
+    doAnswer(invocation -> attributes.put(invocation.getArgument(0), invocation.getArgument(1))).when(portalContext)
+                                                                                              .setAttribute(anyString(), any());
+
+    require = mock(RequireJS.class);
+    JavascriptManager js = mock(JavascriptManager.class);
+    when(js.require(anyString(), anyString())).thenReturn(require);
+    CometdOnlyofficeService cometd = mock(CometdOnlyofficeService.class);
+    when(cometd.getCometdServerPath()).thenReturn("/cometd");
+    when(cometd.getUserToken("john")).thenReturn("token");
+    ExoContainer container = mock(ExoContainer.class);
+    when(container.getComponentInstanceOfType(ResourceBundleService.class)).thenReturn(i18nService);
+    when(container.getComponentInstanceOfType(CometdOnlyofficeService.class)).thenReturn(cometd);
+    Application application = mock(Application.class);
+    when(application.getApplicationServiceContainer()).thenReturn(container);
+
+    requestContext = mock(WebuiRequestContext.class);
+    when(requestContext.getRequestParameter("docId")).thenReturn(DOC_ID);
+    when(requestContext.getParentAppRequestContext()).thenReturn(portalContext);
+    when(requestContext.getJavascriptManager()).thenReturn(js);
+    when(requestContext.getApplication()).thenReturn(application);
+    when(requestContext.getLocale()).thenReturn(Locale.ENGLISH);
+    RequestContext.setCurrentInstance(requestContext);
+    ConversationState.setCurrent(new ConversationState(new Identity("john")));
+
+    dispatcher = mock(PortletRequestDispatcher.class);
+    PortletContext portletContext = mock(PortletContext.class);
+    when(portletContext.getRequestDispatcher("/WEB-INF/pages/editor.jsp")).thenReturn(dispatcher);
+    portletConfig = mock(PortletConfig.class);
+    when(portletConfig.getPortletContext()).thenReturn(portletContext);
+  }
+
+  /**
+   * Tear down.
+   */
+  @After
+  public void tearDown() {
+    RequestContext.setCurrentInstance(null);
+    ConversationState.setCurrent(null);
+  }
+
+  /**
+   * Test the editor config created once per render: in headers and then view
+   * phases of the same portal request.
+   *
+   * @throws Exception the exception
+   */
+  @Test
+  public void testConfigCreatedOncePerRender() throws Exception {
+    // Given
+    OnlyofficeEditorService onlyoffice = mock(OnlyofficeEditorService.class);
+    Config config = mock(Config.class, RETURNS_DEEP_STUBS);
+    when(config.getEditorConfig().getLang()).thenReturn("en");
+    when(config.getDocumentserverJsUrl()).thenReturn("http://localhost:8190/web-apps/apps/api/documents/api.js");
+    when(config.toJSON()).thenReturn("{}");
+    when(onlyoffice.createEditor(anyString(), anyString(), anyInt(), anyString(), isNull(), eq(DOC_ID))).thenReturn(config);
+    RenderRequest request = mock(RenderRequest.class);
+    when(request.getScheme()).thenReturn("http");
+    when(request.getServerName()).thenReturn("localhost");
+    when(request.getServerPort()).thenReturn(8080);
+    when(request.getRemoteUser()).thenReturn("john");
+    when(request.getLocale()).thenReturn(Locale.ENGLISH);
+    RenderResponse response = mock(RenderResponse.class);
+    Element script = mock(Element.class);
+    when(response.createElement("script")).thenReturn(script);
+    TestEditorPortlet portlet = new TestEditorPortlet(onlyoffice, i18nService);
+    portlet.init(portletConfig);
+
+    // When headers and then view rendered
+    portlet.doHeaders(request, response);
+    portlet.view(request, response);
+
+    // Then
+    verify(onlyoffice, times(1)).createEditor("http", "localhost", 8080, "john", null, DOC_ID);
+    verify(script).setAttribute("src", "http://localhost:8190/web-apps/apps/api/documents/api.js");
+    verify(response).addProperty(MimeResponse.MARKUP_HEAD_ELEMENT, script);
+    verify(require).addScripts("onlyoffice.initEditor({});\n");
+    verify(require, never()).addScripts(startsWith("onlyoffice.showError("));
+    verify(dispatcher).include(request, response);
+
+    // When next render (a new portal request)
+    attributes.clear();
+    portlet.doHeaders(request, response);
+
+    // Then
+    verify(onlyoffice, times(2)).createEditor("http", "localhost", 8080, "john", null, DOC_ID);
+  }
+}